@@ -20,6 +20,8 @@ package org.eclipse.jetty.client;
 
 import java.nio.ByteBuffer;
 
+import org.eclipse.jetty.http.HttpField;
+
 /**
  * {@link ContentDecoder} decodes content bytes of a response.
  *
@@ -87,6 +89,17 @@ public interface ContentDecoder
             return encoding.hashCode();
         }
 
+        /**
+         * <p>Returns a field to add to every request, for example to advertise
+         * to the server the capabilities of the decoders created by this factory.</p>
+         *
+         * @return a request field, or null if no field is required
+         */
+        public HttpField getRequestField()
+        {
+            return null;
+        }
+
         /**
          * Factory method for {@link ContentDecoder}s
          *
@@ -0,0 +1,209 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * <p>{@link ContentDecoder} for the "deflate" encoding, that is the zlib format.</p>
+ * <p>The decoder may be configured with the preset dictionaries used by the server
+ * to encode the content; a dictionary is only used if the zlib header of the
+ * content requests it, and it is selected by its Adler-32 checksum, as specified
+ * by the {@code DICTID} of the zlib header.</p>
+ * <p>When dictionaries are configured, the {@link Factory} advertises them to the
+ * server by adding the {@value #DICTIONARIES_HEADER} header to every request, listing
+ * the hex representation of the checksums of the dictionaries.</p>
+ */
+public class DeflateContentDecoder implements ContentDecoder, Destroyable
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final String DICTIONARIES_HEADER = "X-Compression-Dictionaries";
+
+    private final Inflater inflater = new Inflater();
+    private final ByteBufferPool byteBufferPool;
+    private final int bufferSize;
+    private final Map<Integer, byte[]> dictionaries;
+
+    public DeflateContentDecoder()
+    {
+        this(null, DEFAULT_BUFFER_SIZE, (byte[])null);
+    }
+
+    public DeflateContentDecoder(ByteBufferPool byteBufferPool, int bufferSize, byte[] dictionary)
+    {
+        this(byteBufferPool, bufferSize, dictionary == null ? Collections.emptyList() : Collections.singletonList(dictionary));
+    }
+
+    public DeflateContentDecoder(ByteBufferPool byteBufferPool, int bufferSize, List<byte[]> dictionaries)
+    {
+        this(byteBufferPool, bufferSize, dictionariesByChecksum(dictionaries));
+    }
+
+    private DeflateContentDecoder(ByteBufferPool byteBufferPool, int bufferSize, Map<Integer, byte[]> dictionaries)
+    {
+        this.byteBufferPool = byteBufferPool;
+        this.bufferSize = bufferSize;
+        this.dictionaries = dictionaries;
+    }
+
+    private static Map<Integer, byte[]> dictionariesByChecksum(List<byte[]> dictionaries)
+    {
+        if (dictionaries.isEmpty())
+            return Collections.emptyMap();
+        Map<Integer, byte[]> result = new HashMap<>();
+        for (byte[] dictionary : dictionaries)
+        {
+            result.put(checksumOf(dictionary), dictionary);
+        }
+        return result;
+    }
+
+    private static int checksumOf(byte[] dictionary)
+    {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return (int)adler.getValue();
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer)
+    {
+        if (inflater.finished())
+        {
+            // Ignore any bytes after the end of the compressed content.
+            buffer.position(buffer.limit());
+            return BufferUtil.EMPTY_BUFFER;
+        }
+
+        ByteBuffer decoded = acquire(bufferSize);
+        try
+        {
+            inflater.setInput(buffer);
+            int position = BufferUtil.flipToFill(decoded);
+            while (decoded.hasRemaining())
+            {
+                if (inflater.inflate(decoded) > 0)
+                    continue;
+                if (inflater.needsDictionary())
+                {
+                    // When a dictionary is needed, the checksum is the DICTID of the zlib header.
+                    byte[] dictionary = dictionaries.get(inflater.getAdler());
+                    if (dictionary == null)
+                        throw new ZipException(String.format("Missing dictionary %08x", inflater.getAdler()));
+                    inflater.setDictionary(dictionary);
+                    continue;
+                }
+                if (inflater.needsInput() || inflater.finished())
+                    break;
+            }
+            BufferUtil.flipToFlush(decoded, position);
+        }
+        catch (DataFormatException | ZipException | IllegalArgumentException x)
+        {
+            release(decoded);
+            throw new RuntimeException(x);
+        }
+
+        if (decoded.hasRemaining())
+            return decoded;
+        release(decoded);
+        return BufferUtil.EMPTY_BUFFER;
+    }
+
+    private ByteBuffer acquire(int capacity)
+    {
+        return byteBufferPool == null ? BufferUtil.allocate(capacity) : byteBufferPool.acquire(capacity, false);
+    }
+
+    @Override
+    public void release(ByteBuffer decoded)
+    {
+        if (byteBufferPool != null && !BufferUtil.isTheEmptyBuffer(decoded))
+            byteBufferPool.release(decoded);
+    }
+
+    @Override
+    public void destroy()
+    {
+        inflater.end();
+    }
+
+    /**
+     * Specialized {@link ContentDecoder.Factory} for the "deflate" encoding.
+     */
+    public static class Factory extends ContentDecoder.Factory
+    {
+        private final ByteBufferPool byteBufferPool;
+        private final int bufferSize;
+        private final Map<Integer, byte[]> dictionaries;
+        private final HttpField requestField;
+
+        public Factory()
+        {
+            this(null);
+        }
+
+        public Factory(ByteBufferPool byteBufferPool)
+        {
+            this(byteBufferPool, DEFAULT_BUFFER_SIZE, (byte[])null);
+        }
+
+        public Factory(ByteBufferPool byteBufferPool, int bufferSize, byte[] dictionary)
+        {
+            this(byteBufferPool, bufferSize, dictionary == null ? Collections.emptyList() : Collections.singletonList(dictionary));
+        }
+
+        public Factory(ByteBufferPool byteBufferPool, int bufferSize, List<byte[]> dictionaries)
+        {
+            super("deflate");
+            this.byteBufferPool = byteBufferPool;
+            this.bufferSize = bufferSize;
+            this.dictionaries = dictionariesByChecksum(dictionaries);
+            this.requestField = this.dictionaries.isEmpty() ? null : new HttpField(DICTIONARIES_HEADER, this.dictionaries.keySet().stream()
+                .map(checksum -> String.format("%08x", checksum))
+                .collect(Collectors.joining(",")));
+        }
+
+        @Override
+        public HttpField getRequestField()
+        {
+            return requestField;
+        }
+
+        @Override
+        public ContentDecoder newContentDecoder()
+        {
+            return new DeflateContentDecoder(byteBufferPool, bufferSize, dictionaries);
+        }
+    }
+}
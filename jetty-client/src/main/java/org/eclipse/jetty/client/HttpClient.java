@@ -146,6 +146,7 @@ public class HttpClient extends ContainerLifeCycle
     private boolean tcpNoDelay = true;
     private boolean strictEventOrdering = false;
     private HttpField encodingField;
+    private List<HttpField> decoderFields = List.of();
     private boolean removeIdleDestinations = false;
     private String name = getClass().getSimpleName() + "@" + Integer.toHexString(hashCode());
     private HttpCompliance httpCompliance = HttpCompliance.RFC7230;
@@ -1111,6 +1112,15 @@ public class HttpClient extends ContainerLifeCycle
         return encodingField;
     }
 
+    /**
+     * @return the request fields required by the configured content decoder factories
+     * @see ContentDecoder.Factory#getRequestField()
+     */
+    protected List<HttpField> getContentDecoderFields()
+    {
+        return decoderFields;
+    }
+
     protected String normalizeHost(String host)
     {
         if (host != null && host.startsWith("[") && host.endsWith("]"))
@@ -1264,6 +1274,15 @@ public class HttpClient extends ContainerLifeCycle
 
         private void invalidate()
         {
+            List<HttpField> fields = new ArrayList<>();
+            for (ContentDecoder.Factory decoderFactory : set)
+            {
+                HttpField field = decoderFactory.getRequestField();
+                if (field != null)
+                    fields.add(field);
+            }
+            decoderFields = fields;
+
             if (set.isEmpty())
             {
                 encodingField = null;
@@ -109,6 +109,10 @@ public class HttpRequest implements Request
         HttpField acceptEncodingField = client.getAcceptEncodingField();
         if (acceptEncodingField != null)
             headers.put(acceptEncodingField);
+        for (HttpField decoderField : client.getContentDecoderFields())
+        {
+            headers.put(decoderField);
+        }
         HttpField userAgentField = client.getUserAgentField();
         if (userAgentField != null)
             headers.put(userAgentField);
@@ -23,4 +23,16 @@ import org.eclipse.jetty.client.api.Connection;
 public interface IConnection extends Connection
 {
     public SendFailure send(HttpExchange exchange);
+
+    /**
+     * <p>Returns the fraction of time, between 0 and 1, that this connection
+     * recently spent unable to send because of flow control, for those
+     * protocols that have flow control.</p>
+     *
+     * @return the recent flow control stall rate of this connection
+     */
+    public default double getStallRate()
+    {
+        return 0;
+    }
 }
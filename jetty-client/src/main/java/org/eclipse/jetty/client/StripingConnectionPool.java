@@ -0,0 +1,137 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Pool;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link MultiplexConnectionPool} that stripes requests across the
+ * connections of the pool.</p>
+ * <p>While {@link MultiplexConnectionPool} uses a connection up to its
+ * {@link #getMaxMultiplex() max multiplex} before using another one,
+ * this pool sends each request over the least loaded connection.
+ * The load of a connection is the ratio of its in-flight requests over
+ * the max multiplex, plus its recent {@link IConnection#getStallRate()
+ * flow control stall rate}.</p>
+ * <p>When the least loaded connection has a load greater than or equal to
+ * the {@link #getStripeThreshold() stripe threshold}, a new connection is
+ * opened (up to the max number of connections of the pool), so that the
+ * load is spread across more connections before any of them saturates.</p>
+ */
+@ManagedObject
+public class StripingConnectionPool extends MultiplexConnectionPool
+{
+    private static final Logger LOG = LoggerFactory.getLogger(StripingConnectionPool.class);
+
+    private final Pool<Connection> pool;
+    private double stripeThreshold = 0.5D;
+
+    public StripingConnectionPool(HttpDestination destination, int maxConnections, Callback requester, int maxMultiplex)
+    {
+        super(destination, maxConnections, false, requester, maxMultiplex);
+        @SuppressWarnings("unchecked")
+        Pool<Connection> pool = destination.getBean(Pool.class);
+        this.pool = pool;
+    }
+
+    /**
+     * @return the load of the least loaded connection above which a new connection is opened
+     */
+    @ManagedAttribute("The connection load above which a new connection is opened")
+    public double getStripeThreshold()
+    {
+        return stripeThreshold;
+    }
+
+    /**
+     * @param stripeThreshold the load of the least loaded connection above which a new connection is opened
+     */
+    public void setStripeThreshold(double stripeThreshold)
+    {
+        this.stripeThreshold = stripeThreshold;
+    }
+
+    @Override
+    protected Connection activate()
+    {
+        if (pool.isClosed())
+            return null;
+
+        Pool<Connection>.Entry best = null;
+        double bestLoad = Double.MAX_VALUE;
+        int maxMultiplex = Math.max(1, getMaxMultiplex());
+        for (Pool<Connection>.Entry entry : pool.values())
+        {
+            Connection connection = entry.getPooled();
+            if (connection == null || entry.isClosed() || entry.getMultiplexCount() >= maxMultiplex)
+                continue;
+            double load = load(connection, entry.getMultiplexCount(), maxMultiplex);
+            if (load < bestLoad)
+            {
+                best = entry;
+                bestLoad = load;
+            }
+        }
+
+        if (best == null)
+            return null;
+
+        if (bestLoad >= getStripeThreshold())
+        {
+            // Open another connection, at most one at a time,
+            // while this request is sent over the best connection.
+            if (LOG.isDebugEnabled())
+                LOG.debug("Striping, load {} for {}", bestLoad, best);
+            tryCreate(1);
+        }
+
+        if (best.tryAcquire())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("activated '{}'", best);
+            Connection connection = best.getPooled();
+            acquired(connection);
+            return connection;
+        }
+
+        // Lost the race for the best entry, or the entry is
+        // at its max usage count, so fall back to any entry.
+        return super.activate();
+    }
+
+    /**
+     * @param connection the connection
+     * @param multiplexCount the number of in-flight requests over the connection
+     * @param maxMultiplex the max number of in-flight requests over the connection
+     * @return the load of the given connection
+     */
+    protected double load(Connection connection, int multiplexCount, int maxMultiplex)
+    {
+        double load = (double)multiplexCount / maxMultiplex;
+        if (connection instanceof IConnection)
+            load += ((IConnection)connection).getStallRate();
+        return load;
+    }
+}
@@ -23,9 +23,13 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -75,6 +79,83 @@ public class HttpClientGZIPTest extends AbstractHttpClientServerTest
         assertArrayEquals(data, response.getContent());
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testDeflateContentWithDictionary(Scenario scenario) throws Exception
+    {
+        byte[] dictionary = "{\"id\":,\"name\":\"item\"}".getBytes(StandardCharsets.UTF_8);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 64; ++i)
+        {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+        }
+        byte[] data = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Content-Encoding", "deflate");
+                Deflater deflater = new Deflater();
+                deflater.setDictionary(dictionary);
+                DeflaterOutputStream deflateOutput = new DeflaterOutputStream(response.getOutputStream(), deflater);
+                deflateOutput.write(data);
+                deflateOutput.finish();
+                deflater.end();
+            }
+        });
+        client.getContentDecoderFactories().add(new DeflateContentDecoder.Factory(client.getByteBufferPool(), 64, dictionary));
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(data, response.getContent());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testDeflateContentWithAdvertisedDictionaries(Scenario scenario) throws Exception
+    {
+        byte[] dictionary1 = "<html><head><title>".getBytes(StandardCharsets.UTF_8);
+        byte[] dictionary2 = "{\"id\":,\"name\":\"item\"}".getBytes(StandardCharsets.UTF_8);
+        Adler32 adler = new Adler32();
+        adler.update(dictionary2);
+        String id = String.format("%08x", adler.getValue());
+        byte[] data = "[{\"id\":1,\"name\":\"item\"},{\"id\":2,\"name\":\"item\"}]".getBytes(StandardCharsets.UTF_8);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                // Only use the dictionary if the client advertised it.
+                if (!jettyRequest.getHttpFields().getCSV(DeflateContentDecoder.DICTIONARIES_HEADER, false).contains(id))
+                {
+                    response.setStatus(HttpStatus.PRECONDITION_FAILED_412);
+                    return;
+                }
+                response.setHeader("Content-Encoding", "deflate");
+                Deflater deflater = new Deflater();
+                deflater.setDictionary(dictionary2);
+                DeflaterOutputStream deflateOutput = new DeflaterOutputStream(response.getOutputStream(), deflater);
+                deflateOutput.write(data);
+                deflateOutput.finish();
+                deflater.end();
+            }
+        });
+        client.getContentDecoderFactories().add(new DeflateContentDecoder.Factory(client.getByteBufferPool(), 64, List.of(dictionary1, dictionary2)));
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(data, response.getContent());
+    }
+
     @ParameterizedTest
     @ArgumentsSource(ScenarioProvider.class)
     public void testGZIPContentOneByteAtATime(Scenario scenario) throws Exception
@@ -22,6 +22,7 @@ public class CompressedContentFormat
 {
     public static final CompressedContentFormat GZIP = new CompressedContentFormat("gzip", ".gz");
     public static final CompressedContentFormat BR = new CompressedContentFormat("br", ".br");
+    public static final CompressedContentFormat DEFLATE = new CompressedContentFormat("deflate", ".zz");
     public static final CompressedContentFormat[] NONE = new CompressedContentFormat[0];
 
     public final String _encoding;
@@ -31,10 +32,20 @@ public class CompressedContentFormat
     public final PreEncodedHttpField _contentEncoding;
 
     public CompressedContentFormat(String encoding, String extension)
+    {
+        this(encoding, extension, "--" + encoding);
+    }
+
+    /**
+     * @param encoding the encoding used in the {@code Content-Encoding} header
+     * @param extension the extension of precompressed resources
+     * @param etag the suffix added to the entity tags of the encoded content, starting with {@code --}
+     */
+    public CompressedContentFormat(String encoding, String extension, String etag)
     {
         _encoding = encoding;
         _extension = extension;
-        _etag = "--" + encoding;
+        _etag = etag;
         _etagQuote = _etag + "\"";
         _contentEncoding = new PreEncodedHttpField(HttpHeader.CONTENT_ENCODING, encoding);
     }
@@ -30,6 +30,7 @@ import java.util.concurrent.Executor;
 import org.eclipse.jetty.alpn.client.ALPNClientConnectionFactory;
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.StreamScheduler;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
@@ -115,6 +116,7 @@ public class HTTP2Client extends ContainerLifeCycle
     private int maxConcurrentPushedStreams = 32;
     private int maxSettingsKeys = SettingsFrame.DEFAULT_MAX_KEYS;
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
+    private StreamScheduler.Factory streamSchedulerFactory = () -> StreamScheduler.FIFO;
     private long streamIdleTimeout;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
@@ -175,6 +177,16 @@ public class HTTP2Client extends ContainerLifeCycle
         this.flowControlStrategyFactory = flowControlStrategyFactory;
     }
 
+    public StreamScheduler.Factory getStreamSchedulerFactory()
+    {
+        return streamSchedulerFactory;
+    }
+
+    public void setStreamSchedulerFactory(StreamScheduler.Factory streamSchedulerFactory)
+    {
+        this.streamSchedulerFactory = streamSchedulerFactory;
+    }
+
     @ManagedAttribute("The number of selectors")
     public int getSelectors()
     {
@@ -0,0 +1,135 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.AdaptiveFlowControlStrategy;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveFlowControlStrategyTest extends AbstractTest
+{
+    @Test
+    public void testWindowsGrowDuringLargeDownload() throws Exception
+    {
+        int chunk = 16 * 1024;
+        int chunks = 512;
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, HttpFields.EMPTY);
+                stream.headers(new HeadersFrame(stream.getId(), response, null, false), new Callback()
+                {
+                    private int count;
+
+                    @Override
+                    public void succeeded()
+                    {
+                        boolean last = ++count == chunks;
+                        stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(chunk), last), last ? NOOP : this);
+                    }
+                });
+                return null;
+            }
+        });
+
+        int maxSessionRecvWindow = 4 * 1024 * 1024;
+        int maxStreamRecvWindow = 2 * 1024 * 1024;
+        AtomicReference<AdaptiveFlowControlStrategy> strategyRef = new AtomicReference<>();
+        client.setFlowControlStrategyFactory(() ->
+        {
+            AdaptiveFlowControlStrategy strategy = new AdaptiveFlowControlStrategy(maxSessionRecvWindow, maxStreamRecvWindow);
+            // Well below the 20 PINGs per second allowed by the default server rate control.
+            strategy.setPingInterval(100);
+            strategyRef.set(strategy);
+            return strategy;
+        });
+        AtomicLong pings = new AtomicLong();
+        Session session = newClient(new Session.Listener.Adapter()
+        {
+            @Override
+            public void onPing(Session session, PingFrame frame)
+            {
+                pings.incrementAndGet();
+            }
+        });
+
+        AtomicLong received = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(1);
+        HeadersFrame frame = new HeadersFrame(newRequest("GET", HttpFields.EMPTY), null, true);
+        session.newStream(frame, new FuturePromise<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                received.addAndGet(frame.remaining());
+                callback.succeeded();
+                if (frame.isEndStream())
+                    latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        assertEquals((long)chunk * chunks, received.get());
+
+        AdaptiveFlowControlStrategy strategy = strategyRef.get();
+        assertThat(strategy.getPingCount(), greaterThan(0L));
+        assertThat(strategy.getGrowCount(), greaterThan(0L));
+        assertThat(strategy.getStreamRecvWindowTarget(), greaterThan(FlowControlStrategy.DEFAULT_WINDOW_SIZE));
+        assertThat(strategy.getStreamRecvWindowTarget(), lessThanOrEqualTo(maxStreamRecvWindow));
+        assertThat(strategy.getSessionRecvWindowTarget(), lessThanOrEqualTo(maxSessionRecvWindow));
+        // The BDP PING replies are not notified to the application.
+        assertEquals(0, pings.get());
+    }
+
+    @Test
+    public void testMaxWindowsNotSmallerThanInitialWindows()
+    {
+        int initialWindow = 1024 * 1024;
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveFlowControlStrategy(FlowControlStrategy.DEFAULT_WINDOW_SIZE, 0.5F, initialWindow, FlowControlStrategy.DEFAULT_WINDOW_SIZE, initialWindow / 2, initialWindow));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveFlowControlStrategy(FlowControlStrategy.DEFAULT_WINDOW_SIZE, 0.5F, FlowControlStrategy.DEFAULT_WINDOW_SIZE, initialWindow, initialWindow, initialWindow / 2));
+        new AdaptiveFlowControlStrategy(FlowControlStrategy.DEFAULT_WINDOW_SIZE, 0.5F, initialWindow, initialWindow, initialWindow, initialWindow);
+    }
+}
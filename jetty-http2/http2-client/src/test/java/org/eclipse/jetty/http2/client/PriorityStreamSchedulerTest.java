@@ -0,0 +1,143 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ExtensiblePriority;
+import org.eclipse.jetty.http2.IStream;
+import org.eclipse.jetty.http2.PriorityStreamScheduler;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PriorityStreamSchedulerTest extends AbstractTest
+{
+    @Test
+    public void testParsePriority()
+    {
+        assertEquals(ExtensiblePriority.DEFAULT, ExtensiblePriority.from(null, ExtensiblePriority.DEFAULT));
+        assertEquals(new ExtensiblePriority(1, true), ExtensiblePriority.from("u=1, i", ExtensiblePriority.DEFAULT));
+        assertEquals(new ExtensiblePriority(5, false), ExtensiblePriority.from("u=5, i=?0", ExtensiblePriority.DEFAULT));
+        assertEquals(new ExtensiblePriority(3, true), ExtensiblePriority.from("i=?1;foo=bar, x=1", ExtensiblePriority.DEFAULT));
+        // Invalid values are ignored.
+        assertEquals(new ExtensiblePriority(2, false), ExtensiblePriority.from("u=9", new ExtensiblePriority(2, false)));
+    }
+
+    @Test
+    public void testUrgentStreamIsSentFirst() throws Exception
+    {
+        CountDownLatch serverStreamsLatch = new CountDownLatch(2);
+        List<Stream> serverStreams = new ArrayList<>();
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                serverStreams.add(stream);
+                serverStreamsLatch.countDown();
+                return null;
+            }
+        }, factory -> factory.setStreamSchedulerFactory(PriorityStreamScheduler::new));
+
+        Session session = newClient(new Session.Listener.Adapter());
+
+        List<Integer> dataStreamIds = new ArrayList<>();
+        CountDownLatch dataLatch = new CountDownLatch(2);
+        Stream.Listener streamListener = new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                synchronized (dataStreamIds)
+                {
+                    dataStreamIds.add(stream.getId());
+                }
+                callback.succeeded();
+                if (frame.isEndStream())
+                    dataLatch.countDown();
+            }
+        };
+
+        HttpFields lowFields = HttpFields.build().put(ExtensiblePriority.HEADER_NAME, "u=5");
+        HeadersFrame lowFrame = new HeadersFrame(newRequest("GET", lowFields), null, true);
+        FuturePromise<Stream> lowPromise = new FuturePromise<>();
+        session.newStream(lowFrame, lowPromise, streamListener);
+        Stream lowStream = lowPromise.get(5, TimeUnit.SECONDS);
+
+        HttpFields highFields = HttpFields.build().put(ExtensiblePriority.HEADER_NAME, "u=0");
+        HeadersFrame highFrame = new HeadersFrame(newRequest("GET", highFields), null, true);
+        FuturePromise<Stream> highPromise = new FuturePromise<>();
+        session.newStream(highFrame, highPromise, streamListener);
+        Stream highStream = highPromise.get(5, TimeUnit.SECONDS);
+
+        assertTrue(serverStreamsLatch.await(5, TimeUnit.SECONDS));
+
+        Stream serverLowStream = serverStreams.get(0);
+        Stream serverHighStream = serverStreams.get(1);
+        assertThat(((IStream)serverLowStream).getPriority().getUrgency(), is(5));
+        assertThat(((IStream)serverHighStream).getPriority().getUrgency(), is(0));
+
+        MetaData.Response lowResponse = new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, HttpFields.EMPTY);
+        serverLowStream.headers(new HeadersFrame(serverLowStream.getId(), lowResponse, null, false), Callback.NOOP);
+
+        // Less than the flow control windows, so that nothing stalls.
+        int length = 24 * 1024;
+        MetaData.Response highResponse = new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, HttpFields.EMPTY);
+        serverHighStream.headers(new HeadersFrame(serverHighStream.getId(), highResponse, null, false), new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                // Write data for both streams from within the callback so that they get queued together,
+                // with the less urgent stream first.
+                serverLowStream.data(new DataFrame(serverLowStream.getId(), ByteBuffer.allocate(length), true), NOOP);
+                serverHighStream.data(new DataFrame(serverHighStream.getId(), ByteBuffer.allocate(length), true), NOOP);
+            }
+        });
+
+        assertTrue(dataLatch.await(5, TimeUnit.SECONDS));
+
+        // All the DATA frames of the urgent stream must arrive before those of the less urgent stream.
+        synchronized (dataStreamIds)
+        {
+            int firstLow = dataStreamIds.indexOf(lowStream.getId());
+            int lastHigh = dataStreamIds.lastIndexOf(highStream.getId());
+            assertTrue(lastHigh < firstLow, dataStreamIds.toString());
+        }
+    }
+}
@@ -0,0 +1,285 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.client;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.http2.server.HTTP2ServerSession;
+import org.eclipse.jetty.http2.server.StreamAdmissionControl;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamAdmissionControlTest extends AbstractTest
+{
+    @Test
+    public void testStreamsAdmittedFairlyAcrossSessions() throws Exception
+    {
+        StreamAdmissionControl admissionControl = new StreamAdmissionControl(2);
+        admissionControl.setMinStreamsPerSession(8);
+        BlockingQueue<String> admitted = new LinkedBlockingQueue<>();
+        Map<String, Stream> streams = new ConcurrentHashMap<>();
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                String path = ((MetaData.Request)frame.getMetaData()).getURI().getPath();
+                String id = path.substring(path.lastIndexOf('/') + 1);
+                streams.put(id, stream);
+                admitted.offer(id);
+                return null;
+            }
+        }, factory -> factory.setStreamAdmissionControl(admissionControl));
+
+        BlockingQueue<Integer> maxStreamsA = new LinkedBlockingQueue<>();
+        Session sessionA = newClient(new SettingsListener(maxStreamsA));
+        BlockingQueue<Integer> maxStreamsB = new LinkedBlockingQueue<>();
+        Session sessionB = newClient(new SettingsListener(maxStreamsB));
+        // The initial SETTINGS frame.
+        assertEquals(128, maxStreamsA.poll(5, TimeUnit.SECONDS));
+        assertEquals(128, maxStreamsB.poll(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= 4; ++i)
+        {
+            newStream(sessionA, "a" + i);
+        }
+        assertEquals("a1", admitted.poll(5, TimeUnit.SECONDS));
+        assertEquals("a2", admitted.poll(5, TimeUnit.SECONDS));
+        await(admissionControl, 2);
+
+        newStream(sessionB, "b1");
+        await(admissionControl, 3);
+        assertNull(admitted.poll(100, TimeUnit.MILLISECONDS));
+
+        // Under load, sessions are advertised a lower max concurrent streams.
+        assertTrue(admissionControl.isThrottled());
+        assertEquals(8, maxStreamsA.poll(5, TimeUnit.SECONDS));
+        assertEquals(8, maxStreamsB.poll(5, TimeUnit.SECONDS));
+
+        // Queued streams are admitted in round-robin across sessions.
+        respond(streams.get("a1"));
+        assertEquals("a3", admitted.poll(5, TimeUnit.SECONDS));
+        respond(streams.get("a2"));
+        assertEquals("b1", admitted.poll(5, TimeUnit.SECONDS));
+        respond(streams.get("a3"));
+        assertEquals("a4", admitted.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, admissionControl.getQueuedStreams());
+
+        // When the load drops, the original max concurrent streams is restored.
+        respond(streams.get("b1"));
+        assertEquals(128, maxStreamsA.poll(5, TimeUnit.SECONDS));
+        assertEquals(128, maxStreamsB.poll(5, TimeUnit.SECONDS));
+        assertFalse(admissionControl.isThrottled());
+
+        respond(streams.get("a4"));
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (admissionControl.getActiveStreams() > 0 && System.nanoTime() < wait)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(0, admissionControl.getActiveStreams());
+        assertEquals(5, admissionControl.getAdmittedStreams());
+        assertEquals(3, admissionControl.getTotalQueuedStreams());
+    }
+
+    @Test
+    public void testQueuedStreamContentRetainedUntilAdmitted() throws Exception
+    {
+        StreamAdmissionControl admissionControl = new StreamAdmissionControl(1);
+        Map<String, Stream> streams = new ConcurrentHashMap<>();
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch beforeDataLatch = new CountDownLatch(1);
+        CountDownLatch contentLatch = new CountDownLatch(1);
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                String path = ((MetaData.Request)frame.getMetaData()).getURI().getPath();
+                streams.put(path.substring(path.lastIndexOf('/') + 1), stream);
+                return new Stream.Listener.Adapter()
+                {
+                    @Override
+                    public void onBeforeData(Stream stream)
+                    {
+                        beforeDataLatch.countDown();
+                        stream.demand(1);
+                    }
+
+                    @Override
+                    public void onData(Stream stream, DataFrame frame, Callback callback)
+                    {
+                        received.addAndGet(frame.remaining());
+                        callback.succeeded();
+                        if (frame.isEndStream())
+                            contentLatch.countDown();
+                    }
+                };
+            }
+        }, factory -> factory.setStreamAdmissionControl(admissionControl));
+
+        Session session = newClient(new Session.Listener.Adapter());
+        newStream(session, "a1");
+
+        // The queued stream has request content larger than the flow control window.
+        MetaData.Request request = newRequest("POST", "/a2", HttpFields.EMPTY);
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.newStream(new HeadersFrame(request, null, false), promise, new Stream.Listener.Adapter());
+        Stream stream = promise.get(5, TimeUnit.SECONDS);
+        int length = FlowControlStrategy.DEFAULT_WINDOW_SIZE + 1024;
+        FutureCallback dataCallback = new FutureCallback();
+        stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(length), true), dataCallback);
+        await(admissionControl, 1);
+
+        // The content is retained while the stream is queued,
+        // so that flow control stops the client from sending more.
+        assertThrows(TimeoutException.class, () -> dataCallback.get(500, TimeUnit.MILLISECONDS));
+        assertEquals(0, received.get());
+        assertFalse(streams.containsKey("a2"));
+
+        // When the stream is admitted, the application is notified
+        // of the retained content and the client can send the rest.
+        respond(streams.get("a1"));
+        assertTrue(beforeDataLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(contentLatch.await(5, TimeUnit.SECONDS));
+        dataCallback.get(5, TimeUnit.SECONDS);
+        assertEquals(length, received.get());
+    }
+
+    @Test
+    public void testStreamOfUnregisteredSessionRefused() throws Exception
+    {
+        StreamAdmissionControl admissionControl = new StreamAdmissionControl(8);
+        AtomicReference<HTTP2ServerSession> serverSessionRef = new AtomicReference<>();
+        BlockingQueue<String> admitted = new LinkedBlockingQueue<>();
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public void onAccept(Session session)
+            {
+                serverSessionRef.set((HTTP2ServerSession)session);
+            }
+
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                String path = ((MetaData.Request)frame.getMetaData()).getURI().getPath();
+                admitted.offer(path.substring(path.lastIndexOf('/') + 1));
+                respond(stream);
+                return null;
+            }
+        }, factory -> factory.setStreamAdmissionControl(admissionControl));
+
+        Session session = newClient(new Session.Listener.Adapter());
+        newStream(session, "a1");
+        assertEquals("a1", admitted.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, admissionControl.getSessions());
+
+        // A stream arriving after the session has been unregistered is refused,
+        // and does not register the session again.
+        admissionControl.unregister(serverSessionRef.get());
+        CountDownLatch resetLatch = new CountDownLatch(1);
+        MetaData.Request request = newRequest("GET", "/a2", HttpFields.EMPTY);
+        session.newStream(new HeadersFrame(request, null, true), new FuturePromise<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onReset(Stream stream, ResetFrame frame)
+            {
+                if (frame.getError() == ErrorCode.REFUSED_STREAM_ERROR.code)
+                    resetLatch.countDown();
+            }
+        });
+        assertTrue(resetLatch.await(5, TimeUnit.SECONDS));
+        assertNull(admitted.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, admissionControl.getSessions());
+        assertEquals(0, admissionControl.getActiveStreams());
+    }
+
+    private void newStream(Session session, String id) throws Exception
+    {
+        MetaData.Request request = newRequest("GET", "/" + id, HttpFields.EMPTY);
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.newStream(new HeadersFrame(request, null, true), promise, new Stream.Listener.Adapter());
+        promise.get(5, TimeUnit.SECONDS);
+    }
+
+    private void respond(Stream stream)
+    {
+        MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, HttpFields.EMPTY);
+        stream.headers(new HeadersFrame(stream.getId(), response, null, true), Callback.NOOP);
+    }
+
+    private void await(StreamAdmissionControl admissionControl, int queued) throws Exception
+    {
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (admissionControl.getQueuedStreams() < queued && System.nanoTime() < wait)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(queued, admissionControl.getQueuedStreams());
+    }
+
+    private static class SettingsListener extends Session.Listener.Adapter
+    {
+        private final BlockingQueue<Integer> maxStreams;
+
+        private SettingsListener(BlockingQueue<Integer> maxStreams)
+        {
+            this.maxStreams = maxStreams;
+        }
+
+        @Override
+        public void onSettings(Session session, SettingsFrame frame)
+        {
+            Integer value = frame.getSettings().get(SettingsFrame.MAX_CONCURRENT_STREAMS);
+            if (value != null)
+                maxStreams.offer(value);
+        }
+    }
+}
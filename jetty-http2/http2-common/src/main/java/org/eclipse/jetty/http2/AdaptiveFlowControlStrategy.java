@@ -0,0 +1,471 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.util.Atomics;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A flow control strategy that sizes the receive windows after the
+ * bandwidth-delay product (BDP) of the connection.</p>
+ * <p>Like {@link BufferingFlowControlStrategy}, consumed bytes are accumulated
+ * and a window control frame is emitted when the accumulated value reaches
+ * a fraction, the {@code bufferRatio}, of the window.</p>
+ * <p>In addition, this strategy measures the BDP of the connection: when data
+ * is received, a PING frame is sent, and the bytes received until the PING
+ * reply arrives are a sample of the BDP.
+ * When a sample is close to the current window, the sender is likely limited
+ * by the window rather than by the network, so the target windows are grown
+ * to twice the sample; when a sample is much smaller than the current window,
+ * the target windows are shrunk.</p>
+ * <p>The session and stream receive windows are moved towards their targets
+ * when window control frames are emitted, by enlarging or reducing the window
+ * deltas sent to the other peer, so that the windows are never reduced below
+ * the bytes already in flight.
+ * The targets are bounded by {@link #getMaxSessionRecvWindow()} and
+ * {@link #getMaxStreamRecvWindow()}, which limit the memory that a single
+ * connection may require to buffer received data, and are never smaller
+ * than the configured initial windows.</p>
+ * <p>PING frames are sent only while data is being received, one at a time,
+ * and at most every {@link #getPingInterval() ping interval} or every few round-trips,
+ * whichever is longer, so that the next sample reflects the windows updated after the
+ * previous one.
+ * Peers limit the rate of the PING frames they receive (for example, Jetty's
+ * {@link org.eclipse.jetty.http2.parser.WindowRateControl} allows 20 frames per second
+ * by default), so the ping interval should not be reduced below a few tens of milliseconds.</p>
+ */
+@ManagedObject
+public class AdaptiveFlowControlStrategy extends AbstractFlowControlStrategy
+{
+    private final AutoLock lock = new AutoLock();
+    private final AtomicInteger sessionLevel = new AtomicInteger();
+    private final AtomicInteger sessionWindow = new AtomicInteger(DEFAULT_WINDOW_SIZE);
+    private final AtomicInteger minSessionRecvWindow = new AtomicInteger(DEFAULT_WINDOW_SIZE);
+    private final Map<IStream, StreamWindow> streamWindows = new ConcurrentHashMap<>();
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder grows = new LongAdder();
+    private final LongAdder shrinks = new LongAdder();
+    private static final int PING_ROUND_TRIPS = 4;
+
+    private final int maxSessionRecvWindow;
+    private final int maxStreamRecvWindow;
+    private float bufferRatio;
+    private long pingInterval = 500;
+    // Targets are zero until the first BDP sample.
+    private volatile int sessionTarget;
+    private volatile int streamTarget;
+    private volatile long bdp;
+    private volatile long rtt;
+    // The fields below are only accessed by the thread that parses frames.
+    private long pingPayload;
+    private long pingTime;
+    private long lastPingTime;
+    private boolean pingPending;
+    private long sampleBytes;
+
+    public AdaptiveFlowControlStrategy()
+    {
+        this(16 * 1024 * 1024, 8 * 1024 * 1024);
+    }
+
+    public AdaptiveFlowControlStrategy(int maxSessionRecvWindow, int maxStreamRecvWindow)
+    {
+        this(DEFAULT_WINDOW_SIZE, 0.5F, maxSessionRecvWindow, maxStreamRecvWindow);
+    }
+
+    public AdaptiveFlowControlStrategy(int initialStreamSendWindow, float bufferRatio, int maxSessionRecvWindow, int maxStreamRecvWindow)
+    {
+        this(initialStreamSendWindow, bufferRatio, DEFAULT_WINDOW_SIZE, DEFAULT_WINDOW_SIZE, maxSessionRecvWindow, maxStreamRecvWindow);
+    }
+
+    /**
+     * @param initialStreamSendWindow the initial stream send window
+     * @param bufferRatio the ratio of the window that must be consumed before emitting a window control frame
+     * @param initialSessionRecvWindow the initial session receive window configured on the client or connector
+     * @param initialStreamRecvWindow the initial stream receive window configured on the client or connector
+     * @param maxSessionRecvWindow the max session receive window, not smaller than the initial one
+     * @param maxStreamRecvWindow the max stream receive window, not smaller than the initial one
+     */
+    public AdaptiveFlowControlStrategy(int initialStreamSendWindow, float bufferRatio, int initialSessionRecvWindow, int initialStreamRecvWindow, int maxSessionRecvWindow, int maxStreamRecvWindow)
+    {
+        super(initialStreamSendWindow);
+        if (maxSessionRecvWindow < Math.max(DEFAULT_WINDOW_SIZE, initialSessionRecvWindow))
+            throw new IllegalArgumentException("Max session recv window " + maxSessionRecvWindow + " must be at least " + Math.max(DEFAULT_WINDOW_SIZE, initialSessionRecvWindow));
+        if (maxStreamRecvWindow < Math.max(DEFAULT_WINDOW_SIZE, initialStreamRecvWindow))
+            throw new IllegalArgumentException("Max stream recv window " + maxStreamRecvWindow + " must be at least " + Math.max(DEFAULT_WINDOW_SIZE, initialStreamRecvWindow));
+        this.bufferRatio = bufferRatio;
+        this.maxSessionRecvWindow = maxSessionRecvWindow;
+        this.maxStreamRecvWindow = maxStreamRecvWindow;
+    }
+
+    @ManagedAttribute("The ratio between the receive buffer and the consume buffer")
+    public float getBufferRatio()
+    {
+        return bufferRatio;
+    }
+
+    public void setBufferRatio(float bufferRatio)
+    {
+        this.bufferRatio = bufferRatio;
+    }
+
+    @ManagedAttribute(value = "The max size of the session's flow control receive window", readonly = true)
+    public int getMaxSessionRecvWindow()
+    {
+        return maxSessionRecvWindow;
+    }
+
+    @ManagedAttribute(value = "The max size of stream's flow control receive window", readonly = true)
+    public int getMaxStreamRecvWindow()
+    {
+        return maxStreamRecvWindow;
+    }
+
+    /**
+     * @return the minimum interval, in milliseconds, between PING frames sent to measure the BDP;
+     * PING frames are also spaced by a few round-trip times when those are longer
+     */
+    @ManagedAttribute("The minimum interval, in ms, between PING frames sent to measure the BDP")
+    public long getPingInterval()
+    {
+        return pingInterval;
+    }
+
+    public void setPingInterval(long pingInterval)
+    {
+        this.pingInterval = pingInterval;
+    }
+
+    @ManagedAttribute(value = "The current size of the session's flow control receive window", readonly = true)
+    public int getSessionRecvWindow()
+    {
+        return sessionWindow.get();
+    }
+
+    @ManagedAttribute(value = "The target size of the session's flow control receive window", readonly = true)
+    public int getSessionRecvWindowTarget()
+    {
+        int target = sessionTarget;
+        return target == 0 ? sessionWindow.get() : target;
+    }
+
+    @ManagedAttribute(value = "The target size of stream's flow control receive window", readonly = true)
+    public int getStreamRecvWindowTarget()
+    {
+        int target = streamTarget;
+        return target == 0 ? getInitialStreamRecvWindow() : target;
+    }
+
+    @ManagedAttribute(value = "The last bandwidth-delay product sample, in bytes", readonly = true)
+    public long getBandwidthDelayProduct()
+    {
+        return bdp;
+    }
+
+    @ManagedAttribute(value = "The smoothed round-trip time, in microseconds", readonly = true)
+    public long getRoundTripTime()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(rtt);
+    }
+
+    @ManagedAttribute(value = "The number of PING frames sent to measure the BDP", readonly = true)
+    public long getPingCount()
+    {
+        return pings.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of times the windows have been grown", readonly = true)
+    public long getGrowCount()
+    {
+        return grows.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of times the windows have been shrunk", readonly = true)
+    public long getShrinkCount()
+    {
+        return shrinks.longValue();
+    }
+
+    @Override
+    public void reset()
+    {
+        super.reset();
+        pings.reset();
+        grows.reset();
+        shrinks.reset();
+    }
+
+    @Override
+    public void onStreamCreated(IStream stream)
+    {
+        super.onStreamCreated(stream);
+        streamWindows.put(stream, new StreamWindow(getInitialStreamRecvWindow()));
+    }
+
+    @Override
+    public void onStreamDestroyed(IStream stream)
+    {
+        streamWindows.remove(stream);
+        super.onStreamDestroyed(stream);
+    }
+
+    @Override
+    public void updateInitialStreamWindow(ISession session, int initialStreamWindow, boolean local)
+    {
+        int previous = getInitialStreamRecvWindow();
+        super.updateInitialStreamWindow(session, initialStreamWindow, local);
+        if (local)
+        {
+            if (initialStreamWindow > maxStreamRecvWindow)
+                LOG.warn("Initial stream recv window {} larger than max {}, windows will not grow for {}", initialStreamWindow, maxStreamRecvWindow, session);
+            int delta = initialStreamWindow - previous;
+            if (delta != 0)
+                streamWindows.values().forEach(w -> w.window.addAndGet(delta));
+        }
+    }
+
+    @Override
+    public void onDataReceived(ISession session, IStream stream, int length)
+    {
+        super.onDataReceived(session, stream, length);
+        if (length <= 0)
+            return;
+
+        long now = System.nanoTime();
+        if (pingPending)
+        {
+            sampleBytes += length;
+        }
+        else if (lastPingTime == 0 || now - lastPingTime >= pingDelay())
+        {
+            pingPending = true;
+            pingPayload = ThreadLocalRandom.current().nextLong();
+            pingTime = now;
+            lastPingTime = now;
+            sampleBytes = length;
+            pings.increment();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Sending BDP ping {} for {}", pingPayload, session);
+            session.ping(new PingFrame(pingPayload, false), Callback.NOOP);
+        }
+    }
+
+    private long pingDelay()
+    {
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(pingInterval), PING_ROUND_TRIPS * rtt);
+    }
+
+    @Override
+    public boolean onPingReply(ISession session, PingFrame frame)
+    {
+        if (!pingPending || frame.getPayloadAsLong() != pingPayload)
+            return false;
+        pingPending = false;
+
+        long sample = System.nanoTime() - pingTime;
+        long oldRtt = rtt;
+        rtt = oldRtt == 0 ? sample : oldRtt + (sample - oldRtt) / 8;
+        long bytes = sampleBytes;
+        bdp = bytes;
+        onBandwidthDelayProduct(session, bytes);
+        return true;
+    }
+
+    /**
+     * <p>Updates the target windows from a BDP sample.</p>
+     *
+     * @param session the session
+     * @param bytes the bytes received during a round-trip
+     */
+    protected void onBandwidthDelayProduct(ISession session, long bytes)
+    {
+        int sessionFloor = minSessionRecvWindow.get();
+        int streamFloor = getInitialStreamRecvWindow();
+        int currentSession = getSessionRecvWindowTarget();
+        int currentStream = getStreamRecvWindowTarget();
+        // The sender is limited by the smaller of the windows.
+        int current = Math.min(currentSession, currentStream);
+
+        int newSession;
+        int newStream;
+        if (bytes * 3 >= current * 2L)
+        {
+            // The sender is likely limited by the window.
+            long target = bytes * 2;
+            newSession = Math.max(currentSession, (int)Math.min(target, maxSessionRecvWindow));
+            newStream = Math.max(currentStream, (int)Math.min(target, maxStreamRecvWindow));
+        }
+        else if (bytes * 8 < current)
+        {
+            // The windows are much larger than needed.
+            long target = current / 2;
+            newSession = Math.min(currentSession, (int)Math.max(target, sessionFloor));
+            newStream = Math.min(currentStream, (int)Math.max(target, streamFloor));
+        }
+        else
+        {
+            return;
+        }
+
+        if (newSession == currentSession && newStream == currentStream)
+            return;
+
+        if (newSession > currentSession || newStream > currentStream)
+            grows.increment();
+        else
+            shrinks.increment();
+        sessionTarget = newSession;
+        streamTarget = newStream;
+        if (LOG.isDebugEnabled())
+            LOG.debug("BDP {} bytes, rtt {}us, windows target session {}->{}, stream {}->{} for {}",
+                bytes, getRoundTripTime(), currentSession, newSession, currentStream, newStream, session);
+    }
+
+    @Override
+    public void onDataConsumed(ISession session, IStream stream, int length)
+    {
+        if (length <= 0)
+            return;
+
+        float ratio = bufferRatio;
+
+        int level = sessionLevel.addAndGet(length);
+        int maxLevel = (int)(sessionWindow.get() * ratio);
+        if (level > maxLevel)
+        {
+            if (sessionLevel.compareAndSet(level, 0))
+            {
+                int delta;
+                try (AutoLock l = lock.lock())
+                {
+                    delta = delta(sessionWindow, level, sessionTarget);
+                }
+                if (delta > 0)
+                {
+                    session.updateRecvWindow(delta);
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Data consumed, {} bytes, updated session recv window by {}/{} for {}", length, delta, maxLevel, session);
+                    sendWindowUpdate(null, session, new WindowUpdateFrame(0, delta));
+                }
+            }
+        }
+
+        if (stream != null && !stream.isRemotelyClosed())
+        {
+            StreamWindow streamWindow = streamWindows.get(stream);
+            if (streamWindow != null)
+            {
+                level = streamWindow.level.addAndGet(length);
+                maxLevel = (int)(streamWindow.window.get() * ratio);
+                if (level > maxLevel)
+                {
+                    int delta;
+                    try (AutoLock l = lock.lock())
+                    {
+                        level = streamWindow.level.getAndSet(0);
+                        delta = delta(streamWindow.window, level, streamTarget);
+                    }
+                    if (delta > 0)
+                    {
+                        stream.updateRecvWindow(delta);
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Data consumed, {} bytes, updated stream recv window by {}/{} for {}", length, delta, maxLevel, stream);
+                        sendWindowUpdate(stream, session, new WindowUpdateFrame(stream.getId(), delta));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Computes the window delta to send to the other peer, moving the window towards the target.</p>
+     * <p>The window can only be reduced by withholding the consumed bytes, so the returned
+     * delta is never negative.</p>
+     */
+    private static int delta(AtomicInteger window, int level, int target)
+    {
+        if (target == 0)
+            return level;
+        int current = window.get();
+        int delta = Math.max(0, level + target - current);
+        window.set(current - level + delta);
+        return delta;
+    }
+
+    protected void sendWindowUpdate(IStream stream, ISession session, WindowUpdateFrame frame)
+    {
+        session.frames(stream, Callback.NOOP, frame, Frame.EMPTY_ARRAY);
+    }
+
+    @Override
+    public void windowUpdate(ISession session, IStream stream, WindowUpdateFrame frame)
+    {
+        super.windowUpdate(session, stream, frame);
+        // Track unilateral enlargements of the session window,
+        // see BufferingFlowControlStrategy.windowUpdate().
+        if (frame.getStreamId() == 0)
+        {
+            int window = session.updateRecvWindow(0);
+            Atomics.updateMax(sessionWindow, window);
+            // Before adapting, the session window is the configured one.
+            if (sessionTarget == 0)
+                Atomics.updateMax(minSessionRecvWindow, window);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[ratio=%.2f,sessionWindow=%d/%d,streamTarget=%d,bdp=%d,rtt=%dus,sessionStallTime=%dms,streamsStallTime=%dms]",
+            getClass().getSimpleName(),
+            hashCode(),
+            bufferRatio,
+            getSessionRecvWindow(),
+            getSessionRecvWindowTarget(),
+            getStreamRecvWindowTarget(),
+            getBandwidthDelayProduct(),
+            getRoundTripTime(),
+            getSessionStallTime(),
+            getStreamsStallTime());
+    }
+
+    private static class StreamWindow
+    {
+        private final AtomicInteger level = new AtomicInteger();
+        private final AtomicInteger window;
+
+        private StreamWindow(int window)
+        {
+            this.window = new AtomicInteger(window);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import org.eclipse.jetty.util.StringUtil;
+
+/**
+ * <p>The priority of a stream, as defined by
+ * <a href="https://www.rfc-editor.org/rfc/rfc9218">RFC 9218</a>.</p>
+ * <p>The priority is made of an {@link #getUrgency() urgency}, from 0 (most urgent)
+ * to 7 (least urgent), and of an {@link #isIncremental() incremental} flag
+ * that indicates whether the content can be processed incrementally by the
+ * receiver, and therefore be interleaved with the content of other streams.</p>
+ * <p>The priority is carried by the {@code priority} HTTP header, in the
+ * structured field dictionary format, for example {@code priority: u=1, i}.</p>
+ */
+public class ExtensiblePriority
+{
+    public static final String HEADER_NAME = "priority";
+    public static final int DEFAULT_URGENCY = 3;
+    public static final int MAX_URGENCY = 7;
+    public static final ExtensiblePriority DEFAULT = new ExtensiblePriority(DEFAULT_URGENCY, false);
+
+    private final int urgency;
+    private final boolean incremental;
+
+    public ExtensiblePriority(int urgency, boolean incremental)
+    {
+        if (urgency < 0 || urgency > MAX_URGENCY)
+            throw new IllegalArgumentException("Invalid urgency " + urgency);
+        this.urgency = urgency;
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return the urgency, from 0 (most urgent) to 7 (least urgent)
+     */
+    public int getUrgency()
+    {
+        return urgency;
+    }
+
+    /**
+     * @return whether the content can be interleaved with the content of other streams
+     */
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    /**
+     * <p>Parses the value of a {@code priority} header.</p>
+     * <p>Unknown parameters and invalid values are ignored, as required by the
+     * specification, so that the default values apply.</p>
+     *
+     * @param value the header value, may be null
+     * @param defaultPriority the priority to start from, for parameters not present in the value
+     * @return the priority represented by the header value
+     */
+    public static ExtensiblePriority from(String value, ExtensiblePriority defaultPriority)
+    {
+        if (StringUtil.isBlank(value))
+            return defaultPriority;
+
+        int urgency = defaultPriority.getUrgency();
+        boolean incremental = defaultPriority.isIncremental();
+        for (String member : StringUtil.csvSplit(value))
+        {
+            int equal = member.indexOf('=');
+            String key = (equal < 0 ? member : member.substring(0, equal)).trim();
+            String param = equal < 0 ? null : member.substring(equal + 1).trim();
+            // Strip dictionary member parameters, if any.
+            if (param != null)
+            {
+                int semicolon = param.indexOf(';');
+                if (semicolon >= 0)
+                    param = param.substring(0, semicolon).trim();
+            }
+            switch (key)
+            {
+                case "u":
+                {
+                    if (param != null && param.length() == 1)
+                    {
+                        int u = param.charAt(0) - '0';
+                        if (u >= 0 && u <= MAX_URGENCY)
+                            urgency = u;
+                    }
+                    break;
+                }
+                case "i":
+                {
+                    if (param == null || "?1".equals(param))
+                        incremental = true;
+                    else if ("?0".equals(param))
+                        incremental = false;
+                    break;
+                }
+                default:
+                {
+                    break;
+                }
+            }
+        }
+
+        if (urgency == DEFAULT_URGENCY && !incremental)
+            return DEFAULT;
+        return new ExtensiblePriority(urgency, incremental);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ExtensiblePriority))
+            return false;
+        ExtensiblePriority that = (ExtensiblePriority)obj;
+        return urgency == that.urgency && incremental == that.incremental;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return urgency * 2 + (incremental ? 1 : 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return incremental ? "u=" + urgency + ", i" : "u=" + urgency;
+    }
+}
@@ -50,12 +50,13 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     private final AutoLock lock = new AutoLock();
     private final Queue<WindowEntry> windows = new ArrayDeque<>();
     private final Deque<Entry> entries = new ArrayDeque<>();
-    private final Queue<Entry> pendingEntries = new ArrayDeque<>();
+    private final Deque<Entry> pendingEntries = new ArrayDeque<>();
     private final Collection<Entry> processedEntries = new ArrayList<>();
     private final HTTP2Session session;
     private final ByteBufferPool.Lease lease;
     private Throwable terminated;
     private Entry stalledEntry;
+    private StreamScheduler scheduler = StreamScheduler.FIFO;
 
     public HTTP2Flusher(HTTP2Session session)
     {
@@ -63,6 +64,25 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         this.lease = new ByteBufferPool.Lease(session.getGenerator().getByteBufferPool());
     }
 
+    /**
+     * @return the scheduler that orders the frames written by this flusher
+     */
+    public StreamScheduler getStreamScheduler()
+    {
+        return scheduler;
+    }
+
+    /**
+     * <p>Sets the scheduler that orders the frames written by this flusher.</p>
+     * <p>The scheduler must be set before frames are written.</p>
+     *
+     * @param scheduler the scheduler, or null to write frames in FIFO order
+     */
+    public void setStreamScheduler(StreamScheduler scheduler)
+    {
+        this.scheduler = scheduler == null ? StreamScheduler.FIFO : scheduler;
+    }
+
     public void window(IStream stream, WindowUpdateFrame frame)
     {
         Throwable closed;
@@ -155,6 +175,8 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             }
         }
 
+        scheduler.sort(pendingEntries);
+
         if (pendingEntries.isEmpty())
         {
             if (LOG.isDebugEnabled())
@@ -169,6 +191,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             if (pendingEntries.isEmpty())
                 break;
 
+            scheduler.onPass();
             Iterator<Entry> pending = pendingEntries.iterator();
             while (pending.hasNext())
             {
@@ -187,6 +210,13 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
                     continue;
                 }
 
+                if (!scheduler.canGenerate(entry))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Deferred {} by {}", entry, scheduler);
+                    continue;
+                }
+
                 try
                 {
                     if (entry.generate(lease))
@@ -195,6 +225,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
                             LOG.debug("Generated {} frame bytes for {}", entry.getFrameBytesGenerated(), entry);
 
                         progress = true;
+                        scheduler.onGenerated(entry);
 
                         // We use ArrayList contains() + add() instead of HashSet add()
                         // because that is faster for collections of size up to 250 entries.
@@ -385,12 +416,13 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     @Override
     public String toString()
     {
-        return String.format("%s[window_queue=%d,frame_queue=%d,processed/pending=%d/%d]",
+        return String.format("%s[window_queue=%d,frame_queue=%d,processed/pending=%d/%d,scheduler=%s]",
             super.toString(),
             getWindowQueueSize(),
             getFrameQueueSize(),
             processedEntries.size(),
-            pendingEntries.size());
+            pendingEntries.size(),
+            scheduler);
     }
 
     public abstract static class Entry extends Callback.Nested
@@ -405,6 +437,16 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             this.stream = stream;
         }
 
+        public Frame getFrame()
+        {
+            return frame;
+        }
+
+        public IStream getStream()
+        {
+            return stream;
+        }
+
         public abstract int getFrameBytesGenerated();
 
         public int getDataBytesRemaining()
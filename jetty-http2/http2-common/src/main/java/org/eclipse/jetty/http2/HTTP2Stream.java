@@ -78,6 +78,7 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
     private long dataDemand;
     private boolean dataInitial;
     private boolean dataProcess;
+    private volatile ExtensiblePriority priority;
 
     public HTTP2Stream(Scheduler scheduler, ISession session, int streamId, MetaData.Request request, boolean local)
     {
@@ -88,6 +89,7 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
         this.local = local;
         this.dataLength = Long.MIN_VALUE;
         this.dataInitial = true;
+        this.priority = ExtensiblePriority.from(priorityOf(request), ExtensiblePriority.DEFAULT);
     }
 
     @Override
@@ -120,9 +122,32 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
         return session;
     }
 
+    @Override
+    public ExtensiblePriority getPriority()
+    {
+        return priority;
+    }
+
+    @Override
+    public void setPriority(ExtensiblePriority priority)
+    {
+        this.priority = priority == null ? ExtensiblePriority.DEFAULT : priority;
+    }
+
+    private static String priorityOf(MetaData metaData)
+    {
+        HttpFields fields = metaData == null ? null : metaData.getFields();
+        return fields == null ? null : fields.get(ExtensiblePriority.HEADER_NAME);
+    }
+
     @Override
     public void headers(HeadersFrame frame, Callback callback)
     {
+        // SPEC: a server may override the priority signalled by the client
+        // with a priority header in the response, see RFC 9218 section 8.
+        String value = priorityOf(frame.getMetaData());
+        if (value != null)
+            setPriority(ExtensiblePriority.from(value, getPriority()));
         if (startWrite(callback))
             session.frames(this, this, frame, Frame.EMPTY_ARRAY);
     }
@@ -843,7 +868,7 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
     @Override
     public String toString()
     {
-        return String.format("%s@%x#%d@%x{sendWindow=%s,recvWindow=%s,demand=%d,reset=%b/%b,%s,age=%d,attachment=%s}",
+        return String.format("%s@%x#%d@%x{sendWindow=%s,recvWindow=%s,demand=%d,priority=%s,reset=%b/%b,%s,age=%d,attachment=%s}",
             getClass().getSimpleName(),
             hashCode(),
             getId(),
@@ -851,6 +876,7 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
             sendWindow,
             recvWindow,
             demand(),
+            priority,
             localReset,
             remoteReset,
             closeState,
@@ -109,4 +109,16 @@ public interface IStream extends Stream, Attachable, Closeable
      * @see Listener#onFailure(Stream, int, String, Throwable, Callback)
      */
     boolean isResetOrFailed();
+
+    /**
+     * @return the priority of this stream, used to schedule the frames sent on this stream
+     * @see #setPriority(ExtensiblePriority)
+     */
+    public ExtensiblePriority getPriority();
+
+    /**
+     * @param priority the priority of this stream
+     * @see #getPriority()
+     */
+    public void setPriority(ExtensiblePriority priority);
 }
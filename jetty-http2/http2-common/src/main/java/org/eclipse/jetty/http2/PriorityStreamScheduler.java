@@ -0,0 +1,122 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.eclipse.jetty.http2.frames.FrameType;
+
+/**
+ * <p>A {@link StreamScheduler} that schedules DATA frames according to the
+ * {@link ExtensiblePriority priority} of their streams, as defined by
+ * <a href="https://www.rfc-editor.org/rfc/rfc9218">RFC 9218</a>.</p>
+ * <p>In each pass, only the DATA frames of the most urgent streams that can
+ * make progress are generated; streams with a lower urgency are served only
+ * when all the more urgent streams have completed or are stalled by flow control.
+ * Among streams with the same urgency, non-incremental streams are served one
+ * at a time in the order they have been queued, while incremental streams are
+ * served in round-robin.</p>
+ * <p>Frames other than DATA frames are not reordered and are always generated.</p>
+ */
+public class PriorityStreamScheduler implements StreamScheduler
+{
+    private static final Comparator<HTTP2Flusher.Entry> URGENCY = Comparator.comparingInt(entry -> priorityOf(entry).getUrgency());
+
+    private final List<HTTP2Flusher.Entry> dataEntries = new ArrayList<>();
+    private int urgency = -1;
+    private boolean exclusive;
+
+    @Override
+    public void sort(Deque<HTTP2Flusher.Entry> entries)
+    {
+        // Sort only the DATA entries, leaving the other entries where they are.
+        dataEntries.clear();
+        for (HTTP2Flusher.Entry entry : entries)
+        {
+            if (isData(entry))
+                dataEntries.add(entry);
+        }
+        if (dataEntries.size() < 2)
+            return;
+        // List.sort() is stable, so the queue order is retained for the same urgency.
+        dataEntries.sort(URGENCY);
+
+        List<HTTP2Flusher.Entry> sorted = new ArrayList<>(entries.size());
+        ListIterator<HTTP2Flusher.Entry> data = dataEntries.listIterator();
+        for (HTTP2Flusher.Entry entry : entries)
+        {
+            sorted.add(isData(entry) ? data.next() : entry);
+        }
+        entries.clear();
+        entries.addAll(sorted);
+        dataEntries.clear();
+    }
+
+    @Override
+    public void onPass()
+    {
+        urgency = -1;
+        exclusive = false;
+    }
+
+    @Override
+    public boolean canGenerate(HTTP2Flusher.Entry entry)
+    {
+        if (!isData(entry))
+            return true;
+        // Nothing generated yet in this pass.
+        if (urgency < 0)
+            return true;
+        ExtensiblePriority priority = priorityOf(entry);
+        if (priority.getUrgency() != urgency)
+            return false;
+        return !exclusive && priority.isIncremental();
+    }
+
+    @Override
+    public void onGenerated(HTTP2Flusher.Entry entry)
+    {
+        if (!isData(entry) || urgency >= 0)
+            return;
+        ExtensiblePriority priority = priorityOf(entry);
+        urgency = priority.getUrgency();
+        exclusive = !priority.isIncremental();
+    }
+
+    private static boolean isData(HTTP2Flusher.Entry entry)
+    {
+        return entry.getFrame().getType() == FrameType.DATA;
+    }
+
+    private static ExtensiblePriority priorityOf(HTTP2Flusher.Entry entry)
+    {
+        IStream stream = entry.getStream();
+        return stream == null ? ExtensiblePriority.DEFAULT : stream.getPriority();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x", getClass().getSimpleName(), hashCode());
+    }
+}
@@ -0,0 +1,94 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.Deque;
+
+/**
+ * <p>Schedules the frames written by {@link HTTP2Flusher}.</p>
+ * <p>The flusher writes the pending frames in passes: in each pass, every
+ * pending entry generates at most one frame, so that the DATA frames of
+ * different streams are interleaved.
+ * A StreamScheduler orders the pending entries before the passes, and
+ * selects which entries can generate a frame in each pass.</p>
+ * <p>Implementations are invoked by the flusher only, so they are never
+ * called concurrently and may keep per-pass state.</p>
+ *
+ * @see PriorityStreamScheduler
+ */
+public interface StreamScheduler
+{
+    /**
+     * <p>A scheduler that writes frames in the order they are queued,
+     * interleaving the DATA frames of all the streams.</p>
+     */
+    public static final StreamScheduler FIFO = new StreamScheduler()
+    {
+        @Override
+        public String toString()
+        {
+            return "FIFO";
+        }
+    };
+
+    /**
+     * <p>Orders the entries pending to be written.</p>
+     * <p>Entries with the same priority should retain their relative order,
+     * as the flusher rotates the entries to avoid that the first entry
+     * stalled by flow control always takes precedence.</p>
+     *
+     * @param entries the pending entries
+     */
+    public default void sort(Deque<HTTP2Flusher.Entry> entries)
+    {
+    }
+
+    /**
+     * <p>Invoked before each pass over the pending entries.</p>
+     */
+    public default void onPass()
+    {
+    }
+
+    /**
+     * @param entry the pending entry
+     * @return whether the given entry can generate a frame in the current pass
+     */
+    public default boolean canGenerate(HTTP2Flusher.Entry entry)
+    {
+        return true;
+    }
+
+    /**
+     * <p>Invoked when the given entry generated a frame in the current pass.</p>
+     *
+     * @param entry the entry that generated a frame
+     */
+    public default void onGenerated(HTTP2Flusher.Entry entry)
+    {
+    }
+
+    /**
+     * <p>A factory for {@link StreamScheduler}s, one for each session.</p>
+     */
+    public interface Factory
+    {
+        public StreamScheduler newStreamScheduler();
+    }
+}
@@ -25,7 +25,6 @@ import org.eclipse.jetty.http2.frames.DataFrame;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.FrameType;
 import org.eclipse.jetty.io.ByteBufferPool;
-import org.eclipse.jetty.util.BufferUtil;
 
 public class DataGenerator
 {
@@ -49,20 +48,15 @@ public class DataGenerator
         int dataLength = data.remaining();
         int maxFrameSize = headerGenerator.getMaxFrameSize();
         int length = Math.min(dataLength, Math.min(maxFrameSize, maxLength));
-        if (length == dataLength)
-        {
-            generateFrame(lease, streamId, data, last);
-        }
-        else
-        {
-            int limit = data.limit();
-            int newLimit = data.position() + length;
-            data.limit(newLimit);
-            ByteBuffer slice = data.slice();
-            data.position(newLimit);
-            data.limit(limit);
-            generateFrame(lease, streamId, slice, false);
-        }
+        // The payload is written from a read-only slice of the data,
+        // and the data is consumed as soon as the frame is generated.
+        int limit = data.limit();
+        int newLimit = data.position() + length;
+        data.limit(newLimit);
+        ByteBuffer slice = data.slice().asReadOnlyBuffer();
+        data.position(newLimit);
+        data.limit(limit);
+        generateFrame(lease, streamId, slice, last && length == dataLength);
         return Frame.HEADER_LENGTH + length;
     }
 
@@ -74,11 +68,9 @@ public class DataGenerator
         if (last)
             flags |= Flags.END_STREAM;
 
-        ByteBuffer header = headerGenerator.generate(lease, FrameType.DATA, Frame.HEADER_LENGTH + length, length, flags, streamId);
-        BufferUtil.flipToFlush(header, 0);
-        lease.append(header, true);
+        headerGenerator.appendHeader(lease, FrameType.DATA, length, flags, streamId);
         // Skip empty data buffers.
-        if (data.remaining() > 0)
+        if (length > 0)
             lease.append(data, false);
     }
 }
@@ -53,6 +53,46 @@ public abstract class FrameGenerator
         return headerGenerator.isUseDirectByteBuffers();
     }
 
+    protected void generateHeader(ByteBuffer buffer, FrameType frameType, int length, int flags, int streamId)
+    {
+        headerGenerator.generate(buffer, frameType, length, flags, streamId);
+    }
+
+    protected void appendHeader(ByteBufferPool.Lease lease, FrameType frameType, int length, int flags, int streamId)
+    {
+        headerGenerator.appendHeader(lease, frameType, length, flags, streamId);
+    }
+
+    /**
+     * <p>Encodes the given metadata in a buffer acquired from the given lease,
+     * leaving {@code offset} bytes at the beginning of the buffer, so that the
+     * frame header can be written in the same buffer as the header block,
+     * avoiding to copy the header block.</p>
+     *
+     * @param encoder the HPACK encoder
+     * @param lease the lease to acquire the buffer from
+     * @param metaData the metadata to encode
+     * @param offset the number of bytes to leave before the header block
+     * @param maxFrameSize the max length of the header block
+     * @return the buffer in fill mode, positioned after the header block
+     * @throws HpackException if the encoding fails
+     */
+    protected ByteBuffer encode(HpackEncoder encoder, ByteBufferPool.Lease lease, MetaData metaData, int offset, int maxFrameSize) throws HpackException
+    {
+        ByteBuffer buffer = lease.acquire(offset + maxFrameSize, isUseDirectByteBuffers());
+        try
+        {
+            buffer.position(offset);
+            encoder.encode(buffer, metaData);
+            return buffer;
+        }
+        catch (HpackException x)
+        {
+            lease.release(buffer);
+            throw x;
+        }
+    }
+
     protected ByteBuffer encode(HpackEncoder encoder, ByteBufferPool.Lease lease, MetaData metaData, int maxFrameSize) throws HpackException
     {
         ByteBuffer hpacked = lease.acquire(maxFrameSize, isUseDirectByteBuffers());
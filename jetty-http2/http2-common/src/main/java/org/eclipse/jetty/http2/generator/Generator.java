@@ -86,6 +86,16 @@ public class Generator
         headerGenerator.setMaxFrameSize(maxFrameSize);
     }
 
+    /**
+     * @param useHeaderBatching whether the headers of DATA and CONTINUATION frames
+     * generated in the same write are batched in a single buffer
+     * @see HeaderGenerator#setUseHeaderBatching(boolean)
+     */
+    public void setUseHeaderBatching(boolean useHeaderBatching)
+    {
+        headerGenerator.setUseHeaderBatching(useHeaderBatching);
+    }
+
     public int control(ByteBufferPool.Lease lease, Frame frame) throws HpackException
     {
         return generators[frame.getType().getType()].generate(lease, frame);
@@ -23,11 +23,20 @@ import java.nio.ByteBuffer;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.FrameType;
 import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
 
 public class HeaderGenerator
 {
+    private static final int BATCH_CAPACITY = 1024;
+
     private int maxFrameSize = Frame.DEFAULT_MAX_LENGTH;
     private final boolean useDirectByteBuffers;
+    private boolean useHeaderBatching = true;
+    // The batch buffer and the lease it belongs to.
+    private ByteBufferPool.Lease batchLease;
+    private ByteBuffer batch;
+    private int batchIndex;
+    private int batchOffset;
 
     public HeaderGenerator()
     {
@@ -44,16 +53,105 @@ public class HeaderGenerator
         return useDirectByteBuffers;
     }
 
+    /**
+     * @return whether the headers of frames that carry their payload in
+     * separate buffers are generated in a shared buffer
+     * @see #appendHeader(ByteBufferPool.Lease, FrameType, int, int, int)
+     */
+    public boolean isUseHeaderBatching()
+    {
+        return useHeaderBatching;
+    }
+
+    public void setUseHeaderBatching(boolean useHeaderBatching)
+    {
+        this.useHeaderBatching = useHeaderBatching;
+    }
+
     public ByteBuffer generate(ByteBufferPool.Lease lease, FrameType frameType, int capacity, int length, int flags, int streamId)
     {
         ByteBuffer header = lease.acquire(capacity, isUseDirectByteBuffers());
+        generate(header, frameType, length, flags, streamId);
+        return header;
+    }
+
+    /**
+     * <p>Generates the header of a frame whose payload is appended to the lease
+     * in a separate buffer, and appends the header to the lease, ready to be written.</p>
+     * <p>When {@link #isUseHeaderBatching() header batching} is enabled, the headers
+     * generated for the same lease are written one after the other in a single pooled
+     * buffer, and slices of that buffer are appended to the lease.
+     * The pooled buffer itself is appended to the lease empty, so that it does not
+     * contribute bytes to the write, but it is released when the lease is recycled.</p>
+     * <p>This method must not be called concurrently, which is the case when frames
+     * are generated by the flusher of a session.</p>
+     *
+     * @param lease the lease to append the header to
+     * @param frameType the frame type
+     * @param length the frame payload length
+     * @param flags the frame flags
+     * @param streamId the stream id
+     */
+    public void appendHeader(ByteBufferPool.Lease lease, FrameType frameType, int length, int flags, int streamId)
+    {
+        if (!isUseHeaderBatching())
+        {
+            ByteBuffer header = generate(lease, frameType, Frame.HEADER_LENGTH, length, flags, streamId);
+            BufferUtil.flipToFlush(header, 0);
+            lease.append(header, true);
+            return;
+        }
+
+        if (!isBatchUsable(lease))
+        {
+            batch = lease.acquire(BATCH_CAPACITY, isUseDirectByteBuffers());
+            // Empty, so that it is not written.
+            BufferUtil.clear(batch);
+            batchLease = lease;
+            batchIndex = lease.getSize();
+            batchOffset = 0;
+            lease.append(batch, true);
+        }
+
+        ByteBuffer header = batch.duplicate();
+        header.limit(batchOffset + Frame.HEADER_LENGTH).position(batchOffset);
+        header = header.slice();
+        generate(header, frameType, length, flags, streamId);
+        header.flip();
+        batchOffset += Frame.HEADER_LENGTH;
+        lease.append(header, false);
+    }
+
+    private boolean isBatchUsable(ByteBufferPool.Lease lease)
+    {
+        // The batch buffer is only usable if it has not been recycled,
+        // which is when it is still in the lease at the same index.
+        // If it has been recycled and then acquired again by the same
+        // lease for another frame, it would not be empty anymore.
+        return batchLease == lease &&
+            batchOffset + Frame.HEADER_LENGTH <= batch.capacity() &&
+            batchIndex < lease.getSize() &&
+            lease.getByteBuffers().get(batchIndex) == batch &&
+            batch.limit() == 0;
+    }
+
+    /**
+     * <p>Writes a frame header at the position of the given buffer.</p>
+     *
+     * @param header the buffer to write the header into
+     * @param frameType the frame type
+     * @param length the frame payload length
+     * @param flags the frame flags
+     * @param streamId the stream id
+     */
+    public void generate(ByteBuffer header, FrameType frameType, int length, int flags, int streamId)
+    {
         header.put((byte)((length & 0x00_FF_00_00) >>> 16));
         header.put((byte)((length & 0x00_00_FF_00) >>> 8));
         header.put((byte)((length & 0x00_00_00_FF)));
         header.put((byte)frameType.getType());
         header.put((byte)flags);
         header.putInt(streamId);
-        return header;
     }
 
     public int getMaxFrameSize()
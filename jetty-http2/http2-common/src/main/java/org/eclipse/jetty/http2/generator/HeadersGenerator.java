@@ -67,9 +67,13 @@ public class HeadersGenerator extends FrameGenerator
         if (priority != null)
             flags = Flags.PRIORITY;
 
-        ByteBuffer hpacked = encode(encoder, lease, metaData, getMaxFrameSize());
-        int hpackedLength = hpacked.position();
-        BufferUtil.flipToFlush(hpacked, 0);
+        // The header block is encoded directly after the frame header
+        // (and the priority, if any), so that it does not need to be copied.
+        int offset = Frame.HEADER_LENGTH;
+        if (priority != null)
+            offset += PriorityFrame.PRIORITY_LENGTH;
+        ByteBuffer buffer = encode(encoder, lease, metaData, offset, getMaxFrameSize());
+        int hpackedLength = buffer.position() - offset;
 
         // Split into CONTINUATION frames if necessary.
         if (maxHeaderBlockFragment > 0 && hpackedLength > maxHeaderBlockFragment)
@@ -77,40 +81,28 @@ public class HeadersGenerator extends FrameGenerator
             if (endStream)
                 flags |= Flags.END_STREAM;
 
-            int length = maxHeaderBlockFragment;
-            if (priority != null)
-                length += PriorityFrame.PRIORITY_LENGTH;
-
-            ByteBuffer header = generateHeader(lease, FrameType.HEADERS, length, flags, streamId);
-            generatePriority(header, priority);
-            BufferUtil.flipToFlush(header, 0);
-            lease.append(header, true);
-            hpacked.limit(maxHeaderBlockFragment);
-            lease.append(hpacked.slice(), false);
+            int length = offset - Frame.HEADER_LENGTH + maxHeaderBlockFragment;
+            ByteBuffer hpacked = buffer.duplicate();
+            hpacked.flip();
+            generateFrameHeader(buffer, FrameType.HEADERS, length, flags, streamId, priority);
+            buffer.limit(offset + maxHeaderBlockFragment);
+            lease.append(buffer, true);
 
             int totalLength = Frame.HEADER_LENGTH + length;
 
-            int position = maxHeaderBlockFragment;
-            int limit = position + maxHeaderBlockFragment;
-            while (limit < hpackedLength)
+            int position = offset + maxHeaderBlockFragment;
+            int end = offset + hpackedLength;
+            while (position < end)
             {
-                hpacked.position(position).limit(limit);
-                header = generateHeader(lease, FrameType.CONTINUATION, maxHeaderBlockFragment, Flags.NONE, streamId);
-                BufferUtil.flipToFlush(header, 0);
-                lease.append(header, true);
+                int fragment = Math.min(maxHeaderBlockFragment, end - position);
+                boolean last = position + fragment == end;
+                appendHeader(lease, FrameType.CONTINUATION, fragment, last ? Flags.END_HEADERS : Flags.NONE, streamId);
+                hpacked.limit(position + fragment).position(position);
                 lease.append(hpacked.slice(), false);
-                position += maxHeaderBlockFragment;
-                limit += maxHeaderBlockFragment;
-                totalLength += Frame.HEADER_LENGTH + maxHeaderBlockFragment;
+                position += fragment;
+                totalLength += Frame.HEADER_LENGTH + fragment;
             }
 
-            hpacked.position(position).limit(hpackedLength);
-            header = generateHeader(lease, FrameType.CONTINUATION, hpacked.remaining(), Flags.END_HEADERS, streamId);
-            BufferUtil.flipToFlush(header, 0);
-            lease.append(header, true);
-            lease.append(hpacked, true);
-            totalLength += Frame.HEADER_LENGTH + hpacked.remaining();
-
             return totalLength;
         }
         else
@@ -119,20 +111,28 @@ public class HeadersGenerator extends FrameGenerator
             if (endStream)
                 flags |= Flags.END_STREAM;
 
-            int length = hpackedLength;
-            if (priority != null)
-                length += PriorityFrame.PRIORITY_LENGTH;
-
-            ByteBuffer header = generateHeader(lease, FrameType.HEADERS, length, flags, streamId);
-            generatePriority(header, priority);
-            BufferUtil.flipToFlush(header, 0);
-            lease.append(header, true);
-            lease.append(hpacked, true);
+            int length = offset - Frame.HEADER_LENGTH + hpackedLength;
+            generateFrameHeader(buffer, FrameType.HEADERS, length, flags, streamId, priority);
+            lease.append(buffer, true);
 
             return Frame.HEADER_LENGTH + length;
         }
     }
 
+    /**
+     * <p>Writes the frame header and the priority at the beginning of the given buffer,
+     * and flips the buffer to flush mode.</p>
+     */
+    private void generateFrameHeader(ByteBuffer buffer, FrameType frameType, int length, int flags, int streamId, PriorityFrame priority)
+    {
+        int end = buffer.position();
+        buffer.position(0);
+        generateHeader(buffer, frameType, length, flags, streamId);
+        generatePriority(buffer, priority);
+        buffer.position(end);
+        BufferUtil.flipToFlush(buffer, 0);
+    }
+
     private void generatePriority(ByteBuffer header, PriorityFrame priority)
     {
         if (priority != null)
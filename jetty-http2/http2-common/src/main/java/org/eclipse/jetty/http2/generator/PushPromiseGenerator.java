@@ -59,19 +59,22 @@ public class PushPromiseGenerator extends FrameGenerator
         int extraSpace = 4;
         maxFrameSize -= extraSpace;
 
-        ByteBuffer hpacked = encode(encoder, lease, metaData, maxFrameSize);
-        int hpackedLength = hpacked.position();
-        BufferUtil.flipToFlush(hpacked, 0);
+        // The header block is encoded directly after the frame header
+        // and the promised stream id, so that it does not need to be copied.
+        int offset = Frame.HEADER_LENGTH + extraSpace;
+        ByteBuffer buffer = encode(encoder, lease, metaData, offset, maxFrameSize);
+        int hpackedLength = buffer.position() - offset;
 
         int length = hpackedLength + extraSpace;
         int flags = Flags.END_HEADERS;
 
-        ByteBuffer header = generateHeader(lease, FrameType.PUSH_PROMISE, length, flags, streamId);
-        header.putInt(promisedStreamId);
-        BufferUtil.flipToFlush(header, 0);
+        buffer.position(0);
+        generateHeader(buffer, FrameType.PUSH_PROMISE, length, flags, streamId);
+        buffer.putInt(promisedStreamId);
+        buffer.position(offset + hpackedLength);
+        BufferUtil.flipToFlush(buffer, 0);
 
-        lease.append(header, true);
-        lease.append(hpacked, true);
+        lease.append(buffer, true);
 
         return Frame.HEADER_LENGTH + length;
     }
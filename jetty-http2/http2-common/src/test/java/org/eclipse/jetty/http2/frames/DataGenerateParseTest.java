@@ -32,7 +32,9 @@ import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DataGenerateParseTest
@@ -170,4 +172,64 @@ public class DataGenerateParseTest
             assertEquals(largeContent.length, frames.size());
         }
     }
+
+    @Test
+    public void testGenerateParseBatchedHeadersAcrossStreams()
+    {
+        DataGenerator generator = new DataGenerator(new HeaderGenerator());
+
+        List<DataFrame> frames = new ArrayList<>();
+        Parser parser = new Parser(byteBufferPool, new Parser.Listener.Adapter()
+        {
+            @Override
+            public void onData(DataFrame frame)
+            {
+                frames.add(frame);
+            }
+        }, 4096, 8192);
+        parser.init(UnaryOperator.identity());
+
+        // Iterate a few times to be sure the batch buffer is properly recycled.
+        for (int i = 0; i < 3; ++i)
+        {
+            ByteBufferPool.Lease lease = new ByteBufferPool.Lease(byteBufferPool);
+            ByteBuffer data1 = ByteBuffer.wrap(smallContent);
+            ByteBuffer data2 = ByteBuffer.wrap(largeContent);
+            while (data1.hasRemaining() || data2.hasRemaining())
+            {
+                if (data1.hasRemaining())
+                    generator.generateData(lease, 13, data1, true, 64);
+                if (data2.hasRemaining())
+                    generator.generateData(lease, 15, data2, true, data2.remaining());
+            }
+
+            // The payloads are read-only slices of the data.
+            for (ByteBuffer buffer : lease.getByteBuffers())
+            {
+                if (buffer.remaining() > Frame.HEADER_LENGTH)
+                    assertTrue(buffer.isReadOnly());
+            }
+
+            frames.clear();
+            for (ByteBuffer buffer : lease.getByteBuffers())
+            {
+                parser.parse(buffer);
+            }
+            lease.recycle();
+
+            ByteBuffer aggregate1 = ByteBuffer.allocate(smallContent.length);
+            ByteBuffer aggregate2 = ByteBuffer.allocate(largeContent.length);
+            for (DataFrame frame : frames)
+            {
+                if (frame.getStreamId() == 13)
+                    aggregate1.put(frame.getData());
+                else
+                    aggregate2.put(frame.getData());
+                assertEquals(frame.isEndStream(), frame.getStreamId() == 13 ? !aggregate1.hasRemaining() : !aggregate2.hasRemaining());
+            }
+            assertArrayEquals(smallContent, aggregate1.array());
+            assertArrayEquals(largeContent, aggregate2.array());
+            assertFalse(frames.isEmpty());
+        }
+    }
 }
@@ -19,13 +19,22 @@
 package org.eclipse.jetty.http2.hpack;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpParser;
 import org.eclipse.jetty.http.HttpTokens;
 import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http2.hpack.HpackContext.Entry;
+import org.eclipse.jetty.util.ArrayTernaryTrie;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.Trie;
+import org.eclipse.jetty.util.Utf8StringBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,9 +48,72 @@ public class HpackDecoder
     public static final HttpField.LongValueHttpField CONTENT_LENGTH_0 =
         new HttpField.LongValueHttpField(HttpHeader.CONTENT_LENGTH, 0L);
 
+    /**
+     * Common fields, indexed by header and then by value, so that literal
+     * values can be resolved to shared {@link HttpField} instances.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Trie<HttpField>[] __fieldCache = new Trie[HttpHeader.values().length];
+
+    static
+    {
+        Map<HttpHeader, List<HttpField>> fields = new EnumMap<>(HttpHeader.class);
+        // The static table fields, as they are emitted when fully indexed.
+        HpackContext context = new HpackContext(0);
+        for (int i = 1; i <= HpackContext.STATIC_SIZE; i++)
+        {
+            cache(fields, context.get(i).getHttpField());
+        }
+        // The common fields of HTTP/1.1, with the lower case names of HTTP/2.
+        for (String key : HttpParser.CACHE.keySet())
+        {
+            HttpField field = HttpParser.CACHE.get(key);
+            HttpHeader header = field.getHeader();
+            if (header == null || field.getValue() == null)
+                continue;
+            String value = field.getValue();
+            if (header == HttpHeader.CONTENT_LENGTH && "0".equals(value))
+            {
+                cache(fields, CONTENT_LENGTH_0);
+            }
+            else
+            {
+                cache(fields, new HttpField(header, header.lowerCaseName(), value));
+                // The HTTP/1.1 cache is case insensitive, but this cache is not.
+                String lowerCaseValue = StringUtil.asciiToLowerCase(value);
+                if (header == HttpHeader.CONTENT_TYPE && !lowerCaseValue.equals(value))
+                    cache(fields, new HttpField(header, header.lowerCaseName(), lowerCaseValue));
+            }
+        }
+
+        for (Map.Entry<HttpHeader, List<HttpField>> entry : fields.entrySet())
+        {
+            List<HttpField> values = entry.getValue();
+            int capacity = values.stream().mapToInt(field -> field.getValue().length()).sum() + 1;
+            Trie<HttpField> trie = new ArrayTernaryTrie<>(false, capacity);
+            for (HttpField field : values)
+            {
+                if (trie.get(field.getValue()) == null)
+                    trie.put(field.getValue(), field);
+            }
+            __fieldCache[entry.getKey().ordinal()] = trie;
+        }
+    }
+
+    private static void cache(Map<HttpHeader, List<HttpField>> fields, HttpField field)
+    {
+        HttpHeader header = field.getHeader();
+        String value = field.getValue();
+        if (header == null || header == HttpHeader.C_AUTHORITY || value == null || value.isEmpty())
+            return;
+        fields.computeIfAbsent(header, h -> new ArrayList<>()).add(field);
+    }
+
     private final HpackContext _context;
     private final MetaDataBuilder _builder;
     private int _localMaxDynamicTableSize;
+    private byte[] _huffman = new byte[128];
+    private ByteBuffer _huffmanBuffer = ByteBuffer.wrap(_huffman);
 
     /**
      * @param localMaxDynamicTableSize The maximum allowed size of the local dynamic header field table.
@@ -208,45 +280,77 @@ public class HpackDecoder
                 boolean huffmanValue = (buffer.get() & 0x80) == 0x80;
                 int length = NBitInteger.decode(buffer, 7);
                 _builder.checkSize(length, huffmanValue);
-                if (huffmanValue)
-                    value = Huffman.decode(buffer, length);
-                else
-                    value = toASCIIString(buffer, length);
 
-                // Make the new field
-                HttpField field;
-                if (header == null)
+                // Try to resolve the value to a shared field, without allocation.
+                Trie<HttpField> cache = header == null ? null : __fieldCache[header.ordinal()];
+                HttpField field = null;
+                if (huffmanValue)
                 {
-                    // just make a normal field and bypass header name lookup
-                    field = new HttpField(null, name, value);
+                    int decoded = decodeHuffman(buffer, length);
+                    if (cache != null)
+                        field = lookup(cache, _huffmanBuffer, 0, decoded);
+                    if (field != null)
+                    {
+                        value = field.getValue();
+                    }
+                    else
+                    {
+                        Utf8StringBuilder utf8 = new Utf8StringBuilder(decoded);
+                        utf8.append(_huffman, 0, decoded);
+                        value = utf8.toString();
+                    }
                 }
                 else
                 {
-                    // might be worthwhile to create a value HttpField if it is indexed
-                    // and/or of a type that may be looked up multiple times.
-                    switch (header)
+                    if (cache != null)
+                        field = lookup(cache, buffer, 0, length);
+                    if (field != null)
                     {
-                        case C_STATUS:
-                            if (indexed)
-                                field = new HttpField.IntValueHttpField(header, name, value);
-                            else
-                                field = new HttpField(header, name, value);
-                            break;
+                        buffer.position(buffer.position() + length);
+                        value = field.getValue();
+                    }
+                    else
+                    {
+                        value = toASCIIString(buffer, length);
+                    }
+                }
 
-                        case C_AUTHORITY:
-                            field = new AuthorityHttpField(value);
-                            break;
+                // Make the new field, unless a shared one has been found
+                if (field == null)
+                {
+                    if (header == null)
+                    {
+                        // just make a normal field and bypass header name lookup
+                        field = new HttpField(null, name, value);
+                    }
+                    else
+                    {
+                        // might be worthwhile to create a value HttpField if it is indexed
+                        // and/or of a type that may be looked up multiple times.
+                        switch (header)
+                        {
+                            case C_STATUS:
+                                if (indexed)
+                                    field = new HttpField.IntValueHttpField(header, name, value);
+                                else
+                                    field = new HttpField(header, name, value);
+                                break;
 
-                        case CONTENT_LENGTH:
-                            if ("0".equals(value))
-                                field = CONTENT_LENGTH_0;
-                            else
-                                field = new HttpField.LongValueHttpField(header, name, value);
-                            break;
+                            case C_AUTHORITY:
+                                field = new AuthorityHttpField(value);
+                                break;
 
-                        default:
-                            field = new HttpField(header, name, value);
-                            break;
+                            case CONTENT_LENGTH:
+                                if ("0".equals(value))
+                                    field = CONTENT_LENGTH_0;
+                                else
+                                    field = new HttpField.LongValueHttpField(header, name, value);
+                                break;
+
+                            default:
+                                field = new HttpField(header, name, value);
+                                break;
+                        }
                     }
                 }
 
@@ -272,6 +376,33 @@ public class HpackDecoder
         return _builder.build();
     }
 
+    private int decodeHuffman(ByteBuffer buffer, int length) throws HpackException.CompressionException
+    {
+        int capacity = Huffman.decodedLength(length);
+        if (_huffman.length < capacity)
+        {
+            _huffman = new byte[Math.max(capacity, 2 * _huffman.length)];
+            _huffmanBuffer = ByteBuffer.wrap(_huffman);
+        }
+        return Huffman.decode(buffer, length, _huffman);
+    }
+
+    private static HttpField lookup(Trie<HttpField> cache, ByteBuffer buffer, int offset, int length)
+    {
+        HttpField field = cache.get(buffer, offset, length);
+        if (field == null)
+            return null;
+        // The trie only looks at 7 bits, so verify the value octets.
+        String value = field.getValue();
+        int position = buffer.position() + offset;
+        for (int i = 0; i < length; ++i)
+        {
+            if ((buffer.get(position + i) & 0xFF) != value.charAt(i))
+                return null;
+        }
+        return field;
+    }
+
     public static String toASCIIString(ByteBuffer buffer, int length)
     {
         StringBuilder builder = new StringBuilder(length);
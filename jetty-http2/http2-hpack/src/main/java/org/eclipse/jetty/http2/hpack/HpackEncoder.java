@@ -102,6 +102,8 @@ public class HpackEncoder
     private int _maxHeaderListSize;
     private int _headerListSize;
     private boolean _validateEncoding = true;
+    private HpackEncodingStrategy _strategy = HpackEncodingStrategy.DEFAULT;
+    private HpackEncodingCache _cache = HpackEncodingCache.getShared();
 
     public HpackEncoder()
     {
@@ -162,6 +164,33 @@ public class HpackEncoder
         _validateEncoding = validateEncoding;
     }
 
+    public HpackEncodingStrategy getEncodingStrategy()
+    {
+        return _strategy;
+    }
+
+    /**
+     * @param strategy the strategy deciding how fields that are not in the static or dynamic tables are encoded
+     */
+    public void setEncodingStrategy(HpackEncodingStrategy strategy)
+    {
+        _strategy = strategy == null ? HpackEncodingStrategy.DEFAULT : strategy;
+    }
+
+    public HpackEncodingCache getEncodingCache()
+    {
+        return _cache;
+    }
+
+    /**
+     * @param cache the cache of encoded field values, usually shared with other encoders, or null to disable caching
+     * @see HpackEncodingCache#getShared()
+     */
+    public void setEncodingCache(HpackEncodingCache cache)
+    {
+        _cache = cache;
+    }
+
     public void encode(ByteBuffer buffer, MetaData metadata) throws HpackException
     {
         try
@@ -329,98 +358,50 @@ public class HpackEncoder
             // Unknown field entry, so we will have to send literally, but perhaps add an index.
             final boolean indexed;
 
-            // Do we know its name?
-            HttpHeader header = field.getHeader();
-
-            // Select encoding strategy
-            if (header == null)
+            if (field instanceof PreEncodedHttpField)
             {
-                // Select encoding strategy for unknown header names
-                Entry name = _context.get(field.getName());
-
-                if (field instanceof PreEncodedHttpField)
-                {
-                    int i = buffer.position();
-                    ((PreEncodedHttpField)field).putTo(buffer, HttpVersion.HTTP_2);
-                    byte b = buffer.get(i);
-                    indexed = b < 0 || b >= 0x40;
-                    if (_debug)
-                        encoding = indexed ? "PreEncodedIdx" : "PreEncoded";
-                }
-                else if (name == null && fieldSize < _context.getMaxDynamicTableSize())
-                {
-                    // unknown name and value that will fit in dynamic table, so let's index
-                    // this just in case it is the first time we have seen a custom name or a
-                    // custom field.  Unless the name is once only, this is worthwhile
-                    indexed = true;
-                    encodeName(buffer, (byte)0x40, 6, field.getName(), null);
-                    encodeValue(buffer, true, field.getValue());
-                    if (_debug)
-                        encoding = "LitHuffNHuffVIdx";
-                }
-                else
-                {
-                    // Known name, but different value.
-                    // This is probably a custom field with changing value, so don't index.
-                    indexed = false;
-                    encodeName(buffer, (byte)0x00, 4, field.getName(), null);
-                    encodeValue(buffer, true, field.getValue());
-                    if (_debug)
-                        encoding = "LitHuffNHuffV!Idx";
-                }
+                // Preencoded field
+                int i = buffer.position();
+                ((PreEncodedHttpField)field).putTo(buffer, HttpVersion.HTTP_2);
+                byte b = buffer.get(i);
+                indexed = b < 0 || b >= 0x40;
+                if (_debug)
+                    encoding = indexed ? "PreEncodedIdx" : "PreEncoded";
             }
             else
             {
-                // Select encoding strategy for known header names
-                Entry name = _context.get(header);
-
-                if (field instanceof PreEncodedHttpField)
+                // Do we know its name?
+                HttpHeader header = field.getHeader();
+                Entry name = header == null ? _context.get(field.getName()) : _context.get(header);
+
+                // Select encoding strategy
+                boolean neverIndex = _strategy.isNeverIndexed(field);
+                indexed = !neverIndex && _strategy.isIndexed(field, name != null, fieldSize, _context.getMaxDynamicTableSize());
+                boolean huffman = _strategy.isHuffman(field);
+
+                byte mask;
+                int bits;
+                if (indexed)
                 {
-                    // Preencoded field
-                    int i = buffer.position();
-                    ((PreEncodedHttpField)field).putTo(buffer, HttpVersion.HTTP_2);
-                    byte b = buffer.get(i);
-                    indexed = b < 0 || b >= 0x40;
-                    if (_debug)
-                        encoding = indexed ? "PreEncodedIdx" : "PreEncoded";
-                }
-                else if (DO_NOT_INDEX.contains(header))
-                {
-                    // Non indexed field
-                    indexed = false;
-                    boolean neverIndex = NEVER_INDEX.contains(header);
-                    boolean huffman = !DO_NOT_HUFFMAN.contains(header);
-                    encodeName(buffer, neverIndex ? (byte)0x10 : (byte)0x00, 4, header.asString(), name);
-                    encodeValue(buffer, huffman, field.getValue());
-
-                    if (_debug)
-                        encoding = "Lit" +
-                            ((name == null) ? "HuffN" : ("IdxN" + (name.isStatic() ? "S" : "") + (1 + NBitInteger.octectsNeeded(4, _context.index(name))))) +
-                            (huffman ? "HuffV" : "LitV") +
-                            (neverIndex ? "!!Idx" : "!Idx");
-                }
-                else if (fieldSize >= _context.getMaxDynamicTableSize() || header == HttpHeader.CONTENT_LENGTH && !"0".equals(field.getValue()))
-                {
-                    // The field is too large or a non zero content length, so do not index.
-                    indexed = false;
-                    encodeName(buffer, (byte)0x00, 4, header.asString(), name);
-                    encodeValue(buffer, true, field.getValue());
-                    if (_debug)
-                        encoding = "Lit" +
-                            ((name == null) ? "HuffN" : "IdxNS" + (1 + NBitInteger.octectsNeeded(4, _context.index(name)))) +
-                            "HuffV!Idx";
+                    mask = (byte)0x40;
+                    bits = 6;
                 }
                 else
                 {
-                    // indexed
-                    indexed = true;
-                    boolean huffman = !DO_NOT_HUFFMAN.contains(header);
-                    encodeName(buffer, (byte)0x40, 6, header.asString(), name);
-                    encodeValue(buffer, huffman, field.getValue());
-                    if (_debug)
-                        encoding = ((name == null) ? "LitHuffN" : ("LitIdxN" + (name.isStatic() ? "S" : "") + (1 + NBitInteger.octectsNeeded(6, _context.index(name))))) +
-                            (huffman ? "HuffVIdx" : "LitVIdx");
+                    mask = neverIndex ? (byte)0x10 : (byte)0x00;
+                    bits = 4;
                 }
+                encodeName(buffer, mask, bits, header == null ? field.getName() : header.asString(), name);
+
+                boolean cached = huffman && _cache != null && _strategy.isCacheable(field) && _cache.putValue(buffer, field);
+                if (!cached)
+                    encodeValue(buffer, huffman, field.getValue());
+
+                if (_debug)
+                    encoding = "Lit" +
+                        ((name == null) ? "HuffN" : ("IdxN" + (name.isStatic() ? "S" : "") + (1 + NBitInteger.octectsNeeded(bits, _context.index(name))))) +
+                        (cached ? "CachedV" : huffman ? "HuffV" : "LitV") +
+                        (indexed ? "Idx" : neverIndex ? "!!Idx" : "!Idx");
             }
 
             // If we want the field referenced, then we add it to our table and reference set.
@@ -0,0 +1,187 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.HttpField;
+
+/**
+ * <p>A bounded cache of the HPACK literal representation of field values,
+ * that can be shared by all the {@link HpackEncoder}s of the process.</p>
+ * <p>Encoding a literal field value requires a Huffman encoding, which is
+ * repeated for every field emitted by every connection, even if many
+ * connections emit the same fields (for example {@code content-type} or
+ * {@code cache-control} in responses).
+ * This cache stores the Huffman encoded values, keyed by {@link HttpField},
+ * so that each value is only encoded once.</p>
+ * <p>The cache is a 2-way set associative table: lookups are lock-free and do not
+ * allocate, and a new entry evicts the older of the 2 entries with the same hash,
+ * so the memory used is bounded by the capacity and the maximum value length.</p>
+ * <p>Which fields are cached is decided by {@link HpackEncodingStrategy#isCacheable(HttpField)}.</p>
+ */
+public class HpackEncodingCache
+{
+    private static final HpackEncodingCache SHARED = new HpackEncodingCache(1024, 256);
+
+    /**
+     * @return the cache shared by default by all the {@link HpackEncoder}s
+     */
+    public static HpackEncodingCache getShared()
+    {
+        return SHARED;
+    }
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int maxValueLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity the max number of cached fields, rounded up to a power of 2
+     * @param maxValueLength the max length of the values to cache
+     */
+    public HpackEncodingCache(int capacity, int maxValueLength)
+    {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        this.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * @return the max number of cached fields
+     */
+    public int getCapacity()
+    {
+        return entries.length();
+    }
+
+    /**
+     * @return the max length of the values to cache
+     */
+    public int getMaxValueLength()
+    {
+        return maxValueLength;
+    }
+
+    /**
+     * @return the number of lookups that found the field
+     */
+    public long getHits()
+    {
+        return hits.longValue();
+    }
+
+    /**
+     * @return the number of lookups that did not find the field
+     */
+    public long getMisses()
+    {
+        return misses.longValue();
+    }
+
+    /**
+     * <p>Writes the Huffman encoded literal representation of the value of the given field,
+     * including the string length prefix, encoding it and caching it if necessary.</p>
+     *
+     * @param buffer the buffer to write to
+     * @param field the field whose value must be written
+     * @return whether the value has been written, false if the value cannot be cached
+     */
+    public boolean putValue(ByteBuffer buffer, HttpField field)
+    {
+        String value = field.getValue();
+        if (value.length() > maxValueLength)
+            return false;
+
+        int index = indexOf(field);
+        int other = index ^ 1;
+        Entry entry = entries.get(index);
+        if (entry == null || !entry.field.equals(field))
+        {
+            Entry otherEntry = entries.get(other);
+            if (otherEntry != null && otherEntry.field.equals(field))
+                entry = otherEntry;
+        }
+        if (entry != null && entry.field.equals(field))
+        {
+            hits.increment();
+            buffer.put(entry.value);
+            return true;
+        }
+
+        misses.increment();
+        int start = buffer.position();
+        HpackEncoder.encodeValue(buffer, true, value);
+        byte[] encoded = new byte[buffer.position() - start];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(start);
+        slice.get(encoded);
+        // Keep the most recent entry in the first slot, and evict the older
+        // entry; concurrent updates may race, but the cache is only a hint.
+        Entry previous = entries.get(index);
+        if (previous != null)
+            entries.set(other, previous);
+        entries.set(index, new Entry(field, encoded));
+        return true;
+    }
+
+    private int indexOf(HttpField field)
+    {
+        int h = field.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (entries.length() - 1);
+    }
+
+    /**
+     * <p>Removes all the cached fields.</p>
+     */
+    public void clear()
+    {
+        for (int i = 0; i < entries.length(); ++i)
+        {
+            entries.set(i, null);
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{capacity=%d,hits=%d,misses=%d}", getClass().getSimpleName(), hashCode(), getCapacity(), getHits(), getMisses());
+    }
+
+    private static class Entry
+    {
+        private final HttpField field;
+        private final byte[] value;
+
+        private Entry(HttpField field, byte[] value)
+        {
+            this.field = field;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+
+/**
+ * <p>Decides how {@link HpackEncoder} encodes the fields that are not
+ * already in the static or dynamic tables.</p>
+ * <p>Applications may extend this class to tune which fields are indexed in the
+ * dynamic table, for example to avoid indexing fields whose values never repeat,
+ * or to index fields that are known to repeat.</p>
+ *
+ * @see HpackEncoder#setEncodingStrategy(HpackEncodingStrategy)
+ */
+public class HpackEncodingStrategy
+{
+    public static final HpackEncodingStrategy DEFAULT = new HpackEncodingStrategy();
+
+    /**
+     * <p>Returns whether the given field should be added to the dynamic table.</p>
+     * <p>By default, fields are indexed if they fit in the dynamic table, except
+     * fields whose values are unlikely to repeat (for example {@code etag} or
+     * non-zero {@code content-length}), and custom fields whose name is already indexed,
+     * as they are likely fields with changing values.</p>
+     *
+     * @param field the field to encode
+     * @param nameIndexed whether the field name is already in the static or dynamic table
+     * @param fieldSize the size of the field name and value
+     * @param maxDynamicTableSize the max size of the dynamic table
+     * @return whether the field should be added to the dynamic table
+     */
+    public boolean isIndexed(HttpField field, boolean nameIndexed, int fieldSize, int maxDynamicTableSize)
+    {
+        HttpHeader header = field.getHeader();
+        if (header == null)
+            return !nameIndexed && fieldSize < maxDynamicTableSize;
+        if (HpackEncoder.DO_NOT_INDEX.contains(header))
+            return false;
+        if (fieldSize >= maxDynamicTableSize)
+            return false;
+        return header != HttpHeader.CONTENT_LENGTH || "0".equals(field.getValue());
+    }
+
+    /**
+     * @param field the field to encode
+     * @return whether the field must never be indexed, also by intermediaries, because it is sensitive
+     */
+    public boolean isNeverIndexed(HttpField field)
+    {
+        HttpHeader header = field.getHeader();
+        return header != null && HpackEncoder.NEVER_INDEX.contains(header);
+    }
+
+    /**
+     * @param field the field to encode
+     * @return whether the field value should be Huffman encoded
+     */
+    public boolean isHuffman(HttpField field)
+    {
+        HttpHeader header = field.getHeader();
+        return header == null || !HpackEncoder.DO_NOT_HUFFMAN.contains(header);
+    }
+
+    /**
+     * <p>Returns whether the encoded value of the given field can be stored in
+     * a {@link HpackEncodingCache}, shared across connections.</p>
+     * <p>By default, only the values of known fields that are not sensitive and
+     * that are likely to repeat are cached, so that fields with unique values do
+     * not evict useful entries.</p>
+     *
+     * @param field the field to encode
+     * @return whether the encoded value of the field can be cached
+     */
+    public boolean isCacheable(HttpField field)
+    {
+        HttpHeader header = field.getHeader();
+        if (header == null)
+            return false;
+        switch (header)
+        {
+            case CONTENT_LENGTH:
+            case C_PATH:
+            case C_AUTHORITY:
+            case COOKIE:
+                return false;
+            default:
+                return !HpackEncoder.DO_NOT_INDEX.contains(header);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.http2.hpack;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.eclipse.jetty.util.Utf8StringBuilder;
 
@@ -291,13 +292,30 @@ public class Huffman
     static final int[][] LCCODES = new int[CODES.length][];
     static final char EOS = 256;
 
-    // Huffman decode tree stored in a flattened char array for good 
-    // locality of reference.
-    static final char[] tree;
-    static final char[] rowsym;
-    static final byte[] rowbits;
-
-    // Build the Huffman lookup tree and LC TABLE
+    // The decoder is a finite state machine that consumes 4 bits at a time.
+    // The states are the internal nodes of the Huffman tree (there are 256 of them),
+    // and the transitions are indexed by (state << 4 | nibble).
+    // Each transition encodes the next state, the symbol emitted (if any), and whether
+    // the EOS symbol was found. Since the shortest code is 5 bits long, at most one
+    // symbol can be emitted for each nibble.
+    private static final int STATE_MASK = 0xFF;
+    private static final int SYMBOL_SHIFT = 8;
+    private static final int EMIT = 1 << 16;
+    private static final int FAIL = 1 << 17;
+    static final int[] TRANSITIONS = new int[256 * 16];
+    // Whether the bits consumed to reach a state are a valid padding.
+    private static final byte TERMINATION_OK = 0;
+    private static final byte TERMINATION_BAD_PADDING = 1;
+    private static final byte TERMINATION_BAD = 2;
+    static final byte[] TERMINATIONS = new byte[256];
+
+    // The encoder uses flattened tables for locality of reference.
+    private static final int[] CODE_VALUES = new int[CODES.length];
+    private static final byte[] CODE_LENGTHS = new byte[CODES.length];
+    private static final int[] LC_CODE_VALUES = new int[CODES.length];
+    private static final byte[] LC_CODE_LENGTHS = new byte[CODES.length];
+
+    // Build the Huffman decoder state machine and the encoder tables.
     static
     {
         System.arraycopy(CODES, 0, LCCODES, 0, CODES.length);
@@ -306,49 +324,73 @@ public class Huffman
             LCCODES[i] = LCCODES['a' + i - 'A'];
         }
 
-        int r = 0;
-        for (int i = 0; i < CODES.length; i++)
+        for (int sym = 0; sym < CODES.length; sym++)
         {
-            r += (CODES[i][1] + 7) / 8;
+            CODE_VALUES[sym] = CODES[sym][0];
+            CODE_LENGTHS[sym] = (byte)CODES[sym][1];
+            LC_CODE_VALUES[sym] = LCCODES[sym][0];
+            LC_CODE_LENGTHS[sym] = (byte)LCCODES[sym][1];
         }
-        tree = new char[r * 256];
-        rowsym = new char[r];
-        rowbits = new byte[r];
 
-        r = 0;
+        // Build the binary tree, where a child is either an internal
+        // node (a positive index) or a symbol (encoded as -(symbol + 1)).
+        int[][] children = new int[256][2];
+        int[] depths = new int[256];
+        boolean[] ones = new boolean[256];
+        ones[0] = true;
+        int nodes = 1;
         for (int sym = 0; sym < CODES.length; sym++)
         {
             int code = CODES[sym][0];
             int len = CODES[sym][1];
-
-            int current = 0;
-
-            while (len > 8)
+            int node = 0;
+            for (int i = len - 1; i > 0; i--)
             {
-                len -= 8;
-                int i = ((code >>> len) & 0xFF);
-
-                int t = current * 256 + i;
-                current = tree[t];
-                if (current == 0)
+                int bit = (code >>> i) & 1;
+                int child = children[node][bit];
+                if (child == 0)
                 {
-                    tree[t] = (char)++r;
-                    current = r;
+                    child = nodes++;
+                    children[node][bit] = child;
+                    depths[child] = depths[node] + 1;
+                    ones[child] = ones[node] && bit == 1;
                 }
+                node = child;
             }
+            children[node][code & 1] = -(sym + 1);
+        }
 
-            int terminal = ++r;
-            rowsym[r] = (char)sym;
-            int b = len & 0x07;
-            int terminalBits = b == 0 ? 8 : b;
+        for (int state = 0; state < nodes; state++)
+        {
+            if (depths[state] > 7)
+                TERMINATIONS[state] = TERMINATION_BAD;
+            else if (!ones[state])
+                TERMINATIONS[state] = TERMINATION_BAD_PADDING;
 
-            rowbits[r] = (byte)terminalBits;
-            int shift = 8 - len;
-            int start = current * 256 + ((code << shift) & 0xFF);
-            int end = start + (1 << shift);
-            for (int i = start; i < end; i++)
+            for (int nibble = 0; nibble < 16; nibble++)
             {
-                tree[i] = (char)terminal;
+                int node = state;
+                int transition = 0;
+                for (int i = 3; i >= 0; i--)
+                {
+                    int child = children[node][(nibble >>> i) & 1];
+                    if (child < 0)
+                    {
+                        int sym = -child - 1;
+                        if (sym == EOS)
+                        {
+                            transition = FAIL;
+                            break;
+                        }
+                        transition = EMIT | (sym << SYMBOL_SHIFT);
+                        node = 0;
+                    }
+                    else
+                    {
+                        node = child;
+                    }
+                }
+                TRANSITIONS[(state << 4) | nibble] = transition | node;
             }
         }
     }
@@ -360,101 +402,97 @@ public class Huffman
 
     public static String decode(ByteBuffer buffer, int length) throws HpackException.CompressionException
     {
-        Utf8StringBuilder utf8 = new Utf8StringBuilder(length * 2);
-        int node = 0;
-        int current = 0;
-        int bits = 0;
+        byte[] octets = new byte[decodedLength(length)];
+        int decoded = decode(buffer, length, octets);
+        Utf8StringBuilder utf8 = new Utf8StringBuilder(decoded);
+        utf8.append(octets, 0, decoded);
+        return utf8.toString();
+    }
 
+    /**
+     * @param length the length of Huffman encoded octets
+     * @return the max number of octets that the given Huffman encoded octets can decode to
+     */
+    public static int decodedLength(int length)
+    {
+        // The shortest code is 5 bits long.
+        return length * 8 / 5;
+    }
+
+    /**
+     * <p>Decodes Huffman encoded octets into the given array, without allocating.</p>
+     *
+     * @param buffer the buffer containing the Huffman encoded octets
+     * @param length the number of Huffman encoded octets
+     * @param output the array receiving the decoded octets, of at least {@link #decodedLength(int)} octets
+     * @return the number of decoded octets
+     * @throws HpackException.CompressionException if the encoded octets are invalid
+     */
+    public static int decode(ByteBuffer buffer, int length, byte[] output) throws HpackException.CompressionException
+    {
+        int decoded = 0;
+        int state = 0;
         for (int i = 0; i < length; i++)
         {
             int b = buffer.get() & 0xFF;
-            current = (current << 8) | b;
-            bits += 8;
-            while (bits >= 8)
-            {
-                int c = (current >>> (bits - 8)) & 0xFF;
-                node = tree[node * 256 + c];
-                if (rowbits[node] != 0)
-                {
-                    if (rowsym[node] == EOS)
-                        throw new HpackException.CompressionException("EOS in content");
 
-                    // terminal node
-                    utf8.append((byte)(0xFF & rowsym[node]));
-                    bits -= rowbits[node];
-                    node = 0;
-                }
-                else
-                {
-                    // non-terminal node
-                    bits -= 8;
-                }
-            }
+            int transition = TRANSITIONS[(state << 4) | (b >>> 4)];
+            if ((transition & FAIL) != 0)
+                throw new HpackException.CompressionException("EOS in content");
+            if ((transition & EMIT) != 0)
+                output[decoded++] = (byte)(transition >>> SYMBOL_SHIFT);
+            state = transition & STATE_MASK;
+
+            transition = TRANSITIONS[(state << 4) | (b & 0x0F)];
+            if ((transition & FAIL) != 0)
+                throw new HpackException.CompressionException("EOS in content");
+            if ((transition & EMIT) != 0)
+                output[decoded++] = (byte)(transition >>> SYMBOL_SHIFT);
+            state = transition & STATE_MASK;
         }
 
-        while (bits > 0)
+        switch (TERMINATIONS[state])
         {
-            int c = (current << (8 - bits)) & 0xFF;
-            int lastNode = node;
-            node = tree[node * 256 + c];
-
-            if (rowbits[node] == 0 || rowbits[node] > bits)
-            {
-                int requiredPadding = 0;
-                for (int i = 0; i < bits; i++)
-                {
-                    requiredPadding = (requiredPadding << 1) | 1;
-                }
-
-                if ((c >> (8 - bits)) != requiredPadding)
-                    throw new HpackException.CompressionException("Incorrect padding");
-
-                node = lastNode;
-                break;
-            }
-
-            utf8.append((byte)(0xFF & rowsym[node]));
-            bits -= rowbits[node];
-            node = 0;
+            case TERMINATION_OK:
+                return decoded;
+            case TERMINATION_BAD_PADDING:
+                throw new HpackException.CompressionException("Incorrect padding");
+            default:
+                throw new HpackException.CompressionException("Bad termination");
         }
-
-        if (node != 0)
-            throw new HpackException.CompressionException("Bad termination");
-
-        return utf8.toString();
     }
 
     public static int octetsNeeded(String s)
     {
-        return octetsNeeded(CODES, s);
+        return octetsNeeded(CODE_LENGTHS, s);
     }
 
     public static int octetsNeeded(byte[] b)
     {
-        return octetsNeeded(CODES, b);
+        return octetsNeeded(CODE_LENGTHS, b);
     }
 
     public static void encode(ByteBuffer buffer, String s)
     {
-        encode(CODES, buffer, s);
+        encode(CODE_VALUES, CODE_LENGTHS, buffer, s);
     }
 
     public static void encode(ByteBuffer buffer, byte[] b)
     {
-        encode(CODES, buffer, b);
+        encode(CODE_VALUES, CODE_LENGTHS, buffer, b);
     }
 
     public static int octetsNeededLC(String s)
     {
-        return octetsNeeded(LCCODES, s);
+        return octetsNeeded(LC_CODE_LENGTHS, s);
     }
 
     public static void encodeLC(ByteBuffer buffer, String s)
     {
-        encode(LCCODES, buffer, s);
+        encode(LC_CODE_VALUES, LC_CODE_LENGTHS, buffer, s);
     }
 
-    private static int octetsNeeded(final int[][] table, String s)
+    private static int octetsNeeded(final byte[] lengths, String s)
     {
         int needed = 0;
         int len = s.length();
@@ -463,31 +501,37 @@ public class Huffman
             char c = s.charAt(i);
             if (c >= 128 || c < ' ')
                 return -1;
-            needed += table[c][1];
+            needed += lengths[c];
         }
 
         return (needed + 7) / 8;
     }
 
-    private static int octetsNeeded(final int[][] table, byte[] b)
+    private static int octetsNeeded(final byte[] lengths, byte[] b)
     {
         int needed = 0;
         int len = b.length;
         for (int i = 0; i < len; i++)
         {
             int c = 0xFF & b[i];
-            needed += table[c][1];
+            needed += lengths[c];
         }
         return (needed + 7) / 8;
     }
 
     /**
-     * @param table The table to encode by
+     * <p>Encodes the given string in the given buffer.</p>
+     * <p>The codes are accumulated in a 64-bit accumulator, which is
+     * written to the buffer 32 bits at a time.</p>
+     *
+     * @param values The code values to encode by
+     * @param lengths The code lengths to encode by
      * @param buffer The buffer to encode to
      * @param s The string to encode
      */
-    private static void encode(final int[][] table, ByteBuffer buffer, String s)
+    private static void encode(final int[] values, final byte[] lengths, ByteBuffer buffer, String s)
     {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
         long current = 0;
         int n = 0;
         int len = s.length();
@@ -496,51 +540,58 @@ public class Huffman
             char c = s.charAt(i);
             if (c >= 128 || c < ' ')
                 throw new IllegalArgumentException();
-            int code = table[c][0];
-            int bits = table[c][1];
-
-            current <<= bits;
-            current |= code;
+            int bits = lengths[c];
+            current = (current << bits) | values[c];
             n += bits;
 
-            while (n >= 8)
+            if (n >= 32)
             {
-                n -= 8;
-                buffer.put((byte)(current >> n));
+                n -= 32;
+                putInt(buffer, (int)(current >>> n), bigEndian);
             }
         }
 
-        if (n > 0)
-        {
-            current <<= (8 - n);
-            current |= (0xFF >>> n);
-            buffer.put((byte)(current));
-        }
+        flush(buffer, current, n);
     }
 
-    private static void encode(final int[][] table, ByteBuffer buffer, byte[] b)
+    private static void encode(final int[] values, final byte[] lengths, ByteBuffer buffer, byte[] b)
     {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
         long current = 0;
         int n = 0;
-
         int len = b.length;
         for (int i = 0; i < len; i++)
         {
             int c = 0xFF & b[i];
-            int code = table[c][0];
-            int bits = table[c][1];
-
-            current <<= bits;
-            current |= code;
+            int bits = lengths[c];
+            current = (current << bits) | values[c];
             n += bits;
 
-            while (n >= 8)
+            if (n >= 32)
             {
-                n -= 8;
-                buffer.put((byte)(current >> n));
+                n -= 32;
+                putInt(buffer, (int)(current >>> n), bigEndian);
             }
         }
 
+        flush(buffer, current, n);
+    }
+
+    private static void putInt(ByteBuffer buffer, int value, boolean bigEndian)
+    {
+        buffer.putInt(bigEndian ? value : Integer.reverseBytes(value));
+    }
+
+    private static void flush(ByteBuffer buffer, long current, int n)
+    {
+        // Write the remaining whole octets.
+        while (n >= 8)
+        {
+            n -= 8;
+            buffer.put((byte)(current >>> n));
+        }
+
+        // Pad the last octet with the most significant bits of EOS.
         if (n > 0)
         {
             current <<= (8 - n);
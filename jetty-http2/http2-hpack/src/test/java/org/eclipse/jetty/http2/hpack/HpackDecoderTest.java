@@ -21,9 +21,12 @@ package org.eclipse.jetty.http2.hpack;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 
+import org.eclipse.jetty.http.HostPortHttpField;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http2.hpack.HpackException.CompressionException;
 import org.eclipse.jetty.http2.hpack.HpackException.SessionException;
@@ -38,6 +41,8 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -59,6 +64,43 @@ public class HpackDecoderTest
      +-------------------------------+
      */
 
+    @Test
+    public void testLiteralValuesResolveToSharedFields() throws Exception
+    {
+        HttpFields fields = HttpFields.build()
+            .add("accept", "*/*")
+            .add("accept-encoding", "gzip, deflate, br")
+            .add("content-type", "text/html;charset=utf-8")
+            .add("custom-key", "custom-value");
+        MetaData.Request request = new MetaData.Request("GET", HttpScheme.HTTP.asString(), new HostPortHttpField("localhost:8080"), "/", HttpVersion.HTTP_2, fields, -1);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        new HpackEncoder().encode(buffer, request);
+        buffer.flip();
+
+        // Decode the same block with two different decoders,
+        // so that the dynamic table cannot be the source of sharing.
+        HttpField[] fields1 = new HpackDecoder(4096, 8192).decode(buffer.slice()).getFields().stream().toArray(HttpField[]::new);
+        HttpField[] fields2 = new HpackDecoder(4096, 8192).decode(buffer.slice()).getFields().stream().toArray(HttpField[]::new);
+
+        assertEquals(4, fields1.length);
+        for (int i = 0; i < fields1.length; ++i)
+        {
+            assertEquals(fields.getField(i), fields1[i]);
+            assertEquals(fields1[i], fields2[i]);
+        }
+        assertSame(fields1[0], fields2[0]);
+        assertSame(fields1[1], fields2[1]);
+        assertSame(fields1[2], fields2[2]);
+        assertNotSame(fields1[3], fields2[3]);
+
+        // Literal value that is not Huffman encoded.
+        String encoded = "828684" + "0f04" + "032a2f2a";
+        MetaData.Request request1 = (MetaData.Request)new HpackDecoder(4096, 8192).decode(ByteBuffer.wrap(TypeUtil.fromHexString(encoded)));
+        MetaData.Request request2 = (MetaData.Request)new HpackDecoder(4096, 8192).decode(ByteBuffer.wrap(TypeUtil.fromHexString(encoded)));
+        assertEquals("*/*", request1.getFields().get(HttpHeader.ACCEPT));
+        assertSame(request1.getFields().getField(HttpHeader.ACCEPT), request2.getFields().getField(HttpHeader.ACCEPT));
+    }
+
     @Test
     public void testDecodeD3() throws Exception
     {
@@ -311,4 +311,78 @@ public class HpackEncoderTest
         assertThat(context.getMaxDynamicTableSize(), Matchers.is(50));
         assertThat(context.size(), Matchers.is(1));
     }
+
+    @Test
+    public void testEncodingCacheSharedAcrossEncoders() throws Exception
+    {
+        HpackEncodingCache cache = new HpackEncodingCache(16, 256);
+        HttpFields fields = HttpFields.build()
+            .put(HttpHeader.CONTENT_TYPE, "text/html;charset=utf-8")
+            .put(HttpHeader.CACHE_CONTROL, "public, max-age=31536000, immutable");
+
+        HpackEncoder encoder1 = new HpackEncoder();
+        encoder1.setEncodingCache(cache);
+        ByteBuffer buffer1 = BufferUtil.allocate(4096);
+        int pos = BufferUtil.flipToFill(buffer1);
+        encoder1.encode(buffer1, new MetaData(HttpVersion.HTTP_2, fields));
+        BufferUtil.flipToFlush(buffer1, pos);
+        assertThat(cache.getMisses(), Matchers.is(2L));
+        assertThat(cache.getHits(), Matchers.is(0L));
+
+        // A new encoder, for example for a new connection, reuses the cached encoding.
+        HpackEncoder encoder2 = new HpackEncoder();
+        encoder2.setEncodingCache(cache);
+        ByteBuffer buffer2 = BufferUtil.allocate(4096);
+        pos = BufferUtil.flipToFill(buffer2);
+        encoder2.encode(buffer2, new MetaData(HttpVersion.HTTP_2, fields));
+        BufferUtil.flipToFlush(buffer2, pos);
+        assertThat(cache.getHits(), Matchers.is(2L));
+
+        // The encoding is the same as without the cache.
+        HpackEncoder encoder3 = new HpackEncoder();
+        encoder3.setEncodingCache(null);
+        ByteBuffer buffer3 = BufferUtil.allocate(4096);
+        pos = BufferUtil.flipToFill(buffer3);
+        encoder3.encode(buffer3, new MetaData(HttpVersion.HTTP_2, fields));
+        BufferUtil.flipToFlush(buffer3, pos);
+        assertEquals(buffer3, buffer1);
+        assertEquals(buffer3, buffer2);
+
+        MetaData decoded = new HpackDecoder(4096, 8192).decode(buffer2);
+        assertEquals("text/html;charset=utf-8", decoded.getFields().get(HttpHeader.CONTENT_TYPE));
+        assertEquals("public, max-age=31536000, immutable", decoded.getFields().get(HttpHeader.CACHE_CONTROL));
+    }
+
+    @Test
+    public void testEncodingStrategy() throws Exception
+    {
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.setEncodingStrategy(new HpackEncodingStrategy()
+        {
+            @Override
+            public boolean isIndexed(HttpField field, boolean nameIndexed, int fieldSize, int maxDynamicTableSize)
+            {
+                // Do not index request ids, as they never repeat.
+                if ("x-request-id".equalsIgnoreCase(field.getName()))
+                    return false;
+                return super.isIndexed(field, nameIndexed, fieldSize, maxDynamicTableSize);
+            }
+        });
+
+        HttpFields fields = HttpFields.build()
+            .put("x-request-id", "0123456789abcdef")
+            .put("x-custom", "value");
+        ByteBuffer buffer = BufferUtil.allocate(4096);
+        int pos = BufferUtil.flipToFill(buffer);
+        encoder.encode(buffer, new MetaData(HttpVersion.HTTP_2, fields));
+        BufferUtil.flipToFlush(buffer, pos);
+
+        HpackContext context = encoder.getHpackContext();
+        assertThat(context.size(), Matchers.is(1));
+        assertThat(context.get(HpackContext.STATIC_SIZE + 1).getHttpField().getName(), equalTo("x-custom"));
+
+        MetaData decoded = new HpackDecoder(4096, 8192).decode(buffer);
+        assertEquals("0123456789abcdef", decoded.getFields().get("x-request-id"));
+        assertEquals("value", decoded.getFields().get("x-custom"));
+    }
 }
@@ -20,12 +20,14 @@ package org.eclipse.jetty.http2.hpack;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 import java.util.stream.Stream;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.TypeUtil;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -73,6 +75,38 @@ public class HuffmanTest
         assertEquals(hex.length() / 2, Huffman.octetsNeeded(expected));
     }
 
+    @Test
+    public void testEncodeDecodeAllASCII() throws Exception
+    {
+        // Every ASCII octet, in different positions relative to the 32 bits written at once.
+        for (int offset = 0; offset < 8; ++offset)
+        {
+            byte[] bytes = new byte[128 + offset];
+            for (int i = 0; i < bytes.length; ++i)
+            {
+                bytes[i] = (byte)((i + offset) & 0x7F);
+            }
+            ByteBuffer buffer = BufferUtil.allocate(Huffman.octetsNeeded(bytes));
+            int pos = BufferUtil.flipToFill(buffer);
+            Huffman.encode(buffer, bytes);
+            assertEquals(0, buffer.remaining());
+            BufferUtil.flipToFlush(buffer, pos);
+
+            assertEquals(new String(bytes, StandardCharsets.US_ASCII), Huffman.decode(buffer));
+        }
+    }
+
+    @Test
+    public void testEncodeLowerCase() throws Exception
+    {
+        String name = "Content-Type";
+        ByteBuffer buffer = BufferUtil.allocate(Huffman.octetsNeededLC(name));
+        int pos = BufferUtil.flipToFill(buffer);
+        Huffman.encodeLC(buffer, name);
+        BufferUtil.flipToFlush(buffer, pos);
+        assertEquals("content-type", Huffman.decode(buffer));
+    }
+
     @ParameterizedTest(name = "[{index}]") // don't include unprintable character in test display-name
     @ValueSource(chars = {(char)128, (char)0, (char)-1, ' ' - 1})
     public void testEncode8859Only(char bad)
@@ -20,8 +20,17 @@ package org.eclipse.jetty.http2.client.http;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
 
 import org.eclipse.jetty.alpn.client.ALPNClientConnectionFactory;
 import org.eclipse.jetty.client.AbstractHttpClientTransport;
@@ -32,23 +41,33 @@ import org.eclipse.jetty.client.MultiplexConnectionPool;
 import org.eclipse.jetty.client.MultiplexHttpDestination;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.ProxyConfiguration;
+import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.client.HTTP2ClientConnectionFactory;
 import org.eclipse.jetty.http2.frames.GoAwayFrame;
 import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ssl.SslConnection;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.ssl.X509;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @ManagedObject("The HTTP/2 client transport")
 public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
 {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientTransportOverHTTP2.class);
+
     private final ClientConnectionFactory connectionFactory = new HTTP2ClientConnectionFactory();
+    private final Map<SocketAddress, Queue<Coalescable>> coalescables = new ConcurrentHashMap<>();
     private final HTTP2Client client;
     private boolean useALPN = true;
+    private boolean connectionCoalescing;
 
     public HttpClientTransportOverHTTP2(HTTP2Client client)
     {
@@ -83,6 +102,34 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         this.useALPN = useALPN;
     }
 
+    /**
+     * @return whether requests for different hosts may share the same connection
+     * @see #setConnectionCoalescing(boolean)
+     */
+    @ManagedAttribute(value = "Whether requests for different hosts may share the same connection")
+    public boolean isConnectionCoalescing()
+    {
+        return connectionCoalescing;
+    }
+
+    /**
+     * <p>Sets whether requests for different hosts may share the same connection,
+     * as specified by RFC 7540, section 9.1.1.</p>
+     * <p>When a destination needs a new connection and one of the addresses its host
+     * resolves to is the remote address of an existing secure connection, and the
+     * certificate presented by the server over that connection is valid for the
+     * host of the destination, then the existing connection is reused instead of
+     * opening a new one.
+     * Connections are only shared by destinations with the same
+     * {@link org.eclipse.jetty.client.Origin#getTag() tag}.</p>
+     *
+     * @param connectionCoalescing whether requests for different hosts may share the same connection
+     */
+    public void setConnectionCoalescing(boolean connectionCoalescing)
+    {
+        this.connectionCoalescing = connectionCoalescing;
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -107,6 +154,7 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
     {
         super.doStop();
         removeBean(client);
+        coalescables.clear();
     }
 
     @Override
@@ -130,12 +178,92 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         client.setConnectBlocking(httpClient.isConnectBlocking());
         client.setBindAddress(httpClient.getBindAddress());
 
-        SessionListenerPromise listenerPromise = new SessionListenerPromise(context);
-
         HttpDestination destination = (HttpDestination)context.get(HTTP_DESTINATION_CONTEXT_KEY);
+        HttpConnectionOverHTTP2 coalesced = coalesce(address, destination);
+        if (coalesced != null)
+        {
+            @SuppressWarnings("unchecked")
+            Promise<Connection> promise = (Promise<Connection>)context.get(HTTP_CONNECTION_PROMISE_CONTEXT_KEY);
+            promise.succeeded(coalesced);
+            return;
+        }
+
+        SessionListenerPromise listenerPromise = new SessionListenerPromise(context);
         connect(address, destination.getClientConnectionFactory(), listenerPromise, listenerPromise, context);
     }
 
+    private HttpConnectionOverHTTP2 coalesce(InetSocketAddress address, HttpDestination destination)
+    {
+        if (!isConnectionCoalescing() || !isCoalescable(destination))
+            return null;
+        Queue<Coalescable> candidates = coalescables.get(address);
+        if (candidates == null)
+            return null;
+        for (Coalescable candidate : candidates)
+        {
+            HttpConnectionOverHTTP2 connection = candidate.connection;
+            if (connection.isClosed() || connection.getSession().isClosed())
+            {
+                candidates.remove(candidate);
+                continue;
+            }
+            // Tags isolate connections, for example per client PROXY protocol
+            // information, so they must be the same to share a connection.
+            if (Objects.equals(candidate.tag, destination.getOrigin().getTag()) && candidate.x509.matches(destination.getHost()))
+            {
+                HttpConnectionOverHTTP2 coalesced = connection.coalesce(destination);
+                if (coalesced != null)
+                {
+                    int maxStreams = ((HTTP2Session)connection.getSession()).getMaxLocalStreams();
+                    if (maxStreams > 0 && destination instanceof HttpDestination.Multiplexed)
+                        ((HttpDestination.Multiplexed)destination).setMaxRequestsPerConnection(maxStreams);
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Coalesced {} for {} on {}", coalesced, destination, address);
+                    return coalesced;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isCoalescable(HttpDestination destination)
+    {
+        return destination.getProxy() == null && HttpScheme.HTTPS.is(destination.getScheme());
+    }
+
+    private void register(HttpDestination destination, HttpConnectionOverHTTP2 connection)
+    {
+        if (!isConnectionCoalescing() || !isCoalescable(destination))
+            return;
+        Session session = connection.getSession();
+        if (!(session instanceof HTTP2Session))
+            return;
+        EndPoint endPoint = ((HTTP2Session)session).getEndPoint();
+        if (!(endPoint instanceof SslConnection.DecryptedEndPoint))
+            return;
+        try
+        {
+            SSLSession sslSession = ((SslConnection.DecryptedEndPoint)endPoint).getSslConnection().getSSLEngine().getSession();
+            Certificate[] certificates = sslSession.getPeerCertificates();
+            if (certificates.length == 0 || !(certificates[0] instanceof X509Certificate))
+                return;
+            X509 x509 = new X509(null, (X509Certificate)certificates[0]);
+            SocketAddress address = endPoint.getRemoteAddress();
+            Queue<Coalescable> candidates = coalescables.computeIfAbsent(address, key -> new ConcurrentLinkedQueue<>());
+            candidates.removeIf(candidate -> candidate.connection.isClosed());
+            candidates.offer(new Coalescable(connection, x509, destination.getOrigin().getTag()));
+        }
+        catch (SSLPeerUnverifiedException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Not coalescable {}", connection, x);
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Could not parse peer certificate for {}", connection, x);
+        }
+    }
+
     protected void connect(InetSocketAddress address, ClientConnectionFactory factory, Session.Listener listener, Promise<Session> promise, Map<String, Object> context)
     {
         getHTTP2Client().connect(address, factory, listener, promise, context);
@@ -175,7 +303,9 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         @Override
         protected HttpConnectionOverHTTP2 newHttpConnection(HttpDestination destination, Session session)
         {
-            return HttpClientTransportOverHTTP2.this.newHttpConnection(destination, session);
+            HttpConnectionOverHTTP2 connection = HttpClientTransportOverHTTP2.this.newHttpConnection(destination, session);
+            register(destination, connection);
+            return connection;
         }
 
         @Override
@@ -184,4 +314,18 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
             HttpClientTransportOverHTTP2.this.onClose(connection, frame);
         }
     }
+
+    private static class Coalescable
+    {
+        private final HttpConnectionOverHTTP2 connection;
+        private final X509 x509;
+        private final Object tag;
+
+        private Coalescable(HttpConnectionOverHTTP2 connection, X509 x509, Object tag)
+        {
+            this.connection = connection;
+            this.x509 = x509;
+            this.tag = tag;
+        }
+    }
 }
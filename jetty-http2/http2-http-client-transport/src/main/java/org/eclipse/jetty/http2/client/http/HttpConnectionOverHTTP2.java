@@ -19,12 +19,14 @@
 package org.eclipse.jetty.http2.client.http;
 
 import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,13 +42,16 @@ import org.eclipse.jetty.client.SendFailure;
 import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.AbstractFlowControlStrategy;
 import org.eclipse.jetty.http2.CloseState;
 import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.FlowControlStrategy;
 import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.http2.IStream;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.frames.HeadersFrame;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.Sweeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,13 +64,25 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
     private final Queue<HttpChannelOverHTTP2> idleChannels = new ConcurrentLinkedQueue<>();
     private final AtomicBoolean closed = new AtomicBoolean();
     private final AtomicInteger sweeps = new AtomicInteger();
+    private final AutoLock lock = new AutoLock();
+    private final Set<HttpConnectionOverHTTP2> coalesced = ConcurrentHashMap.newKeySet();
     private final Session session;
+    private final HttpConnectionOverHTTP2 owner;
     private boolean recycleHttpChannels = true;
+    private volatile long stallSampleTime = System.nanoTime();
+    private volatile long stallSampleValue;
+    private volatile double stallRate;
 
     public HttpConnectionOverHTTP2(HttpDestination destination, Session session)
+    {
+        this(destination, session, null);
+    }
+
+    private HttpConnectionOverHTTP2(HttpDestination destination, Session session, HttpConnectionOverHTTP2 owner)
     {
         super(destination);
         this.session = session;
+        this.owner = owner;
     }
 
     public Session getSession()
@@ -73,6 +90,76 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
         return session;
     }
 
+    /**
+     * @return whether this connection shares the session of a connection opened for another destination
+     * @see #coalesce(HttpDestination)
+     */
+    public boolean isCoalesced()
+    {
+        return owner != null;
+    }
+
+    /**
+     * <p>Returns a connection for the given destination that shares the session of this connection.</p>
+     * <p>The returned connection does not own the session. The session is closed when
+     * this connection and all the connections coalesced onto it are closed, or when the
+     * session itself fails or is closed by the other peer, in which case all the
+     * connections are closed.</p>
+     *
+     * @param destination the destination of the returned connection
+     * @return a connection for the given destination, or null if this connection is closed
+     */
+    public HttpConnectionOverHTTP2 coalesce(HttpDestination destination)
+    {
+        if (owner != null)
+            return owner.coalesce(destination);
+        HttpConnectionOverHTTP2 connection = new HttpConnectionOverHTTP2(destination, session, this);
+        try (AutoLock l = lock.lock())
+        {
+            if (isClosed() || session.isClosed())
+                return null;
+            coalesced.add(connection);
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Coalesced {} for {}", connection, destination);
+        return connection;
+    }
+
+    private void onCoalescedClosed(HttpConnectionOverHTTP2 connection, Throwable failure)
+    {
+        boolean closeSession;
+        try (AutoLock l = lock.lock())
+        {
+            closeSession = coalesced.remove(connection) && isClosed() && coalesced.isEmpty();
+        }
+        // The last user of the session is gone.
+        if (closeSession)
+            session.close(ErrorCode.NO_ERROR.code, failure.getMessage(), Callback.NOOP);
+    }
+
+    @Override
+    public double getStallRate()
+    {
+        if (!(session instanceof HTTP2Session))
+            return 0;
+        FlowControlStrategy flowControl = ((HTTP2Session)session).getFlowControlStrategy();
+        if (!(flowControl instanceof AbstractFlowControlStrategy))
+            return 0;
+        // Sample the session stall time at most once per second.
+        // Concurrent samples may race, but the result is still a valid sample.
+        long now = System.nanoTime();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(now - stallSampleTime);
+        if (elapsed >= 1000)
+        {
+            long stallTime = ((AbstractFlowControlStrategy)flowControl).getSessionStallTime();
+            double rate = (double)(stallTime - stallSampleValue) / elapsed;
+            stallRate = Math.max(0, Math.min(1, rate));
+            stallSampleValue = stallTime;
+            stallSampleTime = now;
+        }
+        return stallRate;
+    }
+
     public boolean isRecycleHttpChannels()
     {
         return recycleHttpChannels;
@@ -180,6 +267,21 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
     @Override
     public boolean onIdleTimeout(long idleTimeout)
     {
+        // The session is not idle if it is used by coalesced connections.
+        for (HttpConnectionOverHTTP2 connection : coalesced)
+        {
+            if (!connection.activeChannels.isEmpty())
+                return false;
+        }
+        if (owner == null && isClosed())
+        {
+            // This connection was closed while the session was still used by
+            // coalesced connections, that are now idle as well.
+            TimeoutException failure = new TimeoutException("idle_timeout");
+            session.close(ErrorCode.NO_ERROR.code, failure.getMessage(), Callback.NOOP);
+            closeCoalesced(failure);
+            return false;
+        }
         boolean close = super.onIdleTimeout(idleTimeout);
         if (close)
             close(new TimeoutException("idle_timeout"));
@@ -200,7 +302,31 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
 
             abort(failure);
 
-            session.close(ErrorCode.NO_ERROR.code, failure.getMessage(), Callback.NOOP);
+            if (owner == null)
+            {
+                // Closing the connection of this destination must not close the
+                // connections of other destinations coalesced onto the session,
+                // unless the session itself is closed or failed.
+                boolean closeSession;
+                try (AutoLock l = lock.lock())
+                {
+                    closeSession = session.isClosed() || coalesced.isEmpty();
+                }
+                if (closeSession)
+                {
+                    session.close(ErrorCode.NO_ERROR.code, failure.getMessage(), Callback.NOOP);
+                    closeCoalesced(failure);
+                }
+                else if (LOG.isDebugEnabled())
+                {
+                    LOG.debug("Session in use by coalesced connections {}", this);
+                }
+            }
+            else
+            {
+                // The session is owned by another connection.
+                owner.onCoalescedClosed(this, failure);
+            }
 
             HttpChannel channel = idleChannels.poll();
             while (channel != null)
@@ -209,6 +335,26 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
                 channel = idleChannels.poll();
             }
         }
+        else if (owner == null && session.isClosed())
+        {
+            // The session was closed or failed after this connection,
+            // while it was still used by coalesced connections.
+            closeCoalesced(failure);
+        }
+    }
+
+    private void closeCoalesced(Throwable failure)
+    {
+        List<HttpConnectionOverHTTP2> connections;
+        try (AutoLock l = lock.lock())
+        {
+            connections = new ArrayList<>(coalesced);
+            coalesced.clear();
+        }
+        for (HttpConnectionOverHTTP2 connection : connections)
+        {
+            connection.close(failure);
+        }
     }
 
     @Override
@@ -247,10 +393,11 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
     @Override
     public String toString()
     {
-        return String.format("%s@%x(closed=%b)[%s]",
+        return String.format("%s@%x(closed=%b,coalesced=%b)[%s]",
             getClass().getSimpleName(),
             hashCode(),
             isClosed(),
+            isCoalesced(),
             session);
     }
 }
@@ -18,12 +18,18 @@
 
 package org.eclipse.jetty.http2.client.http;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http2.HTTP2Cipher;
@@ -39,6 +45,7 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.SocketAddressResolver;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.junit.jupiter.api.AfterEach;
@@ -51,6 +58,8 @@ public class DirectHTTP2OverTLSTest
     private Server server;
     private ServerConnector connector;
     private HttpClient client;
+    private String keyStorePath = "src/test/resources/keystore.p12";
+    private SocketAddressResolver resolver;
 
     private void start(Handler handler) throws Exception
     {
@@ -83,6 +92,8 @@ public class DirectHTTP2OverTLSTest
         HttpClientTransportOverHTTP2 transport = new HttpClientTransportOverHTTP2(new HTTP2Client(clientConnector));
         transport.setUseALPN(false);
         client = new HttpClient(transport);
+        if (resolver != null)
+            client.setSocketAddressResolver(resolver);
         client.start();
     }
 
@@ -112,7 +123,7 @@ public class DirectHTTP2OverTLSTest
 
     private void configureSslContextFactory(SslContextFactory sslContextFactory)
     {
-        sslContextFactory.setKeyStorePath("src/test/resources/keystore.p12");
+        sslContextFactory.setKeyStorePath(keyStorePath);
         sslContextFactory.setKeyStorePassword("storepwd");
         sslContextFactory.setUseCipherSuitesOrder(true);
         sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
@@ -139,4 +150,62 @@ public class DirectHTTP2OverTLSTest
 
         assertEquals(HttpStatus.OK_200, response.getStatus());
     }
+
+    @Test
+    public void testConnectionCoalescing() throws Exception
+    {
+        // The server certificate covers www.san.com and m.san.com.
+        keyStorePath = "src/test/resources/keystore_sni.p12";
+        // All the hosts resolve to the server address.
+        resolver = (host, port, promise) ->
+            promise.succeeded(List.of(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                baseRequest.setHandled(true);
+            }
+        });
+        HttpClientTransportOverHTTP2 transport = (HttpClientTransportOverHTTP2)client.getTransport();
+        transport.setConnectionCoalescing(true);
+
+        assertEquals(HttpStatus.OK_200, send("www.san.com", null).getStatus());
+        assertEquals(1, connector.getConnectedEndPoints().size());
+
+        // A different host covered by the certificate reuses the connection.
+        assertEquals(HttpStatus.OK_200, send("m.san.com", null).getStatus());
+        assertEquals(2, client.getDestinations().size());
+        assertEquals(1, connector.getConnectedEndPoints().size());
+
+        // A host covered by the certificate, but with a different tag, does not.
+        assertEquals(HttpStatus.OK_200, send("m.san.com", "tag").getStatus());
+        assertEquals(3, client.getDestinations().size());
+        assertEquals(2, connector.getConnectedEndPoints().size());
+
+        // A host not covered by the certificate does not.
+        assertEquals(HttpStatus.OK_200, send("www.example.com", null).getStatus());
+        assertEquals(4, client.getDestinations().size());
+        assertEquals(3, connector.getConnectedEndPoints().size());
+
+        // Closing the destination that owns the shared session
+        // does not close the connection of the coalesced destination.
+        for (Destination destination : client.getDestinations())
+        {
+            Origin origin = ((HttpDestination)destination).getOrigin();
+            if ("www.san.com".equals(origin.getAddress().getHost()))
+                ((HttpDestination)destination).close();
+        }
+        assertEquals(HttpStatus.OK_200, send("m.san.com", null).getStatus());
+        assertEquals(3, connector.getConnectedEndPoints().size());
+    }
+
+    private ContentResponse send(String host, Object tag) throws Exception
+    {
+        return client.newRequest(host, connector.getLocalPort())
+            .scheme(HttpScheme.HTTPS.asString())
+            .tag(tag)
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+    }
 }
@@ -32,6 +32,7 @@ import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
 import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.ISession;
+import org.eclipse.jetty.http2.StreamScheduler;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.api.server.ServerSessionListener;
 import org.eclipse.jetty.http2.frames.Frame;
@@ -67,6 +68,8 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private boolean connectProtocolEnabled = true;
     private RateControl.Factory rateControlFactory = new WindowRateControl.Factory(20);
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
+    private StreamScheduler.Factory streamSchedulerFactory = () -> StreamScheduler.FIFO;
+    private StreamAdmissionControl streamAdmissionControl;
     private long streamIdleTimeout;
     private boolean useInputDirectByteBuffers;
     private boolean useOutputDirectByteBuffers;
@@ -157,6 +160,47 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.flowControlStrategyFactory = flowControlStrategyFactory;
     }
 
+    /**
+     * @return the factory of the schedulers of the frames written by sessions
+     */
+    public StreamScheduler.Factory getStreamSchedulerFactory()
+    {
+        return streamSchedulerFactory;
+    }
+
+    /**
+     * <p>Sets the factory of the schedulers of the frames written by sessions.</p>
+     * <p>Use {@code PriorityStreamScheduler::new} to send the content of
+     * responses according to the priority requested by clients.</p>
+     *
+     * @param streamSchedulerFactory the factory of the schedulers of the frames written by sessions
+     */
+    public void setStreamSchedulerFactory(StreamScheduler.Factory streamSchedulerFactory)
+    {
+        this.streamSchedulerFactory = streamSchedulerFactory;
+    }
+
+    /**
+     * @return the server-wide admission control of streams, or null if there is no server-wide limit
+     */
+    public StreamAdmissionControl getStreamAdmissionControl()
+    {
+        return streamAdmissionControl;
+    }
+
+    /**
+     * <p>Sets the server-wide admission control of streams.</p>
+     * <p>The same instance should be set on the connection factories of all the
+     * connectors, so that the limit applies to all the HTTP/2 sessions of the server.</p>
+     *
+     * @param streamAdmissionControl the server-wide admission control of streams
+     */
+    public void setStreamAdmissionControl(StreamAdmissionControl streamAdmissionControl)
+    {
+        updateBean(this.streamAdmissionControl, streamAdmissionControl);
+        this.streamAdmissionControl = streamAdmissionControl;
+    }
+
     @ManagedAttribute("The stream idle timeout in milliseconds")
     public long getStreamIdleTimeout()
     {
@@ -279,6 +323,8 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         session.setInitialSessionRecvWindow(getInitialSessionRecvWindow());
         session.setWriteThreshold(getHttpConfiguration().getOutputBufferSize());
         session.setConnectProtocolEnabled(isConnectProtocolEnabled());
+        session.setStreamScheduler(getStreamSchedulerFactory().newStreamScheduler());
+        session.setStreamAdmissionControl(getStreamAdmissionControl());
 
         ServerParser parser = newServerParser(connector, session, getRateControlFactory().newRateControl(endPoint));
         parser.setMaxFrameLength(getMaxFrameLength());
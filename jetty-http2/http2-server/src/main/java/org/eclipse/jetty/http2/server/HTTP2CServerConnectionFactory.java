@@ -18,9 +18,12 @@
 
 package org.eclipse.jetty.http2.server;
 
+import java.nio.ByteBuffer;
+
 import org.eclipse.jetty.http.BadMessageException;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.MetaData.Request;
+import org.eclipse.jetty.http2.frames.PrefaceFrame;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.server.ConnectionFactory;
@@ -43,8 +46,13 @@ import org.slf4j.LoggerFactory;
  * is used to trigger a switch to an HTTP2 connection.    This approach
  * allows a single port to accept either HTTP/1 or HTTP/2 direct
  * connections.
+ * </p>
+ * <p>This factory is also a {@link ConnectionFactory.Detecting} that recognizes
+ * the HTTP/2 connection preface, so that it can be used in a
+ * {@link org.eclipse.jetty.server.DetectorConnectionFactory} to install the HTTP/2
+ * connection directly, rather than via the "PRI * HTTP/2.0" HTTP/1 request.</p>
  */
-public class HTTP2CServerConnectionFactory extends HTTP2ServerConnectionFactory implements ConnectionFactory.Upgrading
+public class HTTP2CServerConnectionFactory extends HTTP2ServerConnectionFactory implements ConnectionFactory.Upgrading, ConnectionFactory.Detecting
 {
     private static final Logger LOG = LoggerFactory.getLogger(HTTP2CServerConnectionFactory.class);
 
@@ -70,6 +78,19 @@ public class HTTP2CServerConnectionFactory extends HTTP2ServerConnectionFactory
         return false;
     }
 
+    @Override
+    public Detection detect(ByteBuffer buffer)
+    {
+        byte[] preface = PrefaceFrame.PREFACE_BYTES;
+        int length = Math.min(buffer.remaining(), preface.length);
+        for (int i = 0; i < length; ++i)
+        {
+            if (buffer.get(buffer.position() + i) != preface[i])
+                return Detection.NOT_RECOGNIZED;
+        }
+        return length == preface.length ? Detection.RECOGNIZED : Detection.NEED_MORE_BYTES;
+    }
+
     @Override
     public Connection upgradeConnection(Connector connector, EndPoint endPoint, Request request, HttpFields.Mutable response101) throws BadMessageException
     {
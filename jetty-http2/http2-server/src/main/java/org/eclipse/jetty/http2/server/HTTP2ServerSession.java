@@ -48,6 +48,7 @@ public class HTTP2ServerSession extends HTTP2Session implements ServerParser.Lis
     private static final Logger LOG = LoggerFactory.getLogger(HTTP2ServerSession.class);
 
     private final ServerSessionListener listener;
+    private StreamAdmissionControl streamAdmissionControl;
 
     public HTTP2ServerSession(Scheduler scheduler, EndPoint endPoint, Generator generator, ServerSessionListener listener, FlowControlStrategy flowControl)
     {
@@ -55,6 +56,29 @@ public class HTTP2ServerSession extends HTTP2Session implements ServerParser.Lis
         this.listener = listener;
     }
 
+    /**
+     * @return the server-wide admission control of streams, or null if streams are admitted
+     * only according to {@link #getMaxRemoteStreams() max remote streams}
+     */
+    public StreamAdmissionControl getStreamAdmissionControl()
+    {
+        return streamAdmissionControl;
+    }
+
+    public void setStreamAdmissionControl(StreamAdmissionControl streamAdmissionControl)
+    {
+        this.streamAdmissionControl = streamAdmissionControl;
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        StreamAdmissionControl admissionControl = getStreamAdmissionControl();
+        if (admissionControl != null)
+            admissionControl.unregister(this);
+        super.doStop();
+    }
+
     @Override
     public void onPreface()
     {
@@ -76,6 +100,10 @@ public class HTTP2ServerSession extends HTTP2Session implements ServerParser.Lis
             frames(null, Callback.NOOP, settingsFrame, Frame.EMPTY_ARRAY);
         else
             frames(null, Callback.NOOP, settingsFrame, windowFrame);
+
+        StreamAdmissionControl admissionControl = getStreamAdmissionControl();
+        if (admissionControl != null)
+            admissionControl.register(this);
     }
 
     @Override
@@ -126,8 +154,9 @@ public class HTTP2ServerSession extends HTTP2Session implements ServerParser.Lis
                             }
 
                             stream.process(frame, Callback.NOOP);
-                            Stream.Listener listener = notifyNewStream(stream, frame);
-                            stream.setListener(listener);
+                            StreamAdmissionControl admissionControl = getStreamAdmissionControl();
+                            if (admissionControl == null || admissionControl.acquire(this, stream, frame))
+                                onStreamAdmitted(stream, frame);
                         }
                     }
                 }
@@ -158,6 +187,28 @@ public class HTTP2ServerSession extends HTTP2Session implements ServerParser.Lis
         }
     }
 
+    /**
+     * <p>Notifies the application of a new remote stream, once it has been
+     * admitted by the {@link StreamAdmissionControl}, if any.</p>
+     *
+     * @param stream the new remote stream
+     * @param frame the HEADERS frame that opened the stream
+     */
+    protected void onStreamAdmitted(IStream stream, HeadersFrame frame)
+    {
+        Stream.Listener listener = notifyNewStream(stream, frame);
+        stream.setListener(listener);
+    }
+
+    @Override
+    protected void onStreamClosed(IStream stream)
+    {
+        super.onStreamClosed(stream);
+        StreamAdmissionControl admissionControl = getStreamAdmissionControl();
+        if (admissionControl != null && !stream.isLocal())
+            admissionControl.release(this, stream);
+    }
+
     @Override
     public void onPushPromise(PushPromiseFrame frame)
     {
@@ -0,0 +1,566 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.IStream;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Server-wide admission control of HTTP/2 streams.</p>
+ * <p>{@code SETTINGS_MAX_CONCURRENT_STREAMS} limits the number of streams of a
+ * single session, but many sessions can still overload the server.
+ * A StreamAdmissionControl, shared by the
+ * {@link AbstractHTTP2ServerConnectionFactory connection factories} of a server,
+ * limits the number of streams that are handled at the same time by all sessions.</p>
+ * <p>Streams in excess of {@link #getMaxStreams() max streams} are queued and
+ * not notified to the application until a stream is closed; their DATA frames
+ * are retained, so that flow control eventually stops the client, and are
+ * delivered to the application once the stream is admitted.
+ * Queued streams are admitted in round-robin order across sessions, so that
+ * a session with many queued streams cannot starve the others.</p>
+ * <p>When streams are queued, every session is sent a SETTINGS frame that lowers
+ * {@code SETTINGS_MAX_CONCURRENT_STREAMS} to its fair share of max streams,
+ * so that clients slow down or open streams elsewhere.
+ * When the load drops to half of max streams, the original value is restored.
+ * While throttling, changes of the fair share caused by sessions being opened
+ * or closed are advertised at most once every
+ * {@link #getSettingsUpdateInterval() settings update interval}.</p>
+ */
+@ManagedObject("Server-wide HTTP/2 stream admission control")
+public class StreamAdmissionControl
+{
+    private static final Logger LOG = LoggerFactory.getLogger(StreamAdmissionControl.class);
+    private static final String ADMITTED_ATTRIBUTE = StreamAdmissionControl.class.getName() + ".admitted";
+
+    private final AutoLock lock = new AutoLock();
+    private final Map<HTTP2ServerSession, Entry> entries = new HashMap<>();
+    private final Deque<Entry> ready = new ArrayDeque<>();
+    private final CounterStatistic activeStats = new CounterStatistic();
+    private final CounterStatistic queuedStats = new CounterStatistic();
+    private final LongAdder settingsUpdates = new LongAdder();
+    private int maxStreams;
+    private int minStreamsPerSession = 1;
+    private long settingsUpdateInterval = 1000;
+    private long nextSettingsUpdate = System.nanoTime();
+    private int active;
+    private boolean throttled;
+
+    public StreamAdmissionControl()
+    {
+        this(1024);
+    }
+
+    public StreamAdmissionControl(@Name("maxStreams") int maxStreams)
+    {
+        setMaxStreams(maxStreams);
+    }
+
+    /**
+     * @return the max number of streams handled at the same time by all sessions
+     */
+    @ManagedAttribute("The max number of streams handled at the same time by all sessions")
+    public int getMaxStreams()
+    {
+        return maxStreams;
+    }
+
+    public void setMaxStreams(int maxStreams)
+    {
+        if (maxStreams <= 0)
+            throw new IllegalArgumentException("maxStreams must be >0");
+        this.maxStreams = maxStreams;
+    }
+
+    /**
+     * @return the min value of {@code SETTINGS_MAX_CONCURRENT_STREAMS} advertised to sessions under load
+     */
+    @ManagedAttribute("The min value of SETTINGS_MAX_CONCURRENT_STREAMS advertised to sessions under load")
+    public int getMinStreamsPerSession()
+    {
+        return minStreamsPerSession;
+    }
+
+    public void setMinStreamsPerSession(int minStreamsPerSession)
+    {
+        if (minStreamsPerSession <= 0)
+            throw new IllegalArgumentException("minStreamsPerSession must be >0");
+        this.minStreamsPerSession = minStreamsPerSession;
+    }
+
+    /**
+     * @return the min interval, in milliseconds, between SETTINGS frames sent to advertise a changed fair share
+     */
+    @ManagedAttribute("The min interval, in milliseconds, between SETTINGS frames sent to advertise a changed fair share")
+    public long getSettingsUpdateInterval()
+    {
+        return settingsUpdateInterval;
+    }
+
+    public void setSettingsUpdateInterval(long settingsUpdateInterval)
+    {
+        if (settingsUpdateInterval < 0)
+            throw new IllegalArgumentException("settingsUpdateInterval must be >=0");
+        this.settingsUpdateInterval = settingsUpdateInterval;
+    }
+
+    @ManagedAttribute("The number of streams currently admitted")
+    public int getActiveStreams()
+    {
+        return (int)activeStats.getCurrent();
+    }
+
+    @ManagedAttribute("The peak number of streams admitted at the same time")
+    public int getMaxActiveStreams()
+    {
+        return (int)activeStats.getMax();
+    }
+
+    @ManagedAttribute("The number of streams that have been admitted")
+    public long getAdmittedStreams()
+    {
+        return activeStats.getTotal();
+    }
+
+    @ManagedAttribute("The number of streams currently queued waiting for admission")
+    public int getQueuedStreams()
+    {
+        return (int)queuedStats.getCurrent();
+    }
+
+    @ManagedAttribute("The peak number of streams queued waiting for admission")
+    public int getMaxQueuedStreams()
+    {
+        return (int)queuedStats.getMax();
+    }
+
+    @ManagedAttribute("The number of streams that have been queued waiting for admission")
+    public long getTotalQueuedStreams()
+    {
+        return queuedStats.getTotal();
+    }
+
+    @ManagedAttribute("The number of SETTINGS frames sent to change SETTINGS_MAX_CONCURRENT_STREAMS")
+    public long getSettingsUpdates()
+    {
+        return settingsUpdates.longValue();
+    }
+
+    @ManagedAttribute("Whether sessions are advertised a lowered SETTINGS_MAX_CONCURRENT_STREAMS")
+    public boolean isThrottled()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return throttled;
+        }
+    }
+
+    @ManagedAttribute("The number of sessions")
+    public int getSessions()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return entries.size();
+        }
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            activeStats.reset(active);
+            queuedStats.reset(queuedStats.getCurrent());
+            settingsUpdates.reset();
+        }
+    }
+
+    /**
+     * <p>Registers a session, after it has sent its initial SETTINGS frame.</p>
+     *
+     * @param session the session to register
+     */
+    public void register(HTTP2ServerSession session)
+    {
+        List<Update> updates;
+        try (AutoLock l = lock.lock())
+        {
+            Entry entry = entries.get(session);
+            if (entry != null)
+                return;
+            entry = new Entry(session);
+            entries.put(session, entry);
+            updates = updateSettings(false);
+            // A new session is told its share right away.
+            if (throttled)
+                updates = update(entry, fairShare(), updates);
+        }
+        apply(Collections.emptyList(), updates);
+    }
+
+    /**
+     * <p>Unregisters a session, releasing the streams it holds.</p>
+     *
+     * @param session the session to unregister
+     */
+    public void unregister(HTTP2ServerSession session)
+    {
+        List<Pending> admitted = new ArrayList<>();
+        List<Update> updates;
+        try (AutoLock l = lock.lock())
+        {
+            Entry entry = entries.remove(session);
+            if (entry == null)
+                return;
+            ready.remove(entry);
+            queuedStats.add(-entry.queue.size());
+            entry.queue.clear();
+            active -= entry.admitted;
+            activeStats.add(-entry.admitted);
+            while (active < maxStreams)
+            {
+                Pending pending = poll();
+                if (pending == null)
+                    break;
+                admitted.add(pending);
+            }
+            boolean unthrottle = throttled && active <= maxStreams / 2 && ready.isEmpty();
+            if (unthrottle)
+                throttled = false;
+            updates = updateSettings(unthrottle);
+        }
+        apply(admitted, updates);
+    }
+
+    /**
+     * <p>Tries to admit a new remote stream.</p>
+     * <p>If the stream cannot be admitted, it is queued and
+     * {@link HTTP2ServerSession#onStreamAdmitted(IStream, HeadersFrame)}
+     * is called later, when the stream is admitted.</p>
+     * <p>Streams of sessions that are not registered, for example because they
+     * have already been unregistered, are refused with {@code REFUSED_STREAM}.</p>
+     *
+     * @param session the session of the stream
+     * @param stream the new remote stream
+     * @param frame the HEADERS frame that opened the stream
+     * @return whether the stream has been admitted
+     */
+    public boolean acquire(HTTP2ServerSession session, IStream stream, HeadersFrame frame)
+    {
+        boolean refused = false;
+        List<Update> updates = Collections.emptyList();
+        try (AutoLock l = lock.lock())
+        {
+            Entry entry = entries.get(session);
+            if (entry == null)
+            {
+                refused = true;
+            }
+            else if (active < maxStreams && ready.isEmpty())
+            {
+                admit(entry, stream);
+                return true;
+            }
+            else
+            {
+                PendingListener listener = new PendingListener();
+                stream.setListener(listener);
+                entry.queue.offer(new Pending(entry, stream, frame, listener));
+                if (entry.queue.size() == 1)
+                    ready.offer(entry);
+                queuedStats.increment();
+                boolean throttle = !throttled;
+                throttled = true;
+                updates = updateSettings(throttle);
+            }
+        }
+
+        if (refused)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Refused {} of unregistered {}", stream, session);
+            stream.reset(new ResetFrame(stream.getId(), ErrorCode.REFUSED_STREAM_ERROR.code), Callback.NOOP);
+            return false;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Queued {} {}", stream, this);
+        apply(Collections.emptyList(), updates);
+        return false;
+    }
+
+    /**
+     * <p>Releases a stream that has been closed, admitting a queued stream if any.</p>
+     *
+     * @param session the session of the stream
+     * @param stream the closed stream
+     */
+    public void release(HTTP2ServerSession session, IStream stream)
+    {
+        boolean wasAdmitted = stream.removeAttribute(ADMITTED_ATTRIBUTE) != null;
+        Pending pending = null;
+        List<Update> updates = Collections.emptyList();
+        try (AutoLock l = lock.lock())
+        {
+            Entry entry = entries.get(session);
+            if (entry == null)
+                return;
+            if (wasAdmitted)
+            {
+                --active;
+                --entry.admitted;
+                activeStats.decrement();
+                pending = poll();
+                if (throttled && active <= maxStreams / 2 && ready.isEmpty())
+                {
+                    throttled = false;
+                    updates = updateSettings(true);
+                }
+            }
+            else
+            {
+                // The stream was closed while queued, for example reset by the client.
+                for (Iterator<Pending> iterator = entry.queue.iterator(); iterator.hasNext();)
+                {
+                    if (iterator.next().stream == stream)
+                    {
+                        iterator.remove();
+                        queuedStats.decrement();
+                        if (entry.queue.isEmpty())
+                            ready.remove(entry);
+                        break;
+                    }
+                }
+            }
+        }
+        apply(pending == null ? Collections.emptyList() : Collections.singletonList(pending), updates);
+    }
+
+    private void admit(Entry entry, IStream stream)
+    {
+        assert lock.isHeldByCurrentThread();
+        ++active;
+        ++entry.admitted;
+        activeStats.increment();
+        stream.setAttribute(ADMITTED_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    private Pending poll()
+    {
+        assert lock.isHeldByCurrentThread();
+        // Round-robin across the sessions that have queued streams.
+        Entry entry = ready.poll();
+        if (entry == null)
+            return null;
+        Pending pending = entry.queue.poll();
+        if (!entry.queue.isEmpty())
+            ready.offer(entry);
+        queuedStats.decrement();
+        admit(entry, pending.stream);
+        return pending;
+    }
+
+    private int fairShare()
+    {
+        assert lock.isHeldByCurrentThread();
+        return Math.max(minStreamsPerSession, maxStreams / Math.max(1, entries.size()));
+    }
+
+    /**
+     * @param force whether to update the sessions regardless of the settings update interval,
+     * for example when throttling starts or stops
+     * @return the SETTINGS updates for the sessions whose advertised value changed
+     */
+    private List<Update> updateSettings(boolean force)
+    {
+        assert lock.isHeldByCurrentThread();
+        if (!force && !throttled)
+            return Collections.emptyList();
+        long now = System.nanoTime();
+        if (!force && now - nextSettingsUpdate < 0)
+            return Collections.emptyList();
+        List<Update> updates = Collections.emptyList();
+        int fairShare = fairShare();
+        for (Entry entry : entries.values())
+        {
+            updates = update(entry, fairShare, updates);
+        }
+        if (!updates.isEmpty())
+            nextSettingsUpdate = now + TimeUnit.MILLISECONDS.toNanos(settingsUpdateInterval);
+        return updates;
+    }
+
+    private List<Update> update(Entry entry, int fairShare, List<Update> updates)
+    {
+        int target = throttled ? Math.min(entry.maxStreams, fairShare) : entry.maxStreams;
+        if (entry.advertised == target)
+            return updates;
+        entry.advertised = target;
+        if (updates.isEmpty())
+            updates = new ArrayList<>();
+        updates.add(new Update(entry.session, target));
+        return updates;
+    }
+
+    private void apply(List<Pending> admitted, List<Update> updates)
+    {
+        for (Update update : updates)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Advertising max concurrent streams {} to {}", update.maxStreams, update.session);
+            settingsUpdates.increment();
+            Map<Integer, Integer> settings = Collections.singletonMap(SettingsFrame.MAX_CONCURRENT_STREAMS, update.maxStreams);
+            update.session.settings(new SettingsFrame(settings, false), Callback.NOOP);
+        }
+        for (Pending pending : admitted)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Admitted {} {}", pending.stream, this);
+            pending.entry.session.onStreamAdmitted(pending.stream, pending.frame);
+            pending.listener.onAdmitted(pending.stream);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return String.format("%s@%x[s=%d/%d,q=%d,sessions=%d,throttled=%b]", getClass().getSimpleName(), hashCode(), active, maxStreams, queuedStats.getCurrent(), entries.size(), throttled);
+        }
+    }
+
+    private static class Entry
+    {
+        private final Deque<Pending> queue = new ArrayDeque<>();
+        private final HTTP2ServerSession session;
+        private final int maxStreams;
+        private int advertised;
+        private int admitted;
+
+        private Entry(HTTP2ServerSession session)
+        {
+            this.session = session;
+            int maxRemoteStreams = session.getMaxRemoteStreams();
+            this.maxStreams = maxRemoteStreams < 0 ? Integer.MAX_VALUE : maxRemoteStreams;
+            this.advertised = maxStreams;
+        }
+    }
+
+    private static class Pending
+    {
+        private final Entry entry;
+        private final IStream stream;
+        private final HeadersFrame frame;
+        private final PendingListener listener;
+
+        private Pending(Entry entry, IStream stream, HeadersFrame frame, PendingListener listener)
+        {
+            this.entry = entry;
+            this.stream = stream;
+            this.frame = frame;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * <p>The listener of a queued stream, that retains DATA frames until the stream
+     * is admitted, and then forwards the {@link Stream.Listener#onBeforeData(Stream)}
+     * event, if it happened while queued, to the listener of the application.</p>
+     */
+    private static class PendingListener extends Stream.Listener.Adapter
+    {
+        private final AtomicReference<PendingState> state = new AtomicReference<>(PendingState.QUEUED);
+
+        @Override
+        public void onBeforeData(Stream stream)
+        {
+            // Retain DATA frames until the stream is admitted.
+            if (state.compareAndSet(PendingState.QUEUED, PendingState.DATA))
+                return;
+            // The stream has been admitted concurrently.
+            notifyBeforeData((IStream)stream);
+        }
+
+        private void onAdmitted(IStream stream)
+        {
+            if (state.getAndSet(PendingState.ADMITTED) == PendingState.DATA)
+                notifyBeforeData(stream);
+        }
+
+        private void notifyBeforeData(IStream stream)
+        {
+            Stream.Listener listener = stream.getListener();
+            if (listener == null)
+            {
+                stream.demand(1);
+                return;
+            }
+            try
+            {
+                listener.onBeforeData(stream);
+            }
+            catch (Throwable x)
+            {
+                LOG.info("Failure while notifying listener " + listener, x);
+            }
+        }
+    }
+
+    private enum PendingState
+    {
+        QUEUED, DATA, ADMITTED
+    }
+
+    private static class Update
+    {
+        private final HTTP2ServerSession session;
+        private final int maxStreams;
+
+        private Update(HTTP2ServerSession session, int maxStreams)
+        {
+            this.session = session;
+            this.maxStreams = maxStreams;
+        }
+    }
+}
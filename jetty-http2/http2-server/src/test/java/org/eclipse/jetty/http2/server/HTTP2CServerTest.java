@@ -48,6 +48,7 @@ import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.DetectorConnectionFactory;
 import org.eclipse.jetty.server.HttpConnection;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.ServerConnector;
@@ -289,6 +290,83 @@ public class HTTP2CServerTest extends AbstractServerTest
         }
     }
 
+    @Test
+    public void testHTTP20DirectWithDetector() throws Exception
+    {
+        // Detect the HTTP/2 preface, falling back to HTTP/1.1.
+        connector.stop();
+        HTTP2CServerConnectionFactory h2c = connector.getConnectionFactory(HTTP2CServerConnectionFactory.class);
+        DetectorConnectionFactory detector = new DetectorConnectionFactory(h2c);
+        connector.addFirstConnectionFactory(detector);
+        connector.start();
+
+        CountDownLatch latch = new CountDownLatch(3);
+        byteBufferPool = new MappedByteBufferPool();
+        generator = new Generator(byteBufferPool);
+
+        ByteBufferPool.Lease lease = new ByteBufferPool.Lease(byteBufferPool);
+        generator.control(lease, new PrefaceFrame());
+        generator.control(lease, new SettingsFrame(new HashMap<>(), false));
+        MetaData.Request metaData = new MetaData.Request("GET", HttpScheme.HTTP.asString(), new HostPortHttpField("localhost:" + connector.getLocalPort()), "/test", HttpVersion.HTTP_2, HttpFields.EMPTY, -1);
+        generator.control(lease, new HeadersFrame(1, metaData, null, true));
+
+        try (Socket client = new Socket("localhost", connector.getLocalPort()))
+        {
+            OutputStream output = client.getOutputStream();
+            for (ByteBuffer buffer : lease.getByteBuffers())
+            {
+                output.write(BufferUtil.toArray(buffer));
+            }
+
+            AtomicReference<HeadersFrame> headersRef = new AtomicReference<>();
+            Parser parser = new Parser(byteBufferPool, new Parser.Listener.Adapter()
+            {
+                @Override
+                public void onSettings(SettingsFrame frame)
+                {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onHeaders(HeadersFrame frame)
+                {
+                    headersRef.set(frame);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onData(DataFrame frame)
+                {
+                    latch.countDown();
+                }
+            }, 4096, 8192);
+            parser.init(UnaryOperator.identity());
+
+            parseResponse(client, parser);
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            MetaData.Response response = (MetaData.Response)headersRef.get().getMetaData();
+            assertEquals(200, response.getStatus());
+        }
+
+        try (Socket client = new Socket("localhost", connector.getLocalPort()))
+        {
+            OutputStream output = client.getOutputStream();
+            output.write(("" +
+                "GET /one HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Connection: close\r\n" +
+                "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            output.flush();
+
+            InputStream input = client.getInputStream();
+            assertThat(IO.toString(input), containsString("HTTP/1.1 200 OK"));
+        }
+
+        assertEquals(1L, detector.getDetections().get(h2c.getProtocol()));
+        assertEquals(1L, detector.getNotRecognized());
+    }
+
     @Test
     public void testHTTP20DirectWithoutH2C() throws Exception
     {
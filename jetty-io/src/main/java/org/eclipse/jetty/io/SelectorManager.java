@@ -41,9 +41,12 @@ import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.Container;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.thread.ExecutionStrategy;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.util.thread.ThreadPoolBudget;
+import org.eclipse.jetty.util.thread.strategy.AdaptiveExecutionStrategy;
+import org.eclipse.jetty.util.thread.strategy.EatWhatYouKill;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +70,7 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
     private final IntUnaryOperator _selectorIndexUpdate;
     private final List<AcceptListener> _acceptListeners = new ArrayList<>();
     private long _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private boolean _adaptiveExecutionStrategy;
     private ThreadPoolBudget.Lease _lease;
 
     private static int defaultSelectors(Executor executor)
@@ -134,6 +138,28 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         _connectTimeout = milliseconds;
     }
 
+    /**
+     * @return whether the selectors use an {@link AdaptiveExecutionStrategy}
+     * @see #setAdaptiveExecutionStrategy(boolean)
+     */
+    @ManagedAttribute("Whether the selectors use an adaptive execution strategy")
+    public boolean isAdaptiveExecutionStrategy()
+    {
+        return _adaptiveExecutionStrategy;
+    }
+
+    /**
+     * <p>Sets whether the selectors use an {@link AdaptiveExecutionStrategy},
+     * rather than an {@link EatWhatYouKill} execution strategy.</p>
+     * <p>This property must be set before this SelectorManager is started.</p>
+     *
+     * @param adaptiveExecutionStrategy whether the selectors use an adaptive execution strategy
+     */
+    public void setAdaptiveExecutionStrategy(boolean adaptiveExecutionStrategy)
+    {
+        _adaptiveExecutionStrategy = adaptiveExecutionStrategy;
+    }
+
     /**
      * Executes the given task in a different thread.
      *
@@ -254,6 +280,21 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         return new ManagedSelector(this, id);
     }
 
+    /**
+     * <p>Factory method for the {@link ExecutionStrategy} used by a {@link ManagedSelector}
+     * to run the tasks produced by the select loop.</p>
+     *
+     * @param producer the producer of tasks
+     * @param executor the executor to run tasks
+     * @return a new {@link ExecutionStrategy}
+     */
+    protected ExecutionStrategy newExecutionStrategy(ExecutionStrategy.Producer producer, Executor executor)
+    {
+        if (isAdaptiveExecutionStrategy())
+            return new AdaptiveExecutionStrategy(producer, executor);
+        return new EatWhatYouKill(producer, executor);
+    }
+
     protected Selector newSelector() throws IOException
     {
         return Selector.open();
@@ -34,4 +34,7 @@ module org.eclipse.jetty.server
     requires static java.naming;
     // Only required if using JMX.
     requires static org.eclipse.jetty.jmx;
+    // Only required if using AdaptiveCompressionLevel.
+    requires static java.management;
+    requires static jdk.management;
 }
@@ -0,0 +1,281 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>The policy that decides which entries of a {@link CachedContentFactory} are evicted
+ * when the cache exceeds its limits, and whether new entries are admitted into a full cache.</p>
+ * <p>All the operations of an eviction policy are expected to run in constant time,
+ * and are invoked by the {@link CachedContentFactory} while holding its lock, so
+ * implementations do not need to be thread-safe.</p>
+ * <p>Accesses to cached entries are buffered without locking and notified in batches,
+ * so they may be notified after the access happened, and some of them may be dropped
+ * when many threads access the cache concurrently.</p>
+ *
+ * @see CachedContentFactory#setEvictionPolicy(CachedContentEvictionPolicy)
+ */
+public interface CachedContentEvictionPolicy
+{
+    /**
+     * <p>Records a lookup of the given key, whether or not it is cached.</p>
+     *
+     * @param key the key looked up
+     * @param cached whether the key is cached
+     */
+    void onAccess(String key, boolean cached);
+
+    /**
+     * @param key the key added to the cache
+     */
+    void onAdded(String key);
+
+    /**
+     * @param key the key removed from the cache
+     */
+    void onRemoved(String key);
+
+    /**
+     * <p>Chooses the next entry to evict, and stops tracking it.</p>
+     *
+     * @return the key to evict, or null if no key is tracked
+     */
+    String evict();
+
+    /**
+     * <p>Decides whether a key should be admitted into a full cache, at the cost of
+     * evicting another entry.</p>
+     *
+     * @param key the key that is not cached
+     * @return whether the key should be cached
+     */
+    default boolean admit(String key)
+    {
+        return true;
+    }
+
+    /**
+     * <p>The least recently used entries are evicted first, and all entries are admitted.</p>
+     */
+    class LRU implements CachedContentEvictionPolicy
+    {
+        private final Map<String, Boolean> _entries = new LinkedHashMap<>(16, 0.75F, true);
+
+        @Override
+        public void onAccess(String key, boolean cached)
+        {
+            if (cached)
+                _entries.get(key);
+        }
+
+        @Override
+        public void onAdded(String key)
+        {
+            _entries.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        public void onRemoved(String key)
+        {
+            _entries.remove(key);
+        }
+
+        @Override
+        public String evict()
+        {
+            return removeEldest(_entries);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{size=%d}", getClass().getSimpleName(), hashCode(), _entries.size());
+        }
+    }
+
+    /**
+     * <p>A segmented LRU eviction policy with TinyLFU admission.</p>
+     * <p>New entries are added to a probation segment, and are promoted to a protected segment
+     * when they are accessed again; entries are evicted from the probation segment first.
+     * The frequency of access of all the keys, cached or not, is estimated with a count-min sketch,
+     * whose counters are periodically halved so that the estimation follows changes in popularity.
+     * A key is only admitted into a full cache if it is accessed more frequently than the entry that
+     * would be evicted to make room for it, so that content that is accessed only once does not
+     * evict popular content.</p>
+     */
+    class TinyLFU implements CachedContentEvictionPolicy
+    {
+        private static final int[] SEEDS = {0x97CB3127, 0xB9E9F5C5, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final Map<String, Boolean> _probation = new LinkedHashMap<>();
+        private final Map<String, Boolean> _protected = new LinkedHashMap<>();
+        private final int _maxProtected;
+        private final byte[] _sketch;
+        private final int _sampleSize;
+        private int _additions;
+
+        /**
+         * @param maxEntries the expected maximum number of cached entries
+         */
+        public TinyLFU(int maxEntries)
+        {
+            if (maxEntries <= 0)
+                throw new IllegalArgumentException("maxEntries must be >0");
+            _maxProtected = Math.max(1, maxEntries * 4 / 5);
+            // Four counters per entry keep the estimation errors low.
+            int length = 1024;
+            while (length < maxEntries * 4L && length < (1 << 26))
+            {
+                length <<= 1;
+            }
+            _sketch = new byte[length];
+            _sampleSize = 10 * maxEntries;
+        }
+
+        @Override
+        public void onAccess(String key, boolean cached)
+        {
+            increment(key);
+            if (!cached)
+                return;
+
+            if (_probation.remove(key) != null)
+            {
+                _protected.put(key, Boolean.TRUE);
+                // Demote the least recently used protected entry.
+                if (_protected.size() > _maxProtected)
+                    _probation.put(removeEldest(_protected), Boolean.TRUE);
+            }
+            else if (_protected.remove(key) != null)
+            {
+                _protected.put(key, Boolean.TRUE);
+            }
+        }
+
+        @Override
+        public void onAdded(String key)
+        {
+            _probation.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        public void onRemoved(String key)
+        {
+            if (_probation.remove(key) == null)
+                _protected.remove(key);
+        }
+
+        @Override
+        public String evict()
+        {
+            String key = removeEldest(_probation);
+            return key != null ? key : removeEldest(_protected);
+        }
+
+        @Override
+        public boolean admit(String key)
+        {
+            String victim = eldest(_probation);
+            if (victim == null)
+                victim = eldest(_protected);
+            return victim == null || frequency(key) > frequency(victim);
+        }
+
+        /**
+         * @param key the key
+         * @return the estimated number of recent accesses of the key
+         */
+        public int frequency(String key)
+        {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int seed : SEEDS)
+            {
+                frequency = Math.min(frequency, _sketch[indexOf(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private void increment(String key)
+        {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int seed : SEEDS)
+            {
+                int index = indexOf(hash, seed);
+                // 4 bits counters are enough to compare frequencies.
+                if (_sketch[index] < 15)
+                {
+                    _sketch[index]++;
+                    added = true;
+                }
+            }
+
+            // Age all the counters, so that old popularity fades away.
+            if (added && ++_additions >= _sampleSize)
+            {
+                for (int i = 0; i < _sketch.length; ++i)
+                {
+                    _sketch[i] >>= 1;
+                }
+                _additions /= 2;
+            }
+        }
+
+        private int indexOf(int hash, int seed)
+        {
+            int h = (hash ^ seed) * 0x9E3779B9;
+            h ^= h >>> 16;
+            return h & (_sketch.length - 1);
+        }
+
+        private static int spread(int hash)
+        {
+            hash ^= hash >>> 17;
+            hash *= 0xED5AD4BB;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+
+        private static String eldest(Map<String, Boolean> entries)
+        {
+            Iterator<String> iterator = entries.keySet().iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{probation=%d,protected=%d/%d}", getClass().getSimpleName(), hashCode(), _probation.size(), _protected.size(), _maxProtected);
+        }
+    }
+
+    private static String removeEldest(Map<String, Boolean> entries)
+    {
+        Iterator<String> iterator = entries.keySet().iterator();
+        if (!iterator.hasNext())
+            return null;
+        String key = iterator.next();
+        iterator.remove();
+        return key;
+    }
+}
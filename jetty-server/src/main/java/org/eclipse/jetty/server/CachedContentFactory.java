@@ -19,19 +19,37 @@
 package org.eclipse.jetty.server;
 
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.DateGenerator;
@@ -44,8 +62,16 @@ import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.PrecompressedHttpContent;
 import org.eclipse.jetty.http.ResourceHttpContent;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.PathWatcher;
+import org.eclipse.jetty.util.ProcessorUtils;
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.resource.PathResource;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,8 +79,11 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(CachedContentFactory.class);
     private static final Map<CompressedContentFormat, CachedPrecompressedHttpContent> NO_PRECOMPRESSED = Collections.unmodifiableMap(Collections.emptyMap());
+    private static final int PRECOMPRESSED_MAGIC = 0x4A505A31;
 
     private final ConcurrentMap<String, CachedHttpContent> _cache;
+    private final ConcurrentMap<Path, CachedHttpContent> _watched = new ConcurrentHashMap<>();
+    private final PathWatcher.Listener _pathWatcherListener = this::onPathWatchEvent;
     private final AtomicInteger _cachedSize;
     private final AtomicInteger _cachedFiles;
     private final ResourceFactory _factory;
@@ -63,10 +92,26 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     private final boolean _etags;
     private final CompressedContentFormat[] _precompressedFormats;
     private final boolean _useFileMappedBuffer;
+    private final AutoLock _lock = new AutoLock();
+    private final AccessBuffer _accesses = new AccessBuffer();
+    private final AtomicBoolean _draining = new AtomicBoolean();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _rejections = new LongAdder();
+    private CachedContentEvictionPolicy _evictionPolicy = new CachedContentEvictionPolicy.LRU();
+    private final Consumer<String> _onHit = key -> _evictionPolicy.onAccess(key, true);
 
     private int _maxCachedFileSize = 128 * 1024 * 1024;
     private int _maxCachedFiles = 2048;
     private int _maxCacheSize = 256 * 1024 * 1024;
+    private Executor _precompressExecutor;
+    private Path _precompressDirectory;
+    private String _precompressContext;
+    private MappedContentStore _mappedContentStore;
+    private int _minPrecompressSize = 1024;
+    private PathWatcher _pathWatcher;
+    private long _revalidationInterval;
 
     /**
      * Constructor.
@@ -145,19 +190,383 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return _useFileMappedBuffer;
     }
 
+    /**
+     * @return the shared store of memory mapped files, or null if files are not mapped via a shared store
+     */
+    public MappedContentStore getMappedContentStore()
+    {
+        return _mappedContentStore;
+    }
+
+    /**
+     * <p>Sets the shared store of memory mapped files.</p>
+     * <p>When set, the content of cached file resources is served from read-only views of
+     * memory mapped files that are shared with the other factories using the same store,
+     * rather than being copied into heap or direct buffers.</p>
+     *
+     * @param mappedContentStore the shared store of memory mapped files, or null to not use a shared store
+     */
+    public void setMappedContentStore(MappedContentStore mappedContentStore)
+    {
+        _mappedContentStore = mappedContentStore;
+    }
+
+    /**
+     * @return the policy deciding which entries are evicted and admitted
+     */
+    public CachedContentEvictionPolicy getEvictionPolicy()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _evictionPolicy;
+        }
+    }
+
+    /**
+     * <p>Sets the policy deciding which entries are evicted when the cache exceeds its limits,
+     * and whether new entries are admitted into a full cache.</p>
+     * <p>The default policy evicts the least recently used entries and admits all entries.</p>
+     *
+     * @param evictionPolicy the eviction policy
+     * @see CachedContentEvictionPolicy.TinyLFU
+     */
+    public void setEvictionPolicy(CachedContentEvictionPolicy evictionPolicy)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            drainAccesses();
+            for (String key : _cache.keySet())
+            {
+                evictionPolicy.onAdded(key);
+            }
+            _evictionPolicy = evictionPolicy;
+        }
+    }
+
+    /**
+     * @return the number of lookups of content served from this cache
+     */
+    public long getHits()
+    {
+        return _hits.longValue();
+    }
+
+    /**
+     * @return the number of lookups of content not found in this cache
+     */
+    public long getMisses()
+    {
+        return _misses.longValue();
+    }
+
+    /**
+     * @return the number of entries evicted because the cache exceeded its limits
+     */
+    public long getEvictions()
+    {
+        return _evictions.longValue();
+    }
+
+    /**
+     * @return the number of cacheable resources not admitted into a full cache by the eviction policy
+     */
+    public long getRejections()
+    {
+        return _rejections.longValue();
+    }
+
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+        _rejections.reset();
+    }
+
+    /**
+     * @return the executor used to compress cached resources, or null if only existing precompressed resources are served
+     */
+    public Executor getPrecompressExecutor()
+    {
+        return _precompressExecutor;
+    }
+
+    /**
+     * <p>Sets the executor used to compress cached resources in the background.</p>
+     * <p>When set, and the {@link CompressedContentFormat#GZIP gzip} format is one of the precompressed formats,
+     * cacheable resources that do not have a precompressed gzip resource are compressed once,
+     * off the request path, and the compressed bytes are cached alongside the resource and served
+     * as its precompressed variant.</p>
+     *
+     * @param executor the executor used to compress cached resources, or null to only serve existing precompressed resources
+     * @see #setPrecompressDirectory(Path)
+     */
+    public void setPrecompressExecutor(Executor executor)
+    {
+        _precompressExecutor = executor;
+    }
+
+    /**
+     * @return the directory where the compressed resources are persisted, or null if they are not persisted
+     */
+    public Path getPrecompressDirectory()
+    {
+        return _precompressDirectory;
+    }
+
+    /**
+     * <p>Sets the directory where resources compressed in the background are persisted.</p>
+     * <p>Compressed resources are stored in a subdirectory per context, in files named after a hash
+     * of the resource URI. The files record the last modified time and length of the resource, and
+     * a checksum of the compressed bytes, so that they are reused across restarts for as long as the
+     * resource is not modified, while modified resources and corrupted files are compressed again.</p>
+     *
+     * @param directory the directory where the compressed resources are persisted, or null to not persist them
+     */
+    public void setPrecompressDirectory(Path directory)
+    {
+        _precompressDirectory = directory;
+    }
+
+    /**
+     * @return the minimum length of a resource to be compressed in the background
+     */
+    public int getMinPrecompressSize()
+    {
+        return _minPrecompressSize;
+    }
+
+    /**
+     * @param minPrecompressSize the minimum length of a resource to be compressed in the background
+     */
+    public void setMinPrecompressSize(int minPrecompressSize)
+    {
+        _minPrecompressSize = minPrecompressSize;
+    }
+
+    /**
+     * @return the watcher notifying changes to the cached file resources, or null if changes are not watched
+     */
+    public PathWatcher getPathWatcher()
+    {
+        return _pathWatcher;
+    }
+
+    /**
+     * <p>Sets the watcher notifying changes to the cached file resources.</p>
+     * <p>Cached file resources that are under one of the paths watched by the watcher
+     * are invalidated when the watcher notifies that they have been modified or deleted,
+     * so that they are not checked against the file system when served from the cache.
+     * Changes are only seen once notified by the watcher, that is after its quiet time.</p>
+     * <p>Cached resources that are not watched, or all cached resources while the watcher
+     * is not running, are checked as per the {@link #setRevalidationInterval(long) revalidation interval}.
+     * Watched resources are also checked as per a positive revalidation interval, in case the watcher
+     * misses a change, and they are all invalidated when the watcher notifies an unknown event,
+     * such as an overflow of its events.</p>
+     * <p>The lifecycle of the watcher is not managed by this factory.</p>
+     *
+     * @param pathWatcher the watcher notifying changes to the cached file resources, or null to not watch changes
+     */
+    public void setPathWatcher(PathWatcher pathWatcher)
+    {
+        if (_pathWatcher != null)
+            _pathWatcher.removeListener(_pathWatcherListener);
+        _pathWatcher = pathWatcher;
+        if (_pathWatcher != null)
+            _pathWatcher.addListener(_pathWatcherListener);
+        // Entries already cached were not indexed against the new watcher.
+        flushCache();
+    }
+
+    /**
+     * @return the minimum time, in milliseconds, between two checks of a cached resource against the
+     * file system, or 0 if the resource is checked every time it is served from the cache
+     */
+    public long getRevalidationInterval()
+    {
+        return _revalidationInterval;
+    }
+
+    /**
+     * <p>Sets the minimum time between two checks of a cached resource against the file system.</p>
+     * <p>Within the interval, a modified resource may be served stale from the cache.
+     * A positive interval also applies to resources watched by a running {@link #setPathWatcher(PathWatcher) watcher},
+     * as a fallback in case the watcher misses a change, while an interval of 0 leaves them to the watcher only.</p>
+     *
+     * @param revalidationInterval the interval in milliseconds, or 0 to check the resource every time it is served from the cache
+     */
+    public void setRevalidationInterval(long revalidationInterval)
+    {
+        _revalidationInterval = revalidationInterval;
+    }
+
+    /**
+     * @return whether changes to the cached file resources are notified by a running watcher
+     */
+    public boolean isWatching()
+    {
+        PathWatcher pathWatcher = _pathWatcher;
+        return pathWatcher != null && pathWatcher.isRunning();
+    }
+
+    /**
+     * @return the number of cached resources whose changes are notified by the watcher
+     */
+    public int getWatchedFiles()
+    {
+        return _watched.size();
+    }
+
     public void flushCache()
     {
         while (_cache.size() > 0)
         {
-            for (String path : _cache.keySet())
+            for (CachedHttpContent content : _cache.values())
             {
-                CachedHttpContent content = _cache.remove(path);
-                if (content != null)
-                    content.invalidate();
+                removeFromCache(content);
             }
         }
     }
 
+    private CachedHttpContent addToCache(CachedHttpContent content)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            CachedHttpContent added = _cache.putIfAbsent(content.getKey(), content);
+            if (added != null)
+                return added;
+            _evictionPolicy.onAdded(content.getKey());
+            if (content._watchedPath != null)
+                _watched.put(content._watchedPath, content);
+        }
+
+        // The resource may have changed after it was loaded but before
+        // it was indexed, and the watcher event may have been missed.
+        if (content._watchedPath != null && !content.isUnchanged())
+            removeFromCache(content);
+        return null;
+    }
+
+    private boolean removeFromCache(CachedHttpContent content)
+    {
+        boolean removed;
+        try (AutoLock l = _lock.lock())
+        {
+            removed = _cache.remove(content.getKey(), content);
+            if (removed)
+            {
+                _evictionPolicy.onRemoved(content.getKey());
+                if (content._watchedPath != null)
+                    _watched.remove(content._watchedPath, content);
+            }
+        }
+        if (removed)
+            content.invalidate();
+        return removed;
+    }
+
+    private void onPathWatchEvent(PathWatcher.PathWatchEvent event)
+    {
+        Path path = event.getPath().toAbsolutePath();
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} {}", event.getType(), path);
+
+        // The watcher may have lost events, so nothing watched can be trusted.
+        if (event.getType() == PathWatcher.PathWatchEventType.UNKNOWN)
+        {
+            for (CachedHttpContent content : _watched.values())
+            {
+                removeFromCache(content);
+            }
+            return;
+        }
+
+        CachedHttpContent content = _watched.get(path);
+        if (content != null)
+            removeFromCache(content);
+
+        // A deleted or renamed directory is only notified for the directory itself.
+        if (event.getType() == PathWatcher.PathWatchEventType.DELETED)
+        {
+            for (Map.Entry<Path, CachedHttpContent> entry : _watched.entrySet())
+            {
+                if (entry.getKey().startsWith(path))
+                    removeFromCache(entry.getValue());
+            }
+        }
+    }
+
+    private Path watchedPath(Resource resource)
+    {
+        PathWatcher pathWatcher = _pathWatcher;
+        if (pathWatcher == null || !(resource instanceof PathResource))
+            return null;
+        Path path = ((PathResource)resource).getPath().toAbsolutePath();
+        for (PathWatcher.Config config : pathWatcher.getConfigs())
+        {
+            if (config.test(path))
+                return path;
+        }
+        return null;
+    }
+
+    private void onAccess(String key, boolean cached)
+    {
+        if (cached)
+        {
+            // Cache hits are too frequent to take the lock, so they are
+            // buffered and replayed to the eviction policy in batches.
+            if (_accesses.record(key))
+                tryDrainAccesses();
+            return;
+        }
+        try (AutoLock l = _lock.lock())
+        {
+            drainAccesses();
+            _evictionPolicy.onAccess(key, false);
+        }
+    }
+
+    private void tryDrainAccesses()
+    {
+        // Only one thread drains, the others carry on without waiting.
+        if (!_draining.compareAndSet(false, true))
+            return;
+        try (AutoLock l = _lock.lock())
+        {
+            drainAccesses();
+        }
+        finally
+        {
+            _draining.set(false);
+        }
+    }
+
+    private void drainAccesses()
+    {
+        assert _lock.isHeldByCurrentThread();
+        _accesses.drain(_onHit);
+    }
+
+    private boolean admit(String pathInContext, Resource resource)
+    {
+        if (_cachedFiles.get() < _maxCachedFiles && _cachedSize.get() + resource.length() <= _maxCacheSize)
+            return true;
+        boolean admitted;
+        try (AutoLock l = _lock.lock())
+        {
+            drainAccesses();
+            admitted = _evictionPolicy.admit(pathInContext);
+        }
+        if (!admitted)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Not admitted {}", pathInContext);
+            _rejections.increment();
+        }
+        return admitted;
+    }
+
     /**
      * <p>Returns an entry from the cache, or creates a new one.</p>
      *
@@ -176,7 +585,12 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         // Is the content in this cache?
         CachedHttpContent content = _cache.get(pathInContext);
         if (content != null && (content).isValid())
+        {
+            _hits.increment();
             return content;
+        }
+        _misses.increment();
+        onAccess(pathInContext, false);
 
         // try loading the content from our factory.
         Resource resource = _factory.getResource(pathInContext);
@@ -207,7 +621,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         long len = resource.length();
 
         // Will it fit in the cache?
-        return (len > 0 && (_useFileMappedBuffer || (len < _maxCachedFileSize && len < _maxCacheSize)));
+        return (len > 0 && (_useFileMappedBuffer || _mappedContentStore != null || (len < _maxCachedFileSize && len < _maxCacheSize)));
     }
 
     private HttpContent load(String pathInContext, Resource resource, int maxBufferSize)
@@ -218,8 +632,8 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         if (resource.isDirectory())
             return new ResourceHttpContent(resource, _mimeTypes.getMimeByExtension(resource.toString()), getMaxCachedFileSize());
 
-        // Will it fit in the cache?
-        if (isCacheable(resource))
+        // Will it fit in the cache, and is it worth evicting other content?
+        if (isCacheable(resource) && admit(pathInContext, resource))
         {
             CachedHttpContent content;
 
@@ -239,7 +653,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                             compressedResource.length() < resource.length())
                         {
                             compressedContent = new CachedHttpContent(compressedPathInContext, compressedResource, null);
-                            CachedHttpContent added = _cache.putIfAbsent(compressedPathInContext, compressedContent);
+                            CachedHttpContent added = addToCache(compressedContent);
                             if (added != null)
                             {
                                 compressedContent.invalidate();
@@ -256,12 +670,16 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content = new CachedHttpContent(pathInContext, resource, null);
 
             // Add it to the cache.
-            CachedHttpContent added = _cache.putIfAbsent(pathInContext, content);
+            CachedHttpContent added = addToCache(content);
             if (added != null)
             {
                 content.invalidate();
                 content = added;
             }
+            else
+            {
+                precompress(content);
+            }
 
             return content;
         }
@@ -293,34 +711,211 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return new ResourceHttpContent(resource, mt, maxBufferSize);
     }
 
-    private void shrinkCache()
+    private void precompress(CachedHttpContent content)
     {
-        // While we need to shrink
-        while (_cache.size() > 0 && (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize))
+        Executor executor = _precompressExecutor;
+        if (executor == null || !isPrecompressible(content))
+            return;
+
+        CompressedContentFormat format = null;
+        for (CompressedContentFormat f : _precompressedFormats)
         {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<CachedHttpContent> sorted = new TreeSet<>((c1, c2) ->
-            {
-                if (c1._lastAccessed < c2._lastAccessed)
-                    return -1;
+            if (CompressedContentFormat.GZIP.equals(f))
+                format = f;
+        }
+        if (format == null || content._precompressed.containsKey(format))
+            return;
+
+        CompressedContentFormat gzip = format;
+        try
+        {
+            executor.execute(() -> content.precompress(gzip));
+        }
+        catch (RejectedExecutionException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Unable to precompress {}", content, x);
+        }
+    }
+
+    /**
+     * @param content the cached content
+     * @return whether the content should be compressed in the background. The default implementation tests
+     * the content length and whether the mime type is textual.
+     * @see #setPrecompressExecutor(Executor)
+     */
+    protected boolean isPrecompressible(CachedHttpContent content)
+    {
+        if (content.getContentLengthValue() < _minPrecompressSize)
+            return false;
+        String contentType = content.getContentTypeValue();
+        if (contentType == null)
+            return false;
+        String mimeType = MimeTypes.getContentTypeWithoutCharset(contentType);
+        return mimeType.startsWith("text/") ||
+            mimeType.endsWith("/javascript") ||
+            mimeType.endsWith("json") ||
+            mimeType.endsWith("xml");
+    }
+
+    /**
+     * <p>Compresses a resource, reusing the persisted compressed resource if it exists.</p>
+     *
+     * @param content the cached content to compress
+     * @param format the compression format
+     * @return the compressed bytes
+     * @throws IOException if the resource cannot be compressed
+     */
+    protected byte[] compress(CachedHttpContent content, CompressedContentFormat format) throws IOException
+    {
+        Path path = getPrecompressedPath(content, format);
+        if (path != null)
+        {
+            byte[] persisted = load(content, path);
+            if (persisted != null)
+                return persisted;
+        }
+
+        ByteArrayOutputStream2 bytes = new ByteArrayOutputStream2((int)Math.min(content.getContentLengthValue() / 2, 1024 * 1024));
+        try (InputStream in = content.getResource().getInputStream();
+             OutputStream out = new GZIPOutputStream(bytes))
+        {
+            IO.copy(in, out);
+        }
+        byte[] compressed = bytes.toByteArray();
 
-                if (c1._lastAccessed > c2._lastAccessed)
-                    return 1;
+        if (path != null && compressed.length < content.getContentLengthValue())
+            store(content, path, compressed);
+        return compressed;
+    }
 
-                if (c1._contentLengthValue < c2._contentLengthValue)
-                    return -1;
+    private Path getPrecompressedPath(CachedHttpContent content, CompressedContentFormat format)
+    {
+        Path directory = _precompressDirectory;
+        if (directory == null)
+            return null;
+        // Contexts may share the directory, so each has its own subdirectory.
+        String context = _precompressContext;
+        if (context == null)
+        {
+            Resource base = _factory.getResource("/");
+            context = hash(base == null ? String.valueOf(_factory) : base.getURI().toString());
+            _precompressContext = context;
+        }
+        return directory.resolve(context).resolve(hash(content.getResource().getURI().toString()) + format._extension);
+    }
 
-                return c1._key.compareTo(c2._key);
-            });
-            sorted.addAll(_cache.values());
+    private static String hash(String value)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return StringUtil.asciiToLowerCase(TypeUtil.toHexString(digest.digest(value.getBytes(StandardCharsets.UTF_8))));
+        }
+        catch (NoSuchAlgorithmException x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
 
-            // Invalidate least recently used first
-            for (CachedHttpContent content : sorted)
+    /**
+     * @return the persisted compressed bytes, or null if they are missing, superseded by a modified resource, or corrupted
+     */
+    private byte[] load(CachedHttpContent content, Path path)
+    {
+        if (!Files.isRegularFile(path))
+            return null;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path)))
+        {
+            if (in.readInt() == PRECOMPRESSED_MAGIC &&
+                in.readUTF().equals(content.getResource().getURI().toString()) &&
+                in.readLong() == content._lastModifiedValue &&
+                in.readLong() == content.getContentLengthValue())
             {
-                if (_cachedFiles.get() <= _maxCachedFiles && _cachedSize.get() <= _maxCacheSize)
+                long checksum = in.readLong();
+                int length = in.readInt();
+                if (length >= 0 && length < content.getContentLengthValue())
+                {
+                    byte[] compressed = new byte[length];
+                    in.readFully(compressed);
+                    CRC32 crc = new CRC32();
+                    crc.update(compressed);
+                    if (crc.getValue() == checksum && in.read() < 0)
+                        return compressed;
+                }
+            }
+        }
+        catch (IOException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Unable to load {}", path, x);
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Deleting superseded or corrupted {} for {}", path, content);
+        try
+        {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Unable to delete {}", path, x);
+        }
+        return null;
+    }
+
+    private void store(CachedHttpContent content, Path path, byte[] compressed) throws IOException
+    {
+        Path directory = path.getParent();
+        Files.createDirectories(directory);
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        // Write to a temporary file first, so that concurrent readers never see a partial file,
+        // and replace the version of the file of a previous version of the resource, if any.
+        Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp)))
+            {
+                out.writeInt(PRECOMPRESSED_MAGIC);
+                out.writeUTF(content.getResource().getURI().toString());
+                out.writeLong(content._lastModifiedValue);
+                out.writeLong(content.getContentLengthValue());
+                out.writeLong(crc.getValue());
+                out.writeInt(compressed.length);
+                out.write(compressed);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void shrinkCache()
+    {
+        // While we need to shrink, evict the entries chosen by the policy.
+        while (_cache.size() > 0 && (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize))
+        {
+            CachedHttpContent content;
+            try (AutoLock l = _lock.lock())
+            {
+                drainAccesses();
+                String key = _evictionPolicy.evict();
+                if (key == null)
                     break;
-                if (content == _cache.remove(content.getKey()))
-                    content.invalidate();
+                content = _cache.remove(key);
+                if (content != null && content._watchedPath != null)
+                    _watched.remove(content._watchedPath, content);
+            }
+            if (content != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Evicted {}", content);
+                _evictions.increment();
+                content.invalidate();
             }
         }
     }
@@ -391,11 +986,14 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         private final HttpField _lastModified;
         private final long _lastModifiedValue;
         private final HttpField _etag;
+        private final Path _watchedPath;
+        private volatile long _nextCheck;
         private final Map<CompressedContentFormat, CachedPrecompressedHttpContent> _precompressed;
         private final AtomicReference<ByteBuffer> _indirectBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _directBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _mappedBuffer = new AtomicReference<>();
-        private volatile long _lastAccessed;
+        private final AtomicReference<MappedContentStore.Mapping> _mapping = new AtomicReference<>();
+        private final AtomicReference<CompressedHttpContent> _compressed = new AtomicReference<>();
 
         CachedHttpContent(String pathInContext, Resource resource, Map<CompressedContentFormat, CachedHttpContent> precompressedResources)
         {
@@ -418,10 +1016,11 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             if (_cachedFiles.incrementAndGet() > _maxCachedFiles)
                 shrinkCache();
 
-            _lastAccessed = System.currentTimeMillis();
-
             _etag = CachedContentFactory.this._etags ? new PreEncodedHttpField(HttpHeader.ETAG, resource.getWeakETag()) : null;
 
+            _watchedPath = pathInContext == null ? null : watchedPath(resource);
+            _nextCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_revalidationInterval);
+
             if (precompressedResources != null)
             {
                 _precompressed = new HashMap<>(precompressedResources.size());
@@ -466,15 +1065,29 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 
         boolean isValid()
         {
-            if (_lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length())
+            long interval = _revalidationInterval;
+            if (interval > 0 || _watchedPath == null || !isWatching())
             {
-                _lastAccessed = System.currentTimeMillis();
-                return true;
+                long now = interval > 0 ? System.nanoTime() : 0;
+                if (interval <= 0 || now - _nextCheck >= 0)
+                {
+                    if (!isUnchanged())
+                    {
+                        removeFromCache(this);
+                        return false;
+                    }
+                    if (interval > 0)
+                        _nextCheck = now + TimeUnit.MILLISECONDS.toNanos(interval);
+                }
             }
 
-            if (this == _cache.remove(_key))
-                invalidate();
-            return false;
+            onAccess(_key, true);
+            return true;
+        }
+
+        private boolean isUnchanged()
+        {
+            return _lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length();
         }
 
         protected void invalidate()
@@ -489,6 +1102,14 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 
             _mappedBuffer.getAndSet(null);
 
+            MappedContentStore.Mapping mapping = _mapping.getAndSet(null);
+            if (mapping != null)
+                mapping.release();
+
+            CompressedHttpContent compressed = _compressed.getAndSet(null);
+            if (compressed != null)
+                _cachedSize.addAndGet(-compressed._bytes.length);
+
             _cachedFiles.decrementAndGet();
             _resource.close();
         }
@@ -546,9 +1167,38 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         {
         }
 
+        private MappedContentStore.Mapping getMapping()
+        {
+            MappedContentStore store = _mappedContentStore;
+            if (store == null)
+                return null;
+
+            MappedContentStore.Mapping mapping = _mapping.get();
+            if (mapping == null)
+            {
+                mapping = store.acquire(_resource);
+                if (mapping == null)
+                    return null;
+                if (!_mapping.compareAndSet(null, mapping))
+                {
+                    mapping.release();
+                    return _mapping.get();
+                }
+                // Do not retain the mapping if this content was invalidated concurrently.
+                if (_cache.get(_key) != this && _mapping.compareAndSet(mapping, null))
+                    mapping.release();
+            }
+            return mapping;
+        }
+
         @Override
         public ByteBuffer getIndirectBuffer()
         {
+            // Serve mapped files rather than copying them into the heap.
+            MappedContentStore.Mapping mapping = getMapping();
+            if (mapping != null)
+                return mapping.getBuffer();
+
             if (_resource.length() > _maxCachedFileSize)
             {
                 return null;
@@ -582,6 +1232,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         @Override
         public ByteBuffer getDirectBuffer()
         {
+            MappedContentStore.Mapping mapping = getMapping();
+            if (mapping != null)
+                return mapping.getBuffer();
+
             ByteBuffer buffer = _mappedBuffer.get();
             if (buffer == null)
                 buffer = _directBuffer.get();
@@ -656,22 +1310,64 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             return String.format("CachedContent@%x{r=%s,e=%b,lm=%s,ct=%s,c=%d}", hashCode(), _resource, _resource.exists(), _lastModified, _contentType, _precompressed.size());
         }
 
+        private void precompress(CompressedContentFormat format)
+        {
+            try
+            {
+                byte[] bytes = compress(this, format);
+                if (bytes.length >= _contentLengthValue)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Not precompressing {}, compressed length {}", this, bytes.length);
+                    return;
+                }
+
+                // Only retain the compressed bytes if this content is still cached.
+                CompressedHttpContent compressed = new CompressedHttpContent(this, bytes, format);
+                int size = _cachedSize.addAndGet(bytes.length);
+                if (_cache.get(_key) == this && _compressed.compareAndSet(null, compressed))
+                {
+                    if (_cache.get(_key) == this)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Precompressed {} {}->{}", this, _contentLengthValue, bytes.length);
+                        if (size > _maxCacheSize)
+                            shrinkCache();
+                        return;
+                    }
+                    // Invalidated concurrently, whoever clears the reference accounts for the size.
+                    if (!_compressed.compareAndSet(compressed, null))
+                        return;
+                }
+                _cachedSize.addAndGet(-bytes.length);
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Unable to precompress {}", this, x);
+            }
+        }
+
         @Override
         public Map<CompressedContentFormat, ? extends HttpContent> getPrecompressedContents()
         {
-            if (_precompressed.size() == 0)
+            CompressedHttpContent compressed = _compressed.get();
+            Map<CompressedContentFormat, ? extends HttpContent> contents = compressed == null ? _precompressed : compressed._contents;
+            if (contents.isEmpty())
                 return null;
-            Map<CompressedContentFormat, CachedPrecompressedHttpContent> ret = _precompressed;
+            // Only allocate a new map in the rare case that a precompressed resource is no longer valid.
+            Map<CompressedContentFormat, HttpContent> ret = null;
             for (Map.Entry<CompressedContentFormat, CachedPrecompressedHttpContent> entry : _precompressed.entrySet())
             {
                 if (!entry.getValue().isValid())
                 {
-                    if (ret == _precompressed)
-                        ret = new HashMap<>(_precompressed);
+                    if (ret == null)
+                        ret = new HashMap<>(contents);
                     ret.remove(entry.getKey());
+                    if (compressed != null && compressed._format.equals(entry.getKey()))
+                        ret.put(compressed._format, compressed);
                 }
             }
-            return ret;
+            return ret == null ? contents : ret;
         }
     }
 
@@ -692,7 +1388,8 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 
         public boolean isValid()
         {
-            return _precompressedContent.isValid() && _content.isValid() && _content.getResource().lastModified() <= _precompressedContent.getResource().lastModified();
+            // Both contents are validated against their resource, so compare their cached values.
+            return _precompressedContent.isValid() && _content.isValid() && _content._lastModifiedValue <= _precompressedContent._lastModifiedValue;
         }
 
         @Override
@@ -717,4 +1414,233 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             return "Cached" + super.toString();
         }
     }
+
+    /**
+     * The compressed variant of a {@link CachedHttpContent}, compressed in the background and held in memory.
+     */
+    public class CompressedHttpContent implements HttpContent
+    {
+        private final CachedHttpContent _content;
+        private final byte[] _bytes;
+        private final CompressedContentFormat _format;
+        private final HttpField _contentLength;
+        private final HttpField _etag;
+        private final Map<CompressedContentFormat, HttpContent> _contents;
+
+        CompressedHttpContent(CachedHttpContent content, byte[] bytes, CompressedContentFormat format)
+        {
+            _content = content;
+            _bytes = bytes;
+            _format = format;
+            // The precompressed contents of the resource, built once as they do not change.
+            _contents = new HashMap<>(content._precompressed);
+            _contents.putIfAbsent(format, this);
+            _contentLength = new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH, Long.toString(bytes.length));
+            _etag = (CachedContentFactory.this._etags) ? new PreEncodedHttpField(HttpHeader.ETAG, content.getResource().getWeakETag(format._etag)) : null;
+        }
+
+        @Override
+        public HttpField getContentType()
+        {
+            return _content.getContentType();
+        }
+
+        @Override
+        public String getContentTypeValue()
+        {
+            return _content.getContentTypeValue();
+        }
+
+        @Override
+        public String getCharacterEncoding()
+        {
+            return _content.getCharacterEncoding();
+        }
+
+        @Override
+        public Type getMimeType()
+        {
+            return _content.getMimeType();
+        }
+
+        @Override
+        public HttpField getContentEncoding()
+        {
+            return _format._contentEncoding;
+        }
+
+        @Override
+        public String getContentEncodingValue()
+        {
+            return _format._contentEncoding.getValue();
+        }
+
+        @Override
+        public HttpField getContentLength()
+        {
+            return _contentLength;
+        }
+
+        @Override
+        public long getContentLengthValue()
+        {
+            return _bytes.length;
+        }
+
+        @Override
+        public HttpField getLastModified()
+        {
+            return _content.getLastModified();
+        }
+
+        @Override
+        public String getLastModifiedValue()
+        {
+            return _content.getLastModifiedValue();
+        }
+
+        @Override
+        public HttpField getETag()
+        {
+            if (_etag != null)
+                return _etag;
+            return new HttpField(HttpHeader.ETAG, getETagValue());
+        }
+
+        @Override
+        public String getETagValue()
+        {
+            if (_etag != null)
+                return _etag.getValue();
+            return _content.getResource().getWeakETag(_format._etag);
+        }
+
+        @Override
+        public ByteBuffer getIndirectBuffer()
+        {
+            return ByteBuffer.wrap(_bytes).asReadOnlyBuffer();
+        }
+
+        @Override
+        public ByteBuffer getDirectBuffer()
+        {
+            return null;
+        }
+
+        @Override
+        public Resource getResource()
+        {
+            return _content.getResource();
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return new ByteArrayInputStream(_bytes);
+        }
+
+        @Override
+        public ReadableByteChannel getReadableByteChannel()
+        {
+            return Channels.newChannel(getInputStream());
+        }
+
+        @Override
+        public void release()
+        {
+        }
+
+        @Override
+        public Map<CompressedContentFormat, ? extends HttpContent> getPrecompressedContents()
+        {
+            return null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("CompressedContent@%x{e=%s,l=%d,%s}", hashCode(), _format._encoding, _bytes.length, _content);
+        }
+    }
+
+    /**
+     * <p>A lossy, striped buffer of the accesses to cached entries.</p>
+     * <p>Threads record accesses in their stripe without locking, and the accesses are
+     * replayed to the eviction policy in batches, while holding the lock of the cache.
+     * Accesses recorded in a full or contended stripe are dropped, which only makes
+     * the eviction policy slightly less accurate, as in TinyLFU caches.</p>
+     */
+    private static class AccessBuffer
+    {
+        private static final int STRIPE_SIZE = 16;
+        private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+        private final Stripe[] _stripes;
+
+        private AccessBuffer()
+        {
+            int stripes = 1;
+            while (stripes < 2 * ProcessorUtils.availableProcessors())
+            {
+                stripes <<= 1;
+            }
+            _stripes = new Stripe[stripes];
+            for (int i = 0; i < stripes; ++i)
+            {
+                _stripes[i] = new Stripe();
+            }
+        }
+
+        /**
+         * @param key the key accessed
+         * @return whether the stripe is full and should be drained
+         */
+        private boolean record(String key)
+        {
+            long id = Thread.currentThread().getId();
+            int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+            Stripe stripe = _stripes[(hash >>> 16) & (_stripes.length - 1)];
+            long writes = stripe._writes.get();
+            long pending = writes - stripe._reads;
+            if (pending >= STRIPE_SIZE)
+                return true;
+            if (!stripe._writes.compareAndSet(writes, writes + 1))
+                return false;
+            stripe._keys.lazySet((int)writes & STRIPE_MASK, key);
+            return pending + 1 >= STRIPE_SIZE;
+        }
+
+        /**
+         * <p>Must be called while holding the lock of the cache.</p>
+         *
+         * @param consumer the consumer of the recorded accesses
+         */
+        private void drain(Consumer<String> consumer)
+        {
+            for (Stripe stripe : _stripes)
+            {
+                long reads = stripe._reads;
+                long writes = stripe._writes.get();
+                while (reads < writes)
+                {
+                    int index = (int)reads & STRIPE_MASK;
+                    String key = stripe._keys.get(index);
+                    // The slot has been claimed, but the key is not published yet.
+                    if (key == null)
+                        break;
+                    stripe._keys.lazySet(index, null);
+                    consumer.accept(key);
+                    ++reads;
+                }
+                stripe._reads = reads;
+            }
+        }
+
+        private static class Stripe
+        {
+            private final AtomicReferenceArray<String> _keys = new AtomicReferenceArray<>(STRIPE_SIZE);
+            private final AtomicLong _writes = new AtomicLong();
+            private volatile long _reads;
+        }
+    }
 }
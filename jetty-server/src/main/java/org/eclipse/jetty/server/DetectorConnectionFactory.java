@@ -22,24 +22,40 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A {@link ConnectionFactory} combining multiple {@link Detecting} instances that will upgrade to
- * the first one recognizing the bytes in the buffer.
+ * <p>A {@link ConnectionFactory} combining multiple {@link Detecting} instances that will upgrade to
+ * the first one recognizing the bytes in the buffer.</p>
+ * <p>Nested DetectorConnectionFactory instances, such as {@link ProxyConnectionFactory}, are
+ * searched for the {@link Detecting} instance that recognized the bytes, so that its connection
+ * is installed directly, rather than via another detecting connection.
+ * The bytes read during the detection are passed to the new connection without intermediate copies.</p>
+ * <p>The number of connections detected for each protocol is available via JMX, for example
+ * to monitor the mix of protocols received on a port shared by TLS, PROXY and clear-text traffic.</p>
  */
+@ManagedObject("Detector Connection Factory")
 public class DetectorConnectionFactory extends AbstractConnectionFactory implements ConnectionFactory.Detecting
 {
     private static final Logger LOG = LoggerFactory.getLogger(DetectorConnectionFactory.class);
 
     private final List<Detecting> _detectingConnectionFactories;
+    private final Map<String, LongAdder> _detections = new ConcurrentHashMap<>();
+    private final LongAdder _notRecognized = new LongAdder();
 
     /**
      * <p>When the first bytes are not recognized by the {@code detectingConnectionFactories}, the default behavior is to
@@ -70,6 +86,55 @@ public class DetectorConnectionFactory extends AbstractConnectionFactory impleme
         return protocol;
     }
 
+    /**
+     * @return the number of connections detected for each protocol
+     */
+    @ManagedAttribute("The number of connections detected for each protocol")
+    public Map<String, Long> getDetections()
+    {
+        Map<String, Long> result = new TreeMap<>();
+        _detections.forEach((protocol, count) -> result.put(protocol, count.longValue()));
+        return result;
+    }
+
+    /**
+     * @return the number of connections whose protocol was not recognized
+     * @see #nextProtocol(Connector, EndPoint, ByteBuffer)
+     */
+    @ManagedAttribute("The number of connections whose protocol was not recognized")
+    public long getNotRecognized()
+    {
+        return _notRecognized.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _detections.clear();
+        _notRecognized.reset();
+    }
+
+    /**
+     * <p>Finds the {@link Detecting} instance that recognized the bytes, descending into
+     * nested DetectorConnectionFactory instances.</p>
+     *
+     * @param detecting the instance that recognized the bytes
+     * @param buffer the buffer to perform the detection against
+     * @return the innermost instance that recognized the bytes
+     */
+    private static Detecting findRecognizing(Detecting detecting, ByteBuffer buffer)
+    {
+        if (detecting instanceof DetectorConnectionFactory)
+        {
+            for (Detecting nested : ((DetectorConnectionFactory)detecting)._detectingConnectionFactories)
+            {
+                if (nested.detect(buffer) == Detection.RECOGNIZED)
+                    return findRecognizing(nested, buffer);
+            }
+        }
+        return detecting;
+    }
+
     /**
      * Performs a detection using multiple {@link ConnectionFactory.Detecting} instances and returns the aggregated outcome.
      * @param buffer the buffer to perform a detection against.
@@ -144,6 +209,7 @@ public class DetectorConnectionFactory extends AbstractConnectionFactory impleme
     {
         private final Connector _connector;
         private final ByteBuffer _buffer;
+        private boolean _handedOver;
 
         private DetectorConnection(EndPoint endp, Connector connector)
         {
@@ -163,15 +229,19 @@ public class DetectorConnectionFactory extends AbstractConnectionFactory impleme
         @Override
         public ByteBuffer onUpgradeFrom()
         {
-            if (_buffer.hasRemaining())
-            {
-                ByteBuffer unconsumed = ByteBuffer.allocateDirect(_buffer.remaining());
-                unconsumed.put(_buffer);
-                unconsumed.flip();
+            // Hand over the pooled buffer without copying it, the upgrade-to
+            // connection consumes its bytes within the upgrade, after which
+            // the buffer is released by releaseAfterUpgrade().
+            _handedOver = true;
+            return _buffer.hasRemaining() ? _buffer : null;
+        }
+
+        private void releaseAfterUpgrade()
+        {
+            // Only release the buffer if the bytes have been consumed, otherwise
+            // the upgrade-to connection may still refer to it; leave it to the GC.
+            if (_handedOver && !_buffer.hasRemaining())
                 _connector.getByteBufferPool().release(_buffer);
-                return unconsumed;
-            }
-            return null;
         }
 
         @Override
@@ -245,10 +315,13 @@ public class DetectorConnectionFactory extends AbstractConnectionFactory impleme
                     try
                     {
                         // This DetectingConnectionFactory recognized those bytes -> upgrade to the next one.
-                        Connection nextConnection = detectingConnectionFactory.newConnection(_connector, getEndPoint());
+                        Detecting recognizing = findRecognizing(detectingConnectionFactory, _buffer);
+                        Connection nextConnection = recognizing.newConnection(_connector, getEndPoint());
                         if (!(nextConnection instanceof UpgradeTo))
                             throw new IllegalStateException("Cannot upgrade: " + nextConnection + " does not implement " + UpgradeTo.class.getName());
+                        _detections.computeIfAbsent(recognizing.getProtocol(), p -> new LongAdder()).increment();
                         getEndPoint().upgrade(nextConnection);
+                        releaseAfterUpgrade();
                         if (LOG.isDebugEnabled())
                             LOG.debug("Detector {} upgraded to {}", getProtocol(), nextConnection);
                         return true;
@@ -280,7 +353,9 @@ public class DetectorConnectionFactory extends AbstractConnectionFactory impleme
                 // No DetectingConnectionFactory recognized those bytes -> call unsuccessful detection callback.
                 if (LOG.isDebugEnabled())
                     LOG.debug("Detector {} failed to detect a known protocol, falling back to nextProtocol()", getProtocol());
+                _notRecognized.increment();
                 nextProtocol(_connector, getEndPoint(), _buffer);
+                releaseAfterUpgrade();
                 if (LOG.isDebugEnabled())
                     LOG.debug("Detector {} call to nextProtocol() succeeded, assuming upgrade performed", getProtocol());
                 return true;
@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.server;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -176,6 +177,31 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * <p>A source of content that is sent in chunks by {@link #sendContent(ContentSource, Callback)}.</p>
+     * <p>The source is read only when the previous chunk has been written, so that
+     * content can be produced without blocking a thread waiting for the output.</p>
+     */
+    public interface ContentSource extends Closeable
+    {
+        /**
+         * <p>Produces the next chunk of content.</p>
+         * <p>The chunk may be the given buffer, filled with content, or a buffer owned by the
+         * source (for example a slice of a mapped file), which must not be modified until the
+         * next call to this method.</p>
+         *
+         * @param buffer a pooled buffer that may be filled with content
+         * @return the next chunk of content, in flush mode, or null if there is no more content
+         * @throws IOException if the content cannot be produced
+         */
+        ByteBuffer read(ByteBuffer buffer) throws IOException;
+
+        /**
+         * @return whether the chunk returned by the last {@link #read(ByteBuffer)} is the last chunk
+         */
+        boolean isLast();
+    }
+
     private static Logger LOG = LoggerFactory.getLogger(HttpOutput.class);
     private static final ThreadLocal<CharsetEncoder> _encoder = new ThreadLocal<>();
 
@@ -1208,6 +1234,32 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             new ReadableByteChannelWritingCB(in, callback).iterate();
     }
 
+    /**
+     * Asynchronous send of content produced by a {@link ContentSource}.
+     * The source will be closed after sending all content, or if the content cannot be sent.
+     *
+     * @param source The source of the content to send
+     * @param callback The callback to use to notify success or failure
+     */
+    public void sendContent(ContentSource source, Callback callback)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("sendContent(source={},{})", source, callback);
+
+        boolean prepared = false;
+        try
+        {
+            prepared = prepareSendContent(0, callback);
+        }
+        finally
+        {
+            if (!prepared)
+                IO.close(source);
+        }
+        if (prepared)
+            new ContentSourceWritingCB(source, callback).iterate();
+    }
+
     private boolean prepareSendContent(int len, Callback callback)
     {
         try (AutoLock l = _channelState.lock())
@@ -1818,6 +1870,64 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    private class ContentSourceWritingCB extends NestedChannelWriteCB
+    {
+        private final ContentSource _source;
+        private final ByteBuffer _buffer;
+        private boolean _last;
+        private boolean _closed;
+
+        ContentSourceWritingCB(ContentSource source, Callback callback)
+        {
+            super(callback, true);
+            _source = source;
+            _buffer = _channel.getByteBufferPool().acquire(getBufferSize(), _channel.isUseOutputDirectByteBuffers());
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            // Only return if the last chunk has previously been written
+            if (_last)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("EOF of {}", this);
+                if (!_closed)
+                {
+                    _closed = true;
+                    _channel.getByteBufferPool().release(_buffer);
+                    IO.close(_source);
+                }
+                return Action.SUCCEEDED;
+            }
+
+            BufferUtil.clear(_buffer);
+            ByteBuffer content = _source.read(_buffer);
+            if (content == null)
+            {
+                content = BufferUtil.EMPTY_BUFFER;
+                _last = true;
+            }
+            else
+            {
+                _last = _source.isLast();
+            }
+
+            _written += content.remaining();
+            channelWrite(content, _last, this);
+
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            _channel.getByteBufferPool().release(_buffer);
+            IO.close(_source);
+            super.onCompleteFailure(x);
+        }
+    }
+
     private static class WriteBlocker extends SharedBlockingCallback
     {
         private final HttpChannel _channel;
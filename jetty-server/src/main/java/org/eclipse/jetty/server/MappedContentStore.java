@@ -0,0 +1,251 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An off-heap store of memory mapped files, shared by the {@link CachedContentFactory}
+ * instances of all the contexts of a server.</p>
+ * <p>Files are mapped lazily, the first time their content is needed, and the same mapping is
+ * shared by all the cached contents of the same file, even when the file is served by
+ * different contexts. Each response is given a read-only view of the mapping, so that the
+ * bytes of static content are never copied into the heap.</p>
+ * <p>A mapping is dropped when the last cached content referring to it is evicted or
+ * invalidated, or when the file is modified. The memory is unmapped once the mapping is
+ * garbage collected, since forcibly unmapping a buffer could crash the JVM if responses
+ * still refer to it.</p>
+ * <p>To share a store, add it as a bean of the {@link Server}, where {@code DefaultServlet}
+ * instances will discover it.</p>
+ *
+ * @see CachedContentFactory#setMappedContentStore(MappedContentStore)
+ */
+@ManagedObject("Shared store of memory mapped files")
+public class MappedContentStore
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MappedContentStore.class);
+
+    private final AutoLock _lock = new AutoLock();
+    private final Map<Path, Mapping> _mappings = new HashMap<>();
+    private final LongAdder _shared = new LongAdder();
+    private final LongAdder _mapped = new LongAdder();
+    private long _mappedBytes;
+
+    /**
+     * <p>Acquires the mapping of the file of the given resource, mapping it if necessary.</p>
+     * <p>The returned mapping must be {@link Mapping#release() released} when it is no longer used.</p>
+     *
+     * @param resource the resource to map
+     * @return the mapping of the resource, or null if the resource is not a file that can be mapped
+     */
+    public Mapping acquire(Resource resource)
+    {
+        File file;
+        try
+        {
+            file = resource.getFile();
+        }
+        catch (IOException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Cannot map {}", resource, x);
+            return null;
+        }
+        if (file == null)
+            return null;
+
+        Path path = file.toPath().toAbsolutePath().normalize();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (length <= 0 || length >= Integer.MAX_VALUE)
+            return null;
+
+        try (AutoLock l = _lock.lock())
+        {
+            Mapping mapping = share(path, lastModified, length);
+            if (mapping != null)
+                return mapping;
+        }
+
+        // Map the file without holding the lock, since mapping may block on I/O.
+        ByteBuffer buffer;
+        try
+        {
+            buffer = BufferUtil.toMappedBuffer(file);
+        }
+        catch (IOException | IllegalArgumentException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Cannot map {}", resource, x);
+            return null;
+        }
+        if (buffer.remaining() != length)
+            return null;
+
+        try (AutoLock l = _lock.lock())
+        {
+            // Another thread may have mapped the file concurrently, in which case its mapping
+            // is shared, and the buffer mapped by this thread is unmapped when garbage collected.
+            Mapping mapping = share(path, lastModified, length);
+            if (mapping != null)
+                return mapping;
+
+            mapping = _mappings.get(path);
+            if (mapping != null)
+                remove(mapping);
+            mapping = new Mapping(path, lastModified, length, buffer);
+            _mappings.put(path, mapping);
+            _mapped.increment();
+            _mappedBytes += length;
+            if (LOG.isDebugEnabled())
+                LOG.debug("Mapped {}", mapping);
+            return mapping;
+        }
+    }
+
+    private Mapping share(Path path, long lastModified, long length)
+    {
+        // Called with the lock held.
+        Mapping mapping = _mappings.get(path);
+        if (mapping == null || mapping._lastModified != lastModified || mapping._length != length)
+            return null;
+        mapping._references++;
+        _shared.increment();
+        return mapping;
+    }
+
+    private void remove(Mapping mapping)
+    {
+        // Called with the lock held.
+        if (_mappings.get(mapping._path) == mapping)
+        {
+            _mappings.remove(mapping._path);
+            _mappedBytes -= mapping._length;
+            if (LOG.isDebugEnabled())
+                LOG.debug("Unmapped {}", mapping);
+        }
+    }
+
+    @ManagedAttribute("The number of files currently mapped")
+    public int getMappedFiles()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _mappings.size();
+        }
+    }
+
+    @ManagedAttribute("The number of bytes currently mapped")
+    public long getMappedBytes()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _mappedBytes;
+        }
+    }
+
+    @ManagedAttribute("The number of times a file was mapped")
+    public long getMappings()
+    {
+        return _mapped.longValue();
+    }
+
+    @ManagedAttribute("The number of times an existing mapping was shared")
+    public long getSharedMappings()
+    {
+        return _shared.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _mapped.reset();
+        _shared.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return String.format("%s@%x{files=%d,bytes=%d}", getClass().getSimpleName(), hashCode(), _mappings.size(), _mappedBytes);
+        }
+    }
+
+    /**
+     * <p>A reference counted mapping of a file.</p>
+     */
+    public class Mapping
+    {
+        private final Path _path;
+        private final long _lastModified;
+        private final long _length;
+        private final ByteBuffer _buffer;
+        private int _references = 1;
+
+        private Mapping(Path path, long lastModified, long length, ByteBuffer buffer)
+        {
+            _path = path;
+            _lastModified = lastModified;
+            _length = length;
+            _buffer = buffer;
+        }
+
+        /**
+         * @return a new read-only view of the mapped file
+         */
+        public ByteBuffer getBuffer()
+        {
+            return _buffer.asReadOnlyBuffer();
+        }
+
+        /**
+         * <p>Releases this mapping, which is dropped from the store when it is no longer referenced.</p>
+         */
+        public void release()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                if (--_references == 0)
+                    remove(this);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s,lm=%d,len=%d,refs=%d}", getClass().getSimpleName(), hashCode(), _path, _lastModified, _length, _references);
+        }
+    }
+}
@@ -46,6 +46,7 @@ import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.QuotedCSV;
 import org.eclipse.jetty.http.QuotedQualityCSV;
 import org.eclipse.jetty.io.WriterOutputStream;
+import org.eclipse.jetty.server.resource.ByteRangesContentSource;
 import org.eclipse.jetty.server.resource.HttpContentRangeWriter;
 import org.eclipse.jetty.server.resource.InputStreamRangeWriter;
 import org.eclipse.jetty.server.resource.RangeWriter;
@@ -694,33 +695,7 @@ public class ResourceService
                     final AsyncContext context = request.startAsync();
                     context.setTimeout(0);
 
-                    ((HttpOutput)out).sendContent(content, new Callback()
-                    {
-                        @Override
-                        public void succeeded()
-                        {
-                            context.complete();
-                            content.release();
-                        }
-
-                        @Override
-                        public void failed(Throwable x)
-                        {
-                            String msg = "Failed to send content";
-                            if (x instanceof IOException)
-                                LOG.debug(msg, x);
-                            else
-                                LOG.warn(msg, x);
-                            context.complete();
-                            content.release();
-                        }
-
-                        @Override
-                        public String toString()
-                        {
-                            return String.format("ResourceService@%x$CB", ResourceService.this.hashCode());
-                        }
-                    });
+                    ((HttpOutput)out).sendContent(content, newAsyncCallback(context, content));
                     return false;
                 }
                 // otherwise write content blocking
@@ -778,6 +753,22 @@ public class ResourceService
                 ctp = "multipart/x-byteranges; boundary=";
             else
                 ctp = "multipart/byteranges; boundary=";
+            // Send the parts asynchronously if possible, without copying buffered content.
+            if (!include && !written && out instanceof HttpOutput && request.isAsyncSupported())
+            {
+                HttpOutput httpOutput = (HttpOutput)out;
+                HttpChannel channel = httpOutput.getHttpChannel();
+                ByteRangesContentSource source = new ByteRangesContentSource(channel.getByteBufferPool(), channel.isUseOutputDirectByteBuffers(),
+                    HttpContentRangeWriter.newRangeWriter(content), ranges, content_length, mimetype);
+                response.setContentType(ctp + source.getBoundary());
+                response.setContentLengthLong(source.getLength());
+
+                AsyncContext context = request.startAsync();
+                context.setTimeout(0);
+                httpOutput.sendContent(source, newAsyncCallback(context, content));
+                return false;
+            }
+
             MultiPartOutputStream multi = new MultiPartOutputStream(out);
             response.setContentType(ctp + multi.getBoundary());
 
@@ -816,6 +807,37 @@ public class ResourceService
         return true;
     }
 
+    private Callback newAsyncCallback(AsyncContext context, HttpContent content)
+    {
+        return new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                context.complete();
+                content.release();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                String msg = "Failed to send content";
+                if (x instanceof IOException)
+                    LOG.debug(msg, x);
+                else
+                    LOG.warn(msg, x);
+                context.complete();
+                content.release();
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("ResourceService@%x$CB", ResourceService.this.hashCode());
+            }
+        };
+    }
+
     private static void writeContent(HttpContent content, OutputStream out, long start, long contentLength) throws IOException
     {
         // Is the write for the whole content?
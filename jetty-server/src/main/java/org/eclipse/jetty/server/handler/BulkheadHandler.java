@@ -0,0 +1,430 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.pathmap.PathSpecSet;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.IncludeExclude;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Handler to isolate the threads used by the wrapped handler, so that a slow
+ * context cannot exhaust the threads shared with other contexts.</p>
+ * <p>The BulkheadHandler applies a limit to the number of threads that can be
+ * used simultaneously to handle requests by the wrapped handler, typically a
+ * {@link ContextHandler}. Requests in excess of the limit are asynchronously
+ * suspended, without holding a thread, and dispatched when a thread of the
+ * bulkhead becomes available.</p>
+ * <p>At most {@link #getMaxQueued() max queued} requests may be suspended;
+ * further requests are rejected with a 503 status. Suspended requests that
+ * do not get a thread within {@link #getMaxQueueTime() max queue time} are
+ * also rejected with a 503 status.</p>
+ * <p>The bulkhead may be restricted to a subset of the requests by
+ * {@link #addIncludedPaths(String...) including} or
+ * {@link #addExcludedPaths(String...) excluding} path specs, matched against the
+ * request path in context. Multiple BulkheadHandlers can be chained to give
+ * different path specs different budgets.</p>
+ *
+ * @see ThreadLimitHandler
+ */
+@ManagedObject("Bulkhead Handler")
+public class BulkheadHandler extends HandlerWrapper
+{
+    private static final Logger LOG = LoggerFactory.getLogger(BulkheadHandler.class);
+
+    private final String _permitAttribute = "o.e.j.s.h.BH.PERMIT." + Integer.toHexString(hashCode());
+    private final AutoLock _lock = new AutoLock();
+    private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
+    private final Deque<Waiter> _queue = new ArrayDeque<>();
+    private final CounterStatistic _activeStats = new CounterStatistic();
+    private final CounterStatistic _queuedStats = new CounterStatistic();
+    private final LongAdder _rejected = new LongAdder();
+    private final LongAdder _expired = new LongAdder();
+    private int _maxThreads;
+    private int _maxQueued;
+    private long _maxQueueTime = 30000;
+    private int _permits;
+
+    public BulkheadHandler()
+    {
+        this(16, 256);
+    }
+
+    public BulkheadHandler(@Name("maxThreads") int maxThreads, @Name("maxQueued") int maxQueued)
+    {
+        setMaxThreads(maxThreads);
+        setMaxQueued(maxQueued);
+    }
+
+    /**
+     * @return the maximum number of threads that can be used simultaneously by the wrapped handler
+     */
+    @ManagedAttribute("The maximum number of threads that can be used simultaneously by the wrapped handler")
+    public int getMaxThreads()
+    {
+        return _maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads)
+    {
+        if (maxThreads <= 0)
+            throw new IllegalArgumentException("maxThreads must be >0");
+        _maxThreads = maxThreads;
+    }
+
+    /**
+     * @return the maximum number of requests suspended waiting for a thread
+     */
+    @ManagedAttribute("The maximum number of requests suspended waiting for a thread")
+    public int getMaxQueued()
+    {
+        return _maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued)
+    {
+        if (maxQueued < 0)
+            throw new IllegalArgumentException("maxQueued must be >=0");
+        _maxQueued = maxQueued;
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, a request may be suspended waiting for a thread, or 0 for no limit
+     */
+    @ManagedAttribute("The maximum time, in ms, a request may be suspended waiting for a thread")
+    public long getMaxQueueTime()
+    {
+        return _maxQueueTime;
+    }
+
+    public void setMaxQueueTime(long maxQueueTime)
+    {
+        _maxQueueTime = maxQueueTime;
+    }
+
+    /**
+     * Adds path specs to include in the bulkhead.
+     *
+     * @param pathspecs the path specs to include
+     */
+    public void addIncludedPaths(String... pathspecs)
+    {
+        _paths.include(pathspecs);
+    }
+
+    /**
+     * Adds path specs to exclude from the bulkhead.
+     *
+     * @param pathspecs the path specs to exclude
+     */
+    public void addExcludedPaths(String... pathspecs)
+    {
+        _paths.exclude(pathspecs);
+    }
+
+    @ManagedAttribute("The number of threads currently used by the wrapped handler")
+    public int getActiveThreads()
+    {
+        return (int)_activeStats.getCurrent();
+    }
+
+    @ManagedAttribute("The peak number of threads used simultaneously by the wrapped handler")
+    public int getMaxActiveThreads()
+    {
+        return (int)_activeStats.getMax();
+    }
+
+    @ManagedAttribute("The number of requests handled by the wrapped handler")
+    public long getRequests()
+    {
+        return _activeStats.getTotal();
+    }
+
+    @ManagedAttribute("The number of requests currently suspended waiting for a thread")
+    public int getQueuedRequests()
+    {
+        return (int)_queuedStats.getCurrent();
+    }
+
+    @ManagedAttribute("The peak number of requests suspended waiting for a thread")
+    public int getMaxQueuedRequests()
+    {
+        return (int)_queuedStats.getMax();
+    }
+
+    @ManagedAttribute("The number of requests that have been suspended waiting for a thread")
+    public long getTotalQueuedRequests()
+    {
+        return _queuedStats.getTotal();
+    }
+
+    @ManagedAttribute("The number of requests rejected because the queue was full")
+    public long getRejectedRequests()
+    {
+        return _rejected.longValue();
+    }
+
+    @ManagedAttribute("The number of requests rejected because they waited too long for a thread")
+    public long getExpiredRequests()
+    {
+        return _expired.longValue();
+    }
+
+    @ManagedOperation(value = "resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _activeStats.reset();
+        _queuedStats.reset();
+        _rejected.reset();
+        _expired.reset();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        String path = baseRequest.getPathInContext();
+        if (path != null && !_paths.test(path))
+        {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        // Do we already have a permit granted while this request was suspended?
+        boolean permitted = baseRequest.getAttribute(_permitAttribute) != null;
+        if (permitted)
+        {
+            baseRequest.removeAttribute(_permitAttribute);
+        }
+        else
+        {
+            Boolean acquired = acquire(baseRequest);
+            if (acquired == null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Rejected {} {}", this, target);
+                _rejected.increment();
+                baseRequest.setHandled(true);
+                response.sendError(HttpStatus.SERVICE_UNAVAILABLE_503);
+                return;
+            }
+            if (!acquired)
+                return;
+        }
+
+        _activeStats.increment();
+        try
+        {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally
+        {
+            _activeStats.decrement();
+            release();
+        }
+    }
+
+    /**
+     * @return true if a permit was acquired, false if the request has been suspended,
+     * null if the request must be rejected
+     */
+    private Boolean acquire(Request baseRequest)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            if (_permits < _maxThreads)
+            {
+                _permits++;
+                return Boolean.TRUE;
+            }
+
+            if (_queue.size() >= _maxQueued)
+                return null;
+
+            // Let's never timeout the async, as we handle the queue time ourselves.
+            AsyncContext async = baseRequest.startAsync();
+            async.setTimeout(0);
+            Waiter waiter = new Waiter(baseRequest, async);
+            async.addListener(waiter);
+            _queue.addLast(waiter);
+            _queuedStats.increment();
+            if (_maxQueueTime > 0)
+            {
+                Scheduler scheduler = baseRequest.getHttpChannel().getConnector().getScheduler();
+                waiter._expiration = scheduler.schedule(waiter::expire, _maxQueueTime, TimeUnit.MILLISECONDS);
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Queued {} {}", waiter, this);
+            return Boolean.FALSE;
+        }
+    }
+
+    private void release()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            // Transfer the permit to the first suspended request that can be dispatched, if any.
+            // The dispatch happens under the lock, so that it cannot race with the removal of
+            // the waiter when its request fails.
+            while (true)
+            {
+                Waiter waiter = _queue.pollFirst();
+                if (waiter == null)
+                {
+                    _permits--;
+                    return;
+                }
+                _queuedStats.decrement();
+                if (waiter.dispatch())
+                    return;
+            }
+        }
+    }
+
+    private boolean dequeue(Waiter waiter)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            if (!_queue.remove(waiter))
+                return false;
+            _queuedStats.decrement();
+            return true;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return String.format("%s@%x[p=%d/%d,q=%d/%d]", getClass().getSimpleName(), hashCode(), _permits, _maxThreads, _queue.size(), _maxQueued);
+        }
+    }
+
+    private class Waiter implements AsyncListener
+    {
+        private final Request _request;
+        private final AsyncContext _async;
+        private Scheduler.Task _expiration;
+
+        private Waiter(Request request, AsyncContext async)
+        {
+            _request = request;
+            _async = async;
+        }
+
+        private boolean dispatch()
+        {
+            if (_expiration != null)
+                _expiration.cancel();
+            _request.setAttribute(_permitAttribute, Boolean.TRUE);
+            try
+            {
+                _async.dispatch();
+                return true;
+            }
+            catch (Throwable x)
+            {
+                // The request failed or completed while suspended.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not dispatch {} {}", this, BulkheadHandler.this, x);
+                _request.removeAttribute(_permitAttribute);
+                return false;
+            }
+        }
+
+        private void expire()
+        {
+            if (!dequeue(this))
+                return;
+            if (LOG.isDebugEnabled())
+                LOG.debug("Expired {} {}", this, BulkheadHandler.this);
+            _expired.increment();
+            try
+            {
+                ((HttpServletResponse)_async.getResponse()).sendError(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+            catch (Throwable x)
+            {
+                LOG.trace("IGNORED", x);
+            }
+            finally
+            {
+                _async.complete();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            // The request was dispatched with a permit, but never reached this handler.
+            if (_request.getAttribute(_permitAttribute) != null)
+            {
+                _request.removeAttribute(_permitAttribute);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Unused permit {} {}", this, BulkheadHandler.this);
+                release();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            // The request failed while suspended, e.g. the client closed the connection.
+            if (dequeue(this) && _expiration != null)
+                _expiration.cancel();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), _request.getRequestURI());
+        }
+    }
+}
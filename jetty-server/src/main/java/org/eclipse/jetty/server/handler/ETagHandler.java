@@ -0,0 +1,562 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.QuotedCSV;
+import org.eclipse.jetty.http.pathmap.PathSpecSet;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IncludeExclude;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Handler that computes strong entity tags for the responses of the wrapped handler,
+ * and answers conditional requests with a {@code 304 Not Modified} response without
+ * invoking the wrapped handler.</p>
+ * <p>The content of {@code GET} responses is hashed as it is written through a
+ * {@link HttpOutput.Interceptor}, and when the last content is written the resulting
+ * {@code ETag} header is added to the response, if it is not yet committed.
+ * Responses that fit in the response buffer, or that are buffered by a
+ * {@link BufferedResponseHandler} nested in this handler, are committed only when the last
+ * content is written and can be tagged; streamed responses committed earlier are not tagged.
+ * Responses that already have an {@code ETag} header are not hashed, and their entity
+ * tag is used instead.</p>
+ * <p>The entity tag of each successful response is remembered per request URI, for at most
+ * {@link #getTimeToLive() time to live} milliseconds and in a bounded least recently used
+ * cache of {@link #getMaxEntries() max entries}.
+ * A {@code GET} or {@code HEAD} request with an {@code If-None-Match} header matching a
+ * remembered entity tag is answered with a {@code 304} response before the wrapped handler
+ * is invoked. Requests with other methods, such as {@code POST} or {@code PUT}, invalidate
+ * the remembered entity tag of their request URI.</p>
+ * The {@code 304} response carries the {@code Cache-Control}, {@code Content-Location},
+ * {@code Expires} and {@code Vary} headers of the response whose entity tag was remembered,
+ * as required by RFC 7232.</p>
+ * <p>Since a short-circuited request does not reach the wrapped handler, this handler must
+ * only be used for resources whose content does not change within the time to live other
+ * than by requests to the same URI; responses that vary on request headers other than
+ * {@code Accept-Encoding}, that set cookies, or that are {@code private} or {@code no-store},
+ * are not remembered. Requests with {@code Authorization} or {@code Cookie} headers are never
+ * short-circuited and their responses are not remembered, so that a response is only
+ * remembered, and a request only short-circuited, when no credentials are involved.
+ * Nevertheless, security constraints that do not depend on credentials, for example on
+ * the remote address, are not applied to short-circuited requests, unless this handler
+ * is nested inside the handler that applies them.</p>
+ * <p>The entity tags are computed with a secret salt, random for each handler instance,
+ * so that they cannot be used to guess the content of responses.</p>
+ */
+@ManagedObject("ETag Handler")
+public class ETagHandler extends HandlerWrapper
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ETagHandler.class);
+
+    private final AutoLock _lock = new AutoLock();
+    private final Map<String, Entry> _entries = new LinkedHashMap<>(16, 0.75F, true);
+    private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
+    private final LongAdder _shortCircuited = new LongAdder();
+    private final LongAdder _notModified = new LongAdder();
+    private final LongAdder _tagged = new LongAdder();
+    private final byte[] _salt = new byte[16];
+    private String _algorithm = "SHA-256";
+    private MessageDigest _digest;
+    private int _maxEntries = 4096;
+    private long _timeToLive = 60000;
+
+    public ETagHandler()
+    {
+        new SecureRandom().nextBytes(_salt);
+    }
+
+    /**
+     * @return the message digest algorithm used to compute the entity tags
+     */
+    @ManagedAttribute("The message digest algorithm used to compute the entity tags")
+    public String getAlgorithm()
+    {
+        return _algorithm;
+    }
+
+    public void setAlgorithm(String algorithm)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _algorithm = algorithm;
+    }
+
+    /**
+     * @return the maximum number of remembered entity tags
+     */
+    @ManagedAttribute("The maximum number of remembered entity tags")
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries)
+    {
+        _maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the time, in milliseconds, an entity tag is remembered
+     */
+    @ManagedAttribute("The time, in ms, an entity tag is remembered")
+    public long getTimeToLive()
+    {
+        return _timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive)
+    {
+        _timeToLive = timeToLive;
+    }
+
+    /**
+     * Adds path specs to include.
+     *
+     * @param pathspecs the path specs to include
+     */
+    public void addIncludedPaths(String... pathspecs)
+    {
+        _paths.include(pathspecs);
+    }
+
+    /**
+     * Adds path specs to exclude.
+     *
+     * @param pathspecs the path specs to exclude
+     */
+    public void addExcludedPaths(String... pathspecs)
+    {
+        _paths.exclude(pathspecs);
+    }
+
+    @ManagedAttribute("The number of remembered entity tags")
+    public int getEntries()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _entries.size();
+        }
+    }
+
+    @ManagedAttribute("The number of requests answered with 304 without invoking the wrapped handler")
+    public long getShortCircuitedRequests()
+    {
+        return _shortCircuited.longValue();
+    }
+
+    @ManagedAttribute("The number of responses replaced with 304 after their entity tag was computed")
+    public long getNotModifiedResponses()
+    {
+        return _notModified.longValue();
+    }
+
+    @ManagedAttribute("The number of responses tagged with a computed entity tag")
+    public long getTaggedResponses()
+    {
+        return _tagged.longValue();
+    }
+
+    @ManagedOperation(value = "resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _shortCircuited.reset();
+        _notModified.reset();
+        _tagged.reset();
+    }
+
+    @ManagedOperation(value = "forgets all the remembered entity tags", impact = "ACTION")
+    public void clear()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            _entries.clear();
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _digest = MessageDigest.getInstance(_algorithm);
+        _digest.update(_salt);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        clear();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        String path = baseRequest.getPathInContext();
+        if (path != null && !_paths.test(path))
+        {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        HttpOutput out = baseRequest.getResponse().getHttpOutput();
+        HttpOutput.Interceptor interceptor = out.getInterceptor();
+        while (interceptor != null)
+        {
+            if (interceptor instanceof ETagInterceptor)
+            {
+                super.handle(target, baseRequest, request, response);
+                return;
+            }
+            interceptor = interceptor.getNextInterceptor();
+        }
+
+        String method = baseRequest.getMethod();
+        String key = getKey(baseRequest);
+        if (!HttpMethod.GET.is(method) && !HttpMethod.HEAD.is(method))
+        {
+            if (!HttpMethod.OPTIONS.is(method) && !HttpMethod.TRACE.is(method))
+                invalidate(key);
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        // Requests with credentials must always reach the wrapped
+        // handler, and their responses may be specific to the user.
+        HttpFields fields = baseRequest.getHttpFields();
+        boolean rememberable = !fields.contains(HttpHeader.AUTHORIZATION) && !fields.contains(HttpHeader.COOKIE);
+        String ifNoneMatch = fields.get(HttpHeader.IF_NONE_MATCH);
+        if (ifNoneMatch != null && rememberable)
+        {
+            Entry entry = lookup(key);
+            if (entry != null && matches(entry._etag, ifNoneMatch))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Not modified {} {} {}", this, key, entry._etag);
+                _shortCircuited.increment();
+                baseRequest.setHandled(true);
+                Response base = baseRequest.getResponse();
+                base.setStatus(HttpStatus.NOT_MODIFIED_304);
+                base.setHeader(HttpHeader.ETAG.asString(), entry._etag);
+                HttpFields.Mutable responseFields = base.getHttpFields();
+                for (HttpField field : entry._fields)
+                {
+                    responseFields.remove(field.getHeader());
+                }
+                for (HttpField field : entry._fields)
+                {
+                    responseFields.add(field);
+                }
+                return;
+            }
+        }
+
+        if (HttpMethod.GET.is(method))
+            out.setInterceptor(new ETagInterceptor(baseRequest, key, ifNoneMatch, rememberable, newDigest(), out.getInterceptor()));
+        super.handle(target, baseRequest, request, response);
+    }
+
+    /**
+     * @param request the request
+     * @return the key under which the entity tag of the response to the request is remembered
+     */
+    protected String getKey(Request request)
+    {
+        StringBuilder key = new StringBuilder(128);
+        key.append(request.getRequestURL());
+        String query = request.getQueryString();
+        if (query != null)
+            key.append('?').append(query);
+        return key.toString();
+    }
+
+    /**
+     * Forgets the entity tag remembered for the given key.
+     *
+     * @param key the key of the entity tag to forget
+     * @see #getKey(Request)
+     */
+    public void invalidate(String key)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            _entries.remove(key);
+        }
+    }
+
+    private Entry lookup(String key)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            Entry entry = _entries.get(key);
+            if (entry == null)
+                return null;
+            if (System.nanoTime() - entry._expires >= 0)
+            {
+                _entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void remember(String key, String etag, HttpFields responseFields)
+    {
+        // The headers that a 304 response must carry, see RFC 7232 section 4.1.
+        List<HttpField> fields = new ArrayList<>(4);
+        for (HttpField field : responseFields)
+        {
+            HttpHeader header = field.getHeader();
+            if (header == HttpHeader.CACHE_CONTROL || header == HttpHeader.CONTENT_LOCATION ||
+                header == HttpHeader.EXPIRES || header == HttpHeader.VARY)
+                fields.add(field);
+        }
+        long expires = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getTimeToLive());
+        try (AutoLock l = _lock.lock())
+        {
+            _entries.put(key, new Entry(etag, fields, expires));
+            if (_entries.size() > _maxEntries)
+            {
+                // Remove the least recently used entry.
+                _entries.remove(_entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    private static boolean matches(String etag, String ifNoneMatch)
+    {
+        // If-None-Match uses the weak comparison function.
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String tag : new QuotedCSV(true, ifNoneMatch))
+        {
+            if ("*".equals(tag))
+                return true;
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (CompressedContentFormat.tagEquals(opaque, tag))
+                return true;
+        }
+        return false;
+    }
+
+    private MessageDigest newDigest()
+    {
+        try
+        {
+            return (MessageDigest)_digest.clone();
+        }
+        catch (CloneNotSupportedException x)
+        {
+            try
+            {
+                MessageDigest digest = MessageDigest.getInstance(_algorithm);
+                digest.update(_salt);
+                return digest;
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,entries=%d,ttl=%d}", getClass().getSimpleName(), hashCode(), getState(), getEntries(), _timeToLive);
+    }
+
+    private static class Entry
+    {
+        private final String _etag;
+        private final List<HttpField> _fields;
+        private final long _expires;
+
+        private Entry(String etag, List<HttpField> fields, long expires)
+        {
+            _etag = etag;
+            _fields = fields;
+            _expires = expires;
+        }
+    }
+
+    private class ETagInterceptor implements HttpOutput.Interceptor
+    {
+        private final Request _request;
+        private final String _key;
+        private final String _ifNoneMatch;
+        private final HttpOutput.Interceptor _next;
+        private boolean _rememberable;
+        private MessageDigest _messageDigest;
+        private boolean _decided;
+
+        private ETagInterceptor(Request request, String key, String ifNoneMatch, boolean rememberable, MessageDigest messageDigest, HttpOutput.Interceptor next)
+        {
+            _request = request;
+            _key = key;
+            _ifNoneMatch = ifNoneMatch;
+            _rememberable = rememberable;
+            _messageDigest = messageDigest;
+            _next = next;
+        }
+
+        @Override
+        public HttpOutput.Interceptor getNextInterceptor()
+        {
+            return _next;
+        }
+
+        @Override
+        public void resetBuffer()
+        {
+            if (_messageDigest != null)
+            {
+                _messageDigest.reset();
+                _messageDigest.update(_salt);
+            }
+            HttpOutput.Interceptor.super.resetBuffer();
+        }
+
+        @Override
+        public void write(ByteBuffer content, boolean last, Callback callback)
+        {
+            Response response = _request.getResponse();
+            if (!_decided)
+            {
+                _decided = true;
+                if (!isTaggable(response))
+                {
+                    _messageDigest = null;
+                }
+                else
+                {
+                    _rememberable &= isRememberable(response);
+                    String etag = response.getHttpFields().get(HttpHeader.ETAG);
+                    if (etag != null)
+                    {
+                        // The application provided its own entity tag.
+                        _messageDigest = null;
+                        if (_rememberable)
+                            remember(_key, etag, response.getHttpFields());
+                    }
+                }
+            }
+
+            if (_messageDigest != null && response.isCommitted())
+            {
+                // A previous write committed the response, so the entity tag cannot be sent.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Committed before last write {} {}", ETagHandler.this, _key);
+                _messageDigest = null;
+            }
+
+            if (_messageDigest == null)
+            {
+                _next.write(content, last, callback);
+                return;
+            }
+
+            if (BufferUtil.hasContent(content))
+                _messageDigest.update(content.slice());
+            if (!last)
+            {
+                _next.write(content, false, callback);
+                return;
+            }
+
+            String etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(_messageDigest.digest()) + "\"";
+            _messageDigest = null;
+            _tagged.increment();
+            if (_rememberable)
+                remember(_key, etag, response.getHttpFields());
+            response.setHeader(HttpHeader.ETAG.asString(), etag);
+
+            if (_ifNoneMatch != null && matches(etag, _ifNoneMatch))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Not modified after handling {} {} {}", ETagHandler.this, _key, etag);
+                _notModified.increment();
+                // The response retains the Cache-Control, Content-Location,
+                // Expires and Vary headers set by the application, as required
+                // by RFC 7232, and only its content is discarded.
+                response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                response.setContentLength(-1);
+                _next.write(BufferUtil.EMPTY_BUFFER, true, callback);
+                return;
+            }
+            _next.write(content, true, callback);
+        }
+
+        private boolean isTaggable(Response response)
+        {
+            int status = response.getStatus();
+            return status == 0 || status == HttpStatus.OK_200;
+        }
+
+        private boolean isRememberable(Response response)
+        {
+            HttpFields fields = response.getHttpFields();
+            if (fields.contains(HttpHeader.SET_COOKIE))
+                return false;
+            for (String vary : fields.getCSV(HttpHeader.VARY, false))
+            {
+                if (!HttpHeader.ACCEPT_ENCODING.is(vary))
+                    return false;
+            }
+            for (String directive : fields.getCSV(HttpHeader.CACHE_CONTROL, false))
+            {
+                // The directive may have a value, such as private="Set-Cookie".
+                String name = directive.split("=", 2)[0].trim();
+                if ("private".equalsIgnoreCase(name) || "no-store".equalsIgnoreCase(name))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
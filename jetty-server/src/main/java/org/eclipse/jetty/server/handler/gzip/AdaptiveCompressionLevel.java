@@ -0,0 +1,456 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Adapts the compression level used by {@link GzipHandler} to the load of the server.</p>
+ * <p>At most once every {@link #getSampleInterval() sample interval}, the load is sampled
+ * from the CPU load of the process and from the latency of a probe task submitted to the
+ * {@link #getThreadPool() thread pool}.
+ * When either is above its high threshold, or the thread pool is low on threads, the
+ * compression level is lowered by one step, down to {@link #getMinLevel() min level};
+ * if the load is still high at the minimum level, compression is skipped for responses
+ * smaller than {@link #getSkipCompressionSize() skip compression size}, while larger
+ * responses, for which compression saves the most bandwidth, are still compressed.
+ * When both the CPU load and the queue latency are below their low thresholds, the
+ * compression level is raised again by one step, up to {@link #getMaxLevel() max level}.</p>
+ * <p>The number of responses compressed at each level, the number of responses for which
+ * compression was skipped, and the number of bytes saved by compression are recorded.</p>
+ *
+ * @see GzipHandler#setAdaptiveCompressionLevel(AdaptiveCompressionLevel)
+ */
+@ManagedObject("Adaptive gzip compression level")
+public class AdaptiveCompressionLevel
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveCompressionLevel.class);
+
+    private final LongAdder[] _levels = new LongAdder[Deflater.BEST_COMPRESSION + 1];
+    private final LongAdder _skipped = new LongAdder();
+    private final LongAdder _bytesIn = new LongAdder();
+    private final LongAdder _bytesOut = new LongAdder();
+    private final AtomicLong _nextSample = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean _probePending = new AtomicBoolean();
+    private final OperatingSystemMXBean _operatingSystem;
+    private ThreadPool _threadPool;
+    private int _minLevel = Deflater.BEST_SPEED;
+    private int _maxLevel = 6;
+    private double _highCpuLoad = 0.85D;
+    private double _lowCpuLoad = 0.50D;
+    private long _highQueueLatency = TimeUnit.MILLISECONDS.toNanos(50);
+    private long _lowQueueLatency = TimeUnit.MILLISECONDS.toNanos(5);
+    private long _sampleInterval = TimeUnit.SECONDS.toNanos(1);
+    private int _skipCompressionSize = 64 * 1024;
+    private volatile long _probeSubmitted;
+    private volatile long _probeLatency;
+    private volatile int _level = _maxLevel;
+    private volatile boolean _skipping;
+
+    public AdaptiveCompressionLevel()
+    {
+        this(null);
+    }
+
+    public AdaptiveCompressionLevel(@Name("threadPool") ThreadPool threadPool)
+    {
+        _threadPool = threadPool;
+        for (int i = 0; i < _levels.length; ++i)
+        {
+            _levels[i] = new LongAdder();
+        }
+        OperatingSystemMXBean operatingSystem = null;
+        try
+        {
+            operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        }
+        catch (Throwable x)
+        {
+            LOG.debug("CPU load not available", x);
+        }
+        _operatingSystem = operatingSystem;
+    }
+
+    /**
+     * @return the thread pool whose queue latency is probed, or null to only use the CPU load
+     */
+    public ThreadPool getThreadPool()
+    {
+        return _threadPool;
+    }
+
+    /**
+     * @param threadPool the thread pool whose queue latency is probed, or null to only use the CPU load
+     */
+    public void setThreadPool(ThreadPool threadPool)
+    {
+        _threadPool = threadPool;
+    }
+
+    /**
+     * @return the lowest compression level used under load
+     */
+    @ManagedAttribute("The lowest compression level used under load")
+    public int getMinLevel()
+    {
+        return _minLevel;
+    }
+
+    public void setMinLevel(int minLevel)
+    {
+        if (minLevel < Deflater.BEST_SPEED || minLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + minLevel);
+        _minLevel = minLevel;
+        _level = Math.max(_level, minLevel);
+    }
+
+    /**
+     * @return the compression level used when the server is idle
+     */
+    @ManagedAttribute("The compression level used when idle")
+    public int getMaxLevel()
+    {
+        return _maxLevel;
+    }
+
+    public void setMaxLevel(int maxLevel)
+    {
+        if (maxLevel < Deflater.BEST_SPEED || maxLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + maxLevel);
+        _maxLevel = maxLevel;
+        _level = Math.min(_level, maxLevel);
+    }
+
+    /**
+     * @return the CPU load, between 0 and 1, above which the compression level is lowered
+     */
+    @ManagedAttribute("The CPU load above which the compression level is lowered")
+    public double getHighCpuLoad()
+    {
+        return _highCpuLoad;
+    }
+
+    public void setHighCpuLoad(double highCpuLoad)
+    {
+        _highCpuLoad = highCpuLoad;
+    }
+
+    /**
+     * @return the CPU load, between 0 and 1, below which the compression level is raised
+     */
+    @ManagedAttribute("The CPU load below which the compression level is raised")
+    public double getLowCpuLoad()
+    {
+        return _lowCpuLoad;
+    }
+
+    public void setLowCpuLoad(double lowCpuLoad)
+    {
+        _lowCpuLoad = lowCpuLoad;
+    }
+
+    /**
+     * @return the thread pool queue latency, in milliseconds, above which the compression level is lowered
+     */
+    @ManagedAttribute("The thread pool queue latency, in ms, above which the compression level is lowered")
+    public long getHighQueueLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_highQueueLatency);
+    }
+
+    public void setHighQueueLatency(long highQueueLatency)
+    {
+        _highQueueLatency = TimeUnit.MILLISECONDS.toNanos(highQueueLatency);
+    }
+
+    /**
+     * @return the thread pool queue latency, in milliseconds, below which the compression level is raised
+     */
+    @ManagedAttribute("The thread pool queue latency, in ms, below which the compression level is raised")
+    public long getLowQueueLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_lowQueueLatency);
+    }
+
+    public void setLowQueueLatency(long lowQueueLatency)
+    {
+        _lowQueueLatency = TimeUnit.MILLISECONDS.toNanos(lowQueueLatency);
+    }
+
+    /**
+     * @return the minimum time, in milliseconds, between two samples of the load
+     */
+    @ManagedAttribute("The minimum time, in ms, between two samples of the load")
+    public long getSampleInterval()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_sampleInterval);
+    }
+
+    public void setSampleInterval(long sampleInterval)
+    {
+        _sampleInterval = TimeUnit.MILLISECONDS.toNanos(sampleInterval);
+    }
+
+    /**
+     * @return the content length below which compression is skipped when the load is high at the min level
+     */
+    @ManagedAttribute("The content length below which compression is skipped under high load")
+    public int getSkipCompressionSize()
+    {
+        return _skipCompressionSize;
+    }
+
+    public void setSkipCompressionSize(int skipCompressionSize)
+    {
+        _skipCompressionSize = skipCompressionSize;
+    }
+
+    /**
+     * @return the current compression level
+     */
+    @ManagedAttribute("The current compression level")
+    public int getLevel()
+    {
+        return _level;
+    }
+
+    /**
+     * @return whether compression is currently skipped for responses smaller than the skip compression size
+     */
+    @ManagedAttribute("Whether compression is skipped for mid-sized responses")
+    public boolean isSkipping()
+    {
+        return _skipping;
+    }
+
+    /**
+     * @param level the compression level
+     * @return the number of responses compressed at the given level
+     */
+    @ManagedOperation(value = "The number of responses compressed at the given level", impact = "INFO")
+    public long getCompressedResponses(@Name("level") int level)
+    {
+        if (level < 0 || level >= _levels.length)
+            return 0;
+        return _levels[level].longValue();
+    }
+
+    /**
+     * @return the number of responses compressed at any level
+     */
+    @ManagedAttribute("The number of responses compressed")
+    public long getCompressedResponses()
+    {
+        long total = 0;
+        for (LongAdder level : _levels)
+        {
+            total += level.longValue();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of responses not compressed because of the load
+     */
+    @ManagedAttribute("The number of responses not compressed because of the load")
+    public long getSkippedResponses()
+    {
+        return _skipped.longValue();
+    }
+
+    /**
+     * @return the number of bytes given to the compressor
+     */
+    @ManagedAttribute("The number of bytes given to the compressor")
+    public long getBytesIn()
+    {
+        return _bytesIn.longValue();
+    }
+
+    /**
+     * @return the number of bytes produced by the compressor
+     */
+    @ManagedAttribute("The number of bytes produced by the compressor")
+    public long getBytesOut()
+    {
+        return _bytesOut.longValue();
+    }
+
+    /**
+     * @return the number of bytes saved by compression
+     */
+    @ManagedAttribute("The number of bytes saved by compression")
+    public long getBytesSaved()
+    {
+        return getBytesIn() - getBytesOut();
+    }
+
+    @ManagedOperation(value = "resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        for (LongAdder level : _levels)
+        {
+            level.reset();
+        }
+        _skipped.reset();
+        _bytesIn.reset();
+        _bytesOut.reset();
+    }
+
+    /**
+     * <p>Returns the compression level to use for a response, sampling the load if the
+     * sample interval has elapsed.</p>
+     *
+     * @param contentLength the content length of the response, or -1 if unknown
+     * @return the compression level to use, or -1 if the response must not be compressed
+     */
+    public int acquireLevel(long contentLength)
+    {
+        long now = System.nanoTime();
+        long next = _nextSample.get();
+        if (now - next >= 0 && _nextSample.compareAndSet(next, now + _sampleInterval))
+            sample();
+
+        if (_skipping && contentLength >= 0 && contentLength < _skipCompressionSize)
+        {
+            _skipped.increment();
+            return -1;
+        }
+        int level = _level;
+        _levels[level].increment();
+        return level;
+    }
+
+    /**
+     * <p>Records the bytes read and written by a compressor that has finished.</p>
+     *
+     * @param bytesIn the number of bytes given to the compressor
+     * @param bytesOut the number of bytes produced by the compressor
+     */
+    public void onCompressed(long bytesIn, long bytesOut)
+    {
+        _bytesIn.add(bytesIn);
+        _bytesOut.add(bytesOut);
+    }
+
+    /**
+     * <p>Samples the load and adjusts the compression level by one step.</p>
+     */
+    protected void sample()
+    {
+        double cpuLoad = getCpuLoad();
+        long queueLatency = getQueueLatency();
+        ThreadPool threadPool = getThreadPool();
+        boolean lowOnThreads = threadPool != null && threadPool.isLowOnThreads();
+
+        if (lowOnThreads || cpuLoad > _highCpuLoad || queueLatency > _highQueueLatency)
+        {
+            if (_level > _minLevel)
+                _level = _level - 1;
+            else
+                _skipping = true;
+        }
+        else if (cpuLoad < _lowCpuLoad && queueLatency < _lowQueueLatency)
+        {
+            if (_skipping)
+                _skipping = false;
+            else if (_level < _maxLevel)
+                _level = _level + 1;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Sampled cpu={} latency={}ns lowOnThreads={} {}", cpuLoad, queueLatency, lowOnThreads, this);
+    }
+
+    /**
+     * @return the CPU load of the process, between 0 and 1, or a negative value if not available
+     */
+    protected double getCpuLoad()
+    {
+        if (_operatingSystem == null)
+            return -1;
+        if (_operatingSystem instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean)_operatingSystem).getProcessCpuLoad();
+        double loadAverage = _operatingSystem.getSystemLoadAverage();
+        if (loadAverage < 0)
+            return loadAverage;
+        return loadAverage / _operatingSystem.getAvailableProcessors();
+    }
+
+    /**
+     * <p>Returns the queue latency of the thread pool, in nanoseconds.</p>
+     * <p>The queue latency is measured by a probe task submitted to the thread pool at each
+     * sample, so the value returned is the latency of the probe submitted at the previous
+     * sample, or the time elapsed since it has been submitted if it has not run yet.</p>
+     *
+     * @return the queue latency of the thread pool, in nanoseconds, or 0 if not available
+     */
+    protected long getQueueLatency()
+    {
+        Executor executor = getThreadPool();
+        if (executor == null)
+            return 0;
+
+        long now = System.nanoTime();
+        if (_probePending.get())
+            return Math.max(_probeLatency, now - _probeSubmitted);
+
+        long latency = _probeLatency;
+        _probeSubmitted = now;
+        _probePending.set(true);
+        try
+        {
+            executor.execute(this::onProbe);
+        }
+        catch (Throwable x)
+        {
+            LOG.trace("IGNORED", x);
+            _probePending.set(false);
+            return Long.MAX_VALUE;
+        }
+        return latency;
+    }
+
+    private void onProbe()
+    {
+        _probeLatency = System.nanoTime() - _probeSubmitted;
+        _probePending.set(false);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{level=%d,skipping=%b,min=%d,max=%d}", getClass().getSimpleName(), hashCode(), _level, _skipping, _minLevel, _maxLevel);
+    }
+}
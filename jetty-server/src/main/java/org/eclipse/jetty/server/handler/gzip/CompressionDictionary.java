@@ -0,0 +1,197 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Adler32;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.pathmap.PathSpecSet;
+import org.eclipse.jetty.util.IncludeExclude;
+import org.eclipse.jetty.util.StringUtil;
+
+/**
+ * <p>A preset dictionary used to deflate responses, shared in advance with cooperating clients.</p>
+ * <p>Small responses, typically JSON documents, compress poorly because the deflater has no
+ * history to find repetitions in. A dictionary containing the strings that frequently occur in
+ * such responses (property names, common values) primes the deflater, so that much better
+ * compression ratios are obtained even for responses of a few hundred bytes.</p>
+ * <p>The dictionary is identified by the hex representation of its Adler-32 checksum, which is
+ * also the {@code DICTID} written by the deflater in the zlib header of the compressed content.
+ * Clients advertise the dictionaries they hold by listing their identifiers in the
+ * {@value #HEADER} request header; the response is then deflated with the dictionary only if
+ * the request also accepts the {@code deflate} encoding, and the request path and response
+ * MIME type match the {@link #addIncludedPaths(String...) paths} and
+ * {@link #addIncludedMimeTypes(String...) MIME types} of the dictionary.</p>
+ * <p>Like the {@link GzipHandler#addIncludedPaths(String...) included paths} of the
+ * {@link GzipHandler}, the paths of the dictionary are matched against the path in context
+ * of the request when it is handled by the {@link GzipHandler}, so they include the context
+ * path of the contexts below a {@link GzipHandler} that is not itself within a context.
+ * The MIME type of the response is only checked when known.</p>
+ * <p>Responses deflated with a dictionary have a {@code --deflate-<id>} suffix
+ * appended to their entity tag, so that they are not confused with responses deflated without
+ * dictionary.</p>
+ *
+ * @see GzipHandler#getCompressionDictionaries()
+ */
+public class CompressionDictionary
+{
+    /**
+     * The request header listing the identifiers of the dictionaries held by the client.
+     */
+    public static final String HEADER = "X-Compression-Dictionaries";
+
+    private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
+    private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>();
+    private final byte[] _bytes;
+    private final String _id;
+    private final CompressedContentFormat _format;
+
+    /**
+     * @param file the file containing the dictionary
+     * @throws IOException if the file cannot be read
+     */
+    public CompressionDictionary(Path file) throws IOException
+    {
+        this(Files.readAllBytes(file));
+    }
+
+    /**
+     * @param bytes the dictionary
+     */
+    public CompressionDictionary(byte[] bytes)
+    {
+        if (bytes == null || bytes.length == 0)
+            throw new IllegalArgumentException("Empty dictionary");
+        _bytes = bytes.clone();
+        _id = idOf(_bytes);
+        CompressedContentFormat deflate = CompressedContentFormat.DEFLATE;
+        _format = new CompressedContentFormat(deflate._encoding, deflate._extension, deflate._etag + "-" + _id);
+    }
+
+    /**
+     * @param dictionary the dictionary bytes
+     * @return the identifier of the dictionary, the hex representation of its Adler-32 checksum
+     */
+    public static String idOf(byte[] dictionary)
+    {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return String.format("%08x", adler.getValue());
+    }
+
+    /**
+     * @return the identifier of this dictionary
+     */
+    public String getId()
+    {
+        return _id;
+    }
+
+    /**
+     * @return a copy of the bytes of this dictionary
+     */
+    public byte[] getBytes()
+    {
+        return _bytes.clone();
+    }
+
+    /**
+     * @return the format of the content deflated with this dictionary
+     */
+    public CompressedContentFormat getCompressedContentFormat()
+    {
+        return _format;
+    }
+
+    /**
+     * @param level the compression level
+     * @return a new factory of encoders that deflate with this dictionary
+     */
+    public ContentEncoder.Factory newContentEncoderFactory(int level)
+    {
+        return new DeflateContentEncoder.Factory(_format, level, _bytes);
+    }
+
+    /**
+     * Adds path specs of the requests whose response may be deflated with this dictionary.
+     *
+     * @param pathspecs the path specs to include
+     */
+    public void addIncludedPaths(String... pathspecs)
+    {
+        _paths.include(pathspecs);
+    }
+
+    /**
+     * Adds path specs of the requests whose response must not be deflated with this dictionary.
+     *
+     * @param pathspecs the path specs to exclude
+     */
+    public void addExcludedPaths(String... pathspecs)
+    {
+        _paths.exclude(pathspecs);
+    }
+
+    /**
+     * Adds MIME types, without parameters, of the responses that may be deflated with this dictionary.
+     *
+     * @param types the MIME types to include
+     */
+    public void addIncludedMimeTypes(String... types)
+    {
+        for (String type : types)
+        {
+            _mimeTypes.include(StringUtil.asciiToLowerCase(type));
+        }
+    }
+
+    /**
+     * Adds MIME types, without parameters, of the responses that must not be deflated with this dictionary.
+     *
+     * @param types the MIME types to exclude
+     */
+    public void addExcludedMimeTypes(String... types)
+    {
+        for (String type : types)
+        {
+            _mimeTypes.exclude(StringUtil.asciiToLowerCase(type));
+        }
+    }
+
+    /**
+     * @param path the request path in context, or null if unknown
+     * @param mimeType the lower case response MIME type without parameters, or null if not known yet
+     * @return whether the response may be deflated with this dictionary
+     */
+    public boolean test(String path, String mimeType)
+    {
+        if (path != null && !_paths.test(path))
+            return false;
+        return mimeType == null || _mimeTypes.test(mimeType);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{id=%s,length=%d,paths=%s,mimeTypes=%s}", getClass().getSimpleName(), hashCode(), _id, _bytes.length, _paths, _mimeTypes);
+    }
+}
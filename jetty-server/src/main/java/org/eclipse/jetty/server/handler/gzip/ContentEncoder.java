@@ -0,0 +1,172 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.util.StringUtil;
+
+/**
+ * <p>{@link ContentEncoder} encodes the content bytes of a response.</p>
+ * <p>An encoder encodes the content of one response at a time, and is
+ * {@link #reset() reset} to be reused for another response.
+ * The encoder is driven in the same way as a {@link java.util.zip.Deflater}:
+ * content is given with {@link #setInput(byte[], int, int)} when the encoder
+ * {@link #needsInput() needs input}, the end of the content is signalled with
+ * {@link #finish()}, and the encoded bytes are produced with
+ * {@link #encode(ByteBuffer, boolean)} until the encoder is {@link #finished()}.</p>
+ *
+ * @see Factory
+ */
+public interface ContentEncoder
+{
+    /**
+     * @return the format of the encoded content, with the encoding used in the {@code Content-Encoding} header
+     */
+    CompressedContentFormat getCompressedContentFormat();
+
+    /**
+     * <p>Sets the content bytes to encode.</p>
+     * <p>The bytes must not be modified until the encoder {@link #needsInput() needs input} again.</p>
+     *
+     * @param input the array containing the bytes to encode
+     * @param offset the offset of the bytes to encode
+     * @param length the number of bytes to encode
+     */
+    void setInput(byte[] input, int offset, int length);
+
+    /**
+     * @return whether all the bytes given by {@link #setInput(byte[], int, int)} have been consumed
+     */
+    boolean needsInput();
+
+    /**
+     * Signals that the bytes last given by {@link #setInput(byte[], int, int)} are the end of the content.
+     */
+    void finish();
+
+    /**
+     * @return whether all the encoded bytes have been produced after a call to {@link #finish()}
+     */
+    boolean finished();
+
+    /**
+     * <p>Encodes the content into the space of the given buffer, after its limit.</p>
+     *
+     * @param buffer the heap buffer in flush mode to append the encoded bytes to
+     * @param flush whether the encoded bytes for all the input consumed so far must be produced
+     * @return the number of encoded bytes appended to the buffer
+     */
+    int encode(ByteBuffer buffer, boolean flush);
+
+    /**
+     * <p>Sets the compression level for the next content to encode.</p>
+     * <p>Encoders that do not support compression levels ignore this method.</p>
+     *
+     * @param level the compression level, from 0 to 9
+     */
+    default void setLevel(int level)
+    {
+    }
+
+    /**
+     * @return the number of content bytes consumed since the last reset
+     */
+    long getBytesRead();
+
+    /**
+     * @return the number of encoded bytes produced since the last reset
+     */
+    long getBytesWritten();
+
+    /**
+     * Resets the encoder so that it can encode another content.
+     */
+    void reset();
+
+    /**
+     * Releases the resources of the encoder, that cannot be used anymore.
+     */
+    void end();
+
+    /**
+     * <p>Factory for {@link ContentEncoder}s; subclasses must implement {@link #newContentEncoder()}.</p>
+     * <p>{@link Factory} have an {@link #getEncoding() encoding}, which is the string matched
+     * against the {@code Accept-Encoding} request header and sent in the {@code Content-Encoding}
+     * response header.</p>
+     * <p>{@link Factory} instances are configured in {@link GzipHandler} via
+     * {@link GzipHandler#getContentEncoderFactories()}.</p>
+     */
+    abstract class Factory
+    {
+        private final CompressedContentFormat format;
+
+        protected Factory(CompressedContentFormat format)
+        {
+            this.format = format;
+        }
+
+        /**
+         * @return the encoding of the encoders created by this factory
+         */
+        public String getEncoding()
+        {
+            return format._encoding;
+        }
+
+        /**
+         * @return the format of the content encoded by the encoders created by this factory
+         */
+        public CompressedContentFormat getCompressedContentFormat()
+        {
+            return format;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Factory))
+                return false;
+            Factory that = (Factory)obj;
+            return getEncoding().equalsIgnoreCase(that.getEncoding());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return StringUtil.asciiToLowerCase(getEncoding()).hashCode();
+        }
+
+        /**
+         * Factory method for {@link ContentEncoder}s
+         *
+         * @return a new instance of a {@link ContentEncoder}
+         */
+        public abstract ContentEncoder newContentEncoder();
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), getEncoding());
+        }
+    }
+}
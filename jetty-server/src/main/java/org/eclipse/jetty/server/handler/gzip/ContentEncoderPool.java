@@ -0,0 +1,77 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import org.eclipse.jetty.util.compression.CompressionPool;
+
+/**
+ * A pool of {@link ContentEncoder} instances created by a {@link ContentEncoder.Factory}.
+ */
+public class ContentEncoderPool extends CompressionPool<ContentEncoder>
+{
+    private final ContentEncoder.Factory factory;
+
+    /**
+     * Create a Pool of {@link ContentEncoder} instances.
+     * <p>
+     * If given a capacity equal to zero the encoders will not be pooled
+     * and will be created on acquire and ended on release.
+     * If given a negative capacity there will be no size restrictions on the pool
+     *
+     * @param capacity maximum number of encoders which can be contained in the pool
+     * @param factory the factory of the encoders
+     */
+    public ContentEncoderPool(int capacity, ContentEncoder.Factory factory)
+    {
+        super(capacity);
+        this.factory = factory;
+    }
+
+    /**
+     * @return the factory of the pooled encoders
+     */
+    public ContentEncoder.Factory getFactory()
+    {
+        return factory;
+    }
+
+    @Override
+    protected ContentEncoder newObject()
+    {
+        return factory.newContentEncoder();
+    }
+
+    @Override
+    protected void end(ContentEncoder encoder)
+    {
+        encoder.end();
+    }
+
+    @Override
+    protected void reset(ContentEncoder encoder)
+    {
+        encoder.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), factory.getEncoding());
+    }
+}
@@ -0,0 +1,198 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>{@link ContentEncoder} for the "deflate" encoding, that is the zlib format.</p>
+ * <p>The encoder may be configured with a preset dictionary of byte sequences that
+ * are likely to occur in the content, which improves the compression of small contents.
+ * The identifier of the dictionary is sent in the zlib header, and decoders must
+ * be configured with the same dictionary to decode the content.</p>
+ */
+public class DeflateContentEncoder implements ContentEncoder
+{
+    private final CompressedContentFormat _format;
+    private final Deflater _deflater;
+    private final byte[] _dictionary;
+
+    public DeflateContentEncoder(int level)
+    {
+        this(level, null);
+    }
+
+    public DeflateContentEncoder(int level, byte[] dictionary)
+    {
+        this(CompressedContentFormat.DEFLATE, level, dictionary);
+    }
+
+    /**
+     * @param format the format of the encoded content, whose encoding must be "deflate"
+     * @param level the compression level
+     * @param dictionary the preset dictionary, or null for no dictionary
+     */
+    public DeflateContentEncoder(CompressedContentFormat format, int level, byte[] dictionary)
+    {
+        this(format, new Deflater(level, false), dictionary);
+    }
+
+    protected DeflateContentEncoder(CompressedContentFormat format, Deflater deflater, byte[] dictionary)
+    {
+        _format = format;
+        _deflater = deflater;
+        _dictionary = dictionary;
+        if (_dictionary != null)
+            _deflater.setDictionary(_dictionary);
+    }
+
+    @Override
+    public CompressedContentFormat getCompressedContentFormat()
+    {
+        return _format;
+    }
+
+    Deflater getDeflater()
+    {
+        return _deflater;
+    }
+
+    /**
+     * @return the preset dictionary, or null if no dictionary is used
+     */
+    public byte[] getDictionary()
+    {
+        return _dictionary;
+    }
+
+    @Override
+    public void setInput(byte[] input, int offset, int length)
+    {
+        _deflater.setInput(input, offset, length);
+    }
+
+    @Override
+    public boolean needsInput()
+    {
+        return _deflater.needsInput();
+    }
+
+    @Override
+    public void finish()
+    {
+        _deflater.finish();
+    }
+
+    @Override
+    public boolean finished()
+    {
+        return _deflater.finished();
+    }
+
+    @Override
+    public int encode(ByteBuffer buffer, boolean flush)
+    {
+        int off = buffer.arrayOffset() + buffer.limit();
+        int len = BufferUtil.space(buffer);
+        int produced = _deflater.deflate(buffer.array(), off, len, flush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+        buffer.limit(buffer.limit() + produced);
+        return produced;
+    }
+
+    @Override
+    public void setLevel(int level)
+    {
+        _deflater.setLevel(level);
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return _deflater.getBytesRead();
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        return _deflater.getBytesWritten();
+    }
+
+    @Override
+    public void reset()
+    {
+        _deflater.reset();
+        if (_dictionary != null)
+            _deflater.setDictionary(_dictionary);
+    }
+
+    @Override
+    public void end()
+    {
+        _deflater.end();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,dictionary=%b]", getClass().getSimpleName(), hashCode(), _deflater, _dictionary != null);
+    }
+
+    /**
+     * Specialized {@link ContentEncoder.Factory} for the "deflate" encoding.
+     */
+    public static class Factory extends ContentEncoder.Factory
+    {
+        private final CompressedContentFormat format;
+        private final int level;
+        private final byte[] dictionary;
+
+        public Factory()
+        {
+            this(Deflater.DEFAULT_COMPRESSION);
+        }
+
+        public Factory(int level)
+        {
+            this(level, null);
+        }
+
+        public Factory(int level, byte[] dictionary)
+        {
+            this(CompressedContentFormat.DEFLATE, level, dictionary);
+        }
+
+        public Factory(CompressedContentFormat format, int level, byte[] dictionary)
+        {
+            super(format);
+            this.format = format;
+            this.level = level;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public ContentEncoder newContentEncoder()
+        {
+            return new DeflateContentEncoder(format, level, dictionary);
+        }
+    }
+}
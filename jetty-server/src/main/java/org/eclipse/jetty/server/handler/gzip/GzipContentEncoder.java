@@ -0,0 +1,136 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * {@link ContentEncoder} for the "gzip" encoding.
+ */
+public class GzipContentEncoder extends DeflateContentEncoder
+{
+    private static final byte[] GZIP_HEADER = new byte[]{(byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final CRC32 _crc = new CRC32();
+    private boolean _header;
+    private boolean _trailer;
+
+    public GzipContentEncoder(int level)
+    {
+        this(new Deflater(level, true));
+    }
+
+    /**
+     * @param deflater the deflater producing the raw deflate data, created with {@code nowrap} set to true
+     */
+    GzipContentEncoder(Deflater deflater)
+    {
+        super(CompressedContentFormat.GZIP, deflater, null);
+    }
+
+    @Override
+    public void setInput(byte[] input, int offset, int length)
+    {
+        _crc.update(input, offset, length);
+        super.setInput(input, offset, length);
+    }
+
+    @Override
+    public boolean finished()
+    {
+        return _trailer;
+    }
+
+    @Override
+    public int encode(ByteBuffer buffer, boolean flush)
+    {
+        int produced = 0;
+        if (!_header)
+        {
+            if (BufferUtil.space(buffer) < GZIP_HEADER.length)
+                return produced;
+            BufferUtil.append(buffer, GZIP_HEADER, 0, GZIP_HEADER.length);
+            produced += GZIP_HEADER.length;
+            _header = true;
+        }
+
+        if (!super.finished())
+            produced += super.encode(buffer, flush);
+
+        if (super.finished() && !_trailer && BufferUtil.space(buffer) >= GZIP_TRAILER_SIZE)
+        {
+            BufferUtil.putIntLittleEndian(buffer, (int)_crc.getValue());
+            BufferUtil.putIntLittleEndian(buffer, (int)getBytesRead());
+            produced += GZIP_TRAILER_SIZE;
+            _trailer = true;
+        }
+        return produced;
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        long written = super.getBytesWritten();
+        if (_header)
+            written += GZIP_HEADER.length;
+        if (_trailer)
+            written += GZIP_TRAILER_SIZE;
+        return written;
+    }
+
+    @Override
+    public void reset()
+    {
+        super.reset();
+        _crc.reset();
+        _header = false;
+        _trailer = false;
+    }
+
+    /**
+     * Specialized {@link ContentEncoder.Factory} for the "gzip" encoding.
+     */
+    public static class Factory extends ContentEncoder.Factory
+    {
+        private final int level;
+
+        public Factory()
+        {
+            this(Deflater.DEFAULT_COMPRESSION);
+        }
+
+        public Factory(int level)
+        {
+            super(CompressedContentFormat.GZIP);
+            this.level = level;
+        }
+
+        @Override
+        public ContentEncoder newContentEncoder()
+        {
+            return new GzipContentEncoder(level);
+        }
+    }
+}
@@ -20,13 +20,95 @@ package org.eclipse.jetty.server.handler.gzip;
 
 import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.server.Request;
 
 public interface GzipFactory
 {
-    Deflater getDeflater(Request request, long contentLength);
+    /**
+     * <p>Returns an encoder for the response to the given request, negotiated
+     * from the encodings accepted by the request.</p>
+     * <p>The default implementation gzips the response with the deflater returned by the
+     * deprecated {@link #getDeflater(Request, long)}, for factories that only implement it.</p>
+     *
+     * @param request the request
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return an encoder to {@link #recycle(ContentEncoder) recycle} after use, or null if the response must not be encoded
+     */
+    default ContentEncoder getContentEncoder(Request request, long contentLength)
+    {
+        Deflater deflater = getDeflater(request, contentLength);
+        return deflater == null ? null : new GzipContentEncoder(deflater);
+    }
+
+    /**
+     * <p>Returns the format that {@link #getContentEncoder(Request, long)} would negotiate
+     * for the response to the given request, without acquiring an encoder, so that a
+     * {@link #getResponseCache() cached} compressed response can be looked up first.</p>
+     * <p>Factories that provide a response cache should override this method, as
+     * responses are not looked up in the cache when it returns null.</p>
+     *
+     * @param request the request
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return the negotiated format, or null if the response must not be encoded
+     */
+    default CompressedContentFormat getCompressedContentFormat(Request request, long contentLength)
+    {
+        return null;
+    }
+
+    /**
+     * @param request the request
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return a gzip deflater to {@link #recycle(Deflater) recycle} after use, or null if the response must not be gzipped
+     * @deprecated use {@link #getContentEncoder(Request, long)} instead
+     */
+    @Deprecated
+    default Deflater getDeflater(Request request, long contentLength)
+    {
+        return null;
+    }
 
     boolean isMimeTypeGzipable(String mimetype);
 
-    void recycle(Deflater deflater);
+    /**
+     * <p>Recycles an encoder returned by {@link #getContentEncoder(Request, long)}.</p>
+     * <p>The default implementation recycles the deflater of the encoder returned by the
+     * default {@link #getContentEncoder(Request, long)} with the deprecated {@link #recycle(Deflater)}.</p>
+     *
+     * @param encoder the encoder to recycle
+     */
+    default void recycle(ContentEncoder encoder)
+    {
+        if (encoder instanceof GzipContentEncoder)
+            recycle(((GzipContentEncoder)encoder).getDeflater());
+        else
+            encoder.end();
+    }
+
+    /**
+     * @param deflater the deflater obtained from {@link #getDeflater(Request, long)}
+     * @deprecated use {@link #recycle(ContentEncoder)} instead
+     */
+    @Deprecated
+    default void recycle(Deflater deflater)
+    {
+        deflater.end();
+    }
+
+    /**
+     * @return the formats of the content encoded by this factory
+     */
+    default CompressedContentFormat[] getCompressedContentFormats()
+    {
+        return new CompressedContentFormat[]{CompressedContentFormat.GZIP};
+    }
+
+    /**
+     * @return the cache of compressed responses, or null if compressed responses are not cached
+     */
+    default GzipResponseCache getResponseCache()
+    {
+        return null;
+    }
 }
@@ -19,8 +19,15 @@
 package org.eclipse.jetty.server.handler.gzip;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.zip.Deflater;
@@ -72,8 +79,9 @@ import org.slf4j.LoggerFactory;
  * </p>
  * <ol>
  * <li>
- * Does the request contain a {@code Accept-Encoding} header that specifies
- * {@code gzip} value?
+ * Does the request contain a {@code Accept-Encoding} header that accepts one of the
+ * encodings of the configured {@link #getContentEncoderFactories() content encoder factories}?
+ * <br> (Default: {@code gzip})
  * </li>
  * <li>
  * Is the {@link HttpServletRequest#getMethod()} allowed by the configured HTTP Method Filter.
@@ -91,12 +99,21 @@ import org.slf4j.LoggerFactory;
  * Is the Response {@code Content-Length} header present, and does its
  * value meet the minimum gzip size requirements (default 32 bytes)?
  * </li>
- * <li>
- * Is the Request {@code Accept} header present and does it contain the
- * required {@code gzip} value?
- * </li>
  * </ol>
  * <p>
+ * The encoding is negotiated from the quality values of the {@code Accept-Encoding}
+ * header; among encodings of equal quality, the order of the content encoder factories
+ * is preferred. Other encodings, such as {@code br} or {@code zstd}, can be supported
+ * by adding a {@link ContentEncoder.Factory} that creates encoders for that encoding.
+ * Encoders are pooled and reused across responses.
+ * </p>
+ * <p>
+ * Small responses, such as JSON documents, can be deflated with a
+ * {@link #getCompressionDictionaries() preset dictionary} shared in advance with cooperating
+ * clients, that advertise the dictionaries they hold with the {@value CompressionDictionary#HEADER}
+ * request header. See {@link CompressionDictionary} for the details of the negotiation.
+ * </p>
+ * <p>
  * When you encounter a configurable filter in the GzipHandler (method, paths, user-agent,
  * mime-types, etc) that has both Included and Excluded values, note that the Included
  * values always win over the Excluded values.
@@ -158,9 +175,16 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private static final HttpField X_CE_GZIP = new PreEncodedHttpField("X-Content-Encoding", "gzip");
     private static final HttpField TE_CHUNKED = new PreEncodedHttpField(HttpHeader.TRANSFER_ENCODING, HttpHeaderValue.CHUNKED.asString());
     private static final Pattern COMMA_GZIP = Pattern.compile(".*, *gzip");
+    private static final String PATH_ATTRIBUTE = "o.e.j.s.h.gzip.GzipHandler.path";
 
     private int poolCapacity = -1;
-    private DeflaterPool _deflaterPool = null;
+    private final List<ContentEncoder.Factory> _encoderFactories = new ArrayList<>();
+    private Map<String, ContentEncoderPool> _encoderPools = Collections.emptyMap();
+    private final List<CompressionDictionary> _dictionaries = new ArrayList<>();
+    private Map<CompressionDictionary, ContentEncoderPool> _dictionaryPools = Collections.emptyMap();
+    private Map<CompressedContentFormat, ContentEncoderPool> _formatPools = Collections.emptyMap();
+    private CompressedContentFormat[] _formats = CompressedContentFormat.NONE;
+    private DeflaterPool _deflaterPool;
 
     private int _minGzipSize = DEFAULT_MIN_GZIP_SIZE;
     private boolean _syncFlush = false;
@@ -172,6 +196,8 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
     private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>();
     private HttpField _vary;
+    private GzipResponseCache _responseCache;
+    private AdaptiveCompressionLevel _adaptiveCompressionLevel;
 
     /**
      * Instantiates a new GzipHandler.
@@ -200,6 +226,34 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
             LOG.debug("{} mime types {}", this, _mimeTypes);
 
         _agentPatterns.exclude(".*MSIE 6.0.*");
+
+        _encoderFactories.add(new GzipContentEncoder.Factory());
+    }
+
+    /**
+     * <p>Returns the factories of the encoders used to compress responses.</p>
+     * <p>The returned list may be modified before this handler is started to add or remove
+     * encodings. The order of the list is the preference order of the encodings, for encodings
+     * that are accepted with the same quality by the request.</p>
+     *
+     * @return a modifiable list of content encoder factories
+     */
+    public List<ContentEncoder.Factory> getContentEncoderFactories()
+    {
+        return _encoderFactories;
+    }
+
+    /**
+     * <p>Returns the preset dictionaries used to deflate responses for clients that hold them.</p>
+     * <p>The returned list may be modified before this handler is started.
+     * When a request advertises several dictionaries that apply to the response, the first
+     * one in the list is used.</p>
+     *
+     * @return a modifiable list of compression dictionaries
+     */
+    public List<CompressionDictionary> getCompressionDictionaries()
+    {
+        return _dictionaries;
     }
 
     /**
@@ -412,13 +466,120 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     @Override
     protected void doStart() throws Exception
     {
+        Map<String, ContentEncoderPool> pools = new LinkedHashMap<>();
+        for (ContentEncoder.Factory factory : _encoderFactories)
+        {
+            ContentEncoderPool pool = newContentEncoderPool(poolCapacity, factory);
+            if (pools.putIfAbsent(StringUtil.asciiToLowerCase(factory.getEncoding()), pool) == null)
+                addBean(pool);
+        }
+        Map<CompressionDictionary, ContentEncoderPool> dictionaryPools = new LinkedHashMap<>();
+        for (CompressionDictionary dictionary : _dictionaries)
+        {
+            ContentEncoderPool pool = newContentEncoderPool(poolCapacity, dictionary.newContentEncoderFactory(Deflater.DEFAULT_COMPRESSION));
+            if (dictionaryPools.putIfAbsent(dictionary, pool) == null)
+                addBean(pool);
+        }
+        // CompressedContentFormat does not override hashCode(), so formats are looked up by identity.
+        Map<CompressedContentFormat, ContentEncoderPool> formatPools = new IdentityHashMap<>();
+        List<CompressedContentFormat> formats = new ArrayList<>();
+        for (ContentEncoderPool pool : pools.values())
+        {
+            CompressedContentFormat format = pool.getFactory().getCompressedContentFormat();
+            formatPools.put(format, pool);
+            formats.add(format);
+        }
+        for (ContentEncoderPool pool : dictionaryPools.values())
+        {
+            CompressedContentFormat format = pool.getFactory().getCompressedContentFormat();
+            formatPools.put(format, pool);
+            formats.add(format);
+        }
+        _encoderPools = pools;
+        _dictionaryPools = dictionaryPools;
+        _formatPools = formatPools;
+        _formats = formats.toArray(CompressedContentFormat.NONE);
         _deflaterPool = newDeflaterPool(poolCapacity);
+        addBean(_deflaterPool);
+        if (_adaptiveCompressionLevel != null && _adaptiveCompressionLevel.getThreadPool() == null && getServer() != null)
+            _adaptiveCompressionLevel.setThreadPool(getServer().getThreadPool());
         _vary = (_agentPatterns.size() > 0) ? GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING_USER_AGENT : GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING;
+        if (!dictionaryPools.isEmpty())
+            _vary = new PreEncodedHttpField(HttpHeader.VARY, _vary.getValue() + ", " + CompressionDictionary.HEADER);
         super.doStart();
     }
 
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        for (ContentEncoderPool pool : _formatPools.values())
+        {
+            removeBean(pool);
+        }
+        _encoderPools = Collections.emptyMap();
+        _dictionaryPools = Collections.emptyMap();
+        _formatPools = Collections.emptyMap();
+        removeBean(_deflaterPool);
+        _deflaterPool = null;
+    }
+
+    @Override
+    public CompressedContentFormat getCompressedContentFormat(Request request, long contentLength)
+    {
+        ContentEncoderPool pool = getContentEncoderPool(request, contentLength);
+        return pool == null ? null : pool.getFactory().getCompressedContentFormat();
+    }
+
+    @Override
+    public ContentEncoder getContentEncoder(Request request, long contentLength)
+    {
+        ContentEncoderPool pool = getContentEncoderPool(request, contentLength);
+        if (pool == null)
+            return null;
+
+        AdaptiveCompressionLevel adaptive = _adaptiveCompressionLevel;
+        if (adaptive == null)
+            return pool.acquire();
+
+        int level = adaptive.acquireLevel(contentLength);
+        if (level < 0)
+        {
+            LOG.debug("{} excluded by load {}", this, request);
+            return null;
+        }
+        ContentEncoder encoder = pool.acquire();
+        encoder.setLevel(level);
+        return encoder;
+    }
+
+    /**
+     * @deprecated use {@link #getContentEncoder(Request, long)} instead
+     */
+    @Deprecated
     @Override
     public Deflater getDeflater(Request request, long contentLength)
+    {
+        ContentEncoderPool pool = getContentEncoderPool(request, contentLength);
+        if (pool == null || pool.getFactory().getCompressedContentFormat() != CompressedContentFormat.GZIP)
+            return null;
+
+        AdaptiveCompressionLevel adaptive = _adaptiveCompressionLevel;
+        if (adaptive == null)
+            return _deflaterPool.acquire();
+
+        int level = adaptive.acquireLevel(contentLength);
+        if (level < 0)
+        {
+            LOG.debug("{} excluded by load {}", this, request);
+            return null;
+        }
+        Deflater deflater = _deflaterPool.acquire();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private ContentEncoderPool getContentEncoderPool(Request request, long contentLength)
     {
         String ua = request.getHttpFields().get(HttpHeader.USER_AGENT);
         if (ua != null && !isAgentGzipable(ua))
@@ -433,14 +594,90 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
             return null;
         }
 
-        // check the accept encoding header
-        if (!request.getHttpFields().contains(HttpHeader.ACCEPT_ENCODING, "gzip"))
-        {
-            LOG.debug("{} excluded not gzip accept {}", this, request);
+        // prefer a dictionary held by the client, then negotiate the encoding from the accept encoding header
+        ContentEncoderPool pool = negotiateDictionary(request);
+        if (pool == null)
+            pool = negotiate(request.getHttpFields());
+        if (pool == null)
+            LOG.debug("{} excluded no accepted encoding {}", this, request);
+        return pool;
+    }
+
+    private ContentEncoderPool negotiateDictionary(Request request)
+    {
+        Map<CompressionDictionary, ContentEncoderPool> pools = _dictionaryPools;
+        if (pools.isEmpty())
+            return null;
+        HttpFields fields = request.getHttpFields();
+        List<String> ids = fields.getCSV(CompressionDictionary.HEADER, false);
+        if (ids.isEmpty() || !fields.contains(HttpHeader.ACCEPT_ENCODING, DEFLATE))
             return null;
+
+        // The response may be committed after the request left the contexts below this handler,
+        // so the dictionary paths are matched against the path seen by this handler, like its included paths.
+        String path = (String)request.getAttribute(PATH_ATTRIBUTE);
+        if (path == null)
+            path = request.getPathInContext();
+        String mimeType = request.getResponse().getContentType();
+        if (mimeType != null)
+            mimeType = StringUtil.asciiToLowerCase(MimeTypes.getContentTypeWithoutCharset(mimeType));
+        for (Map.Entry<CompressionDictionary, ContentEncoderPool> entry : pools.entrySet())
+        {
+            CompressionDictionary dictionary = entry.getKey();
+            if (ids.contains(dictionary.getId()) && dictionary.test(path, mimeType))
+            {
+                LOG.debug("{} dictionary {} {}", this, dictionary, request);
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private ContentEncoderPool negotiate(HttpFields fields)
+    {
+        Map<String, ContentEncoderPool> pools = _encoderPools;
+        for (String encoding : fields.getQualityCSV(HttpHeader.ACCEPT_ENCODING, this::getEncodingPreference))
+        {
+            if ("*".equals(encoding))
+            {
+                // Any encoding that is not explicitly listed, possibly with a zero quality.
+                Set<String> listed = new HashSet<>();
+                for (String value : fields.getCSV(HttpHeader.ACCEPT_ENCODING, false))
+                {
+                    int semicolon = value.indexOf(';');
+                    listed.add(StringUtil.asciiToLowerCase((semicolon < 0 ? value : value.substring(0, semicolon)).trim()));
+                }
+                for (Map.Entry<String, ContentEncoderPool> entry : pools.entrySet())
+                {
+                    if (!listed.contains(entry.getKey()))
+                        return entry.getValue();
+                }
+                continue;
+            }
+
+            ContentEncoderPool pool = pools.get(StringUtil.asciiToLowerCase(encoding));
+            if (pool != null)
+                return pool;
+        }
+        return null;
+    }
+
+    private int getEncodingPreference(String encoding)
+    {
+        int preference = _encoderPools.size();
+        for (String key : _encoderPools.keySet())
+        {
+            if (key.equalsIgnoreCase(encoding))
+                return preference;
+            --preference;
         }
+        return 0;
+    }
 
-        return _deflaterPool.acquire();
+    @Override
+    public CompressedContentFormat[] getCompressedContentFormats()
+    {
+        return _formats;
     }
 
     /**
@@ -633,18 +870,13 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
                     case IF_NONE_MATCH:
                     {
                         String etag = field.getValue();
-                        int i = etag.indexOf(CompressedContentFormat.GZIP._etagQuote);
-                        if (i <= 0 || alreadyGzipped)
+                        String stripped = alreadyGzipped ? etag : stripEtagSuffixes(etag);
+                        if (stripped.equals(etag))
                             newFields.add(field);
                         else
                         {
                             baseRequest.setAttribute("o.e.j.s.h.gzip.GzipHandler.etag", etag);
-                            while (i >= 0)
-                            {
-                                etag = etag.substring(0, i) + etag.substring(i + CompressedContentFormat.GZIP._etag.length());
-                                i = etag.indexOf(CompressedContentFormat.GZIP._etagQuote, i);
-                            }
-                            newFields.add(new HttpField(field.getHeader(), etag));
+                            newFields.add(new HttpField(field.getHeader(), stripped));
                         }
                         break;
                     }
@@ -722,6 +954,8 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         try
         {
             // install interceptor and handle
+            if (!_dictionaryPools.isEmpty())
+                baseRequest.setAttribute(PATH_ATTRIBUTE, path);
             out.setInterceptor(new GzipHttpOutputInterceptor(this, getVaryField(), baseRequest.getHttpChannel(), origInterceptor, isSyncFlush()));
 
             if (_handler != null)
@@ -735,6 +969,20 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         }
     }
 
+    private String stripEtagSuffixes(String etag)
+    {
+        for (CompressedContentFormat format : _formats)
+        {
+            int i = etag.indexOf(format._etagQuote);
+            while (i > 0)
+            {
+                etag = etag.substring(0, i) + etag.substring(i + format._etag.length());
+                i = etag.indexOf(format._etagQuote, i);
+            }
+        }
+        return etag;
+    }
+
     /**
      * Test if the provided User-Agent is allowed based on the User-Agent filters.
      *
@@ -775,10 +1023,34 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         return _paths.test(requestURI);
     }
 
+    @Override
+    public void recycle(ContentEncoder encoder)
+    {
+        AdaptiveCompressionLevel adaptive = _adaptiveCompressionLevel;
+        if (adaptive != null && encoder.finished())
+            adaptive.onCompressed(encoder.getBytesRead(), encoder.getBytesWritten());
+        ContentEncoderPool pool = _formatPools.get(encoder.getCompressedContentFormat());
+        if (pool == null)
+            encoder.end();
+        else
+            pool.release(encoder);
+    }
+
+    /**
+     * @deprecated use {@link #recycle(ContentEncoder)} instead
+     */
+    @Deprecated
     @Override
     public void recycle(Deflater deflater)
     {
-        _deflaterPool.release(deflater);
+        AdaptiveCompressionLevel adaptive = _adaptiveCompressionLevel;
+        if (adaptive != null && deflater.finished())
+            adaptive.onCompressed(deflater.getBytesRead(), deflater.getBytesWritten());
+        DeflaterPool pool = _deflaterPool;
+        if (pool == null)
+            deflater.end();
+        else
+            pool.release(deflater);
     }
 
     /**
@@ -945,9 +1217,9 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     }
 
     /**
-     * Gets the maximum number of Deflaters that the DeflaterPool can hold.
+     * Gets the maximum number of encoders that the pool of each encoding can hold.
      *
-     * @return the Deflater pool capacity
+     * @return the encoder pool capacity
      */
     public int getDeflaterPoolCapacity()
     {
@@ -955,7 +1227,7 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     }
 
     /**
-     * Sets the maximum number of Deflaters that the DeflaterPool can hold.
+     * Sets the maximum number of encoders that the pool of each encoding can hold.
      */
     public void setDeflaterPoolCapacity(int capacity)
     {
@@ -965,6 +1237,58 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         poolCapacity = capacity;
     }
 
+    @Override
+    public GzipResponseCache getResponseCache()
+    {
+        return _responseCache;
+    }
+
+    /**
+     * <p>Sets the cache of compressed responses.</p>
+     * <p>When set, the compressed output of successful {@code GET} responses with a strong
+     * {@code ETag} is cached, and subsequent identical responses are served from the cache
+     * rather than being compressed again.</p>
+     *
+     * @param responseCache the cache of compressed responses, or null to not cache compressed responses
+     */
+    public void setResponseCache(GzipResponseCache responseCache)
+    {
+        updateBean(_responseCache, responseCache);
+        _responseCache = responseCache;
+    }
+
+    public AdaptiveCompressionLevel getAdaptiveCompressionLevel()
+    {
+        return _adaptiveCompressionLevel;
+    }
+
+    /**
+     * <p>Sets the controller that adapts the compression level to the load of the server.</p>
+     * <p>When set, the compression level is lowered when the CPU load or the thread pool
+     * queue latency is high, and raised again when the server is idle.
+     * If no thread pool is set on the controller, the server thread pool is used.</p>
+     *
+     * @param adaptiveCompressionLevel the adaptive compression level, or null to always use the default compression level
+     */
+    public void setAdaptiveCompressionLevel(AdaptiveCompressionLevel adaptiveCompressionLevel)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        updateBean(_adaptiveCompressionLevel, adaptiveCompressionLevel);
+        _adaptiveCompressionLevel = adaptiveCompressionLevel;
+    }
+
+    protected ContentEncoderPool newContentEncoderPool(int capacity, ContentEncoder.Factory factory)
+    {
+        return new ContentEncoderPool(capacity, factory);
+    }
+
+    /**
+     * @param capacity the maximum number of deflaters that the pool can hold
+     * @return the pool of the deflaters returned by {@link #getDeflater(Request, long)}
+     * @deprecated use {@link #newContentEncoderPool(int, ContentEncoder.Factory)} instead
+     */
+    @Deprecated
     protected DeflaterPool newDeflaterPool(int capacity)
     {
         return new DeflaterPool(capacity, Deflater.DEFAULT_COMPRESSION, true);
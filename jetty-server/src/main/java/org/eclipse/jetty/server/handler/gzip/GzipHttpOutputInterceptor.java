@@ -21,9 +21,8 @@ package org.eclipse.jetty.server.handler.gzip;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.CRC32;
-import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -33,29 +32,26 @@ import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingNestedCallback;
 import org.eclipse.jetty.util.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static org.eclipse.jetty.http.CompressedContentFormat.GZIP;
-
 public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 {
     public static Logger LOG = LoggerFactory.getLogger(GzipHttpOutputInterceptor.class);
-    private static final byte[] GZIP_HEADER = new byte[]{(byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
 
     public static final HttpField VARY_ACCEPT_ENCODING_USER_AGENT = new PreEncodedHttpField(HttpHeader.VARY, HttpHeader.ACCEPT_ENCODING + ", " + HttpHeader.USER_AGENT);
     public static final HttpField VARY_ACCEPT_ENCODING = new PreEncodedHttpField(HttpHeader.VARY, HttpHeader.ACCEPT_ENCODING.asString());
 
     private enum GZState
     {
-        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED
+        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, CACHED, FINISHED
     }
 
     private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
-    private final CRC32 _crc = new CRC32();
 
     private final GzipFactory _factory;
     private final HttpOutput.Interceptor _interceptor;
@@ -64,8 +60,11 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
     private final int _bufferSize;
     private final boolean _syncFlush;
 
-    private Deflater _deflater;
+    private ContentEncoder _encoder;
     private ByteBuffer _buffer;
+    private GzipResponseCache _cache;
+    private String _cacheKey;
+    private ByteArrayOutputStream2 _cached;
 
     public GzipHttpOutputInterceptor(GzipFactory factory, HttpChannel channel, HttpOutput.Interceptor next, boolean syncFlush)
     {
@@ -114,18 +113,20 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 gzip(content, complete, callback);
                 break;
 
+            case CACHED:
+                // The cached compressed content has already been written.
+                if (complete)
+                    _interceptor.write(BufferUtil.EMPTY_BUFFER, true, callback);
+                else
+                    callback.succeeded();
+                break;
+
             default:
                 callback.failed(new IllegalStateException("state=" + _state.get()));
                 break;
         }
     }
 
-    private void addTrailer()
-    {
-        BufferUtil.putIntLittleEndian(_buffer, (int)_crc.getValue());
-        BufferUtil.putIntLittleEndian(_buffer, _deflater.getTotalIn());
-    }
-
     private void gzip(ByteBuffer content, boolean complete, final Callback callback)
     {
         if (content.hasRemaining() || complete)
@@ -150,9 +151,15 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 String responseEtag = response.getHttpFields().get(HttpHeader.ETAG);
                 if (requestEtags != null && responseEtag != null)
                 {
-                    String responseEtagGzip = etagGzip(responseEtag);
-                    if (requestEtags.contains(responseEtagGzip))
-                        response.getHttpFields().put(HttpHeader.ETAG, responseEtagGzip);
+                    for (CompressedContentFormat format : _factory.getCompressedContentFormats())
+                    {
+                        String responseEtagEncoded = etagEncoded(responseEtag, format);
+                        if (requestEtags.contains(responseEtagEncoded))
+                        {
+                            response.getHttpFields().put(HttpHeader.ETAG, responseEtagEncoded);
+                            break;
+                        }
+                    }
                 }
             }
 
@@ -188,6 +195,10 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         // Are we the thread that commits?
         if (_state.compareAndSet(GZState.MIGHT_COMPRESS, GZState.COMMITTING))
         {
+            // Compute the cache key before the Vary header is updated.
+            GzipResponseCache cache = _factory.getResponseCache();
+            String cacheKey = cache == null ? null : cache.getKey(_channel.getRequest(), fields);
+
             // We are varying the response due to accept encoding header.
             if (_vary != null)
             {
@@ -201,26 +212,49 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (contentLength < 0 && complete)
                 contentLength = content.remaining();
 
-            _deflater = _factory.getDeflater(_channel.getRequest(), contentLength);
+            CompressedContentFormat cacheFormat = null;
+            if (cacheKey != null)
+            {
+                // Look up the cache before acquiring an encoder, so that a hit
+                // neither takes a compression level nor counts as a compression.
+                cacheFormat = _factory.getCompressedContentFormat(_channel.getRequest(), contentLength);
+                if (cacheFormat != null)
+                {
+                    // Clients may have negotiated different encodings or dictionaries.
+                    cacheKey = cacheKey + " " + cacheFormat._etag;
+                    ByteBuffer cached = cache.get(cacheKey);
+                    if (cached != null)
+                    {
+                        LOG.debug("{} cached {}", this, cacheKey);
+                        encoded(response, cacheFormat);
+                        _state.set(GZState.CACHED);
+                        _interceptor.write(cached, complete, callback);
+                        return;
+                    }
+                }
+            }
+
+            _encoder = _factory.getContentEncoder(_channel.getRequest(), contentLength);
 
-            if (_deflater == null)
+            if (_encoder == null)
             {
-                LOG.debug("{} exclude no deflater", this);
+                LOG.debug("{} exclude no encoder", this);
                 _state.set(GZState.NOT_COMPRESSING);
                 _interceptor.write(content, complete, callback);
                 return;
             }
 
-            fields.put(GZIP._contentEncoding);
-            _crc.reset();
+            CompressedContentFormat format = _encoder.getCompressedContentFormat();
+            encoded(response, format);
 
-            // Adjust headers
-            response.setContentLength(-1);
-            String etag = fields.get(HttpHeader.ETAG);
-            if (etag != null)
-                fields.put(HttpHeader.ETAG, etagGzip(etag));
+            if (cacheFormat == format)
+            {
+                _cache = cache;
+                _cacheKey = cacheKey;
+                _cached = new ByteArrayOutputStream2(contentLength > 0 ? (int)Math.min(contentLength, _bufferSize) : _bufferSize);
+            }
 
-            LOG.debug("{} compressing {}", this, _deflater);
+            LOG.debug("{} compressing {}", this, _encoder);
             _state.set(GZState.COMPRESSING);
 
             if (BufferUtil.isEmpty(content))
@@ -237,10 +271,22 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.failed(new WritePendingException());
     }
 
-    private String etagGzip(String etag)
+    private void encoded(Response response, CompressedContentFormat format)
+    {
+        HttpFields.Mutable fields = response.getHttpFields();
+        fields.put(format._contentEncoding);
+
+        // Adjust headers
+        response.setContentLength(-1);
+        String etag = fields.get(HttpHeader.ETAG);
+        if (etag != null)
+            fields.put(HttpHeader.ETAG, etagEncoded(etag, format));
+    }
+
+    private String etagEncoded(String etag, CompressedContentFormat format)
     {
         int end = etag.length() - 1;
-        return (etag.charAt(end) == '"') ? etag.substring(0, end) + GZIP._etag + '"' : etag + GZIP._etag;
+        return (etag.charAt(end) == '"') ? etag.substring(0, end) + format._etag + '"' : etag + format._etag;
     }
 
     public void noCompression()
@@ -270,6 +316,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             switch (_state.get())
             {
                 case COMPRESSING:
+                case CACHED:
                 case NOT_COMPRESSING:
                     return;
 
@@ -305,16 +352,18 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         @Override
         protected void onCompleteFailure(Throwable x)
         {
-            _factory.recycle(_deflater);
-            _deflater = null;
+            _cached = null;
+            if (_encoder != null)
+                _factory.recycle(_encoder);
+            _encoder = null;
             super.onCompleteFailure(x);
         }
 
         @Override
         protected Action process() throws Exception
         {
-            // If we have no deflator
-            if (_deflater == null)
+            // If we have no encoder
+            if (_encoder == null)
             {
                 // then the trailer has been generated and written below.
                 // we have finished compressing the entire content, so
@@ -335,9 +384,8 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             // If we have no buffer
             if (_buffer == null)
             {
-                // allocate a buffer and add the gzip header
+                // allocate a buffer, the encoder adds any header
                 _buffer = _channel.getByteBufferPool().acquire(_bufferSize, false);
-                BufferUtil.fill(_buffer, GZIP_HEADER, 0, GZIP_HEADER.length);
             }
             else
             {
@@ -345,24 +393,24 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 BufferUtil.clear(_buffer);
             }
 
-            // If the deflator is not finished, then compress more data
-            if (!_deflater.finished())
+            // If the encoder is not finished, then compress more data
+            if (!_encoder.finished())
             {
-                if (_deflater.needsInput())
+                if (_encoder.needsInput())
                 {
                     // if there is no more content available to compress
                     // then we are either finished all content or just the current write.
                     if (BufferUtil.isEmpty(_content))
                     {
                         if (_last)
-                            _deflater.finish();
+                            _encoder.finish();
                         else
                             return Action.SUCCEEDED;
                     }
                     else
                     {
                         // If there is more content available to compress, we have to make sure
-                        // it is available in an array for the current deflator API, maybe slicing
+                        // it is available in an array for the current encoder API, maybe slicing
                         // of content.
                         ByteBuffer slice;
                         if (_content.hasArray())
@@ -377,51 +425,66 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                             BufferUtil.append(_copy, _content);
                         }
 
-                        // transfer the data from the slice to the the deflator
+                        // transfer the data from the slice to the the encoder
                         byte[] array = slice.array();
                         int off = slice.arrayOffset() + slice.position();
                         int len = slice.remaining();
-                        _crc.update(array, off, len);
-                        _deflater.setInput(array, off, len);  // TODO use ByteBuffer API in Jetty-10
+                        _encoder.setInput(array, off, len);
                         slice.position(slice.position() + len);
                         if (_last && BufferUtil.isEmpty(_content))
-                            _deflater.finish();
+                            _encoder.finish();
                     }
                 }
 
-                // deflate the content into the available space in the buffer
-                int off = _buffer.arrayOffset() + _buffer.limit();
-                int len = BufferUtil.space(_buffer);
-                int produced = _deflater.deflate(_buffer.array(), off, len, _syncFlush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
-                _buffer.limit(_buffer.limit() + produced);
+                // encode the content into the available space in the buffer
+                _encoder.encode(_buffer, _syncFlush);
             }
 
-            // If we have finished deflation and there is room for the trailer.
-            if (_deflater.finished() && BufferUtil.space(_buffer) >= 8)
+            // If we have finished encoding, including any trailer.
+            if (_encoder.finished())
             {
-                // add the trailer and recycle the deflator to flag that we will have had completeSuccess when
+                // recycle the encoder to flag that we will have had completeSuccess when
                 // the write below completes.
-                addTrailer();
-                _factory.recycle(_deflater);
-                _deflater = null;
+                _factory.recycle(_encoder);
+                _encoder = null;
             }
 
+            // Retain the compressed bytes for the cache.
+            if (_cached != null)
+                cache();
+
             // write the compressed buffer.
-            _interceptor.write(_buffer, _deflater == null, this);
+            _interceptor.write(_buffer, _encoder == null, this);
             return Action.SCHEDULED;
         }
 
+        private void cache()
+        {
+            int length = _buffer.remaining();
+            if (_cached.size() + length > _cache.getMaxEntrySize())
+            {
+                _cached = null;
+                return;
+            }
+            _cached.write(_buffer.array(), _buffer.arrayOffset() + _buffer.position(), length);
+            if (_encoder == null)
+            {
+                _cache.put(_cacheKey, _cached.toByteArray());
+                _cached = null;
+            }
+        }
+
         @Override
         public String toString()
         {
-            return String.format("%s[content=%s last=%b copy=%s buffer=%s deflate=%s %s]",
+            return String.format("%s[content=%s last=%b copy=%s buffer=%s encoder=%s %s]",
                 super.toString(),
                 BufferUtil.toDetailString(_content),
                 _last,
                 BufferUtil.toDetailString(_copy),
                 BufferUtil.toDetailString(_buffer),
-                _deflater,
-                _deflater != null && _deflater.finished() ? "(finished)" : "");
+                _encoder,
+                _encoder != null && _encoder.finished() ? "(finished)" : "");
         }
     }
 }
@@ -0,0 +1,275 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A bounded, in-memory cache of the gzip output produced by {@link GzipHttpOutputInterceptor}.</p>
+ * <p>Only successful {@code GET} responses that carry a strong {@code ETag} are cached, since a
+ * strong entity tag guarantees that responses with the same tag are byte-identical.
+ * The cache key is made of the request URL, the response {@code ETag} and the values of the
+ * request headers named by the response {@code Vary} header, so that dynamic content that is
+ * repeatedly generated (for example versioned scripts produced by a servlet) is compressed
+ * only once.</p>
+ * <p>On a cache hit the content written by the application is discarded and the cached
+ * compressed bytes are written instead.</p>
+ * <p>Entries are evicted in least recently used order when either the
+ * {@link #getMaxEntries() maximum number of entries} or the
+ * {@link #getMaxCacheSize() maximum cache size} is exceeded.</p>
+ *
+ * @see GzipHandler#setResponseCache(GzipResponseCache)
+ */
+@ManagedObject("Cache of compressed responses")
+public class GzipResponseCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(GzipResponseCache.class);
+
+    private final AutoLock _lock = new AutoLock();
+    private final Map<String, byte[]> _cache = new LinkedHashMap<>(16, 0.75F, true);
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private long _cacheSize;
+    private int _maxEntries = 1024;
+    private int _maxEntrySize = 1024 * 1024;
+    private long _maxCacheSize = 32 * 1024 * 1024;
+
+    /**
+     * @return the maximum number of cached responses
+     */
+    @ManagedAttribute("The maximum number of cached responses")
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries)
+    {
+        _maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the maximum size, in bytes, of a compressed response that can be cached
+     */
+    @ManagedAttribute("The maximum size in bytes of a compressed response that can be cached")
+    public int getMaxEntrySize()
+    {
+        return _maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        _maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * @return the maximum size, in bytes, of all the cached compressed responses
+     */
+    @ManagedAttribute("The maximum size in bytes of all the cached compressed responses")
+    public long getMaxCacheSize()
+    {
+        return _maxCacheSize;
+    }
+
+    public void setMaxCacheSize(long maxCacheSize)
+    {
+        _maxCacheSize = maxCacheSize;
+    }
+
+    @ManagedAttribute("The number of cached responses")
+    public int getCachedEntries()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _cache.size();
+        }
+    }
+
+    @ManagedAttribute("The size in bytes of all the cached compressed responses")
+    public long getCachedSize()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _cacheSize;
+        }
+    }
+
+    @ManagedAttribute("The number of cacheable responses served from the cache")
+    public long getHits()
+    {
+        return _hits.longValue();
+    }
+
+    @ManagedAttribute("The number of cacheable responses that had to be compressed")
+    public long getMisses()
+    {
+        return _misses.longValue();
+    }
+
+    @ManagedAttribute("The ratio of cacheable responses served from the cache")
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0D : (double)hits / total;
+    }
+
+    @ManagedAttribute("The number of cached responses evicted")
+    public long getEvictions()
+    {
+        return _evictions.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    @ManagedOperation(value = "Removes all the cached responses", impact = "ACTION")
+    public void clear()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            _cache.clear();
+            _cacheSize = 0;
+        }
+    }
+
+    /**
+     * <p>Computes the cache key of a response about to be compressed.</p>
+     *
+     * @param request the request
+     * @param responseFields the response headers, before the {@code Vary} header is updated for compression
+     * @return the cache key, or null if the response cannot be cached
+     */
+    protected String getKey(Request request, HttpFields responseFields)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()))
+            return null;
+        int status = request.getResponse().getStatus();
+        if (status != 0 && status != HttpStatus.OK_200)
+            return null;
+
+        // Only strong entity tags guarantee byte-identical content.
+        String etag = responseFields.get(HttpHeader.ETAG);
+        if (etag == null || etag.startsWith("W/"))
+            return null;
+
+        StringBuilder key = new StringBuilder(128);
+        key.append(request.getRequestURL());
+        String query = request.getQueryString();
+        if (query != null)
+            key.append('?').append(query);
+        key.append(' ').append(etag);
+
+        for (String vary : responseFields.getCSV(HttpHeader.VARY, false))
+        {
+            if ("*".equals(vary))
+                return null;
+            // The accepted encodings and user agent only decide whether to compress.
+            if (HttpHeader.ACCEPT_ENCODING.is(vary) || HttpHeader.USER_AGENT.is(vary))
+                continue;
+            key.append(' ').append(vary).append('=').append(request.getHttpFields().get(vary));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key the cache key
+     * @return a buffer with the cached compressed response, or null if it is not cached
+     */
+    protected ByteBuffer get(String key)
+    {
+        byte[] gzipped;
+        try (AutoLock l = _lock.lock())
+        {
+            gzipped = _cache.get(key);
+        }
+        if (gzipped == null)
+        {
+            _misses.increment();
+            return null;
+        }
+        _hits.increment();
+        return ByteBuffer.wrap(gzipped);
+    }
+
+    /**
+     * @param key the cache key
+     * @param gzipped the compressed response
+     */
+    protected void put(String key, byte[] gzipped)
+    {
+        if (gzipped.length > _maxEntrySize || gzipped.length > _maxCacheSize)
+            return;
+
+        try (AutoLock l = _lock.lock())
+        {
+            byte[] previous = _cache.put(key, gzipped);
+            if (previous != null)
+                _cacheSize -= previous.length;
+            _cacheSize += gzipped.length;
+
+            Iterator<byte[]> iterator = _cache.values().iterator();
+            while (_cacheSize > _maxCacheSize || _cache.size() > _maxEntries)
+            {
+                byte[] evicted = iterator.next();
+                iterator.remove();
+                _cacheSize -= evicted.length;
+                _evictions.increment();
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Cached {} bytes for {}", gzipped.length, key);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{entries=%d,size=%d/%d,hits=%d,misses=%d}",
+            getClass().getSimpleName(),
+            hashCode(),
+            getCachedEntries(),
+            getCachedSize(),
+            getMaxCacheSize(),
+            getHits(),
+            getMisses());
+    }
+}
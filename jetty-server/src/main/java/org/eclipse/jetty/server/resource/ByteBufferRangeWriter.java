@@ -45,6 +45,18 @@ public class ByteBufferRangeWriter implements RangeWriter
 
     @Override
     public void writeTo(OutputStream outputStream, long skipTo, long length) throws IOException
+    {
+        BufferUtil.writeTo(slice(skipTo, length), outputStream);
+    }
+
+    @Override
+    public ByteBuffer read(ByteBuffer buffer, long skipTo, long length)
+    {
+        // No copy, the section of the buffer is returned.
+        return slice(skipTo, length);
+    }
+
+    private ByteBuffer slice(long skipTo, long length)
     {
         if (skipTo > Integer.MAX_VALUE)
         {
@@ -59,6 +71,6 @@ public class ByteBufferRangeWriter implements RangeWriter
         ByteBuffer src = buffer.slice();
         src.position((int)skipTo);
         src.limit(Math.addExact((int)skipTo, (int)length));
-        BufferUtil.writeTo(src, outputStream);
+        return src;
     }
 }
@@ -0,0 +1,180 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.InclusiveByteRange;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+
+/**
+ * <p>A {@link HttpOutput.ContentSource} for {@code multipart/byteranges} responses.</p>
+ * <p>The boundaries and headers of all the parts are computed upfront into a single pooled
+ * buffer, so that the exact content length is known before the response is committed.
+ * The parts are then produced one chunk at a time: the part headers are slices of the
+ * pooled buffer, and the ranges are read by a {@link RangeWriter}, which returns slices
+ * of the resource buffer (for example a memory mapped file) without copying, or fills the
+ * pooled output buffer from a {@link java.nio.channels.SeekableByteChannel}.</p>
+ *
+ * @see HttpOutput#sendContent(HttpOutput.ContentSource, org.eclipse.jetty.util.Callback)
+ */
+public class ByteRangesContentSource implements HttpOutput.ContentSource
+{
+    private static final String CRLF = "\r\n";
+
+    private final ByteBufferPool _bufferPool;
+    private final RangeWriter _rangeWriter;
+    private final List<InclusiveByteRange> _ranges;
+    private final String _boundary;
+    private final ByteBuffer _headers;
+    private final int[] _offsets;
+    private final long _length;
+    private int _part;
+    private boolean _inHeader = true;
+    private long _position;
+    private long _remaining;
+    private boolean _last;
+
+    /**
+     * @param bufferPool the pool of the buffer holding the part headers
+     * @param direct whether the buffer holding the part headers should be direct
+     * @param rangeWriter the RangeWriter of the resource
+     * @param ranges the satisfiable ranges of the resource
+     * @param contentLength the length of the resource
+     * @param contentType the content type of the resource, or null if unknown
+     */
+    public ByteRangesContentSource(ByteBufferPool bufferPool, boolean direct, RangeWriter rangeWriter, List<InclusiveByteRange> ranges, long contentLength, String contentType)
+    {
+        _bufferPool = bufferPool;
+        _rangeWriter = rangeWriter;
+        _ranges = ranges;
+        _boundary = "jetty" + System.identityHashCode(this) + Long.toString(System.currentTimeMillis(), 36);
+
+        // Compute the boundaries and headers of the parts, followed by the closing boundary.
+        StringBuilder headers = new StringBuilder(128 * (ranges.size() + 1));
+        _offsets = new int[ranges.size() + 2];
+        long length = 0;
+        for (int i = 0; i < ranges.size(); ++i)
+        {
+            InclusiveByteRange range = ranges.get(i);
+            _offsets[i] = headers.length();
+            if (i > 0)
+                headers.append(CRLF);
+            headers.append("--").append(_boundary).append(CRLF);
+            if (contentType != null)
+                headers.append(HttpHeader.CONTENT_TYPE.asString()).append(": ").append(contentType).append(CRLF);
+            headers.append(HttpHeader.CONTENT_RANGE.asString()).append(": ").append(range.toHeaderRangeString(contentLength)).append(CRLF);
+            headers.append(CRLF);
+            length += range.getSize();
+        }
+        _offsets[ranges.size()] = headers.length();
+        headers.append(CRLF).append("--").append(_boundary).append("--").append(CRLF);
+        _offsets[ranges.size() + 1] = headers.length();
+
+        byte[] bytes = headers.toString().getBytes(StandardCharsets.ISO_8859_1);
+        _headers = bufferPool.acquire(bytes.length, direct);
+        BufferUtil.append(_headers, bytes, 0, bytes.length);
+        _length = length + bytes.length;
+    }
+
+    /**
+     * @return the boundary of the parts
+     */
+    public String getBoundary()
+    {
+        return _boundary;
+    }
+
+    /**
+     * @return the length of the whole multipart content
+     */
+    public long getLength()
+    {
+        return _length;
+    }
+
+    @Override
+    public ByteBuffer read(ByteBuffer buffer) throws IOException
+    {
+        if (_last)
+            return null;
+
+        if (_part == _ranges.size())
+        {
+            _last = true;
+            return header(_part);
+        }
+
+        if (_inHeader)
+        {
+            InclusiveByteRange range = _ranges.get(_part);
+            _inHeader = false;
+            _position = range.getFirst();
+            _remaining = range.getSize();
+            return header(_part);
+        }
+
+        ByteBuffer content = _rangeWriter.read(buffer, _position, _remaining);
+        int length = content.remaining();
+        if (length == 0)
+            throw new IOException("No progress reading range " + _ranges.get(_part));
+        _position += length;
+        _remaining -= length;
+        if (_remaining == 0)
+        {
+            _part++;
+            _inHeader = true;
+        }
+        return content;
+    }
+
+    private ByteBuffer header(int part)
+    {
+        ByteBuffer header = _headers.duplicate();
+        header.position(_headers.position() + _offsets[part]);
+        header.limit(_headers.position() + _offsets[part + 1]);
+        return header;
+    }
+
+    @Override
+    public boolean isLast()
+    {
+        return _last;
+    }
+
+    @Override
+    public void close()
+    {
+        IO.close(_rangeWriter);
+        _bufferPool.release(_headers);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{part=%d/%d,length=%d}", getClass().getSimpleName(), hashCode(), _part, _ranges.size(), _length);
+    }
+}
@@ -21,7 +21,11 @@ package org.eclipse.jetty.server.resource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
 
 /**
@@ -40,6 +44,7 @@ public class InputStreamRangeWriter implements RangeWriter
     private final InputStreamSupplier inputStreamSupplier;
     private boolean closed = false;
     private InputStream inputStream;
+    private ReadableByteChannel inputChannel;
     private long pos;
 
     /**
@@ -66,6 +71,29 @@ public class InputStreamRangeWriter implements RangeWriter
 
     @Override
     public void writeTo(OutputStream outputStream, long skipTo, long length) throws IOException
+    {
+        skipTo(skipTo);
+
+        IO.copy(inputStream, outputStream, length);
+        pos += length;
+    }
+
+    @Override
+    public ByteBuffer read(ByteBuffer buffer, long skipTo, long length) throws IOException
+    {
+        skipTo(skipTo);
+
+        BufferUtil.clearToFill(buffer);
+        buffer.limit((int)Math.min(buffer.capacity(), length));
+        int readLen = inputChannel.read(buffer);
+        if (readLen < 0)
+            throw new IOException("EOF reached before end of InputStream range");
+        BufferUtil.flipToFlush(buffer, 0);
+        pos += readLen;
+        return buffer;
+    }
+
+    private void skipTo(long skipTo) throws IOException
     {
         if (closed)
         {
@@ -75,6 +103,7 @@ public class InputStreamRangeWriter implements RangeWriter
         if (inputStream == null)
         {
             inputStream = inputStreamSupplier.newInputStream();
+            inputChannel = Channels.newChannel(inputStream);
             pos = 0;
         }
 
@@ -82,6 +111,7 @@ public class InputStreamRangeWriter implements RangeWriter
         {
             inputStream.close();
             inputStream = inputStreamSupplier.newInputStream();
+            inputChannel = Channels.newChannel(inputStream);
             pos = 0;
         }
         if (pos < skipTo)
@@ -118,8 +148,5 @@ public class InputStreamRangeWriter implements RangeWriter
 
             pos = skipTo;
         }
-
-        IO.copy(inputStream, outputStream, length);
-        pos += length;
     }
 }
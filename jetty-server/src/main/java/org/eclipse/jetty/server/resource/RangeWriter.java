@@ -21,6 +21,10 @@ package org.eclipse.jetty.server.resource;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.io.ByteBufferOutputStream;
+import org.eclipse.jetty.util.BufferUtil;
 
 /**
  * Interface for writing sections (ranges) of a single resource (SeekableByteChannel, Resource, etc) to an outputStream.
@@ -35,4 +39,23 @@ public interface RangeWriter extends Closeable
      * @param length the size of the section to write
      */
     void writeTo(OutputStream outputStream, long skipTo, long length) throws IOException;
+
+    /**
+     * <p>Reads the start of the specific range (start, size) of the resource.</p>
+     * <p>Implementations backed by a buffer may return a slice of that buffer rather
+     * than copying into the given buffer. The returned buffer is only valid until the
+     * next call to this method.</p>
+     *
+     * @param buffer the buffer that may be filled with the content of the resource
+     * @param skipTo the offset / skip-to / seek-to / position in the resource to start the read from
+     * @param length the size of the section to read
+     * @return a buffer, in flush mode, with between 1 and {@code length} bytes of the section
+     * @throws IOException if the resource cannot be read
+     */
+    default ByteBuffer read(ByteBuffer buffer, long skipTo, long length) throws IOException
+    {
+        BufferUtil.clear(buffer);
+        writeTo(new ByteBufferOutputStream(buffer), skipTo, Math.min(length, buffer.capacity()));
+        return buffer;
+    }
 }
@@ -84,6 +84,28 @@ public class SeekableByteChannelRangeWriter implements RangeWriter
         }
     }
 
+    @Override
+    public ByteBuffer read(ByteBuffer buffer, long skipTo, long length) throws IOException
+    {
+        skipTo(skipTo);
+
+        // read from channel directly into the given buffer
+        BufferUtil.clearToFill(buffer);
+        buffer.limit((int)Math.min(buffer.capacity(), length));
+        int noProgressLoopLimit = NO_PROGRESS_LIMIT;
+        while (buffer.position() == 0)
+        {
+            int readLen = channel.read(buffer);
+            if (readLen < 0)
+                throw new IOException("EOF reached before end of SeekableByteChannel range");
+            if (readLen == 0 && --noProgressLoopLimit <= 0)
+                throw new IOException("No progress made reading SeekableByteChannel range");
+            pos += readLen;
+        }
+        BufferUtil.flipToFlush(buffer, 0);
+        return buffer;
+    }
+
     private void skipTo(long skipTo) throws IOException
     {
         if (channel == null)
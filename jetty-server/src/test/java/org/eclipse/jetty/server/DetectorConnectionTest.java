@@ -246,6 +246,37 @@ public class DetectorConnectionTest
         assertThat(response, Matchers.containsString("remote=1.2.3.4:111"));
     }
 
+    @Test
+    public void testDetectionsCountedPerProtocol() throws Exception
+    {
+        String keystore = MavenTestingUtils.getTestResourceFile("keystore.p12").getAbsolutePath();
+        SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+        sslContextFactory.setKeyStorePath(keystore);
+        sslContextFactory.setKeyStorePassword("storepwd");
+
+        HttpConnectionFactory http = new HttpConnectionFactory();
+        ProxyConnectionFactory proxy = new ProxyConnectionFactory(http.getProtocol());
+        SslConnectionFactory ssl = new SslConnectionFactory(sslContextFactory, http.getProtocol());
+        DetectorConnectionFactory detector = new DetectorConnectionFactory(ssl, proxy);
+
+        start(detector, http);
+
+        String request = "GET /path HTTP/1.1\n" +
+            "Host: server:80\n" +
+            "Connection: close\n" +
+            "\n";
+        assertThat(getResponse("PROXY TCP 1.2.3.4 5.6.7.8 111 222\r\n" + request), Matchers.containsString("remote=1.2.3.4:111"));
+        assertThat(getResponse("PROXY TCP 1.2.3.4 5.6.7.8 111 222\r\n" + request), Matchers.containsString("remote=1.2.3.4:111"));
+        assertThat(getResponseOverSsl(request), Matchers.containsString("HTTP/1.1 200"));
+        assertThat(getResponse(request), Matchers.containsString("HTTP/1.1 200"));
+
+        // The nested proxy detector is not involved, the PROXY connection is installed directly.
+        assertEquals(2L, detector.getDetections().get("proxy"));
+        assertEquals(1L, detector.getDetections().get(ssl.getProtocol()));
+        assertEquals(1L, detector.getNotRecognized());
+        assertThat(proxy.getDetections().entrySet(), Matchers.empty());
+    }
+
     @Test
     public void testDetectingSslProxyToHttpWithSslNoProxy() throws Exception
     {
@@ -27,7 +27,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.WriteListener;
@@ -39,6 +41,8 @@ import org.eclipse.jetty.server.HttpOutput.Interceptor;
 import org.eclipse.jetty.server.LocalConnector.LocalEndPoint;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.server.handler.HotSwapHandler;
+import org.eclipse.jetty.server.resource.ByteBufferRangeWriter;
+import org.eclipse.jetty.server.resource.ByteRangesContentSource;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.resource.Resource;
@@ -50,6 +54,7 @@ import org.junit.jupiter.api.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -691,6 +696,55 @@ public class HttpOutputTest
         assertThat(response, containsString("400\tTHIS IS A BIGGER FILE"));
     }
 
+    @Test
+    public void testSendContentSourceClosedOnFailure() throws Exception
+    {
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger released = new AtomicInteger();
+        ByteBufferPool bufferPool = new ByteBufferPool()
+        {
+            @Override
+            public ByteBuffer acquire(int size, boolean direct)
+            {
+                acquired.incrementAndGet();
+                return BufferUtil.allocate(size);
+            }
+
+            @Override
+            public void release(ByteBuffer buffer)
+            {
+                released.incrementAndGet();
+            }
+        };
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AbstractHandler handler = new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                HttpOutput out = (HttpOutput)response.getOutputStream();
+
+                // The content already written makes sendContent() fail.
+                out.write('x');
+                List<InclusiveByteRange> ranges = Arrays.asList(new InclusiveByteRange(0, 1), new InclusiveByteRange(3, 4));
+                ByteRangesContentSource source = new ByteRangesContentSource(bufferPool, false,
+                    new ByteBufferRangeWriter(BufferUtil.toBuffer("0123456789")), ranges, 10, "text/plain");
+                out.sendContent(source, Callback.from(() -> {}, failure::set));
+            }
+        };
+        _swap.setHandler(handler);
+        handler.start();
+
+        String response = _connector.getResponse("GET / HTTP/1.0\nHost: localhost:80\n\n");
+        assertThat(response, containsString("HTTP/1.1 200 OK"));
+        assertThat(failure.get(), instanceOf(IOException.class));
+
+        // The headers buffer of the source is released.
+        assertEquals(1, acquired.get());
+        assertEquals(1, released.get());
+    }
+
     @Test
     public void testAggregation() throws Exception
     {
@@ -23,9 +23,17 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpContent;
@@ -35,6 +43,8 @@ import org.eclipse.jetty.toolchain.test.FS;
 import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
 import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.PathWatcher;
 import org.eclipse.jetty.util.resource.PathResource;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceCollection;
@@ -42,11 +52,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(WorkDirExtension.class)
@@ -346,6 +358,202 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testTinyLFUAdmission() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        for (int i = 0; i < 4; i++)
+        {
+            makeFile(basePath.resolve("R-" + i + ".txt"), "content " + i);
+        }
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setMaxCachedFiles(3);
+        cache.setEvictionPolicy(new CachedContentEvictionPolicy.TinyLFU(3));
+
+        // Fill the cache with popular content.
+        for (int i = 0; i < 2; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                assertThat(cache.getContent("R-" + j + ".txt", 4096), instanceOf(CachedContentFactory.CachedHttpContent.class));
+            }
+        }
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.getCachedFiles());
+
+        // Content accessed less frequently than the cached content is not admitted.
+        assertThat(cache.getContent("R-3.txt", 4096), instanceOf(ResourceHttpContent.class));
+        assertThat(cache.getContent("R-3.txt", 4096), instanceOf(ResourceHttpContent.class));
+        assertEquals(2, cache.getRejections());
+        assertEquals(0, cache.getEvictions());
+
+        // Content that becomes popular is admitted, evicting the least popular content.
+        assertThat(cache.getContent("R-3.txt", 4096), instanceOf(CachedContentFactory.CachedHttpContent.class));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getCachedFiles());
+        assertThat(cache.getContent("R-1.txt", 4096), instanceOf(CachedContentFactory.CachedHttpContent.class));
+        assertThat(cache.getContent("R-2.txt", 4096), instanceOf(CachedContentFactory.CachedHttpContent.class));
+        assertThat(cache.getContent("R-3.txt", 4096), instanceOf(CachedContentFactory.CachedHttpContent.class));
+    }
+
+    @Test
+    public void testSharedMappedContentStore() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        makeFile(basePath.resolve("mapped.txt"), "mapped content");
+
+        MappedContentStore store = new MappedContentStore();
+        CachedContentFactory cache1 = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache1.setMappedContentStore(store);
+        CachedContentFactory cache2 = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache2.setMappedContentStore(store);
+
+        ByteBuffer buffer1 = cache1.getContent("mapped.txt", 4096).getDirectBuffer();
+        ByteBuffer buffer2 = cache2.getContent("mapped.txt", 4096).getIndirectBuffer();
+        assertEquals("mapped content", BufferUtil.toString(buffer1));
+        assertEquals("mapped content", BufferUtil.toString(buffer2));
+        assertTrue(buffer1.isDirect());
+        assertTrue(buffer1.isReadOnly());
+        assertTrue(buffer2.isDirect());
+
+        // Both caches share the same mapping, which is not heap memory.
+        assertEquals(1, store.getMappedFiles());
+        assertEquals(1, store.getMappings());
+        assertEquals(1, store.getSharedMappings());
+        assertEquals(0, cache1.getCachedSize());
+
+        cache1.flushCache();
+        assertEquals(1, store.getMappedFiles());
+        cache2.flushCache();
+        assertEquals(0, store.getMappedFiles());
+        assertEquals(0, store.getMappedBytes());
+    }
+
+    @Test
+    public void testPathWatcherInvalidation() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        Path file = basePath.resolve("watched.txt");
+        makeFile(file, "original");
+
+        PathWatcher watcher = new PathWatcher();
+        watcher.setNotifyExistingOnStart(false);
+        watcher.setUpdateQuietTime(100, TimeUnit.MILLISECONDS);
+        PathWatcher.Config config = new PathWatcher.Config(basePath);
+        config.setRecurseDepth(PathWatcher.Config.UNLIMITED_DEPTH);
+        watcher.watch(config);
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setPathWatcher(watcher);
+        watcher.start();
+        try
+        {
+            assertTrue(cache.isWatching());
+            assertEquals("original", getContent(cache, "watched.txt"));
+            assertEquals("original", getContent(cache, "watched.txt"));
+            assertEquals(1, cache.getWatchedFiles());
+            assertEquals(1, cache.getHits());
+
+            // The change is notified by the watcher, which invalidates the cached content.
+            Files.write(file, "modified content".getBytes(UTF_8));
+            long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (cache.getCachedFiles() > 0 && System.nanoTime() < wait)
+            {
+                Thread.sleep(10);
+            }
+            assertEquals(0, cache.getCachedFiles());
+            assertEquals(0, cache.getWatchedFiles());
+            assertEquals("modified content", getContent(cache, "watched.txt"));
+        }
+        finally
+        {
+            watcher.stop();
+        }
+
+        // Without a running watcher, the resource is checked against the file system.
+        assertFalse(cache.isWatching());
+        Files.write(file, "modified again".getBytes(UTF_8));
+        assertEquals("modified again", getContent(cache, "watched.txt"));
+    }
+
+    @Test
+    public void testPathWatcherEviction() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        makeFile(basePath.resolve("one.txt"), "one");
+        makeFile(basePath.resolve("two.txt"), "two");
+
+        PathWatcher watcher = new PathWatcher();
+        watcher.watch(new PathWatcher.Config(basePath));
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setPathWatcher(watcher);
+        cache.setMaxCachedFiles(1);
+
+        assertEquals("one", getContent(cache, "one.txt"));
+        assertEquals(1, cache.getWatchedFiles());
+
+        // The evicted resource is no longer watched.
+        assertEquals("two", getContent(cache, "two.txt"));
+        assertEquals(1, cache.getCachedFiles());
+        assertEquals(1, cache.getWatchedFiles());
+    }
+
+    @Test
+    public void testPathWatcherRevalidationInterval() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        Path file = basePath.resolve("watched.txt");
+        makeFile(file, "original");
+
+        // The watcher does not notify the change within the test.
+        PathWatcher watcher = new PathWatcher();
+        watcher.setNotifyExistingOnStart(false);
+        watcher.setUpdateQuietTime(1, TimeUnit.HOURS);
+        watcher.watch(new PathWatcher.Config(basePath));
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setPathWatcher(watcher);
+        cache.setRevalidationInterval(1);
+        watcher.start();
+        try
+        {
+            assertTrue(cache.isWatching());
+            assertEquals("original", getContent(cache, "watched.txt"));
+            assertEquals(1, cache.getWatchedFiles());
+
+            // The watched resource is still checked against the file system once the interval elapsed.
+            Files.write(file, "modified content".getBytes(UTF_8));
+            Thread.sleep(10);
+            assertEquals("modified content", getContent(cache, "watched.txt"));
+        }
+        finally
+        {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    public void testRevalidationInterval() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        Path file = basePath.resolve("file.txt");
+        makeFile(file, "original");
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setRevalidationInterval(TimeUnit.HOURS.toMillis(1));
+        assertEquals("original", getContent(cache, "file.txt"));
+
+        // Within the interval, the cached content is not checked against the file system.
+        Files.write(file, "modified content".getBytes(UTF_8));
+        assertEquals("original", getContent(cache, "file.txt"));
+
+        cache.setRevalidationInterval(0);
+        assertEquals("modified content", getContent(cache, "file.txt"));
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
@@ -360,6 +568,109 @@ public class ResourceCacheTest
         assertEquals(getContent(cache, "four"), "4 - four (no extension)");
     }
 
+    @Test
+    public void testPrecompressCache() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        Path docs = basePath.resolve("docs");
+        FS.ensureDirExists(docs);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 256; i++)
+        {
+            text.append("line ").append(i).append('\n');
+        }
+        makeFile(docs.resolve("big.txt"), text.toString());
+        makeFile(docs.resolve("small.txt"), "small");
+        Path precompressed = basePath.resolve("precompressed");
+
+        for (int i = 0; i < 2; i++)
+        {
+            CachedContentFactory cache = new CachedContentFactory(null, new PathResource(docs), new MimeTypes(), false, true, new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+            cache.setPrecompressExecutor(Runnable::run);
+            cache.setPrecompressDirectory(precompressed);
+
+            HttpContent content = cache.getContent("big.txt", 4096);
+            HttpContent gzip = content.getPrecompressedContents().get(CompressedContentFormat.GZIP);
+            assertThat(gzip.getContentEncodingValue(), is("gzip"));
+            assertTrue(gzip.getContentLengthValue() < content.getContentLengthValue());
+            String etag = content.getETagValue();
+            assertEquals(etag.substring(0, etag.length() - 1) + "--gzip\"", gzip.getETagValue());
+            assertEquals(text.toString(), IO.toString(new GZIPInputStream(gzip.getInputStream()), UTF_8));
+            assertEquals(gzip.getContentLengthValue(), cache.getCachedSize());
+
+            // The compressed content is persisted, and reused by the second cache.
+            assertEquals(1, listFiles(precompressed).size());
+
+            // Small resources are not compressed.
+            assertThat(cache.getContent("small.txt", 4096).getPrecompressedContents(), nullValue());
+
+            cache.flushCache();
+            assertEquals(0, cache.getCachedSize());
+        }
+    }
+
+    @Test
+    public void testPrecompressDirectoryVerifiesFiles() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        Path docs1 = basePath.resolve("docs1");
+        FS.ensureDirExists(docs1);
+        Path docs2 = basePath.resolve("docs2");
+        FS.ensureDirExists(docs2);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 256; i++)
+        {
+            text.append("line ").append(i).append('\n');
+        }
+        makeFile(docs1.resolve("big.txt"), text.toString());
+        makeFile(docs2.resolve("big.txt"), text.toString().toUpperCase(Locale.ENGLISH));
+        Path precompressed = basePath.resolve("precompressed");
+
+        // Resources with the same path in different contexts do not collide.
+        assertEquals(text.toString(), getPrecompressed(docs1, precompressed));
+        assertEquals(text.toString().toUpperCase(Locale.ENGLISH), getPrecompressed(docs2, precompressed));
+        List<Path> files = listFiles(precompressed);
+        assertEquals(2, files.size());
+        assertThat(files.get(0).getParent(), not(files.get(1).getParent()));
+
+        // A modified resource supersedes the persisted file.
+        Path big = docs1.resolve("big.txt");
+        Files.write(big, (text.toString() + "more\n").getBytes(UTF_8));
+        Files.setLastModifiedTime(big, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        assertEquals(text.toString() + "more\n", getPrecompressed(docs1, precompressed));
+        assertEquals(2, listFiles(precompressed).size());
+
+        // A corrupted file is not used, and is replaced.
+        for (Path file : listFiles(precompressed))
+        {
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length - 1] ^= 0xFF;
+            Files.write(file, bytes);
+        }
+        assertEquals(text.toString() + "more\n", getPrecompressed(docs1, precompressed));
+        assertEquals(text.toString().toUpperCase(Locale.ENGLISH), getPrecompressed(docs2, precompressed));
+        assertEquals(2, listFiles(precompressed).size());
+    }
+
+    private static String getPrecompressed(Path docs, Path precompressed) throws Exception
+    {
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(docs), new MimeTypes(), false, true, new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+        cache.setPrecompressExecutor(Runnable::run);
+        cache.setPrecompressDirectory(precompressed);
+        HttpContent gzip = cache.getContent("big.txt", 4096).getPrecompressedContents().get(CompressedContentFormat.GZIP);
+        String content = IO.toString(new GZIPInputStream(gzip.getInputStream()), UTF_8);
+        cache.flushCache();
+        return content;
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
     static String getContent(CachedContentFactory rc, String path) throws Exception
     {
         HttpContent content = rc.getContent(path, rc.getMaxCachedFileSize());
@@ -0,0 +1,186 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class BulkheadHandlerTest
+{
+    private Server _server;
+    private LocalConnector _local;
+
+    @BeforeEach
+    public void before()
+    {
+        _server = new Server();
+        _local = new LocalConnector(_server);
+        _server.addConnector(_local);
+    }
+
+    @AfterEach
+    public void after() throws Exception
+    {
+        _server.stop();
+    }
+
+    private BulkheadHandler start(int maxThreads, int maxQueued, AtomicInteger count, AtomicInteger total, CountDownLatch latch) throws Exception
+    {
+        BulkheadHandler bulkhead = new BulkheadHandler(maxThreads, maxQueued);
+        bulkhead.addExcludedPaths("/other");
+        bulkhead.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setStatus(HttpStatus.OK_200);
+                if ("/other".equals(target))
+                    return;
+
+                try
+                {
+                    count.incrementAndGet();
+                    total.incrementAndGet();
+                    latch.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new ServletException(e);
+                }
+                finally
+                {
+                    count.decrementAndGet();
+                }
+            }
+        });
+        _server.setHandler(bulkhead);
+        _server.start();
+        return bulkhead;
+    }
+
+    @Test
+    public void testLimit() throws Exception
+    {
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger total = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        BulkheadHandler bulkhead = start(4, 10, count, total, latch);
+
+        List<LocalConnector.LocalEndPoint> endPoints = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            endPoints.add(_local.executeRequest("GET /" + i + " HTTP/1.0\r\n\r\n"));
+        }
+
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (bulkhead.getQueuedRequests() < 6 && System.nanoTime() < wait)
+        {
+            Thread.sleep(1);
+        }
+        assertThat(count.get(), is(4));
+        assertThat(bulkhead.getQueuedRequests(), is(6));
+
+        // Check that excluded requests are not blocked.
+        assertThat(_local.getResponse("GET /other HTTP/1.0\r\n\r\n"), containsString(" 200 OK"));
+
+        // Let the other requests go.
+        latch.countDown();
+
+        for (LocalConnector.LocalEndPoint endPoint : endPoints)
+        {
+            assertThat(endPoint.getResponse(false, 10, TimeUnit.SECONDS), containsString(" 200 OK"));
+        }
+        assertThat(total.get(), is(10));
+        assertThat(bulkhead.getActiveThreads(), is(0));
+        assertThat(bulkhead.getMaxActiveThreads(), is(4));
+        assertThat(bulkhead.getTotalQueuedRequests(), is(6L));
+    }
+
+    @Test
+    public void testRejectWhenQueueFull() throws Exception
+    {
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger total = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        BulkheadHandler bulkhead = start(1, 1, count, total, latch);
+
+        LocalConnector.LocalEndPoint active = _local.executeRequest("GET /0 HTTP/1.0\r\n\r\n");
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < 1 && System.nanoTime() < wait)
+        {
+            Thread.sleep(1);
+        }
+        LocalConnector.LocalEndPoint queued = _local.executeRequest("GET /1 HTTP/1.0\r\n\r\n");
+        while (bulkhead.getQueuedRequests() < 1 && System.nanoTime() < wait)
+        {
+            Thread.sleep(1);
+        }
+
+        assertThat(_local.getResponse("GET /2 HTTP/1.0\r\n\r\n"), containsString(" 503 "));
+        assertThat(bulkhead.getRejectedRequests(), is(1L));
+
+        latch.countDown();
+        assertThat(active.getResponse(false, 10, TimeUnit.SECONDS), containsString(" 200 OK"));
+        assertThat(queued.getResponse(false, 10, TimeUnit.SECONDS), containsString(" 200 OK"));
+    }
+
+    @Test
+    public void testExpireWhenQueuedTooLong() throws Exception
+    {
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger total = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        BulkheadHandler bulkhead = start(1, 1, count, total, latch);
+        bulkhead.setMaxQueueTime(500);
+
+        LocalConnector.LocalEndPoint active = _local.executeRequest("GET /0 HTTP/1.0\r\n\r\n");
+        long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < 1 && System.nanoTime() < wait)
+        {
+            Thread.sleep(1);
+        }
+
+        assertThat(_local.getResponse("GET /1 HTTP/1.0\r\n\r\n", 5, TimeUnit.SECONDS), containsString(" 503 "));
+        assertThat(bulkhead.getExpiredRequests(), is(1L));
+        assertThat(bulkhead.getQueuedRequests(), is(0));
+
+        latch.countDown();
+        assertThat(active.getResponse(false, 10, TimeUnit.SECONDS), containsString(" 200 OK"));
+    }
+}
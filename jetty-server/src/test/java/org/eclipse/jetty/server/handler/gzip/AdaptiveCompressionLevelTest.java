@@ -0,0 +1,169 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class AdaptiveCompressionLevelTest
+{
+    private volatile double _cpuLoad;
+    private AdaptiveCompressionLevel _adaptive;
+
+    @BeforeEach
+    public void before()
+    {
+        _adaptive = new AdaptiveCompressionLevel()
+        {
+            @Override
+            protected double getCpuLoad()
+            {
+                return _cpuLoad;
+            }
+        };
+        _adaptive.setSampleInterval(0);
+        _adaptive.setSkipCompressionSize(1024);
+    }
+
+    @Test
+    public void testLevelLoweredUnderLoadAndRaisedWhenIdle()
+    {
+        assertThat(_adaptive.getLevel(), is(6));
+
+        _cpuLoad = 0.95;
+        for (int level = 5; level >= 1; --level)
+        {
+            assertThat(_adaptive.acquireLevel(-1), is(level));
+        }
+        assertThat(_adaptive.isSkipping(), is(false));
+
+        // At the min level, mid-sized responses are not compressed.
+        assertThat(_adaptive.acquireLevel(512), is(-1));
+        assertThat(_adaptive.isSkipping(), is(true));
+        assertThat(_adaptive.acquireLevel(4096), is(1));
+        assertThat(_adaptive.acquireLevel(-1), is(1));
+
+        // Between the thresholds, the level is held.
+        _cpuLoad = 0.70;
+        assertThat(_adaptive.acquireLevel(512), is(-1));
+        assertThat(_adaptive.getLevel(), is(1));
+
+        _cpuLoad = 0.10;
+        assertThat(_adaptive.acquireLevel(512), is(1));
+        assertThat(_adaptive.isSkipping(), is(false));
+        for (int level = 2; level <= 6; ++level)
+        {
+            assertThat(_adaptive.acquireLevel(512), is(level));
+        }
+        assertThat(_adaptive.acquireLevel(512), is(6));
+
+        assertThat(_adaptive.getSkippedResponses(), is(2L));
+        assertThat(_adaptive.getCompressedResponses(1), is(4L));
+        assertThat(_adaptive.getCompressedResponses(6), is(2L));
+        assertThat(_adaptive.getCompressedResponses(), is(14L));
+    }
+
+    @Test
+    public void testMinMaxLevel()
+    {
+        _adaptive.setMinLevel(3);
+        _adaptive.setMaxLevel(4);
+        assertThat(_adaptive.getLevel(), is(4));
+
+        _cpuLoad = 0.95;
+        assertThat(_adaptive.acquireLevel(-1), is(3));
+        assertThat(_adaptive.acquireLevel(-1), is(3));
+        assertThat(_adaptive.isSkipping(), is(true));
+
+        _cpuLoad = 0.10;
+        assertThat(_adaptive.acquireLevel(-1), is(3));
+        assertThat(_adaptive.acquireLevel(-1), is(4));
+        assertThat(_adaptive.acquireLevel(-1), is(4));
+    }
+
+    @Test
+    public void testBytesSaved()
+    {
+        _adaptive.onCompressed(1000, 100);
+        _adaptive.onCompressed(500, 400);
+        assertThat(_adaptive.getBytesIn(), is(1500L));
+        assertThat(_adaptive.getBytesOut(), is(500L));
+        assertThat(_adaptive.getBytesSaved(), is(1000L));
+
+        _adaptive.resetStatistics();
+        assertThat(_adaptive.getBytesSaved(), is(0L));
+    }
+
+    @Test
+    public void testQueueLatency() throws Exception
+    {
+        QueuedThreadPool threadPool = new QueuedThreadPool(4, 1);
+        threadPool.start();
+        try
+        {
+            _adaptive.setThreadPool(threadPool);
+            _adaptive.setHighQueueLatency(100);
+
+            // Block all the threads, so that the probe task is queued.
+            CountDownLatch latch = new CountDownLatch(1);
+            for (int i = 0; i < threadPool.getMaxThreads(); ++i)
+            {
+                threadPool.execute(() ->
+                {
+                    try
+                    {
+                        latch.await();
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new RuntimeException(x);
+                    }
+                });
+            }
+
+            _adaptive.acquireLevel(-1);
+            Thread.sleep(200);
+            _adaptive.acquireLevel(-1);
+            assertThat(_adaptive.getLevel(), lessThan(6));
+
+            // Once the threads are released, the level is raised again.
+            latch.countDown();
+            long wait = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (_adaptive.getLevel() < 6 && System.nanoTime() < wait)
+            {
+                Thread.sleep(10);
+                _adaptive.acquireLevel(-1);
+            }
+            assertThat(_adaptive.getLevel(), greaterThanOrEqualTo(6));
+        }
+        finally
+        {
+            threadPool.stop();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContentEncoderTest
+{
+    private static final byte[] DICTIONARY = "{\"id\":,\"name\":\"item\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] json(int items)
+    {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < items; ++i)
+        {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+        }
+        return json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(ContentEncoder encoder, byte[] content, int chunkSize, int bufferSize)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteBuffer buffer = BufferUtil.allocate(bufferSize);
+        int offset = 0;
+        while (!encoder.finished())
+        {
+            BufferUtil.clear(buffer);
+            if (encoder.needsInput())
+            {
+                int length = Math.min(chunkSize, content.length - offset);
+                if (length > 0)
+                    encoder.setInput(content, offset, length);
+                offset += length;
+                if (offset == content.length)
+                    encoder.finish();
+            }
+            encoder.encode(buffer, false);
+            output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return output.toByteArray();
+    }
+
+    @Test
+    public void testGzipWithSmallBuffers() throws Exception
+    {
+        byte[] content = json(1024);
+        ContentEncoderPool pool = new ContentEncoderPool(-1, new GzipContentEncoder.Factory());
+        pool.start();
+        for (int i = 0; i < 2; ++i)
+        {
+            ContentEncoder encoder = pool.acquire();
+            byte[] encoded = encode(encoder, content, 1000, 16);
+            assertThat(encoder.getBytesRead(), is((long)content.length));
+            assertThat(encoder.getBytesWritten(), is((long)encoded.length));
+            pool.release(encoder);
+
+            // Pooled encoders are reset and produce the same output.
+            assertArrayEquals(content, IO.readBytes(new GZIPInputStream(new ByteArrayInputStream(encoded))));
+        }
+        pool.stop();
+    }
+
+    @Test
+    public void testGzipEmptyContent() throws Exception
+    {
+        byte[] encoded = encode(new GzipContentEncoder(6), new byte[0], 1, 32);
+        assertThat(IO.readBytes(new GZIPInputStream(new ByteArrayInputStream(encoded))).length, is(0));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedGzipFactory() throws Exception
+    {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        List<Deflater> recycled = new ArrayList<>();
+        GzipFactory factory = new GzipFactory()
+        {
+            @Override
+            public Deflater getDeflater(Request request, long contentLength)
+            {
+                return deflater;
+            }
+
+            @Override
+            public boolean isMimeTypeGzipable(String mimetype)
+            {
+                return true;
+            }
+
+            @Override
+            public void recycle(Deflater deflater)
+            {
+                recycled.add(deflater);
+            }
+        };
+
+        // Factories implementing only the deprecated methods still gzip responses.
+        byte[] content = json(64);
+        ContentEncoder encoder = factory.getContentEncoder(null, content.length);
+        byte[] encoded = encode(encoder, content, 100, 64);
+        assertArrayEquals(content, IO.readBytes(new GZIPInputStream(new ByteArrayInputStream(encoded))));
+
+        factory.recycle(encoder);
+        assertThat(recycled.size(), is(1));
+        assertThat(recycled.get(0), sameInstance(deflater));
+        deflater.end();
+    }
+
+    @Test
+    public void testDeflateWithDictionary() throws Exception
+    {
+        byte[] content = json(16);
+        byte[] plain = encode(new DeflateContentEncoder(6), content, content.length, 64);
+
+        ContentEncoderPool pool = new ContentEncoderPool(-1, new DeflateContentEncoder.Factory(6, DICTIONARY));
+        pool.start();
+        for (int i = 0; i < 2; ++i)
+        {
+            ContentEncoder encoder = pool.acquire();
+            byte[] encoded = encode(encoder, content, 100, 64);
+            pool.release(encoder);
+            assertThat(encoded.length, lessThan(plain.length));
+
+            Inflater inflater = new Inflater();
+            inflater.setInput(encoded);
+            byte[] decoded = new byte[content.length];
+            assertThat(inflater.inflate(decoded), is(0));
+            assertTrue(inflater.needsDictionary());
+            inflater.setDictionary(DICTIONARY);
+            assertThat(inflater.inflate(decoded), is(content.length));
+            assertTrue(inflater.finished());
+            inflater.end();
+            assertArrayEquals(content, decoded);
+        }
+        pool.stop();
+    }
+}
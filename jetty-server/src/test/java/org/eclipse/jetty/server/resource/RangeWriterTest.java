@@ -23,6 +23,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -45,6 +46,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 
 public class RangeWriterTest
@@ -196,4 +198,30 @@ public class RangeWriterTest
         rangeWriter.writeTo(outputStream, 10, 20);
         assertThat("Range(a): 10 (len=20)", new String(outputStream.toByteArray(), UTF_8), is(DATA.substring(10, 10 + 20)));
     }
+
+    @ParameterizedTest(name = "[{index}] {0}")
+    @MethodSource("impls")
+    public void testReadRangesReverseOrder(String description, RangeWriter rangeWriter) throws IOException
+    {
+        assertThat("Range(a): 55 (len=10)", read(rangeWriter, 55, 10), is(DATA.substring(55, 55 + 10)));
+        assertThat("Range(b): 35 (len=10)", read(rangeWriter, 35, 10), is(DATA.substring(35, 35 + 10)));
+        assertThat("Range(c): 10 (len=20)", read(rangeWriter, 10, 20), is(DATA.substring(10, 10 + 20)));
+    }
+
+    private static String read(RangeWriter rangeWriter, long skipTo, long length) throws IOException
+    {
+        // Use a small buffer, so that the range is read in multiple chunks.
+        ByteBuffer buffer = BufferUtil.allocate(7);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        while (length > 0)
+        {
+            ByteBuffer chunk = rangeWriter.read(buffer, skipTo, length);
+            int read = chunk.remaining();
+            assertThat(read, greaterThan(0));
+            BufferUtil.writeTo(chunk, outputStream);
+            skipTo += read;
+            length -= read;
+        }
+        return new String(outputStream.toByteArray(), UTF_8);
+    }
 }
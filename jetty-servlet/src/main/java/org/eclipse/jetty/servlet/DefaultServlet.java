@@ -20,6 +20,7 @@ package org.eclipse.jetty.servlet;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -36,11 +37,14 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.server.CachedContentFactory;
+import org.eclipse.jetty.server.MappedContentStore;
 import org.eclipse.jetty.server.ResourceContentFactory;
 import org.eclipse.jetty.server.ResourceService;
 import org.eclipse.jetty.server.ResourceService.WelcomeFactory;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.PathWatcher;
 import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.util.resource.PathResource;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
 import org.slf4j.Logger;
@@ -86,6 +90,14 @@ import org.slf4j.LoggerFactory;
  *                    If set to a boolean True, then a default set of compressed formats
  *                    will be used, otherwise no precompressed formats.
  *
+ *  precompressCache  If True, and the precompressed formats include gzip, cached textual
+ *                    resources without a ".gz" file are gzip compressed once in the background
+ *                    and served as their precompressed variant (default false).
+ *
+ *  precompressDirectory
+ *                    Set with a directory where the resources compressed by precompressCache
+ *                    are persisted, so that they are reused after a restart.
+ *
  *  resourceBase      Set to replace the context resource base
  *
  *  resourceCache     If set, this is a context attribute name, which the servlet
@@ -107,12 +119,23 @@ import org.slf4j.LoggerFactory;
  *  maxCachedFileSize The maximum size of a file to cache
  *  maxCachedFiles    The maximum number of files to cache
  *
+ *  watchResources    If True, and the resource base is a directory of the file system, changes
+ *                    to the cached resources are watched and invalidate them, so that cached
+ *                    resources are not checked against the file system on every request.
+ *                    Changes are seen after the quiet time of the watcher (default false).
+ *
+ *  revalidationInterval
+ *                    The minimum time in ms between two checks of a cached resource that is
+ *                    not watched against the file system, or 0 to check on every request (default 0).
+ *
  *  useFileMappedBuffer
  *                    If set to true, it will use mapped file buffer to serve static content
  *                    when using NIO connector. Setting this value to false means that
  *                    a direct buffer will be used instead of a mapped file buffer.
  *                    This is set to false by default by this class, but may be overridden
  *                    by eg webdefault.xml
+ *                    If the Server has a MappedContentStore bean, the mapped files are
+ *                    shared with the other contexts of the server.
  *
  *  cacheControl      If set, all static content will have this value set as the cache-control
  *                    header.
@@ -149,6 +172,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
     private String _relativeResourceBase;
     private ServletHandler _servletHandler;
     private ServletHolder _defaultHolder;
+    private PathWatcher _pathWatcher;
 
     public DefaultServlet(ResourceService resourceService)
     {
@@ -264,6 +288,35 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
                     _cache.setMaxCachedFileSize(maxCachedFileSize);
                 if (maxCachedFiles >= -1)
                     _cache.setMaxCachedFiles(maxCachedFiles);
+                MappedContentStore mappedContentStore = _contextHandler.getServer().getBean(MappedContentStore.class);
+                if (_useFileMappedBuffer && mappedContentStore != null)
+                    _cache.setMappedContentStore(mappedContentStore);
+                if (getInitBoolean("precompressCache", false))
+                {
+                    _cache.setPrecompressExecutor(_contextHandler.getServer().getThreadPool());
+                    String precompressDirectory = getInitParameter("precompressDirectory");
+                    if (precompressDirectory != null)
+                        _cache.setPrecompressDirectory(Paths.get(precompressDirectory));
+                }
+                _cache.setRevalidationInterval(getInitInt("revalidationInterval", 0));
+                if (getInitBoolean("watchResources", false))
+                {
+                    Resource base = getResource(URIUtil.SLASH);
+                    if (base instanceof PathResource && base.isDirectory())
+                    {
+                        PathWatcher.Config config = new PathWatcher.Config(((PathResource)base).getPath());
+                        config.setRecurseDepth(PathWatcher.Config.UNLIMITED_DEPTH);
+                        _pathWatcher = new PathWatcher();
+                        _pathWatcher.setNotifyExistingOnStart(false);
+                        _pathWatcher.watch(config);
+                        _cache.setPathWatcher(_pathWatcher);
+                        _pathWatcher.start();
+                    }
+                    else
+                    {
+                        LOG.warn("Unable to watch resources of {}, not a directory: {}", _servletContext.getContextPath(), base);
+                    }
+                }
                 _servletContext.setAttribute(resourceCache == null ? "resourceCache" : resourceCache, _cache);
             }
         }
@@ -478,6 +531,18 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
     @Override
     public void destroy()
     {
+        if (_pathWatcher != null)
+        {
+            try
+            {
+                _pathWatcher.stop();
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Unable to stop {}", _pathWatcher, e);
+            }
+            _pathWatcher = null;
+        }
         if (_cache != null)
             _cache.flushCache();
         super.destroy();
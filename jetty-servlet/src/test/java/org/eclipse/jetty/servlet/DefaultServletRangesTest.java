@@ -175,6 +175,41 @@ public class DefaultServletRangesTest
         assertTrue(body.endsWith(boundary + "--\r\n"));
     }
 
+    @Test
+    public void testMultipleRangeRequestsContentLength() throws Exception
+    {
+        String response;
+        response = connector.getResponse(
+            "GET /context/data.txt HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Connection: close\r\n" +
+                "Range: bytes=70-,0-4,30-39\r\n" +
+                "\r\n");
+        assertResponseContains("206 Partial", response);
+        int start = response.indexOf("--jetty");
+        String body = response.substring(start);
+        String boundary = body.substring(0, body.indexOf("\r\n"));
+
+        String expected = boundary + "\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Content-Range: bytes 70-79/80\r\n" +
+            "\r\n" +
+            DATA.substring(70) + "\r\n" +
+            boundary + "\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Content-Range: bytes 0-4/80\r\n" +
+            "\r\n" +
+            DATA.substring(0, 5) + "\r\n" +
+            boundary + "\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Content-Range: bytes 30-39/80\r\n" +
+            "\r\n" +
+            DATA.substring(30, 40) + "\r\n" +
+            boundary + "--\r\n";
+        assertEquals(expected, body);
+        assertResponseContains("Content-Length: " + expected.length(), response);
+    }
+
     @Test
     public void testMultipleSameRangeRequests() throws Exception
     {
@@ -30,6 +30,8 @@ import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
@@ -48,7 +50,11 @@ import org.eclipse.jetty.http.tools.HttpTester;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.AdaptiveCompressionLevel;
+import org.eclipse.jetty.server.handler.gzip.CompressionDictionary;
+import org.eclipse.jetty.server.handler.gzip.DeflateContentEncoder;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipResponseCache;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
 import org.hamcrest.Matchers;
@@ -60,6 +66,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalToIgnoringCase;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
@@ -119,6 +126,7 @@ public class GzipHandlerTest
         servlets.addServletWithMapping(DumpServlet.class, "/dump/*");
         servlets.addServletWithMapping(AsyncServlet.class, "/async/*");
         servlets.addServletWithMapping(BufferServlet.class, "/buffer/*");
+        servlets.addServletWithMapping(StrongETagServlet.class, "/strong");
         servlets.addFilterWithMapping(CheckFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
 
         _server.start();
@@ -238,6 +246,18 @@ public class GzipHandlerTest
         }
     }
 
+    public static class StrongETagServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse response) throws ServletException, IOException
+        {
+            response.setHeader("ETag", "\"strong\"");
+            response.setContentType("text/plain");
+            // Breaks the strong ETag contract to detect when the cached response is served.
+            response.getWriter().write(req.getHeader("X-Other") == null ? __content : __icontent);
+        }
+    }
+
     public static class EchoServlet extends HttpServlet
     {
         @Override
@@ -510,6 +530,195 @@ public class GzipHandlerTest
         assertEquals(__micro, testOut.toString("UTF8"));
     }
 
+    @Test
+    public void testCachedResponse() throws Exception
+    {
+        _server.stop();
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        GzipResponseCache cache = new GzipResponseCache();
+        gzipHandler.setResponseCache(cache);
+        AdaptiveCompressionLevel adaptive = new AdaptiveCompressionLevel()
+        {
+            @Override
+            protected void sample()
+            {
+                // Keep the level stable regardless of the load of the test machine.
+            }
+        };
+        gzipHandler.setAdaptiveCompressionLevel(adaptive);
+        _server.start();
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/strong");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("Accept-Encoding", "gzip");
+
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), is("gzip"));
+        assertThat(response.get("ETag"), is("\"strong--gzip\""));
+        assertEquals(__content, IO.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getCachedEntries(), is(1));
+
+        // The second response is served from the cache, not from the content written by the servlet.
+        request.setHeader("X-Other", "true");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), is("gzip"));
+        assertThat(response.get("ETag"), is("\"strong--gzip\""));
+        assertEquals(__content, IO.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+        assertThat(cache.getHits(), is(1L));
+        // A cache hit is neither a miss nor a compression.
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(adaptive.getCompressedResponses(), is(1L));
+
+        // Responses with weak ETags are not cached.
+        request.setURI("/ctx/content");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("ETag"), is(__contentETagGzip));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getCachedEntries(), is(1));
+    }
+
+    @Test
+    public void testAdaptiveCompressionLevel() throws Exception
+    {
+        _server.stop();
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        AdaptiveCompressionLevel adaptive = new AdaptiveCompressionLevel()
+        {
+            @Override
+            protected void sample()
+            {
+                // Keep the level stable regardless of the load of the test machine.
+            }
+        };
+        adaptive.setMaxLevel(3);
+        gzipHandler.setAdaptiveCompressionLevel(adaptive);
+        _server.start();
+        assertThat(adaptive.getThreadPool(), is(_server.getThreadPool()));
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("Accept-Encoding", "gzip");
+
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), is("gzip"));
+        assertEquals(__content, IO.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+
+        assertThat(adaptive.getCompressedResponses(3), is(1L));
+        assertThat(adaptive.getCompressedResponses(), is(1L));
+        assertThat(adaptive.getBytesIn(), is((long)__bytes.length));
+        assertThat(adaptive.getBytesSaved(), greaterThan(0L));
+    }
+
+    @Test
+    public void testAcceptEncodingNegotiation() throws Exception
+    {
+        _server.stop();
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        gzipHandler.getContentEncoderFactories().add(new DeflateContentEncoder.Factory());
+        _server.start();
+
+        // The encoding with the highest quality wins.
+        HttpTester.Response response = getResponse("gzip;q=0.5, deflate");
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), is("deflate"));
+        assertThat(response.get("ETag"), is(String.format("W/\"%x--deflate\"", __content.hashCode())));
+        assertEquals(__content, IO.toString(new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+
+        // With equal qualities, the server preference wins.
+        response = getResponse("deflate, gzip");
+        assertThat(response.get("Content-Encoding"), is("gzip"));
+        assertEquals(__content, IO.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+
+        // The wildcard does not match encodings explicitly refused.
+        response = getResponse("gzip;q=0, *");
+        assertThat(response.get("Content-Encoding"), is("deflate"));
+
+        // Unsupported encodings are not used.
+        response = getResponse("br, identity");
+        assertThat(response.get("Content-Encoding"), nullValue());
+        assertThat(response.getContent(), is(__content));
+    }
+
+    private HttpTester.Response getResponse(String acceptEncoding) throws Exception
+    {
+        return getResponse(acceptEncoding, null, null);
+    }
+
+    private HttpTester.Response getResponse(String acceptEncoding, String dictionaries, String ifNoneMatch) throws Exception
+    {
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("Accept-Encoding", acceptEncoding);
+        if (dictionaries != null)
+            request.setHeader(CompressionDictionary.HEADER, dictionaries);
+        if (ifNoneMatch != null)
+            request.setHeader("If-None-Match", ifNoneMatch);
+        return HttpTester.parseResponse(_connector.getResponse(request.generate()));
+    }
+
+    @Test
+    public void testCompressionDictionary() throws Exception
+    {
+        byte[] bytes = __content.substring(0, 256).getBytes(StandardCharsets.UTF_8);
+        CompressionDictionary dictionary = new CompressionDictionary(bytes);
+        // The GzipHandler is not within the context, so its paths include the context path.
+        dictionary.addIncludedPaths("/ctx/content");
+        dictionary.addIncludedMimeTypes("text/plain");
+
+        _server.stop();
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        gzipHandler.getContentEncoderFactories().add(new DeflateContentEncoder.Factory());
+        gzipHandler.getCompressionDictionaries().add(dictionary);
+        _server.start();
+
+        // The dictionary is used if the client holds it.
+        HttpTester.Response response = getResponse("gzip, deflate", "01234567, " + dictionary.getId(), null);
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), is("deflate"));
+        assertThat(response.get("Vary"), containsString(CompressionDictionary.HEADER));
+        String etag = String.format("W/\"%x--deflate-%s\"", __content.hashCode(), dictionary.getId());
+        assertThat(response.get("ETag"), is(etag));
+        Inflater inflater = new Inflater();
+        inflater.setInput(response.getContentBytes());
+        byte[] inflated = new byte[__bytes.length];
+        assertThat(inflater.inflate(inflated), is(0));
+        assertThat(inflater.needsDictionary(), is(true));
+        inflater.setDictionary(bytes);
+        assertThat(inflater.inflate(inflated), is(__bytes.length));
+        assertThat(inflater.finished(), is(true));
+        inflater.end();
+        assertEquals(__content, new String(inflated, StandardCharsets.UTF_8));
+
+        // The entity tag of the content deflated with the dictionary is recognized.
+        response = getResponse("gzip, deflate", dictionary.getId(), etag);
+        assertThat(response.getStatus(), is(304));
+        assertThat(response.get("ETag"), is(etag));
+
+        // The dictionary is not used if the client does not accept deflate.
+        response = getResponse("gzip", dictionary.getId(), null);
+        assertThat(response.get("Content-Encoding"), is("gzip"));
+
+        // The dictionary is not used if the client does not hold it.
+        response = getResponse("deflate", "01234567", null);
+        assertThat(response.get("Content-Encoding"), is("deflate"));
+        assertThat(response.get("ETag"), is(String.format("W/\"%x--deflate\"", __content.hashCode())));
+        assertEquals(__content, IO.toString(new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testGzipNotMicroChunked() throws Exception
     {
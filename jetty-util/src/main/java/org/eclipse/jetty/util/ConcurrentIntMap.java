@@ -0,0 +1,329 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A concurrent map with primitive {@code int} keys.</p>
+ * <p>The entries are stored in open addressing tables with linear probing,
+ * so that keys are not boxed and no node is allocated for each entry.</p>
+ * <p>Lookups are lock-free and do not allocate, while modifications are
+ * serialized by a lock. This makes this map suitable for read-mostly usages
+ * with a small number of entries, such as HTTP/2 streams indexed by stream id,
+ * where the map is looked up for every frame, but modified only when a stream
+ * is created or destroyed.</p>
+ * <p>Null values are not allowed.</p>
+ *
+ * @param <V> the type of the values
+ */
+public class ConcurrentIntMap<V>
+{
+    private static final Object REMOVED = new Object();
+    private static final int MIN_CAPACITY = 16;
+
+    private final AutoLock lock = new AutoLock();
+    private volatile Table table;
+    private volatile int size;
+    // The number of REMOVED slots in the current table.
+    private int removed;
+
+    public ConcurrentIntMap()
+    {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize the number of entries expected in the map
+     */
+    public ConcurrentIntMap(int expectedSize)
+    {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int size)
+    {
+        // Keep the load factor at most 0.5 to have short probe sequences.
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY / 2, size) * 2 - 1) << 1;
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid size " + size);
+        return capacity;
+    }
+
+    private static int hash(int key)
+    {
+        // Spread the keys, as HTTP/2 stream ids are all odd or all even.
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param key the key
+     * @return the value associated with the key, or null if there is no such value
+     */
+    public V get(int key)
+    {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        int index = hash(key) & mask;
+        while (true)
+        {
+            Object value = t.values.get(index);
+            if (value == null)
+                return null;
+            if (value != REMOVED && t.keys[index] == key)
+            {
+                // Verify that the slot has not been reused for another key
+                // between the read of the value and the read of the key.
+                if (t.values.get(index) == value)
+                    return cast(value);
+                continue;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return whether the map contains the key
+     */
+    public boolean containsKey(int key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * <p>Associates the given value with the given key, replacing the existing value if any.</p>
+     *
+     * @param key the key
+     * @param value the value
+     * @return the value previously associated with the key, or null if there was no such value
+     */
+    public V put(int key, V value)
+    {
+        return put(key, value, false);
+    }
+
+    /**
+     * <p>Associates the given value with the given key, only if the key is not already present.</p>
+     *
+     * @param key the key
+     * @param value the value
+     * @return the value currently associated with the key, or null if the value has been added
+     */
+    public V putIfAbsent(int key, V value)
+    {
+        return put(key, value, true);
+    }
+
+    private V put(int key, V value, boolean onlyIfAbsent)
+    {
+        if (value == null)
+            throw new NullPointerException();
+        try (AutoLock l = lock.lock())
+        {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int index = hash(key) & mask;
+            int reusable = -1;
+            while (true)
+            {
+                Object existing = t.values.get(index);
+                if (existing == null)
+                    break;
+                if (existing == REMOVED)
+                {
+                    if (reusable < 0)
+                        reusable = index;
+                }
+                else if (t.keys[index] == key)
+                {
+                    if (!onlyIfAbsent)
+                        t.values.set(index, value);
+                    return cast(existing);
+                }
+                index = (index + 1) & mask;
+            }
+
+            if (reusable >= 0)
+            {
+                // The slot stays REMOVED while the key is changed,
+                // so that concurrent lookups skip it.
+                t.keys[reusable] = key;
+                t.values.set(reusable, value);
+                --removed;
+            }
+            else
+            {
+                // The value is written after the key, so lookups
+                // that see the value also see the key.
+                t.keys[index] = key;
+                t.values.set(index, value);
+            }
+            ++size;
+
+            if ((size + removed) * 2 > t.keys.length)
+                rehash(t);
+            return null;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the value that was associated with the key, or null if there was no such value
+     */
+    public V remove(int key)
+    {
+        try (AutoLock l = lock.lock())
+        {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int index = hash(key) & mask;
+            while (true)
+            {
+                Object existing = t.values.get(index);
+                if (existing == null)
+                    return null;
+                if (existing != REMOVED && t.keys[index] == key)
+                {
+                    // Cannot empty the slot, otherwise lookups of keys
+                    // further in the probe sequence would stop here.
+                    t.values.set(index, REMOVED);
+                    --size;
+                    ++removed;
+                    if (size == 0 && removed > MIN_CAPACITY / 2)
+                        rehash(t);
+                    return cast(existing);
+                }
+                index = (index + 1) & mask;
+            }
+        }
+    }
+
+    private void rehash(Table t)
+    {
+        assert lock.isHeldByCurrentThread();
+        // Entries are copied to a new table, as the current
+        // table may be concurrently read without locking.
+        Table newTable = new Table(capacityFor(size));
+        int mask = newTable.keys.length - 1;
+        for (int i = 0; i < t.keys.length; ++i)
+        {
+            Object value = t.values.get(i);
+            if (value == null || value == REMOVED)
+                continue;
+            int key = t.keys[i];
+            int index = hash(key) & mask;
+            while (newTable.values.get(index) != null)
+            {
+                index = (index + 1) & mask;
+            }
+            newTable.keys[index] = key;
+            newTable.values.lazySet(index, value);
+        }
+        removed = 0;
+        table = newTable;
+    }
+
+    /**
+     * <p>Removes all the entries.</p>
+     */
+    public void clear()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            table = new Table(capacityFor(0));
+            size = 0;
+            removed = 0;
+        }
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return whether the map is empty
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * <p>Performs the given action for each value of the map.</p>
+     * <p>The iteration is weakly consistent: it may or may not reflect
+     * modifications performed concurrently.</p>
+     *
+     * @param action the action to perform for each value
+     */
+    public void forEach(Consumer<? super V> action)
+    {
+        Table t = table;
+        for (int i = 0; i < t.keys.length; ++i)
+        {
+            Object value = t.values.get(i);
+            if (value != null && value != REMOVED)
+                action.accept(cast(value));
+        }
+    }
+
+    /**
+     * @return a snapshot of the values of the map, weakly consistent with concurrent modifications
+     */
+    public List<V> values()
+    {
+        List<V> result = new ArrayList<>(size());
+        forEach(result::add);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value)
+    {
+        return (V)value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d,capacity=%d}", getClass().getSimpleName(), hashCode(), size(), table.keys.length);
+    }
+
+    private static class Table
+    {
+        private final int[] keys;
+        private final AtomicReferenceArray<Object> values;
+
+        private Table(int capacity)
+        {
+            keys = new int[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+        }
+    }
+}
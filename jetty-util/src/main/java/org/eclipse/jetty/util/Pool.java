@@ -435,6 +435,14 @@ public class Pool<T> implements AutoCloseable, Dumpable
             return Math.max(state.getHi(), 0);
         }
 
+        /**
+         * @return the number of times this entry is currently acquired
+         */
+        public int getMultiplexCount()
+        {
+            return Math.max(state.getLo(), 0);
+        }
+
         @Override
         public String toString()
         {
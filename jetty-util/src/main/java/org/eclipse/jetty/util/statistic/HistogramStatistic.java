@@ -0,0 +1,263 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Statistics on the distribution of a sampled value.</p>
+ * <p>Samples are counted in log-linear buckets, in the style of HDR histograms:
+ * values are grouped by their power of two, and each power of two is divided
+ * into {@code 2^precision} linear sub-buckets.
+ * Values smaller than {@code 2^precision} are counted exactly, while larger
+ * values are counted with a relative error of at most {@code 2^-precision}.</p>
+ * <p>The memory used is fixed at construction, and recording a sample is lock-free,
+ * so that this class can be used on hot paths.
+ * Percentiles are computed from a non-atomic snapshot of the buckets, so they may
+ * not account for samples recorded concurrently.</p>
+ * <p>Only non-negative values can be recorded, negative values are recorded as zero.</p>
+ */
+public class HistogramStatistic
+{
+    private final int _precision;
+    private final AtomicLongArray _buckets;
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0L);
+    private final LongAdder _total = new LongAdder();
+    private final LongAdder _count = new LongAdder();
+
+    /**
+     * Creates a histogram with a relative error of at most 1/32.
+     */
+    public HistogramStatistic()
+    {
+        this(5);
+    }
+
+    /**
+     * @param precision the number of bits of precision of the recorded values, between 1 and 16
+     */
+    public HistogramStatistic(int precision)
+    {
+        if (precision < 1 || precision > 16)
+            throw new IllegalArgumentException("Invalid precision " + precision);
+        _precision = precision;
+        _buckets = new AtomicLongArray((64 - precision) << precision);
+    }
+
+    /**
+     * @return the number of bits of precision of the recorded values
+     */
+    public int getPrecision()
+    {
+        return _precision;
+    }
+
+    /**
+     * Resets the statistics.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < _buckets.length(); ++i)
+        {
+            _buckets.set(i, 0);
+        }
+        _max.reset();
+        _total.reset();
+        _count.reset();
+    }
+
+    /**
+     * Records a sample value.
+     *
+     * @param sample the value to record.
+     */
+    public void record(long sample)
+    {
+        if (sample < 0)
+            sample = 0;
+        _buckets.incrementAndGet(indexOf(sample));
+        _max.accumulate(sample);
+        _total.add(sample);
+        _count.increment();
+    }
+
+    private int indexOf(long value)
+    {
+        if (value < (1L << _precision))
+            return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - _precision;
+        // The mantissa is in [2^precision, 2^(precision + 1)).
+        long mantissa = value >>> shift;
+        return ((shift + 1) << _precision) + (int)(mantissa - (1L << _precision));
+    }
+
+    private long highestValueAt(int index)
+    {
+        int subBuckets = 1 << _precision;
+        if (index < subBuckets)
+            return index;
+        int shift = (index >>> _precision) - 1;
+        long mantissa = subBuckets + (index & (subBuckets - 1));
+        long lowest = mantissa << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * <p>Returns the value below which the given percentage of samples fall.</p>
+     * <p>The value returned is the highest value that is counted in the same
+     * bucket, and it is capped by the maximum recorded value.</p>
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the given percentile, or zero if there are no samples
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        checkPercentile(percentile);
+
+        // Scan the live buckets rather than a snapshot, to avoid allocating.
+        int length = _buckets.length();
+        long count = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            count += _buckets.get(i);
+        }
+        if (count == 0)
+            return 0;
+
+        long target = targetOf(percentile, count);
+        long accumulated = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            accumulated += _buckets.get(i);
+            if (accumulated >= target)
+                return Math.min(highestValueAt(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * <p>Returns the values below which the given percentages of samples fall,
+     * computed from a single snapshot of the buckets.</p>
+     *
+     * @param percentiles the percentiles, between 0 and 100
+     * @return the values at the given percentiles, or zeros if there are no samples
+     * @see #getValueAtPercentile(double)
+     */
+    public long[] getValuesAtPercentiles(double... percentiles)
+    {
+        for (double percentile : percentiles)
+        {
+            checkPercentile(percentile);
+        }
+
+        long[] values = new long[percentiles.length];
+        int length = _buckets.length();
+        long[] counts = new long[length];
+        long count = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            long c = _buckets.get(i);
+            counts[i] = c;
+            count += c;
+        }
+        if (count == 0)
+            return values;
+
+        long max = getMax();
+        for (int p = 0; p < percentiles.length; ++p)
+        {
+            long target = targetOf(percentiles[p], count);
+            long accumulated = 0;
+            values[p] = max;
+            for (int i = 0; i < length; ++i)
+            {
+                accumulated += counts[i];
+                if (accumulated >= target)
+                {
+                    values[p] = Math.min(highestValueAt(i), max);
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+    private static void checkPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+    }
+
+    private static long targetOf(double percentile, long count)
+    {
+        return Math.max(1, Math.round(percentile / 100.0D * count));
+    }
+
+    /**
+     * @return the max value of the recorded samples
+     */
+    public long getMax()
+    {
+        return _max.get();
+    }
+
+    /**
+     * @return the sum of all the recorded samples
+     */
+    public long getTotal()
+    {
+        return _total.sum();
+    }
+
+    /**
+     * @return the number of samples recorded
+     */
+    public long getCount()
+    {
+        return _count.sum();
+    }
+
+    /**
+     * @return the average value of the samples recorded, or zero if there are no samples
+     */
+    public double getMean()
+    {
+        long count = getCount();
+        return count > 0 ? (double)getTotal() / count : 0.0D;
+    }
+
+    @Override
+    public String toString()
+    {
+        long[] values = getValuesAtPercentiles(50, 90, 99, 99.9);
+        return String.format("%s@%x{count=%d,mean=%.1f,p50=%d,p90=%d,p99=%d,p99.9=%d,max=%d}",
+            getClass().getSimpleName(),
+            hashCode(),
+            getCount(),
+            getMean(),
+            values[0],
+            values[1],
+            values[2],
+            values[3],
+            getMax());
+    }
+}
@@ -19,16 +19,28 @@
 package org.eclipse.jetty.util.thread;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.util.BlockingArrayQueue;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.statistic.HistogramStatistic;
 import org.eclipse.jetty.util.statistic.SampleStatistic;
 
 /**
  * <p>A {@link QueuedThreadPool} subclass that monitors its own activity by recording queue and task statistics.</p>
+ * <p>Besides averages and maxima, the distributions of the queue latency and of the task
+ * latency are recorded in {@link HistogramStatistic}s, so that percentiles can be reported.
+ * The utilization of the thread pool, that is the ratio between the time threads spent
+ * running tasks and the time available to {@link #getMaxThreads() max threads},
+ * is computed over a sliding window of {@link #getUtilizationWindow() utilization window}
+ * milliseconds.</p>
  */
 @ManagedObject
 public class MonitoredQueuedThreadPool extends QueuedThreadPool
@@ -37,6 +49,10 @@ public class MonitoredQueuedThreadPool extends QueuedThreadPool
     private final SampleStatistic queueLatencyStats = new SampleStatistic();
     private final SampleStatistic taskLatencyStats = new SampleStatistic();
     private final CounterStatistic threadStats = new CounterStatistic();
+    private final HistogramStatistic queueLatencyHistogram = new HistogramStatistic();
+    private final HistogramStatistic taskLatencyHistogram = new HistogramStatistic();
+    private final LongAdder rejections = new LongAdder();
+    private final UtilizationWindow utilizationWindow = new UtilizationWindow(10);
 
     public MonitoredQueuedThreadPool()
     {
@@ -55,6 +71,9 @@ public class MonitoredQueuedThreadPool extends QueuedThreadPool
         addBean(queueLatencyStats);
         addBean(taskLatencyStats);
         addBean(threadStats);
+        addBean(queueLatencyHistogram);
+        addBean(taskLatencyHistogram);
+        addBean(utilizationWindow);
     }
 
     @Override
@@ -62,34 +81,47 @@ public class MonitoredQueuedThreadPool extends QueuedThreadPool
     {
         queueStats.increment();
         long begin = System.nanoTime();
-        super.execute(new Runnable()
+        try
         {
-            @Override
-            public void run()
+            super.execute(new Runnable()
             {
-                long queueLatency = System.nanoTime() - begin;
-                queueStats.decrement();
-                threadStats.increment();
-                queueLatencyStats.record(queueLatency);
-                long start = System.nanoTime();
-                try
+                @Override
+                public void run()
                 {
-                    job.run();
+                    long queueLatency = System.nanoTime() - begin;
+                    queueStats.decrement();
+                    threadStats.increment();
+                    queueLatencyStats.record(queueLatency);
+                    queueLatencyHistogram.record(queueLatency);
+                    long start = System.nanoTime();
+                    try
+                    {
+                        job.run();
+                    }
+                    finally
+                    {
+                        long end = System.nanoTime();
+                        long taskLatency = end - start;
+                        threadStats.decrement();
+                        taskLatencyStats.record(taskLatency);
+                        taskLatencyHistogram.record(taskLatency);
+                        utilizationWindow.record(end, taskLatency);
+                    }
                 }
-                finally
+
+                @Override
+                public String toString()
                 {
-                    long taskLatency = System.nanoTime() - start;
-                    threadStats.decrement();
-                    taskLatencyStats.record(taskLatency);
+                    return job.toString();
                 }
-            }
-
-            @Override
-            public String toString()
-            {
-                return job.toString();
-            }
-        });
+            });
+        }
+        catch (RejectedExecutionException x)
+        {
+            queueStats.decrement();
+            rejections.increment();
+            throw x;
+        }
     }
 
     /**
@@ -102,6 +134,10 @@ public class MonitoredQueuedThreadPool extends QueuedThreadPool
         queueLatencyStats.reset();
         taskLatencyStats.reset();
         threadStats.reset(0);
+        queueLatencyHistogram.reset();
+        taskLatencyHistogram.reset();
+        rejections.reset();
+        utilizationWindow.reset();
     }
 
     /**
@@ -166,4 +202,199 @@ public class MonitoredQueuedThreadPool extends QueuedThreadPool
     {
         return taskLatencyStats.getMax();
     }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the time a task remains in the queue at the given percentile, in nanoseconds
+     */
+    @ManagedOperation(value = "the time a task remains in the queue at the given percentile, in nanoseconds", impact = "INFO")
+    public long getQueueLatencyAtPercentile(@Name("percentile") double percentile)
+    {
+        return queueLatencyHistogram.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return the 99th percentile of the time a task remains in the queue, in nanoseconds
+     */
+    @ManagedAttribute("the 99th percentile of the time a task remains in the queue, in nanoseconds")
+    public long getQueueLatency99thPercentile()
+    {
+        return getQueueLatencyAtPercentile(99);
+    }
+
+    /**
+     * @return the 99.9th percentile of the time a task remains in the queue, in nanoseconds
+     */
+    @ManagedAttribute("the 99.9th percentile of the time a task remains in the queue, in nanoseconds")
+    public long getQueueLatency999thPercentile()
+    {
+        return getQueueLatencyAtPercentile(99.9);
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the task execution time at the given percentile, in nanoseconds
+     */
+    @ManagedOperation(value = "the task execution time at the given percentile, in nanoseconds", impact = "INFO")
+    public long getTaskLatencyAtPercentile(@Name("percentile") double percentile)
+    {
+        return taskLatencyHistogram.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return the 99th percentile of the task execution time, in nanoseconds
+     */
+    @ManagedAttribute("the 99th percentile of the task execution time, in nanoseconds")
+    public long getTaskLatency99thPercentile()
+    {
+        return getTaskLatencyAtPercentile(99);
+    }
+
+    /**
+     * @return the 99.9th percentile of the task execution time, in nanoseconds
+     */
+    @ManagedAttribute("the 99.9th percentile of the task execution time, in nanoseconds")
+    public long getTaskLatency999thPercentile()
+    {
+        return getTaskLatencyAtPercentile(99.9);
+    }
+
+    /**
+     * @return the number of tasks rejected because the queue was full or the pool was stopped
+     */
+    @ManagedAttribute("the number of tasks rejected")
+    public long getRejectedTasks()
+    {
+        return rejections.longValue();
+    }
+
+    /**
+     * @return the length of the sliding window over which the utilization is computed, in milliseconds
+     */
+    @ManagedAttribute("the length of the sliding window over which the utilization is computed, in milliseconds")
+    public long getUtilizationWindow()
+    {
+        return utilizationWindow.getWindow();
+    }
+
+    /**
+     * @param utilizationWindow the length of the sliding window over which the utilization is computed, in milliseconds
+     */
+    public void setUtilizationWindow(long utilizationWindow)
+    {
+        this.utilizationWindow.setWindow(utilizationWindow);
+    }
+
+    /**
+     * @return the ratio between the time spent running tasks and the time available
+     * to the max number of threads over the last utilization window, between 0 and 1
+     */
+    @ManagedAttribute("the ratio of the time spent running tasks over the last utilization window")
+    public double getUtilization()
+    {
+        return utilizationWindow.getUtilization(System.nanoTime(), getMaxThreads());
+    }
+
+    /**
+     * <p>Accumulates busy time in a ring of time slots, so that
+     * the utilization over a sliding window can be computed.</p>
+     * <p>The busy time of a task is accounted in the slot of the
+     * time the task completed.</p>
+     */
+    private class UtilizationWindow
+    {
+        // Marks a slot that is being reset for a new epoch.
+        private static final long RESETTING = Long.MAX_VALUE;
+
+        private final int slots;
+        private final AtomicLongArray busyNanos;
+        private final AtomicLongArray epochs;
+        private volatile long slotNanos;
+
+        private UtilizationWindow(int slots)
+        {
+            this.slots = slots;
+            this.busyNanos = new AtomicLongArray(slots);
+            this.epochs = new AtomicLongArray(slots);
+            setWindow(10000);
+        }
+
+        private long getWindow()
+        {
+            return TimeUnit.NANOSECONDS.toMillis(slotNanos * slots);
+        }
+
+        private void setWindow(long millis)
+        {
+            if (millis < slots)
+                throw new IllegalArgumentException("Invalid utilization window " + millis);
+            slotNanos = TimeUnit.MILLISECONDS.toNanos(millis) / slots;
+            reset();
+        }
+
+        private void reset()
+        {
+            for (int i = 0; i < slots; ++i)
+            {
+                busyNanos.set(i, 0);
+                epochs.set(i, Long.MIN_VALUE);
+            }
+        }
+
+        private void record(long now, long nanos)
+        {
+            long epoch = now / slotNanos;
+            int slot = (int)Math.floorMod(epoch, (long)slots);
+            while (true)
+            {
+                long slotEpoch = epochs.get(slot);
+                if (slotEpoch == epoch)
+                {
+                    busyNanos.addAndGet(slot, nanos);
+                    return;
+                }
+                if (slotEpoch == RESETTING)
+                {
+                    // Another thread is resetting the slot, it will publish the epoch shortly.
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (slotEpoch > epoch)
+                {
+                    // The slot has already been reused for a later epoch,
+                    // the sample is older than the window.
+                    return;
+                }
+                // The CAS winner owns the slot until it publishes the new epoch,
+                // so the reset cannot wipe out samples recorded for the new epoch.
+                if (epochs.compareAndSet(slot, slotEpoch, RESETTING))
+                {
+                    busyNanos.set(slot, nanos);
+                    epochs.set(slot, epoch);
+                    return;
+                }
+            }
+        }
+
+        private double getUtilization(long now, int threads)
+        {
+            long epoch = now / slotNanos;
+            long busy = 0;
+            for (int i = 0; i < slots; ++i)
+            {
+                long slotEpoch = epochs.get(i);
+                if (slotEpoch > epoch - slots && slotEpoch <= epoch)
+                    busy += busyNanos.get(i);
+            }
+            long available = slotNanos * slots * Math.max(1, threads);
+            return Math.min(1.0D, (double)busy / available);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{window=%dms,utilization=%.3f,rejected=%d}",
+                getClass().getSimpleName(), hashCode(), getWindow(), MonitoredQueuedThreadPool.this.getUtilization(), getRejectedTasks());
+        }
+    }
 }
@@ -73,6 +73,7 @@ public class QueuedThreadPool extends ContainerLifeCycle implements ThreadFactor
     private int _maxThreads;
     private int _minThreads;
     private int _reservedThreads = -1;
+    private boolean _adaptiveReservedThreads;
     private TryExecutor _tryExecutor = TryExecutor.NO_TRY;
     private int _priority = Thread.NORM_PRIORITY;
     private boolean _daemon = false;
@@ -180,6 +181,7 @@ public class QueuedThreadPool extends ContainerLifeCycle implements ThreadFactor
         {
             ReservedThreadExecutor reserved = new ReservedThreadExecutor(this, _reservedThreads);
             reserved.setIdleTimeout(_idleTimeout, TimeUnit.MILLISECONDS);
+            reserved.setAdaptive(_adaptiveReservedThreads);
             _tryExecutor = reserved;
         }
         addBean(_tryExecutor);
@@ -369,6 +371,30 @@ public class QueuedThreadPool extends ContainerLifeCycle implements ThreadFactor
         _reservedThreads = reservedThreads;
     }
 
+    /**
+     * <p>Sets whether the number of reserved threads adapts to the ratio of
+     * {@link #tryExecute(Runnable)} misses, up to the number of reserved threads.</p>
+     *
+     * @param adaptiveReservedThreads whether the number of reserved threads is adaptive
+     * @see ReservedThreadExecutor#setAdaptive(boolean)
+     */
+    public void setAdaptiveReservedThreads(boolean adaptiveReservedThreads)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _adaptiveReservedThreads = adaptiveReservedThreads;
+    }
+
+    /**
+     * @return whether the number of reserved threads is adaptive
+     * @see #setAdaptiveReservedThreads(boolean)
+     */
+    @ManagedAttribute("whether the number of reserved threads is adaptive")
+    public boolean isAdaptiveReservedThreads()
+    {
+        return _adaptiveReservedThreads;
+    }
+
     /**
      * @param name Name of this thread pool to use when naming threads.
      */
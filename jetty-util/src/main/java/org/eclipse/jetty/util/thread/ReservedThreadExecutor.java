@@ -24,10 +24,12 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.util.ProcessorUtils;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +43,14 @@ import org.slf4j.LoggerFactory;
  * wrapped {@link Executor} when an execution fails.  If the {@link #setIdleTimeout(long, TimeUnit)}
  * is set to non zero (default 1 minute), then the reserved thread pool will shrink by 1 thread
  * whenever it has been idle for that period.
+ * <p>If {@link #setAdaptive(boolean) adaptive}, the number of threads kept reserved is adjusted
+ * between 1 and the {@link #getCapacity() capacity}, based on the ratio of {@link #tryExecute(Runnable)}
+ * misses measured every {@link #getSampleSize() sample size} calls: the target grows when the miss
+ * ratio exceeds the {@link #getMaxMissRatio() max miss ratio} and shrinks when at least one reserved
+ * thread remained available for the whole sample.
+ * <p>The number of hits and misses is always recorded. A miss means that a caller such as
+ * {@link org.eclipse.jetty.util.thread.strategy.EatWhatYouKill} could not hand over a task
+ * to a reserved thread, and had to execute it via the thread pool queue instead.
  */
 @ManagedObject("A pool for reserved threads")
 public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExecutor
@@ -65,6 +75,15 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
     private final ConcurrentLinkedDeque<ReservedThread> _stack;
     private final AtomicInteger _size = new AtomicInteger();
     private final AtomicInteger _pending = new AtomicInteger();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final AtomicInteger _sampleCalls = new AtomicInteger();
+    private final AtomicInteger _sampleMisses = new AtomicInteger();
+    private final AtomicInteger _sampleMinAvailable = new AtomicInteger(Integer.MAX_VALUE);
+    private volatile int _target;
+    private boolean _adaptive;
+    private int _sampleSize = 64;
+    private double _maxMissRatio = 0.1D;
 
     private ThreadPoolBudget.Lease _lease;
     private long _idleTime = 1L;
@@ -80,6 +99,7 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
     {
         _executor = executor;
         _capacity = reservedThreads(executor, capacity);
+        _target = _capacity;
         _stack = new ConcurrentLinkedDeque<>();
         if (LOG.isDebugEnabled())
             LOG.debug("{}", this);
@@ -117,6 +137,81 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
         return _capacity;
     }
 
+    /**
+     * @return the number of threads that are currently kept reserved,
+     * which is less than the capacity only if this executor is adaptive
+     */
+    @ManagedAttribute(value = "target number of reserved threads", readonly = true)
+    public int getTarget()
+    {
+        return _target;
+    }
+
+    @ManagedAttribute("whether the number of reserved threads adapts to the miss ratio")
+    public boolean isAdaptive()
+    {
+        return _adaptive;
+    }
+
+    /**
+     * @param adaptive whether the number of reserved threads adapts to the miss ratio
+     */
+    public void setAdaptive(boolean adaptive)
+    {
+        if (isRunning())
+            throw new IllegalStateException();
+        _adaptive = adaptive;
+    }
+
+    /**
+     * @return the number of calls to {@link #tryExecute(Runnable)} after which the target is adjusted
+     */
+    @ManagedAttribute("the number of tryExecute calls after which the target is adjusted")
+    public int getSampleSize()
+    {
+        return _sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize)
+    {
+        if (sampleSize <= 0)
+            throw new IllegalArgumentException("Invalid sample size " + sampleSize);
+        _sampleSize = sampleSize;
+    }
+
+    /**
+     * @return the miss ratio above which the target is increased
+     */
+    @ManagedAttribute("the miss ratio above which the target is increased")
+    public double getMaxMissRatio()
+    {
+        return _maxMissRatio;
+    }
+
+    public void setMaxMissRatio(double maxMissRatio)
+    {
+        _maxMissRatio = maxMissRatio;
+    }
+
+    @ManagedAttribute(value = "number of tasks executed by a reserved thread", readonly = true)
+    public long getHits()
+    {
+        return _hits.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks rejected because no reserved thread was available", readonly = true)
+    public long getMisses()
+    {
+        return _misses.longValue();
+    }
+
+    @ManagedOperation(value = "resets the hit and miss counts", impact = "ACTION")
+    public void reset()
+    {
+        _hits.reset();
+        _misses.reset();
+    }
+
     @ManagedAttribute(value = "available reserved threads", readonly = true)
     public int getAvailable()
     {
@@ -156,6 +251,10 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
     {
         _lease = ThreadPoolBudget.leaseFrom(getExecutor(), this, _capacity);
         _size.set(0);
+        _target = _adaptive ? Math.min(1, _capacity) : _capacity;
+        _sampleCalls.set(0);
+        _sampleMisses.set(0);
+        _sampleMinAvailable.set(Integer.MAX_VALUE);
         super.doStart();
     }
 
@@ -212,7 +311,12 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
         if (thread == null)
         {
             if (task != STOP)
+            {
+                _misses.increment();
+                if (_adaptive)
+                    sample(true, 0);
                 startReservedThread();
+            }
             return false;
         }
 
@@ -220,12 +324,49 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
         if (!thread.offer(task))
             return false;
 
+        _hits.increment();
+        if (_adaptive)
+            sample(false, size);
+
         if (size == 0 && task != STOP)
             startReservedThread();
 
         return true;
     }
 
+    private void sample(boolean miss, int available)
+    {
+        if (miss)
+            _sampleMisses.incrementAndGet();
+        _sampleMinAvailable.accumulateAndGet(available, Math::min);
+        if (_sampleCalls.incrementAndGet() % _sampleSize != 0)
+            return;
+
+        int calls = _sampleCalls.getAndSet(0);
+        int misses = _sampleMisses.getAndSet(0);
+        int minAvailable = _sampleMinAvailable.getAndSet(Integer.MAX_VALUE);
+        int target = _target;
+        if (calls > 0 && (double)misses / calls > _maxMissRatio)
+        {
+            if (target < _capacity)
+                _target = target + 1;
+        }
+        else if (misses == 0 && minAvailable > 0 && target > 1)
+        {
+            // A reserved thread was never needed during the whole sample, release it.
+            _target = target - 1;
+            ReservedThread thread = _stack.pollLast();
+            if (thread != null)
+            {
+                _size.decrementAndGet();
+                thread.stop();
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} sample calls={} misses={} minAvailable={} target={}->{}", this, calls, misses, minAvailable, target, _target);
+    }
+
     private void startReservedThread()
     {
         try
@@ -235,7 +376,7 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
                 // Not atomic, but there is a re-check in ReservedThread.run().
                 int pending = _pending.get();
                 int size = _size.get();
-                if (pending + size >= _capacity)
+                if (pending + size >= _target)
                     return;
                 if (_pending.compareAndSet(pending, pending + 1))
                 {
@@ -255,12 +396,15 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
     @Override
     public String toString()
     {
-        return String.format("%s@%x{s=%d/%d,p=%d}",
+        return String.format("%s@%x{s=%d/%d/%d,p=%d,h=%d,m=%d}",
             getClass().getSimpleName(),
             hashCode(),
             _size.get(),
+            _target,
             _capacity,
-            _pending.get());
+            _pending.get(),
+            getHits(),
+            getMisses());
     }
 
     private class ReservedThread implements Runnable
@@ -336,10 +480,10 @@ public class ReservedThreadExecutor extends AbstractLifeCycle implements TryExec
                     return;
 
                 // Are we surplus to capacity?
-                if (size >= _capacity)
+                if (size >= _target)
                 {
                     if (LOG.isDebugEnabled())
-                        LOG.debug("{} size {} > capacity", this, size, _capacity);
+                        LOG.debug("{} size {} > target {}", this, size, _target);
                     if (_starting)
                         _pending.decrementAndGet();
                     return;
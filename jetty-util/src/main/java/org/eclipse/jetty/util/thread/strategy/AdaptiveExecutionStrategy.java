@@ -0,0 +1,638 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.thread.strategy;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.ExecutionStrategy;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.TryExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An {@link ExecutionStrategy} that switches at runtime between
+ * {@link EatWhatYouKill Eat What You Kill} and Produce Consume behaviors.</p>
+ * <p>When operating with the {@link Policy#EAT_WHAT_YOU_KILL} policy, this strategy
+ * behaves like {@link EatWhatYouKill}: tasks that may block are consumed by the producing
+ * thread only if a reserved thread can take over production, otherwise they are executed
+ * or, if their {@link Invocable.InvocationType} allows it, invoked in non-blocking mode.</p>
+ * <p>When operating with the {@link Policy#PRODUCE_CONSUME} policy, tasks that can be
+ * invoked in non-blocking mode are always consumed by the producing thread, without
+ * attempting to hand over production.
+ * This avoids the cost and latency of the hand over when tasks are short.
+ * Tasks that are {@link Invocable.InvocationType#BLOCKING} are never consumed by the
+ * producing thread unless production has been handed over, since they may wait for
+ * events that only the producer can produce.</p>
+ * <p>The policy is re-evaluated every {@link #getSampleSize() sample size} consumed tasks, using:</p>
+ * <ul>
+ * <li>the ratio of consumed tasks that ran longer than the {@link #getBlockingThreshold()
+ * blocking threshold}; above the {@link #getBlockingRatio() blocking ratio}
+ * the Eat What You Kill policy is selected;</li>
+ * <li>the ratio of {@link TryExecutor#tryExecute(Runnable)} misses, that is how often
+ * no reserved thread was available to take over production;</li>
+ * <li>the average latency between the dispatch of a pending producer and the time
+ * it starts running, which is a measure of the thread pool queue latency.</li>
+ * </ul>
+ * <p>If tasks do not block, and either reserved threads are scarce or the hand off
+ * latency exceeds the {@link #getMaxHandOffLatency() max hand off latency},
+ * the Produce Consume policy is selected.</p>
+ */
+@ManagedObject("adaptive execution strategy")
+public class AdaptiveExecutionStrategy extends ContainerLifeCycle implements ExecutionStrategy, Runnable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveExecutionStrategy.class);
+
+    /**
+     * The policies this strategy can switch between.
+     */
+    public enum Policy
+    {
+        /**
+         * Consume tasks in the producing thread only if production can be handed over.
+         */
+        EAT_WHAT_YOU_KILL,
+        /**
+         * Consume tasks that can be invoked in non-blocking mode in the producing thread.
+         */
+        PRODUCE_CONSUME
+    }
+
+    private enum State
+    {
+        IDLE, PRODUCING, REPRODUCING
+    }
+
+    private enum Mode
+    {
+        PRODUCE_CONSUME,
+        PRODUCE_INVOKE_CONSUME,
+        PRODUCE_EXECUTE_CONSUME,
+        EXECUTE_PRODUCE_CONSUME
+    }
+
+    private final AutoLock _lock = new AutoLock();
+    private final LongAdder _pcMode = new LongAdder();
+    private final LongAdder _picMode = new LongAdder();
+    private final LongAdder _pecMode = new LongAdder();
+    private final LongAdder _epcMode = new LongAdder();
+    private final LongAdder _policySwitches = new LongAdder();
+    private final LongAdder _tryExecuteMisses = new LongAdder();
+    private final AtomicInteger _sampleTasks = new AtomicInteger();
+    private final AtomicInteger _sampleBlocked = new AtomicInteger();
+    private final AtomicInteger _sampleTryExecutes = new AtomicInteger();
+    private final AtomicInteger _sampleMisses = new AtomicInteger();
+    private final AtomicInteger _sampleHandOffs = new AtomicInteger();
+    private final LongAdder _sampleHandOffLatency = new LongAdder();
+    private final Producer _producer;
+    private final Executor _executor;
+    private final TryExecutor _tryExecutor;
+    private volatile Policy _policy = Policy.EAT_WHAT_YOU_KILL;
+    private int _sampleSize = 256;
+    private long _blockingThreshold = TimeUnit.MILLISECONDS.toNanos(1);
+    private double _blockingRatio = 0.05D;
+    private double _missRatio = 0.5D;
+    private long _maxHandOffLatency = TimeUnit.MILLISECONDS.toNanos(1);
+    private State _state = State.IDLE;
+    private boolean _pending;
+    private long _pendingNanoTime;
+
+    public AdaptiveExecutionStrategy(Producer producer, Executor executor)
+    {
+        _producer = producer;
+        _executor = executor;
+        _tryExecutor = TryExecutor.asTryExecutor(executor);
+        addBean(_producer);
+        addBean(_tryExecutor);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} created", this);
+    }
+
+    @Override
+    public void dispatch()
+    {
+        boolean execute = false;
+        try (AutoLock l = _lock.lock())
+        {
+            switch (_state)
+            {
+                case IDLE:
+                    if (!_pending)
+                    {
+                        _pending = true;
+                        _pendingNanoTime = System.nanoTime();
+                        execute = true;
+                    }
+                    break;
+
+                case PRODUCING:
+                    _state = State.REPRODUCING;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} dispatch {}", this, execute);
+        if (execute)
+            _executor.execute(this);
+    }
+
+    @Override
+    public void run()
+    {
+        tryProduce(true);
+    }
+
+    @Override
+    public void produce()
+    {
+        tryProduce(false);
+    }
+
+    private void tryProduce(boolean wasPending)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} tryProduce {}", this, wasPending);
+
+        try (AutoLock l = _lock.lock())
+        {
+            if (wasPending)
+            {
+                _pending = false;
+                _sampleHandOffs.incrementAndGet();
+                _sampleHandOffLatency.add(System.nanoTime() - _pendingNanoTime);
+            }
+
+            switch (_state)
+            {
+                case IDLE:
+                    // Enter PRODUCING
+                    _state = State.PRODUCING;
+                    break;
+
+                case PRODUCING:
+                    // Keep other Thread producing
+                    _state = State.REPRODUCING;
+                    return;
+
+                default:
+                    return;
+            }
+        }
+
+        boolean nonBlocking = Invocable.isNonBlockingInvocation();
+
+        while (isRunning())
+        {
+            try
+            {
+                if (doProduce(nonBlocking))
+                    continue;
+                return;
+            }
+            catch (Throwable th)
+            {
+                LOG.warn("Unable to produce", th);
+            }
+        }
+    }
+
+    private boolean doProduce(boolean nonBlocking)
+    {
+        Runnable task = produceTask();
+
+        if (task == null)
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                // Could another task just have been queued with a produce call?
+                switch (_state)
+                {
+                    case PRODUCING:
+                        _state = State.IDLE;
+                        return false;
+
+                    case REPRODUCING:
+                        _state = State.PRODUCING;
+                        return true;
+
+                    default:
+                        throw new IllegalStateException(toStringLocked());
+                }
+            }
+        }
+
+        Mode mode;
+        Invocable.InvocationType invocationType = Invocable.getInvocationType(task);
+        if (nonBlocking)
+        {
+            // The calling thread cannot block, so we only have a choice between PC and PEC modes,
+            // based on the invocation type of the task
+            switch (invocationType)
+            {
+                case NON_BLOCKING:
+                    mode = Mode.PRODUCE_CONSUME;
+                    break;
+
+                case EITHER:
+                    mode = Mode.PRODUCE_INVOKE_CONSUME;
+                    break;
+
+                default:
+                    mode = Mode.PRODUCE_EXECUTE_CONSUME;
+                    break;
+            }
+        }
+        else if (invocationType == Invocable.InvocationType.NON_BLOCKING)
+        {
+            mode = Mode.PRODUCE_CONSUME;
+        }
+        else
+        {
+            // The task may block, so we choose between EPC and either
+            // PEC or PIC based on the availability of a reserved thread.
+            try (AutoLock l = _lock.lock())
+            {
+                if (_pending)
+                {
+                    _state = State.IDLE;
+                    mode = Mode.EXECUTE_PRODUCE_CONSUME;
+                }
+                else if (_policy == Policy.PRODUCE_CONSUME && invocationType == Invocable.InvocationType.EITHER)
+                {
+                    // Tasks have been observed not to block, so consume
+                    // them directly rather than handing over production.
+                    mode = Mode.PRODUCE_INVOKE_CONSUME;
+                }
+                else
+                {
+                    _sampleTryExecutes.incrementAndGet();
+                    if (_tryExecutor.tryExecute(this))
+                    {
+                        _pending = true;
+                        _pendingNanoTime = System.nanoTime();
+                        _state = State.IDLE;
+                        mode = Mode.EXECUTE_PRODUCE_CONSUME;
+                    }
+                    else
+                    {
+                        _tryExecuteMisses.increment();
+                        _sampleMisses.incrementAndGet();
+                        if (invocationType == Invocable.InvocationType.EITHER)
+                            mode = Mode.PRODUCE_INVOKE_CONSUME;
+                        else
+                            mode = Mode.PRODUCE_EXECUTE_CONSUME;
+                    }
+                }
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} m={} t={}/{}", this, mode, task, invocationType);
+
+        // Consume or execute task
+        switch (mode)
+        {
+            case PRODUCE_CONSUME:
+                _pcMode.increment();
+                consumeTask(task, false);
+                return true;
+
+            case PRODUCE_INVOKE_CONSUME:
+                _picMode.increment();
+                consumeTask(task, true);
+                return true;
+
+            case PRODUCE_EXECUTE_CONSUME:
+                _pecMode.increment();
+                execute(task);
+                return true;
+
+            case EXECUTE_PRODUCE_CONSUME:
+                _epcMode.increment();
+                consumeTask(task, false);
+
+                // Try to produce again?
+                try (AutoLock l = _lock.lock())
+                {
+                    if (_state == State.IDLE)
+                    {
+                        // We beat the pending producer, so we will become the producer instead
+                        _state = State.PRODUCING;
+                        return true;
+                    }
+                }
+                return false;
+
+            default:
+                throw new IllegalStateException(toString());
+        }
+    }
+
+    private void consumeTask(Runnable task, boolean nonBlocking)
+    {
+        long begin = System.nanoTime();
+        try
+        {
+            if (nonBlocking)
+                Invocable.invokeNonBlocking(task);
+            else
+                task.run();
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Task run failed", x);
+        }
+        finally
+        {
+            sample(System.nanoTime() - begin);
+        }
+    }
+
+    private void sample(long taskNanos)
+    {
+        if (taskNanos > _blockingThreshold)
+            _sampleBlocked.incrementAndGet();
+        if (_sampleTasks.incrementAndGet() % _sampleSize == 0)
+            adapt();
+    }
+
+    private void adapt()
+    {
+        int tasks = _sampleTasks.getAndSet(0);
+        int blocked = _sampleBlocked.getAndSet(0);
+        int tryExecutes = _sampleTryExecutes.getAndSet(0);
+        int misses = _sampleMisses.getAndSet(0);
+        int handOffs = _sampleHandOffs.getAndSet(0);
+        long handOffLatency = _sampleHandOffLatency.sumThenReset();
+        if (tasks <= 0)
+            return;
+
+        Policy policy = _policy;
+        Policy newPolicy;
+        if ((double)blocked / tasks > _blockingRatio)
+        {
+            newPolicy = Policy.EAT_WHAT_YOU_KILL;
+        }
+        else if (tryExecutes == 0 && handOffs == 0)
+        {
+            // Nothing was learned about hand offs.
+            newPolicy = policy;
+        }
+        else
+        {
+            boolean scarce = tryExecutes > 0 && (double)misses / tryExecutes >= _missRatio;
+            boolean slowHandOff = handOffs > 0 && handOffLatency / handOffs > _maxHandOffLatency;
+            newPolicy = scarce || slowHandOff ? Policy.PRODUCE_CONSUME : Policy.EAT_WHAT_YOU_KILL;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} sample tasks={} blocked={} misses={}/{} handOffs={}/{}ns {}->{}",
+                this, tasks, blocked, misses, tryExecutes, handOffs, handOffLatency, policy, newPolicy);
+
+        if (newPolicy != policy)
+        {
+            _policy = newPolicy;
+            _policySwitches.increment();
+        }
+    }
+
+    private Runnable produceTask()
+    {
+        try
+        {
+            return _producer.produce();
+        }
+        catch (Throwable e)
+        {
+            LOG.warn("Task produce failed", e);
+            return null;
+        }
+    }
+
+    private void execute(Runnable task)
+    {
+        try
+        {
+            _executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            if (isRunning())
+                LOG.warn("Execute failed", e);
+            else
+                LOG.trace("IGNORED", e);
+
+            if (task instanceof Closeable)
+            {
+                try
+                {
+                    ((Closeable)task).close();
+                }
+                catch (Throwable e2)
+                {
+                    LOG.trace("IGNORED", e2);
+                }
+            }
+        }
+    }
+
+    @ManagedAttribute(value = "the current policy", readonly = true)
+    public Policy getPolicy()
+    {
+        return _policy;
+    }
+
+    /**
+     * <p>Sets the current policy, that will be retained until the next evaluation.</p>
+     *
+     * @param policy the policy to use
+     */
+    public void setPolicy(Policy policy)
+    {
+        _policy = policy;
+    }
+
+    /**
+     * @return the number of consumed tasks after which the policy is evaluated
+     */
+    @ManagedAttribute("the number of consumed tasks after which the policy is evaluated")
+    public int getSampleSize()
+    {
+        return _sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize)
+    {
+        if (sampleSize <= 0)
+            throw new IllegalArgumentException("Invalid sample size " + sampleSize);
+        _sampleSize = sampleSize;
+    }
+
+    /**
+     * @return the task run time, in nanoseconds, above which a task is considered blocked
+     */
+    @ManagedAttribute("the task run time, in nanoseconds, above which a task is considered blocked")
+    public long getBlockingThreshold()
+    {
+        return _blockingThreshold;
+    }
+
+    public void setBlockingThreshold(long blockingThreshold)
+    {
+        _blockingThreshold = blockingThreshold;
+    }
+
+    /**
+     * @return the ratio of blocked tasks above which the Eat What You Kill policy is selected
+     */
+    @ManagedAttribute("the ratio of blocked tasks above which the Eat What You Kill policy is selected")
+    public double getBlockingRatio()
+    {
+        return _blockingRatio;
+    }
+
+    public void setBlockingRatio(double blockingRatio)
+    {
+        _blockingRatio = blockingRatio;
+    }
+
+    /**
+     * @return the ratio of reserved thread misses above which the Produce Consume policy is selected
+     */
+    @ManagedAttribute("the ratio of reserved thread misses above which the Produce Consume policy is selected")
+    public double getMissRatio()
+    {
+        return _missRatio;
+    }
+
+    public void setMissRatio(double missRatio)
+    {
+        _missRatio = missRatio;
+    }
+
+    /**
+     * @return the average production hand off latency, in nanoseconds, above which the Produce Consume policy is selected
+     */
+    @ManagedAttribute("the average hand off latency, in nanoseconds, above which the Produce Consume policy is selected")
+    public long getMaxHandOffLatency()
+    {
+        return _maxHandOffLatency;
+    }
+
+    public void setMaxHandOffLatency(long maxHandOffLatency)
+    {
+        _maxHandOffLatency = maxHandOffLatency;
+    }
+
+    @ManagedAttribute(value = "number of policy switches", readonly = true)
+    public long getPolicySwitches()
+    {
+        return _policySwitches.longValue();
+    }
+
+    @ManagedAttribute(value = "number of times no reserved thread was available", readonly = true)
+    public long getTryExecuteMisses()
+    {
+        return _tryExecuteMisses.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks consumed with PC mode", readonly = true)
+    public long getPCTasksConsumed()
+    {
+        return _pcMode.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks executed with PIC mode", readonly = true)
+    public long getPICTasksExecuted()
+    {
+        return _picMode.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks executed with PEC mode", readonly = true)
+    public long getPECTasksExecuted()
+    {
+        return _pecMode.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks consumed with EPC mode", readonly = true)
+    public long getEPCTasksConsumed()
+    {
+        return _epcMode.longValue();
+    }
+
+    @ManagedAttribute(value = "whether this execution strategy is idle", readonly = true)
+    public boolean isIdle()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _state == State.IDLE;
+        }
+    }
+
+    @ManagedOperation(value = "resets the task counts", impact = "ACTION")
+    public void reset()
+    {
+        _pcMode.reset();
+        _epcMode.reset();
+        _pecMode.reset();
+        _picMode.reset();
+        _policySwitches.reset();
+        _tryExecuteMisses.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return toStringLocked();
+        }
+    }
+
+    public String toStringLocked()
+    {
+        return String.format("%s@%x/%s/%s/p=%b/%s/%s[pc=%d,pic=%d,pec=%d,epc=%d,switches=%d,misses=%d]",
+            getClass().getSimpleName(),
+            hashCode(),
+            _producer,
+            _state,
+            _pending,
+            _policy,
+            _tryExecutor,
+            getPCTasksConsumed(),
+            getPICTasksExecuted(),
+            getPECTasksExecuted(),
+            getEPCTasksConsumed(),
+            getPolicySwitches(),
+            getTryExecuteMisses());
+    }
+}
@@ -0,0 +1,138 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentIntMapTest
+{
+    @Test
+    public void testPutGetRemove()
+    {
+        ConcurrentIntMap<String> map = new ConcurrentIntMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "one"));
+        assertNull(map.putIfAbsent(3, "three"));
+        assertThat(map.putIfAbsent(3, "THREE"), is("three"));
+        assertThat(map.put(1, "ONE"), is("one"));
+        assertThat(map.size(), is(2));
+        assertThat(map.get(1), is("ONE"));
+        assertThat(map.get(3), is("three"));
+        assertThat(map.get(5), nullValue());
+        assertThat(map.values(), containsInAnyOrder("ONE", "three"));
+
+        assertThat(map.remove(1), is("ONE"));
+        assertThat(map.remove(1), nullValue());
+        assertThat(map.get(1), nullValue());
+        assertThat(map.get(3), is("three"));
+        assertThat(map.size(), is(1));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertThat(map.get(3), nullValue());
+    }
+
+    @Test
+    public void testAgainstHashMap()
+    {
+        ConcurrentIntMap<Integer> map = new ConcurrentIntMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random();
+        for (int i = 0; i < 100_000; ++i)
+        {
+            // Odd keys like client-initiated HTTP/2 stream ids,
+            // in a small range to have many collisions and removals.
+            int key = 2 * random.nextInt(256) + 1;
+            if (random.nextBoolean())
+                assertThat(map.put(key, i), is(expected.put(key, i)));
+            else
+                assertThat(map.remove(key), is(expected.remove(key)));
+            assertThat(map.size(), is(expected.size()));
+        }
+        for (int key = 0; key < 1024; ++key)
+        {
+            assertThat(map.get(key), is(expected.get(key)));
+        }
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception
+    {
+        ConcurrentIntMap<Integer> map = new ConcurrentIntMap<>();
+        // A key always present, which must always be found.
+        map.put(0, 0);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(4);
+        for (int r = 0; r < 4; ++r)
+        {
+            Thread reader = new Thread(() ->
+            {
+                Random random = new Random();
+                while (running.get())
+                {
+                    if (map.get(0) == null)
+                        failure.set("missing key 0");
+                    int key = random.nextInt(64) + 1;
+                    Integer value = map.get(key);
+                    // Values are always the negative of their key.
+                    if (value != null && value != -key)
+                        failure.set("key " + key + " mapped to " + value);
+                }
+                latch.countDown();
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        Random random = new Random();
+        for (int i = 0; i < 1_000_000; ++i)
+        {
+            int key = random.nextInt(64) + 1;
+            if (random.nextBoolean())
+                map.put(key, -key);
+            else
+                map.remove(key);
+        }
+        running.set(false);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertThat(map.get(0), is(0));
+    }
+}
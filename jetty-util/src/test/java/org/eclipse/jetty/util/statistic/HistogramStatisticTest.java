@@ -0,0 +1,95 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HistogramStatisticTest
+{
+    @Test
+    public void testEmpty()
+    {
+        HistogramStatistic histogram = new HistogramStatistic();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact()
+    {
+        HistogramStatistic histogram = new HistogramStatistic(5);
+        for (int i = 1; i <= 20; ++i)
+        {
+            histogram.record(i);
+        }
+        assertEquals(20, histogram.getCount());
+        assertEquals(210, histogram.getTotal());
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertEquals(20, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testRelativeError()
+    {
+        int precision = 5;
+        HistogramStatistic histogram = new HistogramStatistic(precision);
+        long[] values = {100, 1_000, 12_345, 1_000_000, 987_654_321, Long.MAX_VALUE / 3};
+        for (long value : values)
+        {
+            histogram.reset();
+            histogram.record(value);
+            histogram.record(value);
+            histogram.record(value / 2 * 3);
+            long recorded = histogram.getValueAtPercentile(50);
+            assertThat(recorded, greaterThanOrEqualTo(value));
+            assertThat(recorded, lessThanOrEqualTo(value + (value >> precision)));
+        }
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        HistogramStatistic histogram = new HistogramStatistic();
+        for (int i = 0; i < 999; ++i)
+        {
+            histogram.record(1000);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(1000, histogram.getValueAtPercentile(50), 1000 >> 5);
+        assertEquals(1000, histogram.getValueAtPercentile(99.9), 1000 >> 5);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1_000_000, histogram.getMax());
+
+        long[] values = histogram.getValuesAtPercentiles(50, 99.9, 100);
+        assertEquals(histogram.getValueAtPercentile(50), values[0]);
+        assertEquals(histogram.getValueAtPercentile(99.9), values[1]);
+        assertEquals(histogram.getValueAtPercentile(100), values[2]);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
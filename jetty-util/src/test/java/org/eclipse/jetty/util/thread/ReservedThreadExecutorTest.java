@@ -205,6 +205,53 @@ public class ReservedThreadExecutorTest
         assertFalse(thread.isAlive());
     }
 
+    @Test
+    public void testHitsAndMisses() throws Exception
+    {
+        assertThat(_reservedExecutor.tryExecute(NOOP), is(false));
+        assertThat(_reservedExecutor.getMisses(), is(1L));
+
+        _executor.startThread();
+        waitForAvailable(1);
+
+        assertThat(_reservedExecutor.tryExecute(NOOP), is(true));
+        assertThat(_reservedExecutor.getHits(), is(1L));
+        assertThat(_reservedExecutor.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testAdaptiveTarget() throws Exception
+    {
+        _reservedExecutor.stop();
+        _reservedExecutor.setAdaptive(true);
+        _reservedExecutor.setSampleSize(4);
+        _reservedExecutor.start();
+        assertThat(_reservedExecutor.getTarget(), is(1));
+
+        // Only misses, the target grows.
+        for (int i = 0; i < 4; i++)
+        {
+            assertThat(_reservedExecutor.tryExecute(NOOP), is(false));
+        }
+        assertThat(_reservedExecutor.getMisses(), is(4L));
+        assertThat(_reservedExecutor.getTarget(), is(SIZE));
+
+        while (_executor.startThread() != null)
+        {
+            Thread.yield();
+        }
+        waitForAvailable(SIZE);
+
+        // Only hits with a spare reserved thread, the target shrinks.
+        for (int i = 0; i < 4; i++)
+        {
+            assertThat(_reservedExecutor.tryExecute(NOOP), is(true));
+            waitForAvailable(SIZE - (i == 3 ? 1 : 0));
+        }
+        assertThat(_reservedExecutor.getHits(), is(4L));
+        assertThat(_reservedExecutor.getTarget(), is(1));
+    }
+
     protected void waitForAvailable(int size) throws InterruptedException
     {
         long started = System.nanoTime();
@@ -0,0 +1,137 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.thread.strategy;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.TryExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveExecutionStrategyTest
+{
+    private AdaptiveExecutionStrategy strategy;
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (strategy != null)
+            strategy.stop();
+    }
+
+    private void start(Queue<Runnable> tasks, Executor executor) throws Exception
+    {
+        strategy = new AdaptiveExecutionStrategy(tasks::poll, executor);
+        strategy.setSampleSize(10);
+        strategy.start();
+    }
+
+    @Test
+    public void testSwitchToProduceConsumeWhenNoReservedThreads() throws Exception
+    {
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // No reserved threads: every tryExecute() is a miss.
+        Executor executor = new TryExecutor.NoTryExecutor(Runnable::run);
+        start(tasks, executor);
+
+        CountDownLatch latch = new CountDownLatch(20);
+        for (int i = 0; i < 20; ++i)
+        {
+            tasks.offer(new Task(latch::countDown, Invocable.InvocationType.EITHER));
+        }
+        strategy.produce();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(strategy.getPolicy(), is(AdaptiveExecutionStrategy.Policy.PRODUCE_CONSUME));
+        assertEquals(1, strategy.getPolicySwitches());
+        assertEquals(10, strategy.getTryExecuteMisses());
+        assertEquals(20, strategy.getPICTasksExecuted());
+    }
+
+    @Test
+    public void testSwitchToEatWhatYouKillWhenTasksBlock() throws Exception
+    {
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        start(tasks, new TryExecutor.NoTryExecutor(Runnable::run));
+        strategy.setPolicy(AdaptiveExecutionStrategy.Policy.PRODUCE_CONSUME);
+        strategy.setBlockingThreshold(TimeUnit.MILLISECONDS.toNanos(1));
+
+        CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; ++i)
+        {
+            tasks.offer(new Task(() ->
+            {
+                sleep(5);
+                latch.countDown();
+            }, Invocable.InvocationType.EITHER));
+        }
+        strategy.produce();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(strategy.getPolicy(), is(AdaptiveExecutionStrategy.Policy.EAT_WHAT_YOU_KILL));
+        assertThat(strategy.getPolicySwitches(), greaterThan(0L));
+    }
+
+    private static void sleep(long ms)
+    {
+        try
+        {
+            Thread.sleep(ms);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private static class Task implements Runnable, Invocable
+    {
+        private final Runnable task;
+        private final InvocationType invocationType;
+
+        private Task(Runnable task, InvocationType invocationType)
+        {
+            this.task = task;
+            this.invocationType = invocationType;
+        }
+
+        @Override
+        public void run()
+        {
+            task.run();
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return invocationType;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack.jmh;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http2.hpack.HpackException;
+import org.eclipse.jetty.http2.hpack.Huffman;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the Huffman encoding and decoding of the header values
+ * of typical browser requests and server responses.</p>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HuffmanBenchmark
+{
+    private static final String[] REQUEST_VALUES =
+        {
+            "www.example.com",
+            "/static/js/app.9f3a7c1e.bundle.js?v=20200915",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/85.0.4183.102 Safari/537.36",
+            "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8",
+            "gzip, deflate, br",
+            "en-US,en;q=0.9,it;q=0.8",
+            "https://www.example.com/products/catalog?page=2&sort=price",
+            "_ga=GA1.2.1234567890.1600000000; _gid=GA1.2.987654321.1600100000; JSESSIONID=node01q2w3e4r5t6y7u8i9o0p1a2s3d4f5g6.node0",
+            "max-age=0",
+            "same-origin",
+        };
+    private static final String[] RESPONSE_VALUES =
+        {
+            "200",
+            "text/html;charset=utf-8",
+            "Tue, 15 Sep 2020 08:12:31 GMT",
+            "W/\"5f60775f-2a3c\"",
+            "public, max-age=31536000, immutable",
+            "Jetty(10.0.0)",
+            "36547",
+            "Accept-Encoding",
+            "https://cdn.example.com/images/hero-banner-1920x1080.webp",
+            "max-age=63072000; includeSubDomains; preload",
+        };
+
+    @Param({"REQUEST", "RESPONSE"})
+    public static String HEADERS;
+
+    private String[] values;
+    private ByteBuffer[] encoded;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        values = "REQUEST".equals(HEADERS) ? REQUEST_VALUES : RESPONSE_VALUES;
+        encoded = new ByteBuffer[values.length];
+        for (int i = 0; i < values.length; ++i)
+        {
+            ByteBuffer bytes = ByteBuffer.allocate(Huffman.octetsNeeded(values[i]));
+            Huffman.encode(bytes, values[i]);
+            bytes.flip();
+            encoded[i] = bytes;
+        }
+        buffer = ByteBuffer.allocateDirect(4096);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int testEncode()
+    {
+        buffer.clear();
+        for (String value : values)
+        {
+            Huffman.encode(buffer, value);
+        }
+        return buffer.position();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int testEncodeBytes()
+    {
+        buffer.clear();
+        for (String value : values)
+        {
+            Huffman.encode(buffer, value.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return buffer.position();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int testOctetsNeeded()
+    {
+        int needed = 0;
+        for (String value : values)
+        {
+            needed += Huffman.octetsNeeded(value);
+        }
+        return needed;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int testDecode() throws HpackException.CompressionException
+    {
+        int length = 0;
+        for (ByteBuffer bytes : encoded)
+        {
+            length += Huffman.decode(bytes.duplicate()).length();
+        }
+        return length;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(HuffmanBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,171 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the request throughput and latency of a {@link Server} driven via a
+ * {@link LocalConnector}, so that only the server is measured.</p>
+ * <p>A {@link LocalConnector} has no selector, so unlike {@link ServerBenchmark}
+ * this benchmark is not parametrized by the selector execution strategy.
+ * Every request is sent with {@code Connection: close}, so that the local endpoint
+ * of each operation is closed rather than left open until its idle timeout.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+@Warmup(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+public class LocalServerBenchmark
+{
+    private static final byte[] HELLO = "Hello World!".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LARGE = new byte[16 * 1024];
+
+    static
+    {
+        Arrays.fill(LARGE, (byte)'X');
+    }
+
+    @Param({"QTP", "EXECUTOR"})
+    public static String threadPool;
+
+    @Param({"HELLO", "LARGE"})
+    public static String content;
+
+    private Server _server;
+    private LocalConnector _connector;
+    private ByteBuffer _request;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        _server = new Server(newThreadPool());
+
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setSendDateHeader(false);
+        httpConfig.setSendServerVersion(false);
+        _connector = new LocalConnector(_server, new HttpConnectionFactory(httpConfig));
+        _server.addConnector(_connector);
+
+        byte[] bytes = "LARGE".equals(content) ? LARGE : HELLO;
+        _server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                response.setContentType("text/plain");
+                response.setContentLength(bytes.length);
+                response.getOutputStream().write(bytes);
+            }
+        });
+        _server.start();
+
+        _request = BufferUtil.toBuffer("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+    }
+
+    private ThreadPool newThreadPool()
+    {
+        switch (threadPool)
+        {
+            case "QTP":
+                return new QueuedThreadPool(200, 8);
+            case "EXECUTOR":
+                return new ExecutorThreadPool(200, 8);
+            default:
+                throw new IllegalStateException("Unknown thread pool " + threadPool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopTrial() throws Exception
+    {
+        _server.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long testThroughput() throws Exception
+    {
+        return request();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long testLatency() throws Exception
+    {
+        return request();
+    }
+
+    private long request() throws Exception
+    {
+        ByteBuffer response = _connector.getResponse(_request.slice(), 5, TimeUnit.SECONDS);
+        if (response == null)
+            throw new IllegalStateException("No response");
+        return response.remaining();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(LocalServerBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
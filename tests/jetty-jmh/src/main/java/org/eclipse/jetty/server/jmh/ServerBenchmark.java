@@ -0,0 +1,228 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.jmh;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the end-to-end request throughput and latency of a real {@link Server}.</p>
+ * <p>The protocols use a {@link HttpClient} over loopback sockets to a {@link ServerConnector};
+ * see {@link LocalServerBenchmark} to measure only the server.</p>
+ * <p>Run with the {@link GCProfiler} (as {@link #main(String[])} does) to report the
+ * allocation per request ({@code gc.alloc.rate.norm}), which includes the client allocation.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+@Warmup(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+public class ServerBenchmark
+{
+    private static final byte[] HELLO = "Hello World!".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LARGE = new byte[16 * 1024];
+
+    static
+    {
+        Arrays.fill(LARGE, (byte)'X');
+    }
+
+    @Param({"HTTP", "H2C", "HTTPS"})
+    public static String protocol;
+
+    @Param({"QTP", "EXECUTOR"})
+    public static String threadPool;
+
+    @Param({"EWYK", "ADAPTIVE"})
+    public static String strategy;
+
+    @Param({"HELLO", "LARGE"})
+    public static String content;
+
+    private Server _server;
+    private HttpClient _client;
+    private String _uri;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        _server = new Server(newThreadPool());
+
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setSendDateHeader(false);
+        httpConfig.setSendServerVersion(false);
+        HttpConnectionFactory http = new HttpConnectionFactory(httpConfig);
+
+        ServerConnector connector;
+        switch (protocol)
+        {
+            case "HTTP":
+                connector = new ServerConnector(_server, http);
+                break;
+
+            case "H2C":
+                connector = new ServerConnector(_server, http, new HTTP2CServerConnectionFactory(httpConfig));
+                break;
+
+            case "HTTPS":
+                SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+                sslContextFactory.setKeyStoreResource(Resource.newClassPathResource("keystore.p12"));
+                sslContextFactory.setKeyStorePassword("storepwd");
+                connector = new ServerConnector(_server, sslContextFactory, http);
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown protocol " + protocol);
+        }
+
+        connector.getSelectorManager().setAdaptiveExecutionStrategy("ADAPTIVE".equals(strategy));
+        _server.addConnector(connector);
+
+        byte[] bytes = "LARGE".equals(content) ? LARGE : HELLO;
+        _server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                response.setContentType("text/plain");
+                response.setContentLength(bytes.length);
+                response.getOutputStream().write(bytes);
+            }
+        });
+        _server.start();
+
+        _client = new HttpClient(newClientTransport());
+        _client.setMaxConnectionsPerDestination(16);
+        _client.start();
+        String scheme = "HTTPS".equals(protocol) ? "https" : "http";
+        _uri = scheme + "://localhost:" + connector.getLocalPort() + "/";
+    }
+
+    private ThreadPool newThreadPool()
+    {
+        switch (threadPool)
+        {
+            case "QTP":
+                return new QueuedThreadPool(200, 8);
+            case "EXECUTOR":
+                return new ExecutorThreadPool(200, 8);
+            default:
+                throw new IllegalStateException("Unknown thread pool " + threadPool);
+        }
+    }
+
+    private HttpClientTransport newClientTransport()
+    {
+        if ("H2C".equals(protocol))
+        {
+            HttpClientTransportOverHTTP2 transport = new HttpClientTransportOverHTTP2(new HTTP2Client());
+            transport.setUseALPN(false);
+            return transport;
+        }
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP();
+        if ("HTTPS".equals(protocol))
+            transport.getClientConnector().setSslContextFactory(new SslContextFactory.Client(true));
+        return transport;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopTrial() throws Exception
+    {
+        _client.stop();
+        _server.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long testThroughput() throws Exception
+    {
+        return request();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long testLatency() throws Exception
+    {
+        return request();
+    }
+
+    private long request() throws Exception
+    {
+        ContentResponse response = _client.newRequest(_uri)
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        if (response.getStatus() != 200)
+            throw new IllegalStateException("Unexpected response " + response);
+        return response.getContent().length;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ServerBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
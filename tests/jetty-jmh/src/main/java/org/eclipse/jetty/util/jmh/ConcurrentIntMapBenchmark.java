@@ -0,0 +1,176 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.jmh;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.ConcurrentIntMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Compares {@link ConcurrentIntMap} with {@link ConcurrentHashMap} when
+ * used as the map of the streams of an HTTP/2 session: lookups for every frame,
+ * and creation/removal of streams with increasing odd ids.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class ConcurrentIntMapBenchmark
+{
+    @Param({"CHM", "INT"})
+    public static String MAP;
+
+    // The number of concurrent streams in the session.
+    @Param({"1", "8", "100"})
+    public static int STREAMS;
+
+    private final AtomicInteger streamIds = new AtomicInteger(1);
+    private StreamMap map;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        switch (MAP)
+        {
+            case "CHM":
+                map = new CHMStreamMap();
+                break;
+            case "INT":
+                map = new IntStreamMap();
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+        for (int i = 0; i < STREAMS; ++i)
+        {
+            int streamId = streamIds.getAndAdd(2);
+            map.put(streamId, streamId);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public Object testLookup()
+    {
+        // Look up one of the live streams.
+        int newest = streamIds.get() - 2;
+        int streamId = newest - 2 * ThreadLocalRandom.current().nextInt(STREAMS);
+        return map.get(streamId);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public Object testCreateDestroy()
+    {
+        // Create a new stream and destroy the oldest,
+        // so that the number of live streams is stable.
+        int streamId = streamIds.getAndAdd(2);
+        map.put(streamId, streamId);
+        return map.remove(streamId - 2 * STREAMS);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ConcurrentIntMapBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(4)
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    private interface StreamMap
+    {
+        Object get(int streamId);
+
+        void put(int streamId, Object stream);
+
+        Object remove(int streamId);
+    }
+
+    private static class CHMStreamMap implements StreamMap
+    {
+        private final ConcurrentMap<Integer, Object> streams = new ConcurrentHashMap<>();
+
+        @Override
+        public Object get(int streamId)
+        {
+            return streams.get(streamId);
+        }
+
+        @Override
+        public void put(int streamId, Object stream)
+        {
+            streams.putIfAbsent(streamId, stream);
+        }
+
+        @Override
+        public Object remove(int streamId)
+        {
+            return streams.remove(streamId);
+        }
+    }
+
+    private static class IntStreamMap implements StreamMap
+    {
+        private final ConcurrentIntMap<Object> streams = new ConcurrentIntMap<>();
+
+        @Override
+        public Object get(int streamId)
+        {
+            return streams.get(streamId);
+        }
+
+        @Override
+        public void put(int streamId, Object stream)
+        {
+            streams.putIfAbsent(streamId, stream);
+        }
+
+        @Override
+        public Object remove(int streamId)
+        {
+            return streams.remove(streamId);
+        }
+    }
+}